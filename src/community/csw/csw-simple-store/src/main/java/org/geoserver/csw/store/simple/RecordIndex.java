@@ -0,0 +1,356 @@
+/* Copyright (c) 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.csw.store.simple;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.geoserver.csw.records.CSWRecordDescriptor;
+import org.opengis.feature.ComplexAttribute;
+import org.opengis.feature.Feature;
+import org.opengis.feature.Property;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+/**
+ * Keeps the records of a directory parsed in memory, along with a spatial index of their
+ * bounding boxes, an inverted index of the words of their text, title and subject, and a cache of
+ * the attribute domains, so that queries do not re-read and parse all the files.
+ * <p>
+ * The directory is scanned again at most once every {@link #REFRESH_INTERVAL} milliseconds, only
+ * the files that were added or modified since the last scan are parsed.
+ * </p>
+ */
+class RecordIndex {
+
+    /**
+     * Minimum time between two scans of the directory, in milliseconds
+     */
+    static final long REFRESH_INTERVAL = Long.getLong("org.geoserver.csw.simple.refreshInterval",
+            1000);
+
+    /**
+     * The field indexing the words of all the simple literals of a record, as used by
+     * {@link RecordTextFunction}
+     */
+    static final String ANY_TEXT = "AnyText";
+
+    /**
+     * The fields having their own word index
+     */
+    static final List<String> TEXT_FIELDS = Arrays.asList(ANY_TEXT, "title", "subject");
+
+    File root;
+
+    long refreshInterval = REFRESH_INTERVAL;
+
+    long lastScan = -1;
+
+    Map<File, Entry> entries = new HashMap<File, Entry>();
+
+    volatile Snapshot snapshot = new Snapshot(Collections.<Entry> emptyList());
+
+    public RecordIndex(File root) {
+        this.root = root;
+    }
+
+    /**
+     * Returns the current records, scanning the directory for changes if needed
+     */
+    Snapshot getSnapshot() {
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (lastScan < 0 || now - lastScan >= refreshInterval) {
+                scan();
+                lastScan = now;
+            }
+            return snapshot;
+        }
+    }
+
+    void scan() {
+        File[] files = SimpleRecordIterator.listRecordFiles(root);
+        if (files == null) {
+            files = new File[0];
+        }
+        // keep a stable order, whatever the file system returns
+        Arrays.sort(files);
+
+        boolean changed = files.length != entries.size();
+        Map<File, Entry> updated = new HashMap<File, Entry>();
+        for (File file : files) {
+            Entry entry = entries.get(file);
+            if (entry == null || entry.lastModified != file.lastModified()
+                    || entry.length != file.length()) {
+                entry = parse(file);
+                changed = true;
+            }
+            updated.put(file, entry);
+        }
+        entries = updated;
+
+        if (changed) {
+            List<Entry> list = new ArrayList<Entry>();
+            for (File file : files) {
+                Entry entry = updated.get(file);
+                if (entry.record != null) {
+                    list.add(entry);
+                }
+            }
+            snapshot = new Snapshot(list);
+        }
+    }
+
+    Entry parse(File file) {
+        SimpleRecordIterator it = new SimpleRecordIterator(Collections.singletonList(file), 0);
+        Feature record = it.hasNext() ? it.next() : null;
+        return new Entry(file, record);
+    }
+
+    /**
+     * A parsed record file
+     */
+    static class Entry {
+        File file;
+
+        long lastModified;
+
+        long length;
+
+        Feature record;
+
+        Entry(File file, Feature record) {
+            this.file = file;
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+            this.record = record;
+        }
+    }
+
+    /**
+     * The records found by a scan of the directory, and their indexes
+     */
+    static class Snapshot {
+        List<Feature> records;
+
+        Map<String, File> files;
+
+        STRtree spatialIndex;
+
+        Map<String, List<String>> domains = new ConcurrentHashMap<String, List<String>>();
+
+        /**
+         * For each text field, the positions of the records containing each word, lower case
+         */
+        Map<String, TreeMap<String, BitSet>> words = new HashMap<String, TreeMap<String, BitSet>>();
+
+        Snapshot(List<Entry> entries) {
+            records = new ArrayList<Feature>(entries.size());
+            files = new HashMap<String, File>();
+            spatialIndex = new STRtree();
+            for (String field : TEXT_FIELDS) {
+                words.put(field, new TreeMap<String, BitSet>());
+            }
+            for (Entry entry : entries) {
+                Feature record = entry.record;
+                Integer position = records.size();
+                records.add(record);
+                if (record.getIdentifier() != null) {
+                    files.put(record.getIdentifier().getID(), entry.file);
+                }
+
+                for (Property p : record.getProperties()) {
+                    if (p.getDescriptor().getType() == CSWRecordDescriptor.SIMPLE_LITERAL) {
+                        // same text the filters are evaluated against
+                        Property value = ((ComplexAttribute) p).getProperty("value");
+                        String text = String.valueOf(value != null ? value.getValue() : null);
+                        addWords(ANY_TEXT, text, position);
+                        String name = p.getName().getLocalPart();
+                        if (!ANY_TEXT.equals(name) && TEXT_FIELDS.contains(name)) {
+                            addWords(name, text, position);
+                        }
+                    }
+                }
+
+                Property bbox = record.getProperty(CSWRecordDescriptor.RECORD_BBOX_NAME);
+                if (bbox != null && bbox.getValue() instanceof Geometry) {
+                    Envelope envelope = ((Geometry) bbox.getValue()).getEnvelopeInternal();
+                    spatialIndex.insert(envelope, position);
+                }
+            }
+            records = Collections.unmodifiableList(records);
+            spatialIndex.build();
+        }
+
+        void addWords(String field, String text, int position) {
+            TreeMap<String, BitSet> index = words.get(field);
+            int start = -1;
+            for (int i = 0; i <= text.length(); i++) {
+                boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+                if (letter && start < 0) {
+                    start = i;
+                } else if (!letter && start >= 0) {
+                    String word = text.substring(start, i).toLowerCase();
+                    BitSet positions = index.get(word);
+                    if (positions == null) {
+                        positions = new BitSet();
+                        index.put(word, positions);
+                    }
+                    positions.set(position);
+                    start = -1;
+                }
+            }
+        }
+
+        /**
+         * Returns the records whose bounding box intersects the envelope, in natural order
+         */
+        List<Feature> getRecords(Envelope envelope) {
+            return getRecords(envelope, null);
+        }
+
+        /**
+         * Returns the records whose bounding box intersects the envelope, if not null, and whose
+         * position is among the candidates, if not null, in natural order
+         */
+        List<Feature> getRecords(Envelope envelope, BitSet candidates) {
+            List<Integer> positions;
+            if (envelope != null) {
+                positions = spatialIndex.query(envelope);
+                Collections.sort(positions);
+            } else {
+                positions = new ArrayList<Integer>();
+                for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                    positions.add(i);
+                }
+            }
+            List<Feature> result = new ArrayList<Feature>(positions.size());
+            for (Integer position : positions) {
+                if (candidates == null || candidates.get(position)) {
+                    result.add(records.get(position));
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Returns the positions of the records whose field can match the PropertyIsLike pattern,
+         * that is, the ones containing all its words, or null if the pattern has no word. The
+         * words next to a wildcard are looked up as part of a longer word.
+         */
+        BitSet getLikeCandidates(String field, String pattern, String wildCard,
+                String singleChar, String escape) {
+            StringBuilder text = new StringBuilder();
+            BitSet wildcards = new BitSet();
+            for (int i = 0; i < pattern.length();) {
+                if (escape != null && escape.length() > 0 && pattern.startsWith(escape, i)
+                        && i + escape.length() < pattern.length()) {
+                    text.append(pattern.charAt(i + escape.length()));
+                    i += escape.length() + 1;
+                } else if (wildCard != null && wildCard.length() > 0
+                        && pattern.startsWith(wildCard, i)) {
+                    wildcards.set(text.length());
+                    text.append(' ');
+                    i += wildCard.length();
+                } else if (singleChar != null && singleChar.length() > 0
+                        && pattern.startsWith(singleChar, i)) {
+                    wildcards.set(text.length());
+                    text.append(' ');
+                    i += singleChar.length();
+                } else {
+                    text.append(pattern.charAt(i));
+                    i++;
+                }
+            }
+            return getCandidates(field, text.toString(), wildcards);
+        }
+
+        /**
+         * Returns the positions of the records whose field can be equal to the value, that is,
+         * the ones containing all its words, or null if the value has no word
+         */
+        BitSet getEqualCandidates(String field, String value) {
+            return getCandidates(field, value, new BitSet());
+        }
+
+        BitSet getCandidates(String field, String text, BitSet wildcards) {
+            TreeMap<String, BitSet> index = words.get(field);
+            BitSet result = null;
+            int start = -1;
+            for (int i = 0; i <= text.length(); i++) {
+                boolean letter = i < text.length() && !wildcards.get(i)
+                        && Character.isLetterOrDigit(text.charAt(i));
+                if (letter && start < 0) {
+                    start = i;
+                } else if (!letter && start >= 0) {
+                    String word = text.substring(start, i).toLowerCase();
+                    boolean prefix = i < text.length() && wildcards.get(i);
+                    boolean suffix = start > 0 && wildcards.get(start - 1);
+                    BitSet positions = new BitSet();
+                    if (!prefix && !suffix) {
+                        if (index.containsKey(word)) {
+                            positions.or(index.get(word));
+                        }
+                    } else if (!suffix) {
+                        for (BitSet bits : index.subMap(word, word + Character.MAX_VALUE).values()) {
+                            positions.or(bits);
+                        }
+                    } else {
+                        for (Map.Entry<String, BitSet> entry : index.entrySet()) {
+                            String key = entry.getKey();
+                            if (prefix ? key.contains(word) : key.endsWith(word)) {
+                                positions.or(entry.getValue());
+                            }
+                        }
+                    }
+                    if (result == null) {
+                        result = positions;
+                    } else {
+                        result.and(positions);
+                    }
+                    start = -1;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Returns the sorted distinct values of a simple literal attribute
+         */
+        List<String> getDomain(String attribute) {
+            List<String> domain = domains.get(attribute);
+            if (domain == null) {
+                SortedSet<String> values = new TreeSet<String>();
+                for (Feature record : records) {
+                    ComplexAttribute att = (ComplexAttribute) record.getProperty(attribute);
+                    if (att != null && att.getProperty("value") != null) {
+                        try {
+                            values.add(new String(((String) att.getProperty("value").getValue())
+                                    .getBytes("ISO-8859-1"), "UTF-8"));
+                        } catch (UnsupportedEncodingException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }
+                domain = Collections.unmodifiableList(new ArrayList<String>(values));
+                domains.put(attribute, domain);
+            }
+            return domain;
+        }
+    }
+}
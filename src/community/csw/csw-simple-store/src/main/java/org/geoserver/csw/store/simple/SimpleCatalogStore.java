@@ -8,14 +8,12 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import javax.xml.namespace.QName;
 
@@ -28,30 +26,38 @@ import org.geoserver.csw.store.CatalogStore;
 import org.geoserver.csw.store.CatalogStoreCapabilities;
 import org.geoserver.csw.store.RepositoryItem;
 import org.geoserver.csw.util.QNameResolver;
+import org.geotools.csw.CSW;
 import org.geotools.csw.DC;
 import org.geotools.data.Query;
 import org.geotools.data.Transaction;
-import org.geotools.data.store.FilteringFeatureCollection;
-import org.geotools.data.store.MaxFeaturesFeatureCollection;
-import org.geotools.factory.CommonFactoryFinder;
 import org.geotools.feature.FeatureCollection;
-import org.geotools.feature.FeatureIterator;
 import org.geotools.feature.NameImpl;
-import org.opengis.feature.ComplexAttribute;
 import org.opengis.feature.Feature;
-import org.opengis.feature.FeatureVisitor;
 import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.feature.type.FeatureType;
 import org.opengis.feature.type.Name;
+import org.opengis.filter.And;
 import org.opengis.filter.Filter;
-import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.Or;
+import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.PropertyIsLike;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.Literal;
+import org.opengis.filter.expression.PropertyName;
 import org.opengis.filter.identity.FeatureId;
+import org.opengis.filter.spatial.BBOX;
+import org.xml.sax.helpers.NamespaceSupport;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
 
 /**
  * A simple implementation of {@link CatalogStore} geared towards test support. 
- * The store reads CSW records from xml files located in the root folder, it is not meant to 
- * be fast or scalable, on the contrary, to keep its implementation as simple as possible it
- * is actually slow and occasionally memory bound. 
+ * The store reads CSW records from xml files located in the root folder, and keeps them
+ * parsed in memory along with a spatial index of their bounding boxes and a word index of their
+ * text, title and subject (see {@link RecordIndex}), the files being checked for changes at most
+ * once a second. The indexes only narrow down the candidates, the filter is then evaluated against
+ * each of them, so it's still memory bound and not meant to scale. 
  * <p>Do not use it for production purposes. 
  * 
  * @author Andrea Aime - GeoSolutions
@@ -60,6 +66,10 @@ import org.opengis.filter.identity.FeatureId;
 public class SimpleCatalogStore implements CatalogStore {
 
     private File root;
+
+    RecordIndex index;
+
+    QNameResolver resolver = new QNameResolver();
     
     static final List<Name> QUERIABLES;
     
@@ -78,6 +88,7 @@ public class SimpleCatalogStore implements CatalogStore {
 
     public SimpleCatalogStore(File root) {
         this.root = root;
+        this.index = new RecordIndex(root);
 
         if (!root.exists()) {
             throw new IllegalArgumentException("Record directory does not exists: "
@@ -108,36 +119,51 @@ public class SimpleCatalogStore implements CatalogStore {
                     + " is not a supported type");
         }
 
-        int startIndex = 0;
-        if (q.getStartIndex() != null) {
-            startIndex = q.getStartIndex();
-        }
-        FeatureCollection records = new RecordsFeatureCollection(root, startIndex);
+        RecordIndex.Snapshot snapshot = index.getSnapshot();
 
-        // filtering
+        // filtering, using the spatial and word indexes to narrow down the candidates if possible
+        List<Feature> features = snapshot.records;
         if (q.getFilter() != null && q.getFilter() != Filter.INCLUDE) {
             Filter filter = q.getFilter();
+            Envelope envelope = getIndexableEnvelope(filter);
+            BitSet candidates = getTextCandidates(filter, snapshot);
+            if (envelope != null || candidates != null) {
+                features = snapshot.getRecords(envelope, candidates);
+            }
+
             CSWAnyExpander expander = new CSWAnyExpander();
             Filter expanded = (Filter) filter.accept(expander, null);
-            
-            records = new FilteringFeatureCollection<FeatureType, Feature>(records, expanded);
+            List<Feature> filtered = new ArrayList<Feature>();
+            for (Feature f : features) {
+                if (expanded.evaluate(f)) {
+                    filtered.add(f);
+                }
+            }
+            features = filtered;
         }
 
         // sorting
         if (q.getSortBy() != null && q.getSortBy().length > 0) {
-            Feature[] features = (Feature[]) records.toArray(new Feature[records.size()]);
+            features = new ArrayList<Feature>(features);
             Comparator<Feature> comparator = ComplexComparatorFactory.buildComparator(q.getSortBy());
-            Arrays.sort(features, comparator);
-            
-            records = new MemoryFeatureCollection(records.getSchema(), Arrays.asList(features));
+            Collections.sort(features, comparator);
         }
 
-        // max features
+        // paging
+        int startIndex = 0;
+        if (q.getStartIndex() != null) {
+            startIndex = q.getStartIndex();
+        }
+        int endIndex = features.size();
         if (q.getMaxFeatures() < Query.DEFAULT_MAX) {
-            records = new MaxFeaturesFeatureCollection<FeatureType, Feature>(records,
-                    q.getMaxFeatures());
+            endIndex = (int) Math.min(endIndex, (long) startIndex + q.getMaxFeatures());
         }
-        
+        if (startIndex > 0 || endIndex < features.size()) {
+            features = features.subList(Math.min(startIndex, endIndex), endIndex);
+        }
+        FeatureCollection records = new MemoryFeatureCollection(CSWRecordDescriptor.RECORD,
+                features);
+
         // reducing attributes
         if(q.getProperties() != null && q.getProperties().size() > 0) {
             records = new RetypingFeatureCollection(records, q.getProperties());
@@ -154,38 +180,8 @@ public class SimpleCatalogStore implements CatalogStore {
             return new CloseableIteratorAdapter<String>(new ArrayList<String>().iterator());
         }
 
-        // build the query against csw:record
-        Query q = new Query(typeName.getLocalPart());
-        FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2();
-        String xpath;
-        if(ad.getName().getNamespaceURI().equals(DC.NAMESPACE)) {
-            xpath = "dc:" + ad.getLocalName();
-        } else {
-            xpath = "dct:" + ad.getLocalName();
-        }
-        q.setProperties(Arrays.asList(FF.property(xpath, CSWRecordDescriptor.NAMESPACES)));
-        
-        // collect the values without duplicates
-        FeatureIterator<Feature> fi = null;
-        final Set<String> values = new HashSet<String>();
-        getRecords(q, Transaction.AUTO_COMMIT).accepts(new FeatureVisitor() {
-            
-            @Override
-            public void visit(Feature feature) {
-                ComplexAttribute att = (ComplexAttribute) feature.getProperty(attributeName.getLocalPart());
-                if (att != null && att.getProperty("value") != null)
-                    try {
-                        values.add( new String( ((String) att.getProperty("value").getValue()).getBytes("ISO-8859-1"), "UTF-8" ) );
-                    } catch (UnsupportedEncodingException e) {
-                        throw new RuntimeException(e);
-                    }
-//                values.add((String) att.getProperty("value").getValue());
-            }
-        }, null);
-        
-        // sort and return
-        List<String> result = new ArrayList(values);
-        Collections.sort(result);
+        // the distinct values are collected once per scan of the records
+        List<String> result = index.getSnapshot().getDomain(attributeName.getLocalPart());
         return new CloseableIteratorAdapter<String>(result.iterator());
     }
 
@@ -228,11 +224,139 @@ public class SimpleCatalogStore implements CatalogStore {
         };
     }
 
+    /**
+     * Returns the envelope of a bounding box filter against the record bounding boxes, expressed
+     * in the record CRS, that the records must intersect to match the filter, or null if there
+     * is none
+     */
+    Envelope getIndexableEnvelope(Filter filter) {
+        if (filter instanceof And) {
+            for (Filter child : ((And) filter).getChildren()) {
+                Envelope envelope = getIndexableEnvelope(child);
+                if (envelope != null) {
+                    return envelope;
+                }
+            }
+        } else if (filter instanceof BBOX) {
+            BBOX bbox = (BBOX) filter;
+            String srs = bbox.getSRS();
+            if (srs != null && !"".equals(srs) && !CSWRecordDescriptor.DEFAULT_CRS_NAME.equals(srs)) {
+                return null;
+            }
+            if (bbox.getExpression1() instanceof PropertyName) {
+                String name = ((PropertyName) bbox.getExpression1()).getPropertyName();
+                if (name != null && !"".equals(name) && !name.endsWith("BoundingBox")) {
+                    return null;
+                }
+            }
+            if (bbox.getExpression2() instanceof Literal) {
+                Object value = ((Literal) bbox.getExpression2()).getValue();
+                if (value instanceof Geometry) {
+                    return ((Geometry) value).getEnvelopeInternal();
+                } else if (value instanceof Envelope) {
+                    return (Envelope) value;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the positions of the records that can match the filter according to the word index,
+     * or null if the filter cannot be narrowed down this way. Only like and equality filters on
+     * the record text, title and subject values are indexable, along with their combinations.
+     */
+    BitSet getTextCandidates(Filter filter, RecordIndex.Snapshot snapshot) {
+        if (filter instanceof And) {
+            BitSet result = null;
+            for (Filter child : ((And) filter).getChildren()) {
+                BitSet candidates = getTextCandidates(child, snapshot);
+                if (candidates != null) {
+                    if (result == null) {
+                        result = candidates;
+                    } else {
+                        result.and(candidates);
+                    }
+                }
+            }
+            return result;
+        } else if (filter instanceof Or) {
+            BitSet result = new BitSet();
+            for (Filter child : ((Or) filter).getChildren()) {
+                BitSet candidates = getTextCandidates(child, snapshot);
+                if (candidates == null) {
+                    return null;
+                }
+                result.or(candidates);
+            }
+            return result;
+        } else if (filter instanceof PropertyIsLike) {
+            PropertyIsLike like = (PropertyIsLike) filter;
+            String field = getTextField(like.getExpression());
+            if (field != null && like.getLiteral() != null) {
+                return snapshot.getLikeCandidates(field, like.getLiteral(), like.getWildCard(),
+                        like.getSingleChar(), like.getEscape());
+            }
+        } else if (filter instanceof PropertyIsEqualTo) {
+            PropertyIsEqualTo equal = (PropertyIsEqualTo) filter;
+            String field = getTextField(equal.getExpression1());
+            Expression other = equal.getExpression2();
+            if (field == null) {
+                field = getTextField(equal.getExpression2());
+                other = equal.getExpression1();
+            }
+            if (field != null && other instanceof Literal) {
+                Object value = ((Literal) other).getValue();
+                // numbers and dates might be compared after conversion, not as text
+                if (value instanceof String && !isNumber((String) value)) {
+                    return snapshot.getEqualCandidates(field, (String) value);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the word indexed field the expression refers to, that is, csw:AnyText (the same way
+     * {@link CSWAnyExpander} recognizes it), dc:title/dc:value or dc:subject/dc:value, or null
+     */
+    String getTextField(Expression expression) {
+        if (!(expression instanceof PropertyName)) {
+            return null;
+        }
+        PropertyName property = (PropertyName) expression;
+        NamespaceSupport nss = property.getNamespaceContext();
+        String path = property.getPropertyName();
+        if (nss == null || path == null) {
+            return null;
+        }
+        String[] steps = path.split("/");
+        QName name = resolver.parseQName(steps[0], nss);
+        String uri = name.getNamespaceURI();
+        if (steps.length == 1 && path.endsWith(RecordIndex.ANY_TEXT)
+                && (uri == null || "".equals(uri) || CSW.NAMESPACE.equals(uri))) {
+            return RecordIndex.ANY_TEXT;
+        } else if (steps.length == 2 && DC.NAMESPACE.equals(uri)
+                && !RecordIndex.ANY_TEXT.equals(name.getLocalPart())
+                && RecordIndex.TEXT_FIELDS.contains(name.getLocalPart())
+                && "value".equals(resolver.parseQName(steps[1], nss).getLocalPart())) {
+            return name.getLocalPart();
+        }
+        return null;
+    }
+
+    boolean isNumber(String value) {
+        try {
+            Double.parseDouble(value.trim());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
     @Override
     public int getRecordsCount(Query q, Transaction t) throws IOException {
-        // simply delegate to the feature collection, we have no optimizations 
-        // available for the time being (even counting the files in case of no filtering
-        // would be wrong as we have to 
+        // simply delegate to the feature collection, the records are in memory anyways
         return getRecords(q, t).size();
     }
 
@@ -241,26 +365,22 @@ public class SimpleCatalogStore implements CatalogStore {
      */
     @Override
     public RepositoryItem getRepositoryItem(String recordId) {
-        SimpleRecordIterator it = new SimpleRecordIterator(root, 0);
-        while(it.hasNext()) {
-            Feature f = it.next();
-            if(recordId.equals(f.getIdentifier().getID())) {
-                final File file = it.getLastFile();
-                return new RepositoryItem() {
-                    
-                    @Override
-                    public String getMime() {
-                        return "application/xml";
-                    }
-                    
-                    @Override
-                    public InputStream getContents() throws IOException {
-                        return new FileInputStream(file);
-                    }
-                };
-            }
+        final File file = index.getSnapshot().files.get(recordId);
+        if (file != null) {
+            return new RepositoryItem() {
+
+                @Override
+                public String getMime() {
+                    return "application/xml";
+                }
+
+                @Override
+                public InputStream getContents() throws IOException {
+                    return new FileInputStream(file);
+                }
+            };
         }
-        
+
         // not found
         return null;
     }
@@ -10,6 +10,7 @@ import java.io.FilenameFilter;
 import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -54,13 +55,22 @@ class SimpleRecordIterator implements Iterator<Feature> {
     int offset;
 
     public SimpleRecordIterator(File root, int offset) {
-        File[] fileArray = root.listFiles((FilenameFilter) new SuffixFileFilter(".xml",
-                IOCase.INSENSITIVE));
-        files = Arrays.asList(fileArray).iterator();
+        this(Arrays.asList(listRecordFiles(root)), offset);
+    }
+
+    public SimpleRecordIterator(List<File> files, int offset) {
+        this.files = files.iterator();
         parser = new Parser(new CSWConfiguration());
         this.offset = offset;
     }
 
+    /**
+     * Lists the record files in the directory
+     */
+    static File[] listRecordFiles(File root) {
+        return root.listFiles((FilenameFilter) new SuffixFileFilter(".xml", IOCase.INSENSITIVE));
+    }
+
     @Override
     public boolean hasNext() {
         while ((record == null || offset > 0) && files.hasNext()) {
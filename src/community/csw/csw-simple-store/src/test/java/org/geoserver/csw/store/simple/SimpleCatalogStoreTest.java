@@ -34,6 +34,7 @@ import org.opengis.feature.type.FeatureType;
 import org.opengis.feature.type.Name;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.expression.PropertyName;
 import org.opengis.filter.sort.SortBy;
 import org.opengis.filter.sort.SortOrder;
 
@@ -302,4 +303,107 @@ public class SimpleCatalogStoreTest extends TestCase {
         String expected = "This is a random comment that will show up only when fetching the repository item";
         assertTrue(contents.contains(expected));
     }
+    
+    public void testPagingFilteredSorted() throws IOException {
+        Query query = new Query("Record");
+        query.setFilter(FF.equals(FF.property("dc:type/dc:value", CSWRecordDescriptor.NAMESPACES), FF.literal("http://purl.org/dc/dcmitype/Image")));
+        query.setSortBy(new SortBy[] {new SortByImpl(FF.property("dc:title/dc:value", CSWRecordDescriptor.NAMESPACES), SortOrder.ASCENDING)});
+        query.setStartIndex(1);
+        query.setMaxFeatures(1);
+        
+        FeatureCollection records = store.getRecords(query, Transaction.AUTO_COMMIT);
+        final List<String> values = collectElement(records, "title");
+        assertEquals(1, values.size());
+        assertEquals("Lorem ipsum dolor sit amet", values.get(0));
+        
+        assertEquals(3, store.getRecordsCount(new Query("Record", query.getFilter()), Transaction.AUTO_COMMIT));
+    }
+    
+    public void testTextFilters() throws IOException {
+        RecordIndex.Snapshot snapshot = store.index.getSnapshot();
+        PropertyName anyText = FF.property("csw:AnyText", CSWRecordDescriptor.NAMESPACES);
+        PropertyName title = FF.property("dc:title/dc:value", CSWRecordDescriptor.NAMESPACES);
+        PropertyName subject = FF.property("dc:subject/dc:value", CSWRecordDescriptor.NAMESPACES);
+
+        // the candidates contain all the words, the filter then picks the right ones
+        Filter filter = FF.equals(title, FF.literal("Lorem ipsum"));
+        assertEquals(2, store.getTextCandidates(filter, snapshot).cardinality());
+        assertSameAsFullScan(filter, 1);
+
+        filter = FF.like(title, "Lorem%", "%", "_", "\\");
+        assertEquals(2, store.getTextCandidates(filter, snapshot).cardinality());
+        assertSameAsFullScan(filter, 2);
+
+        // words next to a wildcard match longer ones
+        filter = FF.like(subject, "Vegetation%", "%", "_", "\\");
+        assertEquals(2, store.getTextCandidates(filter, snapshot).cardinality());
+        assertSameAsFullScan(filter, 2);
+        assertSameAsFullScan(FF.like(subject, "%graphy%", "%", "_", "\\"), -1);
+        assertSameAsFullScan(FF.like(title, "Ma_cenas e%", "%", "_", "\\"), 1);
+        assertSameAsFullScan(FF.like(anyText, "%ipsum%", "%", "_", "\\"), -1);
+        assertSameAsFullScan(FF.like(anyText, "%orem ips%", "%", "_", "\\"), -1);
+
+        // no record has all the words
+        filter = FF.like(anyText, "%Lorem%Vegetation%", "%", "_", "\\");
+        assertEquals(0, store.getTextCandidates(filter, snapshot).cardinality());
+        assertSameAsFullScan(filter, 0);
+
+        // combined with other filters, or not indexable at all
+        Filter type = FF.equals(FF.property("dc:type/dc:value", CSWRecordDescriptor.NAMESPACES),
+                FF.literal("http://purl.org/dc/dcmitype/Image"));
+        assertNull(store.getTextCandidates(type, snapshot));
+        assertSameAsFullScan(FF.and(type, FF.like(title, "Lorem%", "%", "_", "\\")), 2);
+        assertNull(store.getTextCandidates(FF.or(type, FF.equals(title, FF.literal("Lorem ipsum"))),
+                snapshot));
+        assertSameAsFullScan(FF.or(FF.equals(title, FF.literal("Maecenas enim")),
+                FF.like(subject, "Land%", "%", "_", "\\")), 2);
+        assertNull(store.getTextCandidates(FF.like(title, "%", "%", "_", "\\"), snapshot));
+    }
+
+    /**
+     * Checks the store returns the same records as the evaluation of the filter against all the
+     * records, and their count if not negative
+     */
+    private void assertSameAsFullScan(Filter filter, int expected) throws IOException {
+        Filter expanded = (Filter) filter.accept(new CSWAnyExpander(), null);
+        List<Feature> matching = new ArrayList<Feature>();
+        for (Feature f : store.index.getSnapshot().records) {
+            if (expanded.evaluate(f)) {
+                matching.add(f);
+            }
+        }
+        List<Feature> records = Arrays.asList((Feature[]) store.getRecords(
+                new Query("Record", filter), Transaction.AUTO_COMMIT).toArray(new Feature[0]));
+        assertEquals(matching, records);
+        if (expected >= 0) {
+            assertEquals(expected, records.size());
+        }
+    }
+
+    public void testRefresh() throws IOException {
+        File copy = new File("./target/refresh");
+        if(copy.exists()) {
+            FileUtils.deleteDirectory(copy);
+        }
+        copy.mkdirs();
+        File record = new File(root, "Record_1ef30a8b-876d-4828-9246-c37ab4510bbd.xml");
+        FileUtils.copyFileToDirectory(record, copy);
+        
+        SimpleCatalogStore copyStore = new SimpleCatalogStore(copy);
+        copyStore.index.refreshInterval = 0;
+        assertEquals(1, copyStore.getRecords(Query.ALL, Transaction.AUTO_COMMIT).size());
+        Filter filter = FF.bbox("", 60.042, 13.754, 68.410, 17.920, CSWRecordDescriptor.DEFAULT_CRS_NAME);
+        assertEquals(1, copyStore.getRecords(new Query("Record", filter), Transaction.AUTO_COMMIT).size());
+        
+        // new files are picked up
+        FileUtils.copyFileToDirectory(new File(root, "Record_19887a8a-f6b0-4a63-ae56-7fba0e17801f.xml"), copy);
+        assertEquals(2, copyStore.getRecords(Query.ALL, Transaction.AUTO_COMMIT).size());
+        assertNotNull(copyStore.getRepositoryItem("urn:uuid:19887a8a-f6b0-4a63-ae56-7fba0e17801f"));
+        
+        // and removed ones dropped
+        new File(copy, record.getName()).delete();
+        assertEquals(1, copyStore.getRecords(Query.ALL, Transaction.AUTO_COMMIT).size());
+        assertEquals(0, copyStore.getRecords(new Query("Record", filter), Transaction.AUTO_COMMIT).size());
+        assertNull(copyStore.getRepositoryItem("urn:uuid:1ef30a8b-876d-4828-9246-c37ab4510bbd"));
+    }
 }
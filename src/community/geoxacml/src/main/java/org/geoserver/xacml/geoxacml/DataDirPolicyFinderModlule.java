@@ -184,6 +184,7 @@ public class DataDirPolicyFinderModlule extends PolicyFinderModule {
     public void invalidateCache() {
         // TODO
         super.invalidateCache();
+        GeoXACMLConfig.getDecisionCache().invalidate();
     }
 
     @Override
@@ -61,6 +61,8 @@ public class GeoXACMLConfig {
 
     private static String repositoryBaseDir = null;
 
+    private static XACMLDecisionCache decisionCache = new XACMLDecisionCache();
+
     static public void reset() {
         synchronized (pdpLock) {
             pdp = null;
@@ -68,12 +70,15 @@ public class GeoXACMLConfig {
         synchronized (transportFactoryLock) {
             transportFactory = null;
         }
+        decisionCache.invalidate();
 
     }
 
     static public void reload() {
         reset();
         getPDP();
+        // drop the decisions evaluated against the old policies while reloading
+        decisionCache.invalidate();
     }
 
     static public void setPolicyRepsoitoryBaseDir(String baseDir) {
@@ -138,6 +143,13 @@ public class GeoXACMLConfig {
 
     }
 
+    /**
+     * @return the cache of the catalog access decisions, emptied on {@link #reset()}
+     */
+    static public XACMLDecisionCache getDecisionCache() {
+        return decisionCache;
+    }
+
     static public XACMLTransport getXACMLTransport() {
         return getXACMLTransportFacytory().getXACMLTransport();
     }
@@ -0,0 +1,132 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+
+package org.geoserver.xacml.geoxacml;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.geoserver.xacml.request.RequestCtxBuilder;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.sun.xacml.ctx.RequestCtx;
+import com.sun.xacml.ctx.ResponseCtx;
+import com.sun.xacml.ctx.Result;
+
+/**
+ * Remembers the decisions of the PDP for catalog access requests, so that filtering the catalog
+ * does not run a policy evaluation for every object and role.
+ *
+ * Decisions are keyed by {@link RequestCtxBuilder#getCacheKey()}, requests without a key are always
+ * evaluated, and so are the ones whose evaluation was indeterminate. The cache is emptied when the
+ * policies are reloaded, and entries expire after {@link #TTL} seconds anyways, which bounds the
+ * staleness of policies depending on the current time.
+ *
+ * The size and time to live are set with the <code>org.geoserver.xacml.decisionCacheSize</code>
+ * and <code>org.geoserver.xacml.decisionCacheTTL</code> system properties, a size of 0 disabling
+ * the cache.
+ *
+ */
+public class XACMLDecisionCache {
+
+    public static final int SIZE = Integer.getInteger("org.geoserver.xacml.decisionCacheSize",
+            10000);
+
+    public static final int TTL = Integer.getInteger("org.geoserver.xacml.decisionCacheTTL", 60);
+
+    private Cache<String, Integer> decisions;
+
+    private AtomicLong hits = new AtomicLong();
+
+    private AtomicLong misses = new AtomicLong();
+
+    public XACMLDecisionCache() {
+        this(SIZE, TTL);
+    }
+
+    /**
+     * @param size
+     *            The max number of decisions remembered
+     * @param ttl
+     *            The time a decision is remembered, in seconds
+     */
+    public XACMLDecisionCache(int size, int ttl) {
+        if (size > 0 && ttl > 0) {
+            decisions = CacheBuilder.newBuilder().maximumSize(size)
+                    .expireAfterWrite(ttl, TimeUnit.SECONDS).build();
+        }
+    }
+
+    /**
+     * Returns the decisions for the requests of the builders, in the same order. The requests
+     * whose decision is not cached are sent to the transport in a single call.
+     *
+     * @param builders
+     * @return an array of XACML decisions
+     */
+    public int[] evaluate(List<RequestCtxBuilder> builders) {
+        int[] result = new int[builders.size()];
+        String[] keys = new String[builders.size()];
+        List<Integer> positions = new ArrayList<Integer>();
+        List<RequestCtx> requests = new ArrayList<RequestCtx>();
+
+        for (int i = 0; i < builders.size(); i++) {
+            RequestCtxBuilder builder = builders.get(i);
+            Integer decision = null;
+            if (decisions != null) {
+                keys[i] = builder.getCacheKey();
+                if (keys[i] != null)
+                    decision = decisions.getIfPresent(keys[i]);
+            }
+            if (decision != null) {
+                hits.incrementAndGet();
+                result[i] = decision;
+            } else {
+                misses.incrementAndGet();
+                positions.add(i);
+                requests.add(builder.createRequestCtx());
+            }
+        }
+
+        if (requests.isEmpty())
+            return result;
+
+        List<ResponseCtx> responses = GeoXACMLConfig.getXACMLTransport().evaluateRequestCtxList(
+                requests);
+        for (int i = 0; i < positions.size(); i++) {
+            int position = positions.get(i);
+            int decision = XACMLUtil.getDecisionFromResponseContext(responses.get(i));
+            result[position] = decision;
+            if (keys[position] != null && decision != Result.DECISION_INDETERMINATE)
+                decisions.put(keys[position], decision);
+        }
+        return result;
+    }
+
+    /**
+     * Forgets all the decisions, to be called when the policies change
+     */
+    public void invalidate() {
+        if (decisions != null)
+            decisions.invalidateAll();
+    }
+
+    /**
+     * Returns the number of decisions answered from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of decisions evaluated by the PDP
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+}
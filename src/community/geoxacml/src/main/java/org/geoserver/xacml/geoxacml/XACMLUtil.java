@@ -71,6 +71,30 @@ public class XACMLUtil {
 
     }
 
+    /**
+     * Same as {@link #getDecisionFromRoleResponses(List)}, for decisions already extracted from
+     * the role responses
+     * 
+     * @param decisions
+     *            from role requests
+     * @param offset
+     *            the first decision to consider
+     * @param length
+     *            the number of decisions to consider
+     * @return XACML decision
+     */
+    public static int getDecisionFromRoleDecisions(int[] decisions, int offset, int length) {
+        boolean hasPermit = false;
+
+        for (int i = offset; i < offset + length; i++) {
+            if (decisions[i] == Result.DECISION_INDETERMINATE) // Error
+                return decisions[i];
+            if (decisions[i] == Result.DECISION_PERMIT)
+                hasPermit = true;
+        }
+        return hasPermit ? Result.DECISION_PERMIT : Result.DECISION_DENY;
+    }
+
     public static int getDecisionFromResponseContext(ResponseCtx responseCtx) {
         Set<Result> results = responseCtx.getResults();
         // Set<Obligation> permitObligations = new HashSet<Obligation>();
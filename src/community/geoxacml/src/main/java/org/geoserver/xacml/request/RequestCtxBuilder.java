@@ -7,7 +7,10 @@ package org.geoserver.xacml.request;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -136,6 +139,45 @@ public abstract class RequestCtxBuilder extends Object {
 
     }
 
+    /**
+     * Builds the part of the cache key identifying the role, its attributes and the action
+     */
+    protected String getRoleActionKey() {
+        StringBuilder sb = new StringBuilder(role.getAuthority());
+        List<String> attributes = new ArrayList<String>();
+        for (Attribute attr : role.getAttributes()) {
+            attributes.add(attr.getId() + "=" + attr.getValue().encode());
+        }
+        Collections.sort(attributes);
+        for (String attribute : attributes) {
+            sb.append(';').append(attribute);
+        }
+        sb.append('|').append(action);
+        return sb.toString();
+    }
+
+    /**
+     * Builds the part of the cache key identifying the current OWS request, or returns null if
+     * the request carries a BBOX, whose geometry could be checked by the policies
+     */
+    protected String getOWSKey() {
+        org.geoserver.ows.Request owsRequest = Dispatcher.REQUEST.get();
+        if (owsRequest == null)
+            return "";
+        Map kvp = owsRequest.getKvp();
+        if (kvp != null && kvp.get("BBOX") != null)
+            return null;
+        return owsRequest.getService() + "/" + owsRequest.getRequest();
+    }
+
+    /**
+     * Returns a key identifying the decision of the request built by this object, or null if the
+     * decision cannot be cached. The default implementation returns null.
+     */
+    public String getCacheKey() {
+        return null;
+    }
+
     abstract public RequestCtx createRequestCtx();
 
 }
@@ -49,6 +49,15 @@ public class ResourceInfoRequestCtxBuilder extends RequestCtxBuilder {
         }
     }
 
+    @Override
+    public String getCacheKey() {
+        String owsKey = getOWSKey();
+        if (owsKey == null)
+            return null;
+        return "resource|" + getRoleActionKey() + "|" + workspaceName + ":" + resourceName + "|"
+                + owsKey;
+    }
+
     @Override
     public RequestCtx createRequestCtx() {
 
@@ -36,6 +36,11 @@ public class WorkspaceRequestCtxBuilder extends RequestCtxBuilder {
         this.workspaceName = workspace.getName();
     }
 
+    @Override
+    public String getCacheKey() {
+        return "workspace|" + getRoleActionKey() + "|" + workspaceName;
+    }
+
     @Override
     public RequestCtx createRequestCtx() {
 
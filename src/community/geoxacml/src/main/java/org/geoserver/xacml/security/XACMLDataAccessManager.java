@@ -6,6 +6,7 @@
 package org.geoserver.xacml.security;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -21,6 +22,7 @@ import org.geoserver.security.DataAccessManager;
 import org.geoserver.xacml.geoxacml.GeoXACMLConfig;
 import org.geoserver.xacml.geoxacml.XACMLConstants;
 import org.geoserver.xacml.geoxacml.XACMLUtil;
+import org.geoserver.xacml.request.RequestCtxBuilder;
 import org.geoserver.xacml.role.XACMLRole;
 
 import com.sun.xacml.Obligation;
@@ -55,14 +57,15 @@ public class XACMLDataAccessManager implements DataAccessManager {
 
     public boolean canAccess(Authentication user, WorkspaceInfo workspace, AccessMode mode) {
         GeoXACMLConfig.getXACMLRoleAuthority().prepareRoles(user);
-        List<RequestCtx> requestCtxts = buildWorkspaceRequestCtxListFromRoles(user, workspace, mode);
-        if (requestCtxts.isEmpty())
+        List<RequestCtxBuilder> builders = buildWorkspaceRequestCtxBuilderListFromRoles(user,
+                workspace, mode);
+        if (builders.isEmpty())
             return false;
 
-        List<ResponseCtx> responseCtxts = GeoXACMLConfig.getXACMLTransport()
-                .evaluateRequestCtxList(requestCtxts);
+        int[] decisions = GeoXACMLConfig.getDecisionCache().evaluate(builders);
 
-        int xacmlDecision = XACMLUtil.getDecisionFromRoleResponses(responseCtxts);
+        int xacmlDecision = XACMLUtil.getDecisionFromRoleDecisions(decisions, 0,
+                decisions.length);
 
         if (xacmlDecision == Result.DECISION_PERMIT)
             return true;
@@ -83,20 +86,55 @@ public class XACMLDataAccessManager implements DataAccessManager {
     }
 
     public boolean canAccess(Authentication user, ResourceInfo resource, AccessMode mode) {
+        return canAccess(user, Collections.singletonList(resource), mode)[0];
+    }
+
+    /**
+     * Checks the access to a list of resources at once, the decisions that are not cached get
+     * evaluated in a single call to the XACML transport
+     * 
+     * @return the access flag of each resource, in the same order
+     */
+    public boolean[] canAccess(Authentication user, List<? extends ResourceInfo> resources,
+            AccessMode mode) {
+        boolean[] result = new boolean[resources.size()];
         GeoXACMLConfig.getXACMLRoleAuthority().prepareRoles(user);
-        List<RequestCtx> requestCtxts = buildResourceInfoRequestCtxListFromRoles(user, resource,
-                mode);
-        if (requestCtxts.isEmpty())
-            return false;
+        List<XACMLRole> roles = getEnabledRoles(user);
+        if (roles.isEmpty() || resources.isEmpty())
+            return result;
+
+        List<RequestCtxBuilder> builders = new ArrayList<RequestCtxBuilder>(resources.size()
+                * roles.size());
+        for (ResourceInfo resource : resources) {
+            for (XACMLRole role : roles) {
+                builders.add(GeoXACMLConfig.getRequestCtxBuilderFactory()
+                        .getResourceInfoRequestCtxBuilder(role, resource, mode));
+            }
+        }
 
-        List<ResponseCtx> responseCtxts = GeoXACMLConfig.getXACMLTransport()
-                .evaluateRequestCtxList(requestCtxts);
+        int[] decisions = GeoXACMLConfig.getDecisionCache().evaluate(builders);
 
-        int xacmlDecision = XACMLUtil.getDecisionFromRoleResponses(responseCtxts);
+        for (int i = 0; i < result.length; i++) {
+            int xacmlDecision = XACMLUtil.getDecisionFromRoleDecisions(decisions,
+                    i * roles.size(), roles.size());
+            result[i] = xacmlDecision == Result.DECISION_PERMIT;
+        }
+        return result;
+    }
 
-        if (xacmlDecision == Result.DECISION_PERMIT)
-            return true;
-        return false;
+    /**
+     * Returns the resources the user can access in the specified mode, see
+     * {@link #canAccess(Authentication, List, AccessMode)}
+     */
+    public <T extends ResourceInfo> List<T> filter(Authentication user, List<T> resources,
+            AccessMode mode) {
+        boolean[] access = canAccess(user, resources, mode);
+        List<T> result = new ArrayList<T>();
+        for (int i = 0; i < access.length; i++) {
+            if (access[i])
+                result.add(resources.get(i));
+        }
+        return result;
     }
 
     public CatalogMode getMode() {
@@ -147,39 +185,25 @@ public class XACMLDataAccessManager implements DataAccessManager {
         return mode;
     }
 
-    private List<RequestCtx> buildWorkspaceRequestCtxListFromRoles(Authentication auth,
-            WorkspaceInfo workspaceInfo, AccessMode mode) {
-
-        List<RequestCtx> resultList = new ArrayList<RequestCtx>();
-
+    private List<XACMLRole> getEnabledRoles(Authentication auth) {
+        List<XACMLRole> roles = new ArrayList<XACMLRole>();
         for (GrantedAuthority role : auth.getAuthorities()) {
             XACMLRole xacmlRole = (XACMLRole) role;
             if (xacmlRole.isEnabled() == false)
                 continue;
-            RequestCtx requestCtx = GeoXACMLConfig.getRequestCtxBuilderFactory()
-                    .getWorkspaceRequestCtxBuilder(xacmlRole, workspaceInfo, mode)
-                    .createRequestCtx();
-            // XACMLUtil.getXACMLLogger().info(XACMLUtil.asXMLString(requestCtx));
-            resultList.add(requestCtx);
+            roles.add(xacmlRole);
         }
-
-        return resultList;
+        return roles;
     }
 
-    private List<RequestCtx> buildResourceInfoRequestCtxListFromRoles(Authentication auth,
-            ResourceInfo resourceInfo, AccessMode mode) {
+    private List<RequestCtxBuilder> buildWorkspaceRequestCtxBuilderListFromRoles(
+            Authentication auth, WorkspaceInfo workspaceInfo, AccessMode mode) {
 
-        List<RequestCtx> resultList = new ArrayList<RequestCtx>();
+        List<RequestCtxBuilder> resultList = new ArrayList<RequestCtxBuilder>();
 
-        for (GrantedAuthority role : auth.getAuthorities()) {
-            XACMLRole xacmlRole = (XACMLRole) role;
-            if (xacmlRole.isEnabled() == false)
-                continue;
-            RequestCtx requestCtx = GeoXACMLConfig.getRequestCtxBuilderFactory()
-                    .getResourceInfoRequestCtxBuilder(xacmlRole, resourceInfo, mode)
-                    .createRequestCtx();
-            // XACMLUtil.getXACMLLogger().info(XACMLUtil.asXMLString(requestCtx));
-            resultList.add(requestCtx);
+        for (XACMLRole xacmlRole : getEnabledRoles(auth)) {
+            resultList.add(GeoXACMLConfig.getRequestCtxBuilderFactory()
+                    .getWorkspaceRequestCtxBuilder(xacmlRole, workspaceInfo, mode));
         }
 
         return resultList;
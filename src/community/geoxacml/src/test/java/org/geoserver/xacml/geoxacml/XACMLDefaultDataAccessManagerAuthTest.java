@@ -5,7 +5,12 @@
 
 package org.geoserver.xacml.geoxacml;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.springframework.security.providers.TestingAuthenticationToken;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.security.AccessMode;
 import org.geoserver.security.DataAccessManager;
 import org.geoserver.security.DefaultDataAccessManagerAuthTest;
 import org.geoserver.xacml.role.XACMLRole;
@@ -48,6 +53,34 @@ public class XACMLDefaultDataAccessManagerAuthTest extends DefaultDataAccessMana
         // already tested with "lockedDown"
     }
 
+    public void testDecisionCache() throws Exception {
+        XACMLDataAccessManager manager = (XACMLDataAccessManager) buildManager("publicRead.properties");
+        XACMLDecisionCache cache = GeoXACMLConfig.getDecisionCache();
+
+        // first check goes to the PDP, the second one is answered by the cache
+        long misses = cache.getMisses();
+        long hits = cache.getHits();
+        assertTrue(manager.canAccess(roUser, states, AccessMode.READ));
+        assertEquals(misses + 1, cache.getMisses());
+        assertTrue(manager.canAccess(roUser, states, AccessMode.READ));
+        assertEquals(misses + 1, cache.getMisses());
+        assertEquals(hits + 1, cache.getHits());
+
+        // the batch check evaluates only the resources not seen yet
+        List<ResourceInfo> resources = Arrays.asList(states, roads, arcGrid);
+        boolean[] access = manager.canAccess(roUser, resources, AccessMode.READ);
+        assertTrue(access[0] && access[1] && access[2]);
+        assertEquals(misses + 3, cache.getMisses());
+        assertEquals(3, manager.filter(roUser, resources, AccessMode.READ).size());
+        assertTrue(manager.filter(roUser, resources, AccessMode.WRITE).isEmpty());
+
+        // a reload drops the decisions
+        GeoXACMLConfig.reload();
+        misses = cache.getMisses();
+        assertTrue(manager.canAccess(roUser, states, AccessMode.READ));
+        assertEquals(misses + 1, cache.getMisses());
+    }
+
     @Override
     protected void setUp() throws Exception {
         super.setUp();
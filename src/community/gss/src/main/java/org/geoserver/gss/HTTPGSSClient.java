@@ -16,6 +16,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import javax.xml.namespace.QName;
 
@@ -26,6 +28,7 @@ import net.opengis.wfs.InsertElementType;
 import net.opengis.wfs.TransactionType;
 import net.opengis.wfs.UpdateElementType;
 
+import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.HttpStatus;
@@ -33,6 +36,7 @@ import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.methods.RequestEntity;
 import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.apache.commons.io.IOUtils;
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.NamespaceInfo;
 import org.geoserver.gss.CentralRevisionsType.LayerRevision;
@@ -192,6 +196,9 @@ public class HTTPGSSClient implements GSSClient {
                 }
             }
             
+            // ask for a compressed response, diffs can be large and compress very well
+            method.setRequestHeader("Accept-Encoding", "gzip");
+
             // plain execution
             int statusCode = client.executeMethod(method);
 
@@ -204,13 +211,11 @@ public class HTTPGSSClient implements GSSClient {
             Parser parser = new Parser(configuration);
             parser.setStrict(true);
             parser.setFailOnValidationError(true);
-            InputStream is;
+            InputStream is = getResponseStream(method);
             if(LOGGER.isLoggable(Level.FINE)) {
-                String responseString = method.getResponseBodyAsString();
-                LOGGER.log(Level.FINE, "Response from Unit:\n" + responseString);
-                is = new ByteArrayInputStream(responseString.getBytes());
-            } else {
-                is = method.getResponseBodyAsStream();
+                byte[] responseBytes = IOUtils.toByteArray(is);
+                LOGGER.log(Level.FINE, "Response from Unit:\n" + new String(responseBytes));
+                is = new ByteArrayInputStream(responseBytes);
             }
             response = parser.parse(is);
         } catch (Exception e) {
@@ -241,6 +246,24 @@ public class HTTPGSSClient implements GSSClient {
         return response;
     }
 
+    /**
+     * Returns the response body as a stream, decompressing it on the fly if the Unit sent it
+     * compressed
+     */
+    InputStream getResponseStream(HttpMethod method) throws IOException {
+        InputStream is = method.getResponseBodyAsStream();
+        Header encoding = method.getResponseHeader("Content-Encoding");
+        if (encoding != null && encoding.getValue() != null) {
+            String value = encoding.getValue().trim();
+            if ("gzip".equalsIgnoreCase(value) || "x-gzip".equalsIgnoreCase(value)) {
+                return new GZIPInputStream(is);
+            } else if ("deflate".equalsIgnoreCase(value)) {
+                return new InflaterInputStream(is);
+            }
+        }
+        return is;
+    }
+
     /**
      * Builds a XML encoder for the specified transaction. The code will declare all
      * prefix/namespace URI associations necessary for the elements in the transaction
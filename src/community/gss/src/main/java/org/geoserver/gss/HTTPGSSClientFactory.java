@@ -29,7 +29,7 @@ public class HTTPGSSClientFactory implements DisposableBean, GSSClientFactory {
         this.catalog = catalog;
     }
 
-    HttpClient getClient() {
+    synchronized HttpClient getClient() {
         if (client == null) {
             client = new HttpClient();
             HttpConnectionManagerParams params = new HttpConnectionManagerParams();
@@ -37,6 +37,9 @@ public class HTTPGSSClientFactory implements DisposableBean, GSSClientFactory {
             params.setSoTimeout(60 * 1000);
             params.setConnectionTimeout(60 * 1000);
             params.setDefaultMaxConnectionsPerHost(1);
+            // units get synchronised in parallel, one connection each
+            params.setMaxTotalConnections(Math.max(SynchronizationManager.THREADS,
+                    params.getMaxTotalConnections()));
             MultiThreadedHttpConnectionManager manager = new MultiThreadedHttpConnectionManager();
             manager.setParams(params);
             client.setHttpConnectionManager(manager);
@@ -49,7 +52,7 @@ public class HTTPGSSClientFactory implements DisposableBean, GSSClientFactory {
                 password);
     }
 
-    public void destroy() throws Exception {
+    public synchronized void destroy() throws Exception {
         if (client != null) {
             ((MultiThreadedHttpConnectionManager) client.getHttpConnectionManager()).shutdownAll();
             client = null;
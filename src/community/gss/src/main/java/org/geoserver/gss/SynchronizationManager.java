@@ -9,12 +9,26 @@ import static org.geoserver.gss.GSSCore.*;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -45,14 +59,23 @@ import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory;
 import org.opengis.filter.sort.SortBy;
 import org.opengis.filter.sort.SortOrder;
+import org.springframework.beans.factory.DisposableBean;
 
 /**
  * This object gets periodically invoked to perform all outstanding layer synchronisations with the
- * units
+ * units. The units are synchronised in parallel, the progress of each one is tracked in a
+ * {@link UnitStatistics}.
  * 
  * @author Andrea Aime - OpenGeo
  */
-public class SynchronizationManager extends TimerTask {
+public class SynchronizationManager extends TimerTask implements DisposableBean {
+
+    /**
+     * Max number of units synchronised in parallel, set with the
+     * <code>org.geoserver.gss.synchronizationThreads</code> system property
+     */
+    public static final int THREADS = Integer.getInteger(
+            "org.geoserver.gss.synchronizationThreads", 4);
 
     static final Logger LOGGER = Logging.getLogger(DefaultGeoServerSynchronizationService.class);
 
@@ -64,6 +87,14 @@ public class SynchronizationManager extends TimerTask {
 
     GSSClientFactory clientFactory;
 
+    int threads = THREADS;
+
+    ExecutorService executor;
+
+    Map<Integer, UnitStatistics> statistics = new ConcurrentHashMap<Integer, UnitStatistics>();
+
+    Map<String, Lock> tableLocks = new HashMap<String, Lock>();
+
     public SynchronizationManager(GeoServer geoServer, GSSClientFactory clientFactory) {
         this.catalog = geoServer.getCatalog();
         this.core = new GSSCore(geoServer);
@@ -86,7 +117,15 @@ public class SynchronizationManager extends TimerTask {
 
     /**
      * Runs the synchronisation on all unit layers that require it (all the ones that haven't
-     * synchronised according to the requested frequency and that are inside the call window)
+     * synchronised according to the requested frequency and that are inside the call window).
+     * <p>
+     * Different units are synchronised in parallel, on at most {@link #THREADS} threads, while the
+     * layers of a single unit are synchronised one after the other, in the order of their last
+     * synchronisation. The method returns once all units have been processed.
+     * </p>
+     * <p>
+     * Synchronisations of the same table are never run in parallel, see {@link #getTableLock}.
+     * </p>
      * 
      * @throws IOException
      */
@@ -98,11 +137,12 @@ public class SynchronizationManager extends TimerTask {
             return;
         }
 
+        // grab the layers to be synchronised, grouped by unit. We read them all upfront
+        // so that we don't keep a connection busy while synchronising
+        VersioningDataStore ds = core.getVersioningStore();
+        Map<Integer, List<OutstandingLayer>> units = new LinkedHashMap<Integer, List<OutstandingLayer>>();
         FeatureIterator<SimpleFeature> fi = null;
-        FeatureIterator<SimpleFeature> li = null;
         try {
-            // grab the layers to be synchronised
-            VersioningDataStore ds = core.getVersioningStore();
             FeatureSource<SimpleFeatureType, SimpleFeature> outstanding = ds
                     .getFeatureSource(SYNCH_OUTSTANDING);
             DefaultQuery q = new DefaultQuery(SYNCH_OUTSTANDING);
@@ -111,178 +151,317 @@ public class SynchronizationManager extends TimerTask {
             LOGGER.info("Performing scheduled synchronisation");
 
             fi = outstanding.getFeatures(q).features();
+            while (fi.hasNext()) {
+                OutstandingLayer layer = new OutstandingLayer(fi.next());
+                List<OutstandingLayer> layers = units.get(layer.unitId);
+                if (layers == null) {
+                    layers = new ArrayList<OutstandingLayer>();
+                    units.put(layer.unitId, layers);
+                }
+                layers.add(layer);
+            }
+        } finally {
+            if (fi != null) {
+                fi.close();
+            }
+        }
 
-            // the set of units we failed to synchronize with. The problem might be a connection
-            // timeout, we don't really want to multiply the timeout by the number of layers
-            Set<Integer> unitBlacklist = new HashSet<Integer>();
+        List<UnitSynchronization> tasks = new ArrayList<UnitSynchronization>();
+        for (List<OutstandingLayer> layers : units.values()) {
+            OutstandingLayer first = layers.get(0);
+            UnitStatistics stats = statistics.get(first.unitId);
+            if (stats == null) {
+                stats = new UnitStatistics(first.unitId, first.unitName);
+                statistics.put(first.unitId, stats);
+            }
+            stats.start(layers);
+            tasks.add(new UnitSynchronization(ds, layers, stats));
+        }
 
-            while (fi.hasNext()) {
-                // extract relevant attributes
-                SimpleFeature layer = fi.next();
-                int unitId = (Integer) layer.getAttribute("unit_id");
-                int tableId = (Integer) layer.getAttribute("table_id");
-                String unitName = (String) layer.getAttribute("unit_name");
-                String tableName = (String) layer.getAttribute("table_name");
-                String address = (String) layer.getAttribute("unit_address");
-                String user = (String) layer.getAttribute("synch_user");
-                String password = (String) layer.getAttribute("synch_password");
-                Long getDiffCentralRevision = (Long) layer.getAttribute("getdiff_central_revision");
-                Long lastUnitRevision = (Long) layer.getAttribute("last_unit_revision");
-
-                // avoid the unit that already failed this run, we'll try next run
-                if (unitBlacklist.contains(unitId)) {
-                    LOGGER.log(Level.INFO, "Unit " + unitName + " is blacklisted "
-                            + "for this run, skipping " + tableName);
-                    continue;
+        if (tasks.size() <= 1 || threads <= 1) {
+            for (UnitSynchronization task : tasks) {
+                task.call();
+            }
+        } else {
+            try {
+                for (Future<Void> future : getExecutor().invokeAll(tasks)) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw (IOException) new IOException("Interrupted while waiting for the "
+                        + "units synchronisation").initCause(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
                 }
+                throw (IOException) new IOException("Unit synchronisation failed").initCause(e
+                        .getCause());
+            }
+        }
+    }
 
-                Transaction transaction = null;
-                try {
-                    // build the transaction with the proper author and commit message
-                    transaction = new DefaultTransaction();
-
-                    // get the last central revision the client knows about
-                    GSSClient client = getClient(address, user, password);
-                    QName layerName = getLayerName(tableName);
-                    long clientCentralRevision = client.getCentralRevision(layerName);
-
-                    // compute the diff that we have to send the client. Notice that we have
-                    // to skip over the local change occurred when we last performed a GetDiff
-                    // against the client
-                    VersioningFeatureStore fs = (VersioningFeatureStore) ds
-                            .getFeatureSource(tableName);
-                    fs.setTransaction(transaction);
-                    String fromRevision = clientCentralRevision == -1 ? "FIRST" : String
-                            .valueOf(clientCentralRevision);
-                    TransactionType centralChanges;
-                    LOGGER.log(Level.INFO, "About to compute PostDiff changes. Last central revision known to client " + clientCentralRevision + ", last GetDiff central revision " + getDiffCentralRevision);
-                    if (getDiffCentralRevision == null || clientCentralRevision >= getDiffCentralRevision) {
-                        // either first time or we don't need to make jumps
-                        LOGGER.log(Level.INFO, "First PostDiff or clientRevion same as the last central one, computing diff from " + fromRevision +  " to LAST");
-                        FeatureDiffReader fdr = fs.getDifferences(fromRevision, "LAST", null, null);
-                        centralChanges = new VersioningTransactionConverter().convert(fdr,
-                                TransactionType.class);
-                    } else  {
-                        // we need to jump over the last local changes
-                        String before = String.valueOf(getDiffCentralRevision - 1);
-                        String after = String.valueOf(getDiffCentralRevision);
-                        LOGGER.log(Level.INFO, "Client revision lower than the server one, computing diff from " + fromRevision +  " to " + before + " and merging with diffs from " + after + " to LAST");
-                        FeatureDiffReader fdr1 = fs.getDifferences(fromRevision, before, null, null);
-                        FeatureDiffReader fdr2 = fs.getDifferences(after, "LAST", null, null);
-                        FeatureDiffReader[] fdr = new FeatureDiffReader[] { fdr1, fdr2 };
-                        centralChanges = new VersioningTransactionConverter().convert(fdr,
-                                TransactionType.class);
-                    }
+    /**
+     * Synchronises the layers of a single unit, in order, stopping at the first failure
+     */
+    class UnitSynchronization implements Callable<Void> {
+        VersioningDataStore ds;
 
-                    // what is the latest change on this layer? (worst case it's the last GetDiff
-                    // from this Unit)
-                    long lastCentralRevision = clientCentralRevision;
-                    li = fs.getLog("LAST", fromRevision, null, null, 1).features();
-                    if (li.hasNext()) {
-                        lastCentralRevision = (Long) li.next().getAttribute("revision");
-                    }
-                    li.close();
-
-                    // finally run the PostDiff
-                    PostDiffType postDiff = new PostDiffType();
-                    postDiff.setTypeName(layerName);
-                    postDiff.setFromVersion(clientCentralRevision);
-                    postDiff.setToVersion(lastCentralRevision);
-                    postDiff.setTransaction(centralChanges);
-                    client.postDiff(postDiff);
-
-                    // grab the changes from the client and apply them locally
-                    GetDiffType getDiff = new GetDiffType();
-                    getDiff.setFromVersion(lastUnitRevision == null ? -1 : lastUnitRevision);
-                    getDiff.setTypeName(layerName);
-                    GetDiffResponseType gdr = client.getDiff(getDiff);
-                    TransactionType unitChanges = gdr.getTransaction();
-                    core.applyChanges(unitChanges, fs);
-                    
-                    // mark down this layer as succesfully synchronised
-                    FeatureStore<SimpleFeatureType, SimpleFeature> tuMetadata = (FeatureStore<SimpleFeatureType, SimpleFeature>) ds
-                            .getFeatureSource(SYNCH_UNIT_TABLES);
-                    tuMetadata.setTransaction(transaction);
-                    SimpleFeatureType tuSchema = tuMetadata.getSchema();
-                    int unitChangeCount = core.countChanges(unitChanges);
-                    int centralChangeCount = core.countChanges(centralChanges);
-                    if (unitChangeCount == 0 && centralChangeCount == 0) {
-                        // just update the last_synch marker, as nothing else happened and
-                        // this way we can avoid eating away central revision number (which
-                        // might go up very rapidly otherwise)
-                        AttributeDescriptor[] atts = new AttributeDescriptor[] { tuSchema
-                                .getDescriptor("last_synchronization") };
-                        Object[] values = new Object[] { new Date() };
-                        Filter filter = ff.and(ff.equals(ff.property("table_id"), ff
-                                .literal(tableId)), ff.equals(ff.property("unit_id"), ff
-                                .literal(unitId)));
-                        tuMetadata.modifyFeatures(atts, values, filter);
-                    } else {
-                        AttributeDescriptor[] atts = new AttributeDescriptor[] {
-                                tuSchema.getDescriptor("last_synchronization"),
-                                tuSchema.getDescriptor("getdiff_central_revision"),
-                                tuSchema.getDescriptor("last_unit_revision") };
-                        Object[] values = new Object[] { new Date(),
-                                Long.parseLong(fs.getVersion()), gdr.getToVersion() };
-                        Filter filter = ff.and(ff.equals(ff.property("table_id"), ff
-                                .literal(tableId)), ff.equals(ff.property("unit_id"), ff
-                                .literal(unitId)));
-                        tuMetadata.modifyFeatures(atts, values, filter);
-                    }
+        List<OutstandingLayer> layers;
+
+        UnitStatistics stats;
+
+        UnitSynchronization(VersioningDataStore ds, List<OutstandingLayer> layers,
+                UnitStatistics stats) {
+            this.ds = ds;
+            this.layers = layers;
+            this.stats = stats;
+        }
 
-                    // mark the unit as succeffully updated
-                    updateUnitStatus(ds, transaction, unitId, false);
-                    
-                    // the the commit log
-                    transaction.putProperty(VersioningDataStore.AUTHOR, "gss");
-                    transaction.putProperty(VersioningDataStore.MESSAGE, "Synchronizing with Unit '" 
-                            + unitName + "' on table '" + tableName + "': " + centralChangeCount 
-                            + " changes sent and " + unitChangeCount + " changes received");
-
-                    // close up
-                    transaction.commit();
-                    LOGGER.log(Level.INFO, "Successfull synchronisation of table " + tableName
-                            + " for unit " + unitName + "(" + centralChangeCount
-                            + " changes sent to the Unit, " + unitChangeCount
-                            + " change incoming from the Unit)");
-                } catch (Exception e) {
-                    LOGGER.log(Level.SEVERE, "Synchronisation of table " + tableName + " for unit "
-                            + unitName + " failed", e);
-
-                    // rollback all current changes
-                    transaction.rollback();
-
-                    // if anything at all went bad mark the layer synch as failed
-                    FeatureStore<SimpleFeatureType, SimpleFeature> tuMetadata = (FeatureStore<SimpleFeatureType, SimpleFeature>) ds
-                            .getFeatureSource(SYNCH_UNIT_TABLES);
-                    SimpleFeatureType tuSchema = tuMetadata.getSchema();
-                    AttributeDescriptor[] atts = new AttributeDescriptor[] { tuSchema
-                            .getDescriptor("last_failure"), };
-                    Object[] values = new Object[] { new Date() };
-                    Filter filter = ff.and(ff.equals(ff.property("table_id"), ff.literal(tableId)),
-                            ff.equals(ff.property("unit_id"), ff.literal(unitId)));
-                    tuMetadata.modifyFeatures(atts, values, filter);
-
-                    // mark the unit as failed
-                    updateUnitStatus(ds, Transaction.AUTO_COMMIT, unitId, true);
-
-                    // blacklist the unit, we'll retry later
-                    unitBlacklist.add(unitId);
+        public Void call() throws IOException {
+            for (int i = 0; i < layers.size(); i++) {
+                OutstandingLayer layer = layers.get(i);
+                boolean synched;
+                Lock lock = getTableLock(layer.tableName);
+                lock.lock();
+                try {
+                    synched = synchronizeLayer(ds, layer, stats);
                 } finally {
-                    if (transaction != null) {
-                        transaction.close();
+                    lock.unlock();
+                }
+                if (!synched) {
+                    // the problem might be a connection timeout, we don't really want to multiply
+                    // the timeout by the number of layers, we'll try the others next run
+                    for (int j = i + 1; j < layers.size(); j++) {
+                        LOGGER.log(Level.INFO, "Unit " + layer.unitName + " is blacklisted "
+                                + "for this run, skipping " + layers.get(j).tableName);
                     }
+                    break;
                 }
             }
-        } finally {
-            if (fi != null) {
-                fi.close();
+            return null;
+        }
+    }
+
+    /**
+     * Returns the lock serialising the synchronisations of a table. The revision of a versioned
+     * table change is allocated when the transaction first writes, not when it commits, so two
+     * units committing on the same table at the same time could make a revision visible only after
+     * a later one was already sent to a unit as part of its PostDiff. That revision would then
+     * never be sent to that unit, and the getdiff_central_revision skip would be wrong as well, as
+     * it assumes the revision of the GetDiff changes follows all the ones sent in the PostDiff.
+     */
+    synchronized Lock getTableLock(String tableName) {
+        Lock lock = tableLocks.get(tableName);
+        if (lock == null) {
+            lock = new ReentrantLock();
+            tableLocks.put(tableName, lock);
+        }
+        return lock;
+    }
+
+    /**
+     * Synchronises a single layer with its unit
+     * 
+     * @return true if the synchronisation succeeded, false otherwise
+     * @throws IOException if the failure could not be recorded
+     */
+    boolean synchronizeLayer(VersioningDataStore ds, OutstandingLayer layer,
+            UnitStatistics stats) throws IOException {
+        int unitId = layer.unitId;
+        int tableId = layer.tableId;
+        String unitName = layer.unitName;
+        String tableName = layer.tableName;
+        Long getDiffCentralRevision = layer.getDiffCentralRevision;
+        Long lastUnitRevision = layer.lastUnitRevision;
+
+        Transaction transaction = null;
+        FeatureIterator<SimpleFeature> li = null;
+        try {
+            // build the transaction with the proper author and commit message
+            transaction = new DefaultTransaction();
+
+            // get the last central revision the client knows about
+            GSSClient client = getClient(layer.address, layer.user, layer.password);
+            QName layerName = getLayerName(tableName);
+            long clientCentralRevision = client.getCentralRevision(layerName);
+
+            // compute the diff that we have to send the client. Notice that we have
+            // to skip over the local change occurred when we last performed a GetDiff
+            // against the client
+            VersioningFeatureStore fs = (VersioningFeatureStore) ds
+                    .getFeatureSource(tableName);
+            fs.setTransaction(transaction);
+            String fromRevision = clientCentralRevision == -1 ? "FIRST" : String
+                    .valueOf(clientCentralRevision);
+            TransactionType centralChanges;
+            LOGGER.log(Level.INFO, "About to compute PostDiff changes. Last central revision known to client " + clientCentralRevision + ", last GetDiff central revision " + getDiffCentralRevision);
+            if (getDiffCentralRevision == null || clientCentralRevision >= getDiffCentralRevision) {
+                // either first time or we don't need to make jumps
+                LOGGER.log(Level.INFO, "First PostDiff or clientRevion same as the last central one, computing diff from " + fromRevision +  " to LAST");
+                FeatureDiffReader fdr = fs.getDifferences(fromRevision, "LAST", null, null);
+                centralChanges = new VersioningTransactionConverter().convert(fdr,
+                        TransactionType.class);
+            } else  {
+                // we need to jump over the last local changes
+                String before = String.valueOf(getDiffCentralRevision - 1);
+                String after = String.valueOf(getDiffCentralRevision);
+                LOGGER.log(Level.INFO, "Client revision lower than the server one, computing diff from " + fromRevision +  " to " + before + " and merging with diffs from " + after + " to LAST");
+                FeatureDiffReader fdr1 = fs.getDifferences(fromRevision, before, null, null);
+                FeatureDiffReader fdr2 = fs.getDifferences(after, "LAST", null, null);
+                FeatureDiffReader[] fdr = new FeatureDiffReader[] { fdr1, fdr2 };
+                centralChanges = new VersioningTransactionConverter().convert(fdr,
+                        TransactionType.class);
+            }
+
+            // what is the latest change on this layer? (worst case it's the last GetDiff
+            // from this Unit)
+            long lastCentralRevision = clientCentralRevision;
+            li = fs.getLog("LAST", fromRevision, null, null, 1).features();
+            if (li.hasNext()) {
+                lastCentralRevision = (Long) li.next().getAttribute("revision");
+            }
+            li.close();
+            li = null;
+
+            // finally run the PostDiff
+            PostDiffType postDiff = new PostDiffType();
+            postDiff.setTypeName(layerName);
+            postDiff.setFromVersion(clientCentralRevision);
+            postDiff.setToVersion(lastCentralRevision);
+            postDiff.setTransaction(centralChanges);
+            client.postDiff(postDiff);
+
+            // grab the changes from the client and apply them locally
+            GetDiffType getDiff = new GetDiffType();
+            getDiff.setFromVersion(lastUnitRevision == null ? -1 : lastUnitRevision);
+            getDiff.setTypeName(layerName);
+            GetDiffResponseType gdr = client.getDiff(getDiff);
+            TransactionType unitChanges = gdr.getTransaction();
+            core.applyChanges(unitChanges, fs);
+            
+            // mark down this layer as succesfully synchronised
+            FeatureStore<SimpleFeatureType, SimpleFeature> tuMetadata = (FeatureStore<SimpleFeatureType, SimpleFeature>) ds
+                    .getFeatureSource(SYNCH_UNIT_TABLES);
+            tuMetadata.setTransaction(transaction);
+            SimpleFeatureType tuSchema = tuMetadata.getSchema();
+            int unitChangeCount = core.countChanges(unitChanges);
+            int centralChangeCount = core.countChanges(centralChanges);
+            if (unitChangeCount == 0 && centralChangeCount == 0) {
+                // just update the last_synch marker, as nothing else happened and
+                // this way we can avoid eating away central revision number (which
+                // might go up very rapidly otherwise)
+                AttributeDescriptor[] atts = new AttributeDescriptor[] { tuSchema
+                        .getDescriptor("last_synchronization") };
+                Object[] values = new Object[] { new Date() };
+                Filter filter = ff.and(ff.equals(ff.property("table_id"), ff
+                        .literal(tableId)), ff.equals(ff.property("unit_id"), ff
+                        .literal(unitId)));
+                tuMetadata.modifyFeatures(atts, values, filter);
+            } else {
+                AttributeDescriptor[] atts = new AttributeDescriptor[] {
+                        tuSchema.getDescriptor("last_synchronization"),
+                        tuSchema.getDescriptor("getdiff_central_revision"),
+                        tuSchema.getDescriptor("last_unit_revision") };
+                Object[] values = new Object[] { new Date(),
+                        Long.parseLong(fs.getVersion()), gdr.getToVersion() };
+                Filter filter = ff.and(ff.equals(ff.property("table_id"), ff
+                        .literal(tableId)), ff.equals(ff.property("unit_id"), ff
+                        .literal(unitId)));
+                tuMetadata.modifyFeatures(atts, values, filter);
             }
+
+            // mark the unit as succeffully updated
+            updateUnitStatus(ds, transaction, unitId, false);
+            
+            // the the commit log
+            transaction.putProperty(VersioningDataStore.AUTHOR, "gss");
+            transaction.putProperty(VersioningDataStore.MESSAGE, "Synchronizing with Unit '" 
+                    + unitName + "' on table '" + tableName + "': " + centralChangeCount 
+                    + " changes sent and " + unitChangeCount + " changes received");
+
+            // close up
+            transaction.commit();
+            stats.success(layer, centralChangeCount, unitChangeCount);
+            LOGGER.log(Level.INFO, "Successfull synchronisation of table " + tableName
+                    + " for unit " + unitName + "(" + centralChangeCount
+                    + " changes sent to the Unit, " + unitChangeCount
+                    + " change incoming from the Unit)");
+            return true;
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Synchronisation of table " + tableName + " for unit "
+                    + unitName + " failed", e);
+            stats.failure(layer);
+
+            // rollback all current changes
+            transaction.rollback();
+
+            // if anything at all went bad mark the layer synch as failed
+            FeatureStore<SimpleFeatureType, SimpleFeature> tuMetadata = (FeatureStore<SimpleFeatureType, SimpleFeature>) ds
+                    .getFeatureSource(SYNCH_UNIT_TABLES);
+            SimpleFeatureType tuSchema = tuMetadata.getSchema();
+            AttributeDescriptor[] atts = new AttributeDescriptor[] { tuSchema
+                    .getDescriptor("last_failure"), };
+            Object[] values = new Object[] { new Date() };
+            Filter filter = ff.and(ff.equals(ff.property("table_id"), ff.literal(tableId)),
+                    ff.equals(ff.property("unit_id"), ff.literal(unitId)));
+            tuMetadata.modifyFeatures(atts, values, filter);
+
+            // mark the unit as failed
+            updateUnitStatus(ds, Transaction.AUTO_COMMIT, unitId, true);
+            return false;
+        } finally {
             if (li != null) {
                 li.close();
             }
+            if (transaction != null) {
+                transaction.close();
+            }
         }
+    }
 
+    /**
+     * Returns the synchronisation statistics of the units, keyed by unit id
+     */
+    public Map<Integer, UnitStatistics> getStatistics() {
+        return Collections.unmodifiableMap(new TreeMap<Integer, UnitStatistics>(statistics));
+    }
+
+    /**
+     * Returns the max number of units synchronised in parallel
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the max number of units synchronised in parallel. Takes effect on the next run if the
+     * synchronisation threads have not been started yet.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "GSS synchronisation " + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return executor;
+    }
+
+    public synchronized void destroy() throws Exception {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
     }
 
     /**
@@ -319,6 +498,44 @@ public class SynchronizationManager extends TimerTask {
         return new QName(ns.getURI(), tableName, ns.getPrefix());
     }
 
+    /**
+     * The synchronisation parameters of a unit layer, as read from the outstanding layers view
+     */
+    static class OutstandingLayer {
+        int unitId;
+
+        int tableId;
+
+        String unitName;
+
+        String tableName;
+
+        String address;
+
+        String user;
+
+        String password;
+
+        Long getDiffCentralRevision;
+
+        Long lastUnitRevision;
+
+        Date lastSynchronization;
+
+        OutstandingLayer(SimpleFeature layer) {
+            unitId = (Integer) layer.getAttribute("unit_id");
+            tableId = (Integer) layer.getAttribute("table_id");
+            unitName = (String) layer.getAttribute("unit_name");
+            tableName = (String) layer.getAttribute("table_name");
+            address = (String) layer.getAttribute("unit_address");
+            user = (String) layer.getAttribute("synch_user");
+            password = (String) layer.getAttribute("synch_password");
+            getDiffCentralRevision = (Long) layer.getAttribute("getdiff_central_revision");
+            lastUnitRevision = (Long) layer.getAttribute("last_unit_revision");
+            lastSynchronization = (Date) layer.getAttribute("last_synchronization");
+        }
+    }
+
     protected GSSClient getClient(String address, String username, String password)
             throws MalformedURLException {
         return clientFactory.createClient(new URL(address), username, password);
@@ -0,0 +1,121 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.gss;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.geoserver.gss.SynchronizationManager.OutstandingLayer;
+
+/**
+ * Progress and lag of the synchronisation of a single unit, as tracked by the
+ * {@link SynchronizationManager}
+ */
+public class UnitStatistics {
+
+    int unitId;
+
+    String unitName;
+
+    List<OutstandingLayer> pending = new ArrayList<OutstandingLayer>();
+
+    long synchronizedLayers;
+
+    long failedLayers;
+
+    long changesSent;
+
+    long changesReceived;
+
+    Date lastSuccess;
+
+    Date lastFailure;
+
+    UnitStatistics(int unitId, String unitName) {
+        this.unitId = unitId;
+        this.unitName = unitName;
+    }
+
+    synchronized void start(List<OutstandingLayer> layers) {
+        pending = new ArrayList<OutstandingLayer>(layers);
+    }
+
+    synchronized void success(OutstandingLayer layer, int sent, int received) {
+        pending.remove(layer);
+        synchronizedLayers++;
+        changesSent += sent;
+        changesReceived += received;
+        lastSuccess = new Date();
+    }
+
+    synchronized void failure(OutstandingLayer layer) {
+        failedLayers++;
+        lastFailure = new Date();
+    }
+
+    public int getUnitId() {
+        return unitId;
+    }
+
+    public String getUnitName() {
+        return unitName;
+    }
+
+    /**
+     * Returns the number of layers of the last run still waiting to be synchronised, either
+     * because the run is in progress or because it failed
+     */
+    public synchronized int getPendingLayers() {
+        return pending.size();
+    }
+
+    /**
+     * Returns the time elapsed, in milliseconds, since the least recently synchronised of the
+     * pending layers was last synchronised, 0 if there are no pending layers, or -1 if one of them
+     * never got synchronised
+     */
+    public synchronized long getLag() {
+        long oldest = Long.MAX_VALUE;
+        for (OutstandingLayer layer : pending) {
+            if (layer.lastSynchronization == null) {
+                return -1;
+            }
+            oldest = Math.min(oldest, layer.lastSynchronization.getTime());
+        }
+        return pending.isEmpty() ? 0 : System.currentTimeMillis() - oldest;
+    }
+
+    public synchronized long getSynchronizedLayers() {
+        return synchronizedLayers;
+    }
+
+    public synchronized long getFailedLayers() {
+        return failedLayers;
+    }
+
+    public synchronized long getChangesSent() {
+        return changesSent;
+    }
+
+    public synchronized long getChangesReceived() {
+        return changesReceived;
+    }
+
+    public synchronized Date getLastSuccess() {
+        return lastSuccess;
+    }
+
+    public synchronized Date getLastFailure() {
+        return lastFailure;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "UnitStatistics[" + unitName + ": pending=" + pending.size() + ", lag=" + getLag()
+                + "ms, synchronized=" + synchronizedLayers + ", failed=" + failedLayers
+                + ", sent=" + changesSent + ", received=" + changesReceived + "]";
+    }
+}
@@ -8,10 +8,15 @@ import static org.geotools.data.DataUtilities.*;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Timer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.namespace.QName;
 
@@ -89,6 +94,7 @@ public class SynchronizationManagerTest extends GeoServerAbstractTestSupport {
         // grab the synch manager
         synch = (SynchronizationManager) applicationContext.getBeansOfType(
                 SynchronizationManager.class).values().iterator().next();
+        synch.statistics.clear();
 
         // disable automated scheduling, we control how does what here
         Timer timer = (Timer) applicationContext.getBean("gssTimerFactory");
@@ -146,6 +152,16 @@ public class SynchronizationManagerTest extends GeoServerAbstractTestSupport {
         }
     }
 
+    /**
+     * Returns the generated id of the feature having the specified attribute value
+     */
+    long getId(FeatureSource<SimpleFeatureType, SimpleFeature> fs, String attribute, String value)
+            throws IOException {
+        String id = getSingleFeature(fs, ff.equals(ff.property(attribute), ff.literal(value)))
+                .getID();
+        return Long.parseLong(id.substring(fs.getSchema().getTypeName().length() + 1));
+    }
+
     public void testConnectionFailure() throws Exception {
         // create mock objects that will simulate a connection failure
         GSSClient client = createMock(GSSClient.class);
@@ -173,6 +189,15 @@ public class SynchronizationManagerTest extends GeoServerAbstractTestSupport {
         // check we marked the unit as failed
         f = getSingleFeature(fsUnits, ff.equal(ff.property("unit_name"), ff.literal("unit1"), false));
         assertTrue((Boolean) f.getAttribute("errors"));
+
+        // and that the statistics report it
+        UnitStatistics stats = synch.getStatistics().values().iterator().next();
+        assertEquals("unit1", stats.getUnitName());
+        assertEquals(1, stats.getFailedLayers());
+        assertEquals(0, stats.getSynchronizedLayers());
+        assertEquals(1, stats.getPendingLayers());
+        assertEquals(-1, stats.getLag());
+        assertNotNull(stats.getLastFailure());
     }
     
     public void testEmptyUpdates() throws Exception {
@@ -213,6 +238,15 @@ public class SynchronizationManagerTest extends GeoServerAbstractTestSupport {
         // check we marked the unit as succeded
         f = getSingleFeature(fsUnits, ff.equal(ff.property("unit_name"), ff.literal("unit1"), false));
         assertFalse((Boolean) f.getAttribute("errors"));
+
+        // and that the statistics report it
+        UnitStatistics stats = synch.getStatistics().values().iterator().next();
+        assertEquals(0, stats.getFailedLayers());
+        assertEquals(1, stats.getSynchronizedLayers());
+        assertEquals(0, stats.getPendingLayers());
+        assertEquals(0, stats.getLag());
+        assertEquals(0, stats.getChangesSent());
+        assertEquals(0, stats.getChangesReceived());
     }
     
     public void testLocalChanges() throws Exception {
@@ -333,4 +367,156 @@ public class SynchronizationManagerTest extends GeoServerAbstractTestSupport {
         assertEquals(0, restricted.getCount(new DefaultQuery("restricted", removeFilter)));
     }
 
+    public void testParallelUnits() throws Exception {
+        // a second unit, both units synchronise both tables, in a different order
+        long unit1 = getId(fsUnits, "unit_name", "unit1");
+        long unit2 = addFeature(fsUnits, "unit2", "http://localhost:8082/geoserver/ows", null,
+                null, null, null, 60, 10, false);
+        FeatureSource<SimpleFeatureType, SimpleFeature> tables = synchStore
+                .getFeatureSource(SYNCH_TABLES);
+        long restrictedId = getId(tables, "table_name", "restricted");
+        long roadsId = getId(tables, "table_name", "roads");
+        long hour = 60 * 60 * 1000;
+        Date now = new Date();
+        addFeature(fsUnitTables, unit1, roadsId, new Date(now.getTime() - 3 * hour), null,
+                null, null);
+        addFeature(fsUnitTables, unit2, restrictedId, new Date(now.getTime() - 3 * hour), null,
+                null, null);
+        addFeature(fsUnitTables, unit2, roadsId, new Date(now.getTime() - 2 * hour), null, null,
+                null);
+
+        // each unit removes a different feature from the restricted table
+        CentralStandIn central = new CentralStandIn(2);
+        central.deletions.put("http://localhost:8081/geoserver/ows",
+                "restricted.c15e76ab-e44b-423e-8f85-f6d9927b878a");
+        central.deletions.put("http://localhost:8082/geoserver/ows",
+                "restricted.1b99be2b-2480-4742-ad52-95c294efda3b");
+        synch.clientFactory = central;
+        synch.setThreads(2);
+
+        synch.synchronizeOustandlingLayers();
+
+        // the units did run in parallel, touching a different table at first
+        assertTrue(central.parallel);
+
+        // each unit synchronised its layers in order, one after the other
+        assertEquals(Arrays.asList("roads:getCentralRevision", "roads:postDiff", "roads:getDiff",
+                "restricted:getCentralRevision", "restricted:postDiff", "restricted:getDiff"),
+                central.calls.get("http://localhost:8081/geoserver/ows"));
+        assertEquals(Arrays.asList("restricted:getCentralRevision", "restricted:postDiff",
+                "restricted:getDiff", "roads:getCentralRevision", "roads:postDiff",
+                "roads:getDiff"), central.calls.get("http://localhost:8082/geoserver/ows"));
+
+        // both deletions got committed, each one in its own revision
+        VersioningFeatureStore restricted = (VersioningFeatureStore) synchStore
+                .getFeatureSource("restricted");
+        assertEquals(2, restricted.getCount(Query.ALL));
+        List<String> messages = new ArrayList<String>();
+        FeatureIterator<SimpleFeature> fi = restricted.getLog("LAST", "FIRST", null, null, 2)
+                .features();
+        try {
+            while (fi.hasNext()) {
+                messages.add((String) fi.next().getAttribute("message"));
+            }
+        } finally {
+            fi.close();
+        }
+        assertEquals(2, messages.size());
+        for (String unit : new String[] { "unit1", "unit2" }) {
+            boolean found = false;
+            for (String message : messages) {
+                found |= message.startsWith("Synchronizing with Unit '" + unit
+                        + "' on table 'restricted'");
+            }
+            assertTrue("Missing commit of " + unit, found);
+        }
+        Long revision1 = (Long) getSingleFeature(fsUnitTables, ff.and(ff.equals(ff
+                .property("unit_id"), ff.literal(unit1)), ff.equals(ff.property("table_id"), ff
+                .literal(restrictedId)))).getAttribute("getdiff_central_revision");
+        Long revision2 = (Long) getSingleFeature(fsUnitTables, ff.and(ff.equals(ff
+                .property("unit_id"), ff.literal(unit2)), ff.equals(ff.property("table_id"), ff
+                .literal(restrictedId)))).getAttribute("getdiff_central_revision");
+        assertNotNull(revision1);
+        assertNotNull(revision2);
+        assertFalse(revision1.equals(revision2));
+
+        // and the statistics of both units report the success
+        assertEquals(2, synch.getStatistics().size());
+        for (UnitStatistics stats : synch.getStatistics().values()) {
+            assertEquals(2, stats.getSynchronizedLayers());
+            assertEquals(0, stats.getFailedLayers());
+            assertEquals(0, stats.getPendingLayers());
+        }
+    }
+
+    /**
+     * An in process stand-in for the units, recording the calls made to each one of them
+     */
+    class CentralStandIn implements GSSClientFactory {
+
+        Map<String, List<String>> calls = new HashMap<String, List<String>>();
+
+        Map<String, String> deletions = new HashMap<String, String>();
+
+        CountDownLatch started;
+
+        volatile boolean parallel;
+
+        CentralStandIn(int units) {
+            this.started = new CountDownLatch(units);
+        }
+
+        public synchronized GSSClient createClient(URL gssServiceURL, String username,
+                String password) {
+            final String address = gssServiceURL.toString();
+            if (!calls.containsKey(address)) {
+                calls.put(address, new ArrayList<String>());
+            }
+            return new GSSClient() {
+
+                public long getCentralRevision(QName layerName) throws IOException {
+                    record(address, layerName, "getCentralRevision");
+                    if (started.getCount() > 0) {
+                        // wait for the other units to get here as well
+                        started.countDown();
+                        try {
+                            if (started.await(10, TimeUnit.SECONDS)) {
+                                parallel = true;
+                            }
+                        } catch (InterruptedException e) {
+                            throw new IOException("Interrupted");
+                        }
+                    }
+                    return -1;
+                }
+
+                public void postDiff(PostDiffType postDiff) throws IOException {
+                    record(address, postDiff.getTypeName(), "postDiff");
+                }
+
+                public GetDiffResponseType getDiff(GetDiffType getDiff) throws IOException {
+                    QName typeName = getDiff.getTypeName();
+                    record(address, typeName, "getDiff");
+                    GetDiffResponseType gdr = new GetDiffResponseType();
+                    gdr.setTypeName(typeName);
+                    gdr.setFromVersion(-1);
+                    gdr.setToVersion(1);
+                    TransactionType changes = WfsFactory.eINSTANCE.createTransactionType();
+                    String fid = deletions.get(address);
+                    if ("restricted".equals(typeName.getLocalPart()) && fid != null) {
+                        DeleteElementType delete = WfsFactory.eINSTANCE.createDeleteElementType();
+                        delete.setTypeName(typeName);
+                        delete.setFilter(ff.id(singleton(ff.featureId(fid))));
+                        changes.getDelete().add(delete);
+                    }
+                    gdr.setTransaction(changes);
+                    return gdr;
+                }
+            };
+        }
+
+        synchronized void record(String address, QName layerName, String call) {
+            calls.get(address).add(layerName.getLocalPart() + ":" + call);
+        }
+    }
 }
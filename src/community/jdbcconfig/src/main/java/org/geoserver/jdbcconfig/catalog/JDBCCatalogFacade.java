@@ -131,14 +131,16 @@ public class JDBCCatalogFacade implements CatalogFacade {
             Class<T> clazz) {
 
         Filter filter = equal("name", name);
+        Object[] identity = { "name", name };
         if (null != workspace && ANY_WORKSPACE != workspace) {
             Filter wsFilter = equal("workspace.id", workspace.getId());
             filter = and(filter, wsFilter);
+            identity = new Object[] { "name", name, "workspace.id", workspace.getId() };
         }
 
         T store;
         try {
-            store = findUnique(clazz, filter);
+            store = findUnique(clazz, filter, identity);
         } catch (IllegalArgumentException e) {
             return null;
         }
@@ -243,14 +245,16 @@ public class JDBCCatalogFacade implements CatalogFacade {
             Class<T> clazz) {
 
         Filter filter = equal("name", name);
+        Object[] identity = { "name", name };
         if (null != namespace && ANY_NAMESPACE != namespace) {
             Filter wsFilter = equal("namespace.id", namespace.getId());
             filter = and(filter, wsFilter);
+            identity = new Object[] { "name", name, "namespace.id", namespace.getId() };
         }
 
         T resource;
         try {
-            resource = findUnique(clazz, filter);
+            resource = findUnique(clazz, filter, identity);
         } catch (IllegalArgumentException e) {
             return null;
         }
@@ -295,7 +299,7 @@ public class JDBCCatalogFacade implements CatalogFacade {
 
         T res;
         try {
-            res = findUnique(clazz, filter);
+            res = findUnique(clazz, filter, "name", name, "store.id", store.getId());
         } catch (IllegalArgumentException e) {
             return null;
         }
@@ -588,7 +592,7 @@ public class JDBCCatalogFacade implements CatalogFacade {
     public NamespaceInfo getNamespaceByPrefix(String prefix) {
         Filter filter = equal("prefix", prefix);
         try {
-            return findUnique(NamespaceInfo.class, filter);
+            return findUnique(NamespaceInfo.class, filter, "prefix", prefix);
         } catch (IllegalArgumentException multipleResults) {
             return null;
         }
@@ -602,7 +606,7 @@ public class JDBCCatalogFacade implements CatalogFacade {
 
         Filter filter = equal("URI", uri);
         try {
-            return findUnique(NamespaceInfo.class, filter);
+            return findUnique(NamespaceInfo.class, filter, "URI", uri);
         } catch (IllegalArgumentException e) {
             return null;
         }
@@ -777,17 +781,20 @@ public class JDBCCatalogFacade implements CatalogFacade {
     @Override
     public LayerGroupInfo getLayerGroupByName(WorkspaceInfo workspace, String name) {
         Filter filter = equal("name", name);
+        Object[] identity = { "name", name };
         if (NO_WORKSPACE == workspace) {
             Filter wsFilter = isNull("workspace.id");
             filter = and(filter, wsFilter);
+            identity = new Object[] { "name", name, "workspace.id", null };
         } else if (workspace != null && ANY_WORKSPACE != workspace) {
             Filter wsFilter = equal("workspace.id", workspace.getId());
             filter = and(filter, wsFilter);
+            identity = new Object[] { "name", name, "workspace.id", workspace.getId() };
         }
 
         LayerGroupInfo store;
         try {
-            store = findUnique(LayerGroupInfo.class, filter);
+            store = findUnique(LayerGroupInfo.class, filter, identity);
         } catch (IllegalArgumentException e) {
             return null;
         }
@@ -820,16 +827,20 @@ public class JDBCCatalogFacade implements CatalogFacade {
 
         Filter nameFilter = equal("name", name);
         Filter wsFilter;
+        Object[] identity;
         if (workspace == NO_WORKSPACE) {
             wsFilter = isNull("workspace.id");
+            identity = new Object[] { "name", name, "workspace.id", null };
         } else if (workspace == ANY_WORKSPACE) {
             wsFilter = acceptAll();
+            identity = new Object[] { "name", name };
         } else {
             wsFilter = equal("workspace.id", workspace.getId());
+            identity = new Object[] { "name", name, "workspace.id", workspace.getId() };
         }
 
         Filter filter = and(nameFilter, wsFilter);
-        StyleInfo info = findUnique(StyleInfo.class, filter);
+        StyleInfo info = findUnique(StyleInfo.class, filter, identity);
         return info;
     }
 
@@ -899,24 +910,15 @@ public class JDBCCatalogFacade implements CatalogFacade {
 
     }
 
-    private <T extends CatalogInfo> T findUnique(Class<T> type, Filter filter)
+    /**
+     * @param identity the property names and values {@code filter} matches against, used to cache
+     *        the lookup result by object identity
+     * @see ConfigDatabase#getByIdentity(Class, Filter, Object...)
+     */
+    private <T extends CatalogInfo> T findUnique(Class<T> type, Filter filter, Object... identity)
             throws IllegalArgumentException {
 
-        final Integer count = Integer.valueOf(2);
-        CloseableIterator<T> it = list(type, filter, null, count, null);
-        T result = null;
-        try {
-            if (it.hasNext()) {
-                result = it.next();
-                if (it.hasNext()) {
-                    throw new IllegalArgumentException(
-                            "Specified query predicate resulted in more than one object");
-                }
-            }
-        } finally {
-            it.close();
-        }
-        return result;
+        return db.getByIdentity(type, filter, identity);
     }
 
     /**
@@ -996,7 +998,7 @@ public class JDBCCatalogFacade implements CatalogFacade {
         Filter filter = equal("name", name);
 
         try {
-            return findUnique(clazz, filter);
+            return findUnique(clazz, filter, "name", name);
         } catch (IllegalArgumentException multipleResults) {
             return null;
         }
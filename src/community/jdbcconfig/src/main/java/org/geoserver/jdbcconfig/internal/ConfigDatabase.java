@@ -11,7 +11,10 @@ import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Proxy;
 import java.net.URL;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -22,6 +25,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -59,6 +63,7 @@ import org.opengis.filter.FilterFactory;
 import org.opengis.filter.expression.PropertyName;
 import org.opengis.filter.sort.SortBy;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcOperations;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
@@ -68,18 +73,20 @@ import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 
-import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Throwables;
 import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
  * 
@@ -88,6 +95,16 @@ public class ConfigDatabase {
 
     public static final Logger LOGGER = Logging.getLogger(ConfigDatabase.class);
 
+    /**
+     * Default number of object ids resolved per database round trip when fetching query results
+     * not already in the cache
+     */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private static final int IDENTITY_CACHE_MAX_ENTRIES = 25000;
+
+    private static final int IDENTITY_CACHE_EXPIRATION_MINUTES = 20;
+
     private DbMappings dbMappings;
 
     private CatalogImpl catalog;
@@ -98,10 +115,22 @@ public class ConfigDatabase {
 
     private Cache<String, Info> cache;
 
+    /**
+     * Secondary cache from an object identity (type plus identifying properties like name and
+     * workspace id) to the object id, so that lookups by name resolve through {@link #cache}
+     */
+    private Cache<List<Object>, String> identityCache;
+
     private InfoRowMapper<CatalogInfo> catalogRowMapper;
 
     private InfoRowMapper<Info> configRowMapper;
 
+    private InfoRowMapper<CatalogInfo> catalogBatchRowMapper;
+
+    private InfoRowMapper<Info> configBatchRowMapper;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
     /**
      * Protected default constructor needed by spring-jdbc instrumentation
      */
@@ -123,11 +152,33 @@ public class ConfigDatabase {
 
         this.catalogRowMapper = new InfoRowMapper<CatalogInfo>(CatalogInfo.class, binding);
         this.configRowMapper = new InfoRowMapper<Info>(Info.class, binding);
+        // batch queries return the id as first column and the blob as the second one
+        this.catalogBatchRowMapper = new InfoRowMapper<CatalogInfo>(CatalogInfo.class, binding, 2);
+        this.configBatchRowMapper = new InfoRowMapper<Info>(Info.class, binding, 2);
 
         if (cacheProvider == null) {
             cacheProvider = DefaultCacheProvider.findProvider();
         }
         cache = cacheProvider.getCache("catalog");
+        // not obtained through the cache provider on purpose, the default one uses weak values and
+        // the id strings held here are referenced from nowhere else
+        identityCache = CacheBuilder.newBuilder()
+                .concurrencyLevel(DefaultCacheProvider.DEFAULT_CONCURRENCY_LEVEL)
+                .expireAfterAccess(IDENTITY_CACHE_EXPIRATION_MINUTES, TimeUnit.MINUTES)
+                .maximumSize(IDENTITY_CACHE_MAX_ENTRIES).build();
+    }
+
+    /**
+     * @param batchSize the max number of objects to fetch from the database in a single round trip
+     *        when resolving query results not in the cache
+     */
+    public void setBatchSize(int batchSize) {
+        checkArgument(batchSize > 0, "batch size shall be a positive integer");
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
     }
 
     @Transactional(propagation = Propagation.REQUIRED, rollbackFor = Exception.class)
@@ -236,32 +287,82 @@ public class ConfigDatabase {
                     sw.toString()));
         }
 
-        List<T> lazyTransformed = Lists.transform(ids, new Function<String, T>() {
-            @Override
-            public T apply(String id) {
-                return getById(id, of);
-            }
-        });
+        Iterator<T> iterator = new BatchLoadingIterator<T>(ids, of);
 
         CloseableIterator<T> result;
 
         if (fullySupported) {
-            Iterator<T> iterator = lazyTransformed.iterator();
             result = new CloseableIteratorAdapter<T>(iterator);
         } else {
-            Iterator<T> iterator = lazyTransformed.iterator();
+            // offset and limit were not applied by the database, apply them after filtering out
+            // the objects not matching the unsupported part of the filter
+            iterator = CloseableIteratorAdapter.filter(iterator, filter);
             if (offset != null) {
                 Iterators.skip(iterator, offset.intValue());
             }
             if (limit != null) {
                 iterator = Iterators.limit(iterator, limit.intValue());
             }
-            result = CloseableIteratorAdapter.filter(iterator, filter);
+            result = new CloseableIteratorAdapter<T>(iterator);
         }
 
         return result;
     }
 
+    /**
+     * Looks up a single object by its identity (e.g. name plus workspace or namespace id).
+     * <p>
+     * The identity to id mapping is cached, so that once an object has been found further lookups
+     * by the same identity are resolved through the object cache without hitting the database. The
+     * cached object is checked against {@code filter} anyways, and looked up again if it does not
+     * match it anymore.
+     * 
+     * @param type the type of object to look up
+     * @param filter the predicate matching the object by its identity, used on cache misses
+     * @param identity the property values making up the object identity, always given in the same
+     *        order for the same kind of lookup. {@code null} values are allowed.
+     * @return the single object matching {@code filter}, or {@code null} if none matches
+     * @throws IllegalArgumentException if more than one object matches {@code filter}
+     */
+    public <T extends CatalogInfo> T getByIdentity(final Class<T> type, final Filter filter,
+            final Object... identity) throws IllegalArgumentException {
+
+        checkNotNull(type);
+        checkNotNull(filter);
+
+        final List<Object> key = Lists.newArrayListWithCapacity(1 + identity.length);
+        key.add(type);
+        key.addAll(Arrays.asList(identity));
+
+        final String cachedId = identityCache.getIfPresent(key);
+        if (cachedId != null) {
+            // the object might have changed since, only trust the cache if it still matches
+            T info = getById(cachedId, type);
+            if (info != null && filter.evaluate(info)) {
+                return info;
+            }
+            identityCache.invalidate(key);
+        }
+
+        T result = null;
+        CloseableIterator<T> it = query(type, filter, null, Integer.valueOf(2), null);
+        try {
+            if (it.hasNext()) {
+                result = it.next();
+                if (it.hasNext()) {
+                    throw new IllegalArgumentException(
+                            "Specified query predicate resulted in more than one object");
+                }
+            }
+        } finally {
+            it.close();
+        }
+        if (result != null) {
+            identityCache.put(key, result.getId());
+        }
+        return result;
+    }
+
     public <T extends Info> List<T> queryAsList(final Class<T> of, final Filter filter,
             Integer offset, Integer count, SortBy sortOrder) {
 
@@ -317,6 +418,7 @@ public class ConfigDatabase {
         addAttributes(info, key);
 
         cache.put(id, info);
+        invalidateIdentities(info);
         return getById(id, interf);
     }
 
@@ -526,6 +628,18 @@ public class ConfigDatabase {
         LOGGER.fine("Removed " + relatedPropCount + " related properties of " + info.getId());
 
         cache.invalidate(info.getId());
+        invalidateIdentities(info);
+    }
+
+    /**
+     * Clears the identity cache upon any catalog change. A single change may affect the identity
+     * of other objects (e.g. renaming a resource renames its layers) or make a former unique
+     * identity ambiguous, and changes are rare compared to lookups.
+     */
+    private void invalidateIdentities(Info changed) {
+        if (changed instanceof CatalogInfo) {
+            identityCache.invalidateAll();
+        }
     }
 
     /**
@@ -575,6 +689,7 @@ public class ConfigDatabase {
         updateQueryableProperties(oldObject, objectId, changedProperties);
 
         cache.invalidate(id);
+        invalidateIdentities(info);
         Class<T> clazz = ClassMappings.fromImpl(oldObject.getClass()).getInterface();
 
         // / <HACK>
@@ -714,6 +829,17 @@ public class ConfigDatabase {
             Throwables.propagate(e.getCause());
         }
 
+        return toResult(info, type);
+    }
+
+    /**
+     * Resolves a cached object and wraps it on a {@link ModificationProxy} if it is of the
+     * requested type.
+     * 
+     * @return the proxied object or {@code null} if {@code info} is null or not of the requested
+     *         type
+     */
+    private <T extends Info> T toResult(@Nullable Info info, final Class<T> type) {
         if (info == null) {
             return null;
         }
@@ -786,15 +912,63 @@ public class ConfigDatabase {
 
         final String sql = "select id from object where type_id in ( :types ) order by id";
 
+        logStatement(sql, params);
         List<String> ids = template.queryForList(sql, params, String.class);
 
-        List<T> transformed = Lists.transform(ids, new Function<String, T>() {
+        return ImmutableList.copyOf(new BatchLoadingIterator<T>(ids, clazz));
+    }
+
+    /**
+     * Fetches the objects for the given ids, looking them up in the cache first and then issuing a
+     * single query for all the ones not cached.
+     * 
+     * @return the raw objects found, keyed by id. Ids not found in the database are not present
+     *         in the returned map.
+     */
+    private Map<String, Info> getAllById(final List<String> ids, final Class<? extends Info> type) {
+
+        final Map<String, Info> found = Maps.newHashMapWithExpectedSize(ids.size());
+        final List<String> missing = new ArrayList<String>(ids.size());
+        for (String id : ids) {
+            Info cached = cache.getIfPresent(id);
+            if (cached == null) {
+                missing.add(id);
+            } else {
+                found.put(id, cached);
+            }
+        }
+        if (missing.isEmpty()) {
+            return found;
+        }
+
+        final boolean isCatalogInfo = CatalogInfo.class.isAssignableFrom(type);
+        final InfoRowMapper<? extends Info> rowMapper = isCatalogInfo ? catalogBatchRowMapper
+                : configBatchRowMapper;
+
+        final String sql = "select id, blob from object where id in (:ids)";
+        final Map<String, ?> params = params("ids", missing);
+        logStatement(sql, params);
+
+        Stopwatch sw = new Stopwatch().start();
+        template.query(sql, params, new RowCallbackHandler() {
             @Override
-            public T apply(String input) {
-                return getById(input, clazz);
+            public void processRow(ResultSet rs) throws SQLException {
+                final String id = rs.getString(1);
+                Info info = rowMapper.mapRow(rs, rs.getRow());
+                if (!isCatalogInfo) {
+                    info = initConfigInfo(info);
+                }
+                // don't override an object concurrently loaded by getById
+                Info existing = cache.asMap().putIfAbsent(id, info);
+                found.put(id, existing == null ? info : existing);
             }
         });
-        return Collections.unmodifiableList(transformed);
+        sw.stop();
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(Joiner.on("").join("fetched ", missing.size(), " uncached objects in ",
+                    sw.toString()));
+        }
+        return found;
     }
 
     private <T extends Info> List<Integer> typesParam(final Class<T> clazz) {
@@ -825,6 +999,8 @@ public class ConfigDatabase {
     public void dispose() {
         cache.invalidateAll();
         cache.cleanUp();
+        identityCache.invalidateAll();
+        identityCache.cleanUp();
     }
 
     private final class CatalogLoader implements Callable<CatalogInfo> {
@@ -867,26 +1043,76 @@ public class ConfigDatabase {
             } catch (EmptyResultDataAccessException noSuchObject) {
                 return null;
             }
-            OwsUtils.resolveCollections(info);
-            if (info instanceof GeoServerInfo) {
+            return initConfigInfo(info);
+        }
+    }
 
-                GeoServerInfoImpl global = (GeoServerInfoImpl) info;
-                if (global.getMetadata() == null) {
-                    global.setMetadata(new MetadataMap());
-                }
-                if (global.getClientProperties() == null) {
-                    global.setClientProperties(new HashMap<Object, Object>());
-                }
-                if (global.getCoverageAccess() == null) {
-                    global.setCoverageAccess(new CoverageAccessInfoImpl());
+    /**
+     * Iterates over the objects for a list of ids, fetching them from the database in batches of
+     * {@link #getBatchSize()} ids at a time. Ids for which no object of the requested type exists
+     * (e.g. removed since the ids were queried) are skipped.
+     */
+    private final class BatchLoadingIterator<T extends Info> extends AbstractIterator<T> {
+
+        private final Class<T> type;
+
+        private final Iterator<List<String>> pages;
+
+        private Iterator<String> currentPage;
+
+        private Map<String, Info> currentObjects;
+
+        public BatchLoadingIterator(final List<String> ids, final Class<T> type) {
+            this.type = type;
+            this.pages = Lists.partition(ids, batchSize).iterator();
+            this.currentPage = Iterators.emptyIterator();
+            this.currentObjects = Collections.emptyMap();
+        }
+
+        @Override
+        protected T computeNext() {
+            while (true) {
+                if (!currentPage.hasNext()) {
+                    if (!pages.hasNext()) {
+                        currentObjects = Collections.emptyMap();
+                        return endOfData();
+                    }
+                    List<String> page = pages.next();
+                    // hold strong references to the page objects while iterating over them, the
+                    // cache may use weak values
+                    currentObjects = getAllById(page, type);
+                    currentPage = page.iterator();
+                    continue;
                 }
-                if (global.getJAI() == null) {
-                    global.setJAI(new JAIInfoImpl());
+                final String id = currentPage.next();
+                T info = toResult(currentObjects.get(id), type);
+                if (info != null) {
+                    return info;
                 }
             }
+        }
+    }
 
-            return info;
+    private Info initConfigInfo(Info info) {
+        OwsUtils.resolveCollections(info);
+        if (info instanceof GeoServerInfo) {
+
+            GeoServerInfoImpl global = (GeoServerInfoImpl) info;
+            if (global.getMetadata() == null) {
+                global.setMetadata(new MetadataMap());
+            }
+            if (global.getClientProperties() == null) {
+                global.setClientProperties(new HashMap<Object, Object>());
+            }
+            if (global.getCoverageAccess() == null) {
+                global.setCoverageAccess(new CoverageAccessInfoImpl());
+            }
+            if (global.getJAI() == null) {
+                global.setJAI(new JAIInfoImpl());
+            }
         }
+
+        return info;
     }
 
     /**
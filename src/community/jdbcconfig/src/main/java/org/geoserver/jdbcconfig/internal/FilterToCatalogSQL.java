@@ -11,6 +11,7 @@ import java.util.Set;
 import org.geotools.filter.Capabilities;
 import org.geotools.filter.LikeFilterImpl;
 import org.opengis.filter.And;
+import org.opengis.filter.BinaryComparisonOperator;
 import org.opengis.filter.ExcludeFilter;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterVisitor;
@@ -82,6 +83,7 @@ public class FilterToCatalogSQL implements FilterVisitor, ExpressionVisitor {
         builder.addType(PropertyIsNil.class);// whether the property exists AND it's value is null
         builder.addType(And.class);
         builder.addType(Or.class);
+        builder.addType(Not.class);
 
         CAPABILITIES = builder.getContents();
     }
@@ -149,15 +151,7 @@ public class FilterToCatalogSQL implements FilterVisitor, ExpressionVisitor {
      */
     @Override
     public Object visit(PropertyIsEqualTo filter, Object extraData) {
-        PropertyName expression1 = (PropertyName) filter.getExpression1();
-        Literal expression2 = (Literal) filter.getExpression2();
         MatchAction matchAction = filter.getMatchAction();
-        boolean matchingCase = filter.isMatchingCase();
-
-        final String propertyTypesParam = propertyTypesParam(expression1);
-
-        final String expectedValue = expression2.evaluate(null, String.class);
-        String valueParam = newParam("value", expectedValue);
 
         switch (matchAction) {
         // TODO: respect match action
@@ -171,13 +165,36 @@ public class FilterToCatalogSQL implements FilterVisitor, ExpressionVisitor {
             throw new IllegalArgumentException("MatchAction: " + matchAction);
         }
 
-        StringBuilder builder = append(extraData,
-                "oid IN (SELECT oid FROM object_property WHERE property_type IN (:",
-                propertyTypesParam, ") AND value = :", valueParam, ") /* ", filter.toString(),
-                " */ \n");
+        StringBuilder builder = append(extraData, "oid IN (", propertyEqualsSubselect(filter),
+                ") /* ", filter.toString(), " */ \n");
         return builder;
     }
 
+    /**
+     * Builds the sub select returning the oids of the objects whose property matches the binary
+     * comparison's literal, honouring {@link BinaryComparisonOperator#isMatchingCase()}.
+     */
+    private String propertyEqualsSubselect(BinaryComparisonOperator filter) {
+        PropertyName expression1 = (PropertyName) filter.getExpression1();
+        Literal expression2 = (Literal) filter.getExpression2();
+        final boolean matchingCase = filter.isMatchingCase();
+
+        final String propertyTypesParam = propertyTypesParam(expression1);
+
+        String expectedValue = expression2.evaluate(null, String.class);
+        final String valueCol;
+        if (matchingCase || expectedValue == null) {
+            valueCol = "value";
+        } else {
+            valueCol = "UPPER(value)";
+            expectedValue = expectedValue.toUpperCase();
+        }
+        String valueParam = newParam("value", expectedValue);
+
+        return "SELECT oid FROM object_property WHERE property_type IN (:" + propertyTypesParam
+                + ") AND " + valueCol + " = :" + valueParam;
+    }
+
     /**
      * @param filter
      * @param extraData
@@ -203,10 +220,12 @@ public class FilterToCatalogSQL implements FilterVisitor, ExpressionVisitor {
                 .convertToSQL92(esc, multi, single, matchCase, literal);
 
         String valueCol = matchCase ? "value" : "UPPER(value)";
+        // pass the pattern as a parameter instead of inlining it, the literal is user provided
+        String patternParam = newParam("pattern", pattern);
 
         StringBuilder builder = append(extraData,
                 "oid IN (SELECT oid FROM object_property WHERE property_type IN (:",
-                propertyTypesParam, ") AND ", valueCol, " LIKE '", pattern, "') /* ",
+                propertyTypesParam, ") AND ", valueCol, " LIKE :", patternParam, ") /* ",
                 filter.toString(), " */ \n");
         return builder;
     }
@@ -255,7 +274,9 @@ public class FilterToCatalogSQL implements FilterVisitor, ExpressionVisitor {
     @Override
     public Object visit(PropertyIsNotEqualTo filter, Object extraData) {
 
-        return extraData;
+        StringBuilder builder = append(extraData, "oid NOT IN (",
+                propertyEqualsSubselect(filter), ") /* ", filter.toString(), " */ \n");
+        return builder;
     }
 
     /**
@@ -327,8 +348,10 @@ public class FilterToCatalogSQL implements FilterVisitor, ExpressionVisitor {
      */
     @Override
     public Object visit(Not filter, Object extraData) {
-
-        return extraData;
+        StringBuilder sql = append(extraData, "NOT (\n\t");
+        sql = (StringBuilder) filter.getFilter().accept(this, sql);
+        sql.append(")");
+        return sql;
     }
 
     /**
@@ -423,8 +446,13 @@ public class FilterToCatalogSQL implements FilterVisitor, ExpressionVisitor {
      */
     @Override
     public Object visit(PropertyIsNil filter, Object extraData) {
+        final PropertyName propertyName = (PropertyName) filter.getExpression();
+        final String propertyTypesParam = propertyTypesParam(propertyName);
 
-        return extraData;
+        StringBuilder builder = append(extraData,
+                "oid IN (select oid from object_property where property_type in (:",
+                propertyTypesParam, ") and value IS NULL) /* ", filter.toString(), " */ \n");
+        return builder;
     }
 
     /**
@@ -177,8 +177,11 @@ class QueryBuilder<T extends Info> {
                 query.append(" ORDER BY value ").append(
                         SortOrder.ASCENDING.equals(order.getSortOrder()) ? "ASC" : "DESC");
             }
-            applyOffsetLimit(query);
-
+            if (Filter.INCLUDE.equals(this.unsupportedFilter)) {
+                // offset and limit can only be applied at the database level if the whole filter
+                // was translated, otherwise the caller shall apply them after post-filtering
+                applyOffsetLimit(query);
+            }
         }
 
         return query;
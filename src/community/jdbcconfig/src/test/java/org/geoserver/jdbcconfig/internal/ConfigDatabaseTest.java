@@ -17,15 +17,18 @@
 package org.geoserver.jdbcconfig.internal;
 
 import java.lang.reflect.Proxy;
+import java.util.List;
 
 import junit.framework.TestCase;
 
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.DataStoreInfo;
 import org.geoserver.catalog.Info;
+import org.geoserver.catalog.Predicates;
 import org.geoserver.catalog.WorkspaceInfo;
 import org.geoserver.catalog.impl.DataStoreInfoImpl;
 import org.geoserver.catalog.impl.WorkspaceInfoImpl;
+import org.opengis.filter.Filter;
 
 /**
  * @author groldan
@@ -113,4 +116,88 @@ public class ConfigDatabaseTest extends TestCase {
         }
         assertEquals(info, saved);
     }
+
+    public void testQueryInBatches() throws Exception {
+        database.setBatchSize(2);
+        for (int i = 0; i < 5; i++) {
+            addWorkspace("wsid" + i, "ws" + i);
+        }
+        // evict the added objects so they're fetched from the database
+        database.dispose();
+
+        List<WorkspaceInfo> all = database.queryAsList(WorkspaceInfo.class, Filter.INCLUDE,
+                null, null, null);
+        assertEquals(5, all.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("wsid" + i, all.get(i).getId());
+            assertEquals("ws" + i, all.get(i).getName());
+            assertTrue(all.get(i) instanceof Proxy);
+        }
+
+        List<WorkspaceInfo> page = database.queryAsList(WorkspaceInfo.class, Filter.INCLUDE,
+                Integer.valueOf(1), Integer.valueOf(3), null);
+        assertEquals(3, page.size());
+        assertEquals("wsid1", page.get(0).getId());
+        assertEquals("wsid3", page.get(2).getId());
+
+        assertEquals(5, database.getAll(WorkspaceInfo.class).size());
+    }
+
+    public void testNotEqualTo() throws Exception {
+        addWorkspace("wsid0", "ws0");
+        addWorkspace("wsid1", "ws1");
+
+        Filter filter = Predicates.factory.notEqual(Predicates.factory.property("name"),
+                Predicates.factory.literal("ws0"));
+        assertEquals(1, database.count(WorkspaceInfo.class, filter));
+        List<WorkspaceInfo> result = database.queryAsList(WorkspaceInfo.class, filter, null,
+                null, null);
+        assertEquals(1, result.size());
+        assertEquals("ws1", result.get(0).getName());
+
+        filter = Predicates.factory.not(Predicates.equal("name", "ws1"));
+        assertEquals(1, database.count(WorkspaceInfo.class, filter));
+    }
+
+    public void testGetByIdentity() throws Exception {
+        addWorkspace("wsid0", "ws0");
+        addWorkspace("wsid1", "ws1");
+
+        Filter filter = Predicates.equal("name", "ws1");
+        WorkspaceInfo ws = database.getByIdentity(WorkspaceInfo.class, filter, "name", "ws1");
+        assertNotNull(ws);
+        assertEquals("wsid1", ws.getId());
+
+        // a second lookup resolves to the same object
+        assertEquals(ws, database.getByIdentity(WorkspaceInfo.class, filter, "name", "ws1"));
+
+        // a cached object no longer matching the filter is not returned
+        WorkspaceInfo ws0 = database.getByIdentity(WorkspaceInfo.class,
+                Predicates.equal("name", "ws0"), "name", "ws1");
+        assertEquals("wsid0", ws0.getId());
+        assertEquals(ws, database.getByIdentity(WorkspaceInfo.class, filter, "name", "ws1"));
+
+        assertNull(database.getByIdentity(WorkspaceInfo.class, Predicates.equal("name", "foo"),
+                "name", "foo"));
+
+        // renaming shall invalidate the cached identity
+        ws.setName("renamed");
+        database.save(ws);
+        assertNull(database.getByIdentity(WorkspaceInfo.class, filter, "name", "ws1"));
+        WorkspaceInfo renamed = database.getByIdentity(WorkspaceInfo.class,
+                Predicates.equal("name", "renamed"), "name", "renamed");
+        assertNotNull(renamed);
+        assertEquals("wsid1", renamed.getId());
+
+        database.remove(renamed);
+        assertNull(database.getByIdentity(WorkspaceInfo.class,
+                Predicates.equal("name", "renamed"), "name", "renamed"));
+    }
+
+    private WorkspaceInfo addWorkspace(String id, String name) {
+        WorkspaceInfoImpl ws = new WorkspaceInfoImpl();
+        ws.setId(id);
+        ws.setName(name);
+        return database.add(ws);
+    }
 }
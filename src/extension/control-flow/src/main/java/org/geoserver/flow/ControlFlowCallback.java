@@ -45,6 +45,12 @@ public class ControlFlowCallback extends AbstractDispatcherCallback implements
     AtomicLong blockedRequests = new AtomicLong();
     
     AtomicLong runningRequests = new AtomicLong();
+    
+    AtomicLong rejectedRequests = new AtomicLong();
+    
+    AtomicLong queuedRequests = new AtomicLong();
+    
+    AtomicLong queueTime = new AtomicLong();
 
     public void finished(Request request) {
         if(SENTINEL.isOutermostRequest()) {
@@ -67,7 +73,9 @@ public class ControlFlowCallback extends AbstractDispatcherCallback implements
             if(LOGGER.isLoggable(Level.INFO)) {
                 if(controllers.size() > 0) {
                     LOGGER.info("Running requests: " + runningRequests.get() 
-                            + ", processing through flow controllers: " + blockedRequests.get());
+                            + ", processing through flow controllers: " + blockedRequests.get()
+                            + ", rejected so far: " + rejectedRequests.get()
+                            + ", average queue wait: " + getAverageQueueTime() + "ms");
                 } else {
                     LOGGER.info("Control flow installed, but no rules configured in controlflow.properties");
                 }
@@ -89,15 +97,23 @@ public class ControlFlowCallback extends AbstractDispatcherCallback implements
                 List<FlowController> controllers = this.controllers;
                 if (controllers.size() > 0) {
                     REQUEST_CONTROLLERS.set(controllers);
-                    long maxTime = timeout > 0 ? System.currentTimeMillis() + timeout : -1;
-                    for (FlowController flowController : controllers) {
-                        if(timeout > 0) {
-                            long maxWait = maxTime - System.currentTimeMillis();
-                            if(!flowController.requestIncoming(request, maxWait)) 
-                                throw new HttpErrorCodeException(503, "Requested timeout out while waiting to be executed");
-                         } else {
-                            flowController.requestIncoming(request, -1);
+                    long start = System.currentTimeMillis();
+                    long maxTime = timeout > 0 ? start + timeout : -1;
+                    try {
+                        for (FlowController flowController : controllers) {
+                            if(timeout > 0) {
+                                long maxWait = maxTime - System.currentTimeMillis();
+                                if(!flowController.requestIncoming(request, maxWait)) {
+                                    rejectedRequests.incrementAndGet();
+                                    throw new HttpErrorCodeException(503, "Requested timeout out while waiting to be executed");
+                                }
+                             } else {
+                                flowController.requestIncoming(request, -1);
+                            }
                         }
+                    } finally {
+                        queuedRequests.incrementAndGet();
+                        queueTime.addAndGet(System.currentTimeMillis() - start);
                     }
                 }
             } finally {
@@ -108,6 +124,22 @@ public class ControlFlowCallback extends AbstractDispatcherCallback implements
         return operation;
     }
 
+    /**
+     * Returns the number of requests rejected because they timed out while waiting in the flow
+     * controllers
+     */
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    /**
+     * Returns the average time requests spent waiting in the flow controllers, in milliseconds
+     */
+    public long getAverageQueueTime() {
+        long queued = queuedRequests.get();
+        return queued > 0 ? queueTime.get() / queued : 0;
+    }
+
     private void checkConfiguration() {
         // check if we need to rebuild the flow controller list
         if (configurator.isStale()){
@@ -6,7 +6,9 @@ package org.geoserver.flow.config;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.StringTokenizer;
 import java.util.logging.Logger;
@@ -14,6 +16,7 @@ import java.util.logging.Logger;
 import org.geoserver.flow.ControlFlowConfigurator;
 import org.geoserver.flow.FlowController;
 import org.geoserver.flow.controller.BasicOWSController;
+import org.geoserver.flow.controller.CostFlowController;
 import org.geoserver.flow.controller.GlobalFlowController;
 import org.geoserver.flow.controller.IpFlowController;
 import org.geoserver.flow.controller.SingleIpFlowController;
@@ -54,6 +57,8 @@ public class DefaultControlFlowConfigurator implements ControlFlowConfigurator {
 
         Properties p = configFile.getProperties();
         List<FlowController> newControllers = new ArrayList<FlowController>();
+        CostFlowController costController = null;
+        Map<String, Double> costWeights = new HashMap<String, Double>();
         for (Object okey : p.keySet()) {
             String key = ((String) okey).trim();
             String value = (String) p.get(okey);
@@ -61,6 +66,23 @@ public class DefaultControlFlowConfigurator implements ControlFlowConfigurator {
 
             String[] keys = key.trim().split("\\s*\\.\\s*");
 
+            if ("cost".equals(keys[0]) && keys.length == 3 && "weight".equals(keys[1])) {
+                // weights are applied to the cost controller once it's built
+                double weight;
+                try {
+                    weight = Double.parseDouble(value.trim());
+                } catch (NumberFormatException e) {
+                    weight = -1;
+                }
+                if (weight <= 0) {
+                    LOGGER.severe("Cost weights should be positive numbers, instead " + okey
+                            + " is associated to " + value);
+                } else {
+                    costWeights.put(keys[2], weight);
+                }
+                continue;
+            }
+
             int queueSize = 0;
             StringTokenizer tokenizer = new StringTokenizer(value, ",");
             try {
@@ -91,6 +113,10 @@ public class DefaultControlFlowConfigurator implements ControlFlowConfigurator {
                 } else if (keys.length == 2) {
                     controller = new BasicOWSController(keys[1], queueSize);
                 }
+            } else if ("cost".equals(keys[0]) && keys.length == 1) {
+                // here the "queue size" is the token budget
+                costController = new CostFlowController(queueSize);
+                controller = costController;
             } else if ("user".equals(keys[0])) {
                 controller = new UserFlowController(queueSize);
             } else if ("ip".equals(keys[0])) {
@@ -108,6 +134,14 @@ public class DefaultControlFlowConfigurator implements ControlFlowConfigurator {
             }
         }
 
+        if (costController != null) {
+            for (Map.Entry<String, Double> entry : costWeights.entrySet()) {
+                costController.setWeight(entry.getKey(), entry.getValue());
+            }
+        } else if (!costWeights.isEmpty()) {
+            LOGGER.severe("Cost weights have been configured, but there is no cost rule");
+        }
+
         return newControllers;
     }
 
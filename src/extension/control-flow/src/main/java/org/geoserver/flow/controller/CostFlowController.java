@@ -0,0 +1,394 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.geoserver.flow.ControlFlowCallback;
+import org.geoserver.flow.FlowController;
+import org.geoserver.ows.Request;
+import org.geotools.util.logging.Logging;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * A flow controller admitting requests against a budget of cost tokens, instead of a number of
+ * slots, and sharing the budget among the request flows with weighted fair queueing.
+ * <p>
+ * Each request is given an estimated cost, in tokens, a token being roughly the work needed to
+ * paint a 256x256 single layer map, or {@link #DEFAULT_TOKEN_MILLIS} milliseconds of processing:
+ * <ul>
+ * <li>GetMap and GetFeatureInfo cost one token per 256x256 pixels per layer</li>
+ * <li>GetFeature costs one token per thousand features, when the max number of features is
+ * known</li>
+ * <li>any other request costs the average time requests of the same service and operation took
+ * in the past, or one token if there is no history yet</li>
+ * </ul>
+ * Costs are capped to the budget, so that a single request can always run.
+ * </p>
+ * <p>
+ * Requests are grouped in flows by service and user (or client IP, for anonymous requests), and
+ * waiting requests are admitted in order of virtual finish time (self clocked fair queueing):
+ * each flow gets a share of the budget proportional to the weight of its service, so a burst of
+ * expensive downloads does not starve the cheap interactive requests of other flows.
+ * </p>
+ */
+public class CostFlowController implements FlowController {
+    static final Logger LOGGER = Logging.getLogger(ControlFlowCallback.class);
+
+    /**
+     * The default amount of milliseconds of processing a token stands for
+     */
+    public static final long DEFAULT_TOKEN_MILLIS = 100;
+
+    /**
+     * The number of pixels of a single token map
+     */
+    static final int TILE_PIXELS = 256 * 256;
+
+    /**
+     * Weight of the new sample in the moving average of the operation costs
+     */
+    static final double HISTORY_WEIGHT = 0.2;
+
+    int budget;
+
+    long tokenMillis = DEFAULT_TOKEN_MILLIS;
+
+    Map<String, Double> weights = new HashMap<String, Double>();
+
+    /**
+     * Moving average of the elapsed time of each service and operation, in milliseconds
+     */
+    Map<String, Double> history = new ConcurrentHashMap<String, Double>();
+
+    /**
+     * Last virtual finish time of each flow
+     */
+    Map<String, Double> flowFinish = new HashMap<String, Double>();
+
+    PriorityQueue<Ticket> waiting = new PriorityQueue<Ticket>();
+
+    Map<Request, Ticket> running = new IdentityHashMap<Request, Ticket>();
+
+    int tokensInUse;
+
+    double virtualTime;
+
+    long sequence;
+
+    // metrics
+    long admitted;
+
+    long rejected;
+
+    long totalWait;
+
+    long maxWait;
+
+    /**
+     * @param budget The number of tokens the running requests can use at any given time
+     */
+    public CostFlowController(int budget) {
+        this.budget = Math.max(1, budget);
+    }
+
+    /**
+     * Sets the weight of the flows of a service, the default being 1. A flow with weight 2 gets
+     * twice the share of budget of a flow with weight 1, when both have requests waiting.
+     */
+    public void setWeight(String service, double weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("The weight of " + service
+                    + " should be positive, it's " + weight + " instead");
+        }
+        weights.put(service.toUpperCase(), weight);
+    }
+
+    /**
+     * Sets the amount of milliseconds of processing a token stands for
+     */
+    public void setTokenMillis(long tokenMillis) {
+        this.tokenMillis = Math.max(1, tokenMillis);
+    }
+
+    public int getPriority() {
+        return budget;
+    }
+
+    public boolean requestIncoming(Request request, long timeout) {
+        int cost = Math.min(budget, Math.max(1, estimateCost(request)));
+        String flow = getFlow(request);
+        double weight = getWeight(request);
+        long start = System.currentTimeMillis();
+
+        Ticket ticket;
+        synchronized (this) {
+            Double lastFinish = flowFinish.get(flow);
+            double startTag = Math.max(virtualTime, lastFinish != null ? lastFinish : 0);
+            ticket = new Ticket(request, cost, startTag + cost / weight, sequence++);
+            flowFinish.put(flow, ticket.finish);
+            waiting.add(ticket);
+
+            try {
+                long deadline = timeout > 0 ? start + timeout : -1;
+                while (!canRun(ticket)) {
+                    if (deadline > 0) {
+                        long wait = deadline - System.currentTimeMillis();
+                        if (wait <= 0) {
+                            waiting.remove(ticket);
+                            rejected++;
+                            // the head might have changed, let the others check
+                            notifyAll();
+                            if (LOGGER.isLoggable(Level.FINE)) {
+                                LOGGER.fine(this + " rejected request of flow " + flow
+                                        + " with cost " + cost);
+                            }
+                            return false;
+                        }
+                        wait(wait);
+                    } else {
+                        wait();
+                    }
+                }
+            } catch (InterruptedException e) {
+                LOGGER.log(Level.WARNING,
+                        "Unexpected interruption while waiting for the request to be admitted");
+                waiting.remove(ticket);
+                rejected++;
+                // the head might have changed, let the others check
+                notifyAll();
+                Thread.currentThread().interrupt();
+                return false;
+            }
+
+            waiting.remove(ticket);
+            tokensInUse += cost;
+            virtualTime = Math.max(virtualTime, ticket.finish);
+            running.put(request, ticket);
+            ticket.started = System.currentTimeMillis();
+            long waited = ticket.started - start;
+            admitted++;
+            totalWait += waited;
+            maxWait = Math.max(maxWait, waited);
+            // someone else might fit in the remaining budget
+            notifyAll();
+        }
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine(this + " admitted request of flow " + flow + " with cost " + cost
+                    + " after " + (ticket.started - start) + "ms");
+        }
+        return true;
+    }
+
+    /**
+     * A request can run if it's the next one in fair queueing order and its cost fits in the
+     * budget left (or nothing else is running)
+     */
+    boolean canRun(Ticket ticket) {
+        return waiting.peek() == ticket
+                && (tokensInUse == 0 || tokensInUse + ticket.cost <= budget);
+    }
+
+    public void requestComplete(Request request) {
+        Ticket ticket;
+        synchronized (this) {
+            ticket = running.remove(request);
+            if (ticket == null) {
+                return;
+            }
+            tokensInUse -= ticket.cost;
+            if (running.isEmpty() && waiting.isEmpty()) {
+                // idle, reset the virtual clock so that it does not grow forever
+                virtualTime = 0;
+                flowFinish.clear();
+            }
+            notifyAll();
+        }
+
+        // update the history of the operation
+        String key = getOperationKey(request);
+        if (key != null) {
+            double elapsed = System.currentTimeMillis() - ticket.started;
+            Double average = history.get(key);
+            history.put(key, average == null ? elapsed : average * (1 - HISTORY_WEIGHT)
+                    + elapsed * HISTORY_WEIGHT);
+        }
+    }
+
+    /**
+     * Estimates the cost of the request, in tokens
+     */
+    int estimateCost(Request request) {
+        Map kvp = request.getRawKvp();
+        String operation = request.getRequest();
+        if (kvp != null && operation != null) {
+            if ("GetMap".equalsIgnoreCase(operation)
+                    || "GetFeatureInfo".equalsIgnoreCase(operation)) {
+                long width = getLong(kvp, "WIDTH");
+                long height = getLong(kvp, "HEIGHT");
+                if (width > 0 && height > 0) {
+                    int layers = 1;
+                    Object value = kvp.get("LAYERS");
+                    if (value != null) {
+                        layers = Math.max(1, value.toString().split(",").length);
+                    }
+                    return (int) Math.min(Integer.MAX_VALUE, (width * height + TILE_PIXELS - 1)
+                            / TILE_PIXELS * layers);
+                }
+            } else if ("GetFeature".equalsIgnoreCase(operation)) {
+                long maxFeatures = getLong(kvp, "MAXFEATURES");
+                if (maxFeatures <= 0) {
+                    maxFeatures = getLong(kvp, "COUNT");
+                }
+                if (maxFeatures > 0) {
+                    return (int) Math.min(Integer.MAX_VALUE, (maxFeatures + 999) / 1000);
+                }
+            }
+        }
+
+        // no static estimate, go with the history
+        String key = getOperationKey(request);
+        Double average = key != null ? history.get(key) : null;
+        if (average != null) {
+            return (int) Math.min(Integer.MAX_VALUE, Math.ceil(average / tokenMillis));
+        }
+        return 1;
+    }
+
+    long getLong(Map kvp, String key) {
+        Object value = kvp.get(key);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.toString().trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    String getOperationKey(Request request) {
+        if (request.getService() == null || request.getRequest() == null) {
+            return null;
+        }
+        return request.getService().toUpperCase() + "." + request.getRequest().toUpperCase();
+    }
+
+    double getWeight(Request request) {
+        if (request.getService() != null) {
+            Double weight = weights.get(request.getService().toUpperCase());
+            if (weight != null) {
+                return weight;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Returns the flow the request belongs to, made of the service and the user, or the client
+     * address for anonymous requests
+     */
+    String getFlow(Request request) {
+        String client = null;
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null && !(auth instanceof AnonymousAuthenticationToken)) {
+            client = auth.getName();
+        } else {
+            HttpServletRequest http = request.getHttpRequest();
+            if (http != null) {
+                client = http.getRemoteAddr();
+            }
+        }
+        return request.getService() + ":" + client;
+    }
+
+    /**
+     * Returns the number of requests admitted so far
+     */
+    public synchronized long getAdmitted() {
+        return admitted;
+    }
+
+    /**
+     * Returns the number of requests rejected because they timed out, or were interrupted, while
+     * waiting
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Returns the average time the admitted requests waited in the queue, in milliseconds
+     */
+    public synchronized long getAverageWait() {
+        return admitted > 0 ? totalWait / admitted : 0;
+    }
+
+    /**
+     * Returns the longest time an admitted request waited in the queue, in milliseconds
+     */
+    public synchronized long getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * Returns the number of requests waiting to be admitted
+     */
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    /**
+     * Returns the number of tokens used by the running requests
+     */
+    public synchronized int getTokensInUse() {
+        return tokensInUse;
+    }
+
+    @Override
+    public String toString() {
+        return "CostFlowController(" + budget + "," + weights + ")";
+    }
+
+    /**
+     * A request waiting or running, ordered by virtual finish time, and then by arrival
+     */
+    static class Ticket implements Comparable<Ticket> {
+        Request request;
+
+        int cost;
+
+        double finish;
+
+        long sequence;
+
+        long started;
+
+        Ticket(Request request, int cost, double finish, long sequence) {
+            this.request = request;
+            this.cost = cost;
+            this.finish = finish;
+            this.sequence = sequence;
+        }
+
+        public int compareTo(Ticket o) {
+            if (finish != o.finish) {
+                return finish < o.finish ? -1 : 1;
+            }
+            return sequence < o.sequence ? -1 : (sequence == o.sequence ? 0 : 1);
+        }
+    }
+}
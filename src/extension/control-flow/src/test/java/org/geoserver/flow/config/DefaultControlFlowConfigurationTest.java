@@ -10,6 +10,7 @@ import junit.framework.TestCase;
 import org.geoserver.flow.ControllerPriorityComparator;
 import org.geoserver.flow.FlowController;
 import org.geoserver.flow.controller.BasicOWSController;
+import org.geoserver.flow.controller.CostFlowController;
 import org.geoserver.flow.controller.GlobalFlowController;
 import org.geoserver.flow.controller.IpFlowController;
 import org.geoserver.flow.controller.SingleIpFlowController;
@@ -61,6 +62,25 @@ public class DefaultControlFlowConfigurationTest extends TestCase {
         assertEquals(14, ipSc.getPriority());
     }
 
+    public void testCostWeights() throws Exception {
+        Properties p = new Properties();
+        p.put("cost", "20");
+        p.put("cost.weight.wms", "1.5");
+        p.put("cost.weight.wfs", "0.5");
+        p.put("cost.weight.wcs", "-1");
+
+        DefaultControlFlowConfigurator configurator = new DefaultControlFlowConfigurator(
+                new FixedWatcher(p));
+        List<FlowController> controllers = configurator.buildFlowControllers();
+        assertEquals(1, controllers.size());
+        CostFlowController cc = (CostFlowController) controllers.get(0);
+        assertEquals(20, cc.getPriority());
+        // fractional weights are kept as is, invalid ones are skipped
+        assertTrue(cc.toString().contains("WMS=1.5"));
+        assertTrue(cc.toString().contains("WFS=0.5"));
+        assertFalse(cc.toString().contains("WCS"));
+    }
+
     static class FixedWatcher extends PropertyFileWatcher {
         boolean stale = true;
 
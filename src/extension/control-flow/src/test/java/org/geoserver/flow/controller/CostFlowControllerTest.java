@@ -0,0 +1,197 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.flow.controller;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.geoserver.flow.controller.FlowControllerTestingThread.ThreadState;
+import org.geoserver.ows.Request;
+
+import com.mockrunner.mock.web.MockHttpServletRequest;
+import com.mockrunner.mock.web.MockHttpServletResponse;
+
+public class CostFlowControllerTest extends AbstractFlowControllerTest {
+    private static final long MAX_WAIT = 1000;
+
+    public void testPriority() {
+        CostFlowController controller = new CostFlowController(10);
+        // priority == budget
+        assertEquals(10, controller.getPriority());
+    }
+
+    public void testEstimateCost() {
+        CostFlowController controller = new CostFlowController(10);
+        assertEquals(8, controller.estimateCost(buildGetMap("127.0.0.1", 512, 512, "a,b")));
+        assertEquals(1, controller.estimateCost(buildGetMap("127.0.0.1", 10, 10, "a")));
+
+        Request getFeature = buildRequest("127.0.0.1", "WFS", "GetFeature");
+        getFeature.getRawKvp().put("MAXFEATURES", "2500");
+        assertEquals(3, controller.estimateCost(getFeature));
+
+        // no estimate, no history
+        Request other = buildRequest("127.0.0.1", "WCS", "GetCoverage");
+        assertEquals(1, controller.estimateCost(other));
+
+        // with history
+        controller.history.put("WCS.GETCOVERAGE", 450d);
+        assertEquals(5, controller.estimateCost(other));
+    }
+
+    public void testBudget() throws Exception {
+        CostFlowController controller = new CostFlowController(4);
+
+        // 3 tokens, and 2 tokens
+        FlowControllerTestingThread t1 = new FlowControllerTestingThread(buildGetMap("10.0.0.1",
+                512, 384, "a"), 0, Long.MAX_VALUE, controller);
+        FlowControllerTestingThread t2 = new FlowControllerTestingThread(buildGetMap("10.0.0.1",
+                512, 256, "a"), 0, Long.MAX_VALUE, controller);
+        try {
+            t1.start();
+            waitBlocked(t1, MAX_WAIT);
+            t2.start();
+            waitBlocked(t2, MAX_WAIT);
+
+            assertEquals(ThreadState.PROCESSING, t1.state);
+            assertEquals(ThreadState.STARTED, t2.state);
+            assertEquals(3, controller.getTokensInUse());
+            assertEquals(1, controller.getWaiting());
+
+            // let t1 go, t2 fits now
+            t1.interrupt();
+            waitTerminated(t1, MAX_WAIT);
+            waitBlocked(t2, MAX_WAIT);
+            assertEquals(ThreadState.PROCESSING, t2.state);
+            assertEquals(2, controller.getTokensInUse());
+
+            t2.interrupt();
+            waitTerminated(t2, MAX_WAIT);
+            assertEquals(0, controller.getTokensInUse());
+            assertEquals(2, controller.getAdmitted());
+        } finally {
+            waitAndKill(t1, MAX_WAIT);
+            waitAndKill(t2, MAX_WAIT);
+        }
+    }
+
+    public void testFairness() throws Exception {
+        CostFlowController controller = new CostFlowController(2);
+
+        // two expensive requests from a client, a cheap one from another
+        FlowControllerTestingThread t1 = new FlowControllerTestingThread(buildGetMap("10.0.0.1",
+                512, 256, "a"), 0, Long.MAX_VALUE, controller);
+        FlowControllerTestingThread t2 = new FlowControllerTestingThread(buildGetMap("10.0.0.1",
+                512, 256, "a"), 0, Long.MAX_VALUE, controller);
+        FlowControllerTestingThread t3 = new FlowControllerTestingThread(buildGetMap("10.0.0.2",
+                256, 256, "a"), 0, Long.MAX_VALUE, controller);
+        try {
+            t1.start();
+            waitBlocked(t1, MAX_WAIT);
+            t2.start();
+            waitBlocked(t2, MAX_WAIT);
+            t3.start();
+            waitBlocked(t3, MAX_WAIT);
+
+            assertEquals(ThreadState.PROCESSING, t1.state);
+            assertEquals(ThreadState.STARTED, t2.state);
+            assertEquals(ThreadState.STARTED, t3.state);
+
+            // the cheap request of the other client overtakes the second expensive one
+            t1.interrupt();
+            waitTerminated(t1, MAX_WAIT);
+            waitBlocked(t3, MAX_WAIT);
+            assertEquals(ThreadState.PROCESSING, t3.state);
+            assertEquals(ThreadState.STARTED, t2.state);
+
+            t3.interrupt();
+            waitTerminated(t3, MAX_WAIT);
+            waitBlocked(t2, MAX_WAIT);
+            assertEquals(ThreadState.PROCESSING, t2.state);
+            t2.interrupt();
+        } finally {
+            waitAndKill(t1, MAX_WAIT);
+            waitAndKill(t2, MAX_WAIT);
+            waitAndKill(t3, MAX_WAIT);
+        }
+    }
+
+    public void testTimeout() {
+        CostFlowController controller = new CostFlowController(1);
+
+        FlowControllerTestingThread t1 = new FlowControllerTestingThread(buildGetMap("10.0.0.1",
+                256, 256, "a"), 100, 400, controller);
+        FlowControllerTestingThread t2 = new FlowControllerTestingThread(buildGetMap("10.0.0.2",
+                256, 256, "a"), 100, 400, controller);
+        try {
+            t1.start();
+            waitBlocked(t1, MAX_WAIT);
+            t2.start();
+
+            waitTerminated(t1, MAX_WAIT);
+            waitTerminated(t2, MAX_WAIT);
+
+            assertEquals(ThreadState.COMPLETE, t1.state);
+            assertEquals(ThreadState.TIMED_OUT, t2.state);
+            assertEquals(1, controller.getRejected());
+            assertEquals(0, controller.getWaiting());
+        } finally {
+            waitAndKill(t1, MAX_WAIT);
+            waitAndKill(t2, MAX_WAIT);
+        }
+    }
+
+    public void testInterrupted() {
+        CostFlowController controller = new CostFlowController(1);
+
+        FlowControllerTestingThread t1 = new FlowControllerTestingThread(buildGetMap("10.0.0.1",
+                256, 256, "a"), 0, Long.MAX_VALUE, controller);
+        FlowControllerTestingThread t2 = new FlowControllerTestingThread(buildGetMap("10.0.0.2",
+                256, 256, "a"), 0, Long.MAX_VALUE, controller);
+        try {
+            t1.start();
+            waitBlocked(t1, MAX_WAIT);
+            t2.start();
+            waitBlocked(t2, MAX_WAIT);
+            assertEquals(ThreadState.STARTED, t2.state);
+
+            // the interrupted waiter is turned away, without using any budget
+            t2.interrupt();
+            waitTerminated(t2, MAX_WAIT);
+            assertEquals(ThreadState.TIMED_OUT, t2.state);
+            assertEquals(1, controller.getRejected());
+            assertEquals(0, controller.getWaiting());
+            assertEquals(1, controller.getTokensInUse());
+            assertEquals(1, controller.getAdmitted());
+
+            t1.interrupt();
+            waitTerminated(t1, MAX_WAIT);
+            assertEquals(0, controller.getTokensInUse());
+        } finally {
+            waitAndKill(t1, MAX_WAIT);
+            waitAndKill(t2, MAX_WAIT);
+        }
+    }
+
+    Request buildGetMap(String ip, int width, int height, String layers) {
+        Request request = buildRequest(ip, "WMS", "GetMap");
+        request.getRawKvp().put("WIDTH", String.valueOf(width));
+        request.getRawKvp().put("HEIGHT", String.valueOf(height));
+        request.getRawKvp().put("LAYERS", layers);
+        return request;
+    }
+
+    Request buildRequest(String ip, String service, String operation) {
+        Request request = new Request();
+        MockHttpServletRequest httpRequest = new MockHttpServletRequest();
+        httpRequest.setRemoteAddr(ip);
+        request.setHttpRequest(httpRequest);
+        request.setHttpResponse(new MockHttpServletResponse());
+        request.setService(service);
+        request.setRequest(operation);
+        Map<String, Object> kvp = new HashMap<String, Object>();
+        request.setRawKvp(kvp);
+        return request;
+    }
+}
@@ -1,18 +1,36 @@
 package org.geoserver.wfs.response;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
 import org.apache.log4j.Logger;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.geoserver.config.GeoServer;
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.ServiceException;
+import org.geoserver.wfs.request.FeatureCollectionResponse;
+import org.geotools.data.simple.SimpleFeatureCollection;
 
 /**
- * Excel 97-2003 WFS output format
+ * Excel 97-2003 WFS output format. The workbook is streamed out, rolling over to new sheets
+ * when the 65,536 rows of a sheet are not enough, see {@link Excel97StreamingWriter}
  * 
  * @author Shane StClair, Axiom Consulting, shane@axiomalaska.com
  */
 public class Excel97OutputFormat extends ExcelOutputFormat {
     private static Logger log = Logger.getLogger(Excel97OutputFormat.class);
 
+    /**
+     * Whether the workbook is streamed, instead of being built in memory, true unless the
+     * org.geoserver.wfs.excel97.streaming system property is set to false
+     */
+    static final boolean STREAMING = !"false".equalsIgnoreCase(System
+            .getProperty("org.geoserver.wfs.excel97.streaming"));
+
+    boolean streaming = STREAMING;
+
     /**
      * Constructor setting the format type as "excel" in addition to file extension, mime type, and
      * row and column limits
@@ -34,4 +52,35 @@ public class Excel97OutputFormat extends ExcelOutputFormat {
     protected Workbook getNewWorkbook() {
         return new HSSFWorkbook();
     }
+
+    /**
+     * Writes the workbook with a {@link Excel97StreamingWriter}, unless streaming has been
+     * disabled, in which case the full HSSFWorkbook is built in memory
+     */
+    @Override
+    protected void write(FeatureCollectionResponse featureCollection, OutputStream output,
+            Operation getFeature) throws IOException, ServiceException {
+        if (!streaming) {
+            super.write(featureCollection, output, getFeature);
+            return;
+        }
+
+        Excel97StreamingWriter writer = new Excel97StreamingWriter(rowLimit, colLimit);
+        try {
+            for (Iterator it = featureCollection.getFeature().iterator(); it.hasNext();) {
+                writer.write((SimpleFeatureCollection) it.next());
+            }
+            writer.writeTo(output);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
 }
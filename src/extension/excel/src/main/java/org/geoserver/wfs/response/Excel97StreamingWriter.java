@@ -0,0 +1,461 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org.  All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.wfs.response;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.poi.hssf.model.InternalWorkbook;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.DBCellRecord;
+import org.apache.poi.hssf.record.DimensionsRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.ExtendedFormatRecord;
+import org.apache.poi.hssf.record.FontRecord;
+import org.apache.poi.hssf.record.IndexRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.hssf.record.WindowTwoRecord;
+import org.apache.poi.hssf.record.common.UnicodeString;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.poifs.filesystem.POIFSWriterEvent;
+import org.apache.poi.poifs.filesystem.POIFSWriterListener;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Font;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Writes features as an Excel 97 (BIFF8) workbook without building the HSSF object model.
+ * <p>
+ * The cell records are serialized into a temporary file in blocks of 32 rows, each made of the
+ * ROW records of the block, their cells, and the DBCELL record pointing back at them, as the
+ * BIFF8 format mandates. Only the current block, the shared string table (one entry per distinct
+ * string) and the workbook globals are kept in memory. Once all the features are written the
+ * globals are serialized, with the offsets of the sheets, each sheet gets an INDEX record with the
+ * offsets of its DBCELL records, and the workbook stream is assembled into the OLE2 container
+ * copying the cells from the temporary file.
+ * </p>
+ * <p>
+ * When a feature collection does not fit in the row limit of a sheet, it continues in a new
+ * sheet, named after the feature type and a progressive number, with the same header.
+ * </p>
+ */
+class Excel97StreamingWriter {
+
+    /**
+     * The XF index of the default cell style
+     */
+    static final short DEFAULT_STYLE = 0x0f;
+
+    static final int SHEET_NAME_LIMIT = 31;
+
+    /**
+     * The number of rows in a block, each one followed by a DBCELL record
+     */
+    static final int ROWS_PER_BLOCK = 32;
+
+    int rowLimit;
+
+    int colLimit;
+
+    InternalWorkbook workbook;
+
+    short dateStyle;
+
+    short headerStyle;
+
+    short warningStyle;
+
+    File cellFile;
+
+    OutputStream cells;
+
+    List<SheetInfo> sheets = new ArrayList<SheetInfo>();
+
+    SheetInfo sheet;
+
+    /**
+     * The rows of the current block, along with the size and contents of their cells
+     */
+    List<RowRecord> blockRows = new ArrayList<RowRecord>();
+
+    List<Integer> blockRowSizes = new ArrayList<Integer>();
+
+    ByteArrayOutputStream blockCells = new ByteArrayOutputStream();
+
+    /**
+     * @param rowLimit The max number of rows in a sheet, header included
+     * @param colLimit The max number of columns in a sheet
+     */
+    public Excel97StreamingWriter(int rowLimit, int colLimit) throws IOException {
+        this.rowLimit = rowLimit;
+        this.colLimit = colLimit;
+        this.workbook = InternalWorkbook.createWorkbook();
+
+        FontRecord boldFont = workbook.createNewFont();
+        boldFont.setBoldWeight(Font.BOLDWEIGHT_BOLD);
+        FontRecord warningFont = workbook.createNewFont();
+        warningFont.setBoldWeight(Font.BOLDWEIGHT_BOLD);
+        warningFont.setColorPaletteIndex(Font.COLOR_RED);
+
+        dateStyle = createStyle(-1, workbook.getFormat("yyyy-mm-dd hh:mm:ss", true));
+        headerStyle = createStyle(workbook.getFontIndex(boldFont), (short) -1);
+        warningStyle = createStyle(workbook.getFontIndex(warningFont), (short) -1);
+
+        cellFile = File.createTempFile("excel97", ".cells");
+        cells = new BufferedOutputStream(new FileOutputStream(cellFile));
+    }
+
+    short createStyle(int fontIndex, short formatIndex) {
+        ExtendedFormatRecord xf = workbook.createCellXF();
+        if (fontIndex >= 0) {
+            xf.setIndentNotParentFont(true);
+            xf.setFontIndex((short) fontIndex);
+        }
+        if (formatIndex >= 0) {
+            xf.setFormatIndex(formatIndex);
+        }
+        return (short) (workbook.getNumExFormats() - 1);
+    }
+
+    /**
+     * Writes the features in a new sheet, rolling over to other sheets if the row limit is hit
+     */
+    public void write(SimpleFeatureCollection fc) throws IOException {
+        SimpleFeatureType ft = fc.getSchema();
+        int sheetCount = 1;
+        startSheet(ft, ft.getTypeName());
+
+        SimpleFeatureIterator i = fc.features();
+        try {
+            int r = 0;
+            while (i.hasNext()) {
+                r++;
+                if (r == rowLimit) {
+                    sheetCount++;
+                    startSheet(ft, ft.getTypeName() + " (" + sheetCount + ")");
+                    r = 1;
+                }
+
+                SimpleFeature f = i.next();
+                writeString(r, 0, f.getID(), DEFAULT_STYLE);
+                for (int j = 0; j < f.getAttributeCount() && j < colLimit - 1; j++) {
+                    Object att = f.getAttribute(j);
+                    if (att != null) {
+                        writeValue(r, j + 1, att);
+                    }
+                }
+            }
+        } finally {
+            fc.close(i);
+        }
+    }
+
+    void startSheet(SimpleFeatureType ft, String name) throws IOException {
+        if (name.length() > SHEET_NAME_LIMIT) {
+            // keep the progressive number
+            int suffix = name.length() - ft.getTypeName().length();
+            name = ft.getTypeName().substring(0, SHEET_NAME_LIMIT - suffix)
+                    + name.substring(ft.getTypeName().length());
+        }
+        flushBlock();
+        sheet = new SheetInfo();
+        sheets.add(sheet);
+        workbook.setSheetName(sheets.size() - 1, name);
+
+        writeString(0, 0, "FID", DEFAULT_STYLE);
+        for (int i = 0; i < ft.getAttributeCount() && i < colLimit - 1; i++) {
+            writeString(0, i + 1, ft.getDescriptor(i).getLocalName(), headerStyle);
+        }
+    }
+
+    void writeValue(int row, int col, Object att) throws IOException {
+        if (att instanceof Number) {
+            writeNumber(row, col, ((Number) att).doubleValue(), DEFAULT_STYLE);
+        } else if (att instanceof Date) {
+            writeNumber(row, col, DateUtil.getExcelDate((Date) att), dateStyle);
+        } else if (att instanceof Calendar) {
+            writeNumber(row, col, DateUtil.getExcelDate((Calendar) att, false), dateStyle);
+        } else if (att instanceof Boolean) {
+            BoolErrRecord record = new BoolErrRecord();
+            setCell(record, row, col, DEFAULT_STYLE);
+            record.setValue(((Boolean) att).booleanValue());
+            writeCell(record, row, col);
+        } else {
+            // same as ExcelOutputFormat, truncate and warn
+            String stringVal = att.toString();
+            short style = DEFAULT_STYLE;
+            if (stringVal.length() > ExcelOutputFormat.CELL_CHAR_LIMIT) {
+                stringVal = ExcelOutputFormat.TRUNCATE_WARNING
+                        + " "
+                        + stringVal.substring(0, ExcelOutputFormat.CELL_CHAR_LIMIT
+                                - ExcelOutputFormat.TRUNCATE_WARNING.length() - 1);
+                style = warningStyle;
+            }
+            writeString(row, col, stringVal, style);
+        }
+    }
+
+    void writeString(int row, int col, String value, short style) throws IOException {
+        LabelSSTRecord record = new LabelSSTRecord();
+        setCell(record, row, col, style);
+        record.setSSTIndex(workbook.addSSTString(new UnicodeString(value)));
+        writeCell(record, row, col);
+    }
+
+    void writeNumber(int row, int col, double value, short style) throws IOException {
+        NumberRecord record = new NumberRecord();
+        setCell(record, row, col, style);
+        record.setValue(value);
+        writeCell(record, row, col);
+    }
+
+    void setCell(CellValueRecordInterface record, int row, int col, short style) {
+        record.setRow(row);
+        record.setColumn((short) col);
+        record.setXFIndex(style);
+    }
+
+    /**
+     * Adds the cell to the current block, the cells are expected in row and column order
+     */
+    void writeCell(Record record, int row, int col) throws IOException {
+        int last = blockRows.size() - 1;
+        if (last < 0 || blockRows.get(last).getRowNumber() != row) {
+            if (last >= 0 && blockRows.get(0).getRowNumber() / ROWS_PER_BLOCK != row
+                    / ROWS_PER_BLOCK) {
+                flushBlock();
+            }
+            RowRecord rowRecord = new RowRecord(row);
+            rowRecord.setFirstCol(col);
+            blockRows.add(rowRecord);
+            blockRowSizes.add(0);
+            last = blockRows.size() - 1;
+        }
+        byte[] data = record.serialize();
+        blockCells.write(data);
+        blockRows.get(last).setLastCol(col + 1);
+        blockRowSizes.set(last, blockRowSizes.get(last) + data.length);
+        sheet.lastRow = Math.max(sheet.lastRow, row);
+        sheet.lastCol = Math.max(sheet.lastCol, col);
+    }
+
+    /**
+     * Writes the ROW records of the current block, their cells and the DBCELL record locating
+     * them to the cell file
+     */
+    void flushBlock() throws IOException {
+        if (blockRows.isEmpty()) {
+            return;
+        }
+
+        // the first cell offset is relative to the second ROW record, the others to the first
+        // cell of the previous row
+        int rowsSize = blockRows.size() * RowRecord.ENCODED_SIZE;
+        DBCellRecord.Builder builder = new DBCellRecord.Builder();
+        int cellOffset = rowsSize - RowRecord.ENCODED_SIZE;
+        for (Integer rowSize : blockRowSizes) {
+            builder.addCellOffset(cellOffset);
+            cellOffset = rowSize;
+        }
+        DBCellRecord dbCell = builder.build(rowsSize + blockCells.size());
+
+        for (RowRecord row : blockRows) {
+            cells.write(row.serialize());
+        }
+        blockCells.writeTo(cells);
+        sheet.dbCells.add(sheet.cellsSize + rowsSize + blockCells.size());
+        byte[] data = dbCell.serialize();
+        cells.write(data);
+        sheet.cellsSize += rowsSize + blockCells.size() + data.length;
+
+        blockRows.clear();
+        blockRowSizes.clear();
+        blockCells.reset();
+    }
+
+    /**
+     * Assembles the workbook into the output
+     */
+    public void writeTo(OutputStream output) throws IOException {
+        flushBlock();
+        cells.close();
+        cells = null;
+
+        // compute the sheet offsets and serialize the globals with them
+        workbook.preSerialize();
+        int size = workbook.getSize();
+        for (int k = 0; k < sheets.size(); k++) {
+            SheetInfo info = sheets.get(k);
+            BOFRecord bof = createBOF();
+            DimensionsRecord dimensions = createDimensions(info);
+            int cellsOffset = size + bof.getRecordSize()
+                    + IndexRecord.getRecordSizeForBlockCount(info.dbCells.size())
+                    + dimensions.getRecordSize();
+            info.prefix = serialize(bof, createIndex(info, cellsOffset), dimensions);
+            info.suffix = serialize(createWindowTwo(k == 0), EOFRecord.instance);
+            workbook.setSheetBof(k, size);
+            size += info.prefix.length + info.cellsSize + info.suffix.length;
+        }
+        final byte[] globals = new byte[workbook.getSize()];
+        workbook.serialize(0, globals);
+
+        // the container writes the stream when it gets to it, no need to have it in memory
+        POIFSFileSystem fs = new POIFSFileSystem();
+        final IOException[] failure = new IOException[1];
+        fs.createDocument("Workbook", size, new POIFSWriterListener() {
+
+            public void processPOIFSWriterEvent(POIFSWriterEvent event) {
+                try {
+                    OutputStream out = event.getStream();
+                    out.write(globals);
+                    InputStream in = new BufferedInputStream(new FileInputStream(cellFile));
+                    try {
+                        byte[] buffer = new byte[8192];
+                        for (SheetInfo info : sheets) {
+                            out.write(info.prefix);
+                            long remaining = info.cellsSize;
+                            while (remaining > 0) {
+                                int read = in.read(buffer, 0,
+                                        (int) Math.min(buffer.length, remaining));
+                                if (read < 0) {
+                                    throw new IOException("Unexpected end of the cell file");
+                                }
+                                out.write(buffer, 0, read);
+                                remaining -= read;
+                            }
+                            out.write(info.suffix);
+                        }
+                    } finally {
+                        in.close();
+                    }
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        });
+        fs.writeFilesystem(output);
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    /**
+     * Releases the temporary file
+     */
+    public void dispose() {
+        if (cells != null) {
+            try {
+                cells.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+            cells = null;
+        }
+        if (cellFile != null) {
+            cellFile.delete();
+            cellFile = null;
+        }
+    }
+
+    byte[] serialize(Record... records) {
+        int size = 0;
+        for (Record record : records) {
+            size += record.getRecordSize();
+        }
+        byte[] data = new byte[size];
+        int offset = 0;
+        for (Record record : records) {
+            offset += record.serialize(offset, data);
+        }
+        return data;
+    }
+
+    BOFRecord createBOF() {
+        BOFRecord bof = new BOFRecord();
+        bof.setVersion((short) 0x600);
+        bof.setType(BOFRecord.TYPE_WORKSHEET);
+        bof.setBuild((short) 0x0dbb);
+        bof.setBuildYear((short) 1996);
+        bof.setHistoryBitMask(0xc1);
+        bof.setRequiredVersion(0x6);
+        return bof;
+    }
+
+    /**
+     * Creates the INDEX record of the sheet, given the position of its cells in the workbook
+     * stream
+     */
+    IndexRecord createIndex(SheetInfo info, long cellsOffset) {
+        IndexRecord index = new IndexRecord();
+        index.setFirstRow(0);
+        index.setLastRowAdd1(info.lastRow + 1);
+        for (Long dbCell : info.dbCells) {
+            index.addDbcell((int) (cellsOffset + dbCell));
+        }
+        return index;
+    }
+
+    DimensionsRecord createDimensions(SheetInfo info) {
+        DimensionsRecord dimensions = new DimensionsRecord();
+        dimensions.setFirstRow(0);
+        dimensions.setLastRow(info.lastRow + 1);
+        dimensions.setFirstCol((short) 0);
+        dimensions.setLastCol((short) (info.lastCol + 1));
+        return dimensions;
+    }
+
+    WindowTwoRecord createWindowTwo(boolean first) {
+        WindowTwoRecord window = new WindowTwoRecord();
+        window.setOptions((short) 0x6b6);
+        window.setTopRow((short) 0);
+        window.setLeftCol((short) 0);
+        window.setHeaderColor(0x40);
+        window.setPageBreakZoom((short) 0);
+        window.setNormalZoom((short) 0);
+        // only the first sheet is active
+        window.setSelected(first);
+        window.setPaged(first);
+        return window;
+    }
+
+    /**
+     * The position of the cells of a sheet in the cell file, and its extent
+     */
+    static class SheetInfo {
+        long cellsSize;
+
+        /**
+         * The offsets of the DBCELL records, relative to the first cell block of the sheet
+         */
+        List<Long> dbCells = new ArrayList<Long>();
+
+        int lastRow;
+
+        int lastCol;
+
+        byte[] prefix;
+
+        byte[] suffix;
+    }
+}
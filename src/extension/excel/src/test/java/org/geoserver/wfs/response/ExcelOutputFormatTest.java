@@ -1,19 +1,36 @@
 package org.geoserver.wfs.response;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.DBCellRecord;
+import org.apache.poi.hssf.record.IndexRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.util.IOUtils;
+import org.apache.poi.util.LittleEndian;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.geoserver.data.test.MockData;
 import org.geoserver.wfs.WFSTestSupport;
+import org.geotools.data.DataUtilities;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.Query;
 import org.geotools.feature.FeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 
@@ -36,6 +53,115 @@ public class ExcelOutputFormatTest extends WFSTestSupport {
         testExcelOutputFormat( wb );
     }
 
+    public void testExcel97InMemory() throws Exception {
+        Excel97OutputFormat format = (Excel97OutputFormat) applicationContext.getBean("Excel97OutputFormat");
+        format.setStreaming(false);
+        try {
+            MockHttpServletResponse resp = getAsServletResponse("wfs?request=GetFeature&version=1.0.0&typeName=sf:PrimitiveGeoFeature&outputFormat=excel");
+            HSSFWorkbook wb = new HSSFWorkbook(getBinaryInputStream(resp));
+            testExcelOutputFormat( wb );
+        } finally {
+            format.setStreaming(true);
+        }
+    }
+
+    public void testExcel97RollOver() throws Exception {
+        Excel97OutputFormat format = (Excel97OutputFormat) applicationContext.getBean("Excel97OutputFormat");
+        int rowLimit = format.rowLimit;
+        // header and two features per sheet
+        format.rowLimit = 3;
+        try {
+            MockHttpServletResponse resp = getAsServletResponse("wfs?request=GetFeature&version=1.0.0&typeName=sf:PrimitiveGeoFeature&outputFormat=excel");
+            HSSFWorkbook wb = new HSSFWorkbook(getBinaryInputStream(resp));
+
+            FeatureSource fs = getFeatureSource(MockData.PRIMITIVEGEOFEATURE);
+            int count = fs.getCount(Query.ALL);
+            int sheets = (count + 1) / 2;
+            assertEquals(sheets, wb.getNumberOfSheets());
+            int rows = 0;
+            for (int i = 0; i < sheets; i++) {
+                Sheet sheet = wb.getSheetAt(i);
+                assertEquals(i == 0 ? "PrimitiveGeoFeature" : "PrimitiveGeoFeature (" + (i + 1) + ")",
+                        sheet.getSheetName());
+                assertEquals("FID", sheet.getRow(0).getCell(0).getRichStringCellValue().toString());
+                rows += sheet.getPhysicalNumberOfRows() - 1;
+            }
+            assertEquals(count, rows);
+        } finally {
+            format.rowLimit = rowLimit;
+        }
+    }
+
+    public void testExcel97RowBlocks() throws Exception {
+        // enough rows for a few blocks, the last one partial
+        SimpleFeatureType type = DataUtilities.createType("blocks", "name:String,value:Integer");
+        List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+        for (int i = 0; i < 100; i++) {
+            features.add(SimpleFeatureBuilder.build(type, new Object[] { "f" + i, i }, "blocks." + i));
+        }
+        Excel97StreamingWriter writer = new Excel97StreamingWriter(65536, 256);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try {
+            writer.write(DataUtilities.collection(features));
+            writer.writeTo(bos);
+        } finally {
+            writer.dispose();
+        }
+
+        // walk the raw workbook stream, collecting the record types by offset
+        POIFSFileSystem fs = new POIFSFileSystem(new ByteArrayInputStream(bos.toByteArray()));
+        byte[] stream = IOUtils.toByteArray(fs.createDocumentInputStream("Workbook"));
+        Map<Integer, Integer> sids = new HashMap<Integer, Integer>();
+        List<Integer> indexes = new ArrayList<Integer>();
+        int rows = 0;
+        for (int pos = 0; pos < stream.length; pos += 4 + LittleEndian.getUShort(stream, pos + 2)) {
+            int sid = LittleEndian.getUShort(stream, pos);
+            sids.put(pos, sid);
+            if (sid == IndexRecord.sid) {
+                indexes.add(pos);
+            } else if (sid == RowRecord.sid) {
+                rows++;
+            }
+        }
+        assertEquals(101, rows);
+
+        // the index points at the DBCELL records, which point back at the rows and cells
+        assertEquals(1, indexes.size());
+        int index = indexes.get(0);
+        int blocks = (LittleEndian.getUShort(stream, index + 2) - 16) / 4;
+        assertEquals(4, blocks);
+        assertEquals(101, LittleEndian.getInt(stream, index + 4 + 8));
+        int blockRows = 0;
+        for (int i = 0; i < blocks; i++) {
+            int dbCell = LittleEndian.getInt(stream, index + 4 + 16 + i * 4);
+            assertEquals(Integer.valueOf(DBCellRecord.sid), sids.get(dbCell));
+            int firstRow = dbCell - LittleEndian.getInt(stream, dbCell + 4);
+            int n = (LittleEndian.getUShort(stream, dbCell + 2) - 4) / 2;
+            assertTrue(n <= Excel97StreamingWriter.ROWS_PER_BLOCK);
+            int cell = firstRow + RowRecord.ENCODED_SIZE;
+            for (int j = 0; j < n; j++) {
+                assertEquals(Integer.valueOf(RowRecord.sid),
+                        sids.get(firstRow + j * RowRecord.ENCODED_SIZE));
+                cell += LittleEndian.getUShort(stream, dbCell + 8 + j * 2);
+                int sid = sids.get(cell);
+                assertTrue(sid == LabelSSTRecord.sid || sid == NumberRecord.sid
+                        || sid == BoolErrRecord.sid);
+                // the first cell of each row in the block, in order
+                assertEquals(i * Excel97StreamingWriter.ROWS_PER_BLOCK + j,
+                        LittleEndian.getUShort(stream, cell + 4));
+            }
+            blockRows += n;
+        }
+        assertEquals(101, blockRows);
+
+        // and the usual reader gets the values back
+        HSSFWorkbook wb = new HSSFWorkbook(new ByteArrayInputStream(bos.toByteArray()));
+        Sheet sheet = wb.getSheet("blocks");
+        assertEquals(101, sheet.getPhysicalNumberOfRows());
+        assertEquals("blocks.99", sheet.getRow(100).getCell(0).getStringCellValue());
+        assertEquals(99.0, sheet.getRow(100).getCell(2).getNumericCellValue());
+    }
+
     public void testExcel2007OutputFormat() throws Exception {
         // grab the real binary stream, avoiding mangling to due char conversion
         MockHttpServletResponse resp = getAsServletResponse("wfs?request=GetFeature&version=1.0.0&typeName=sf:PrimitiveGeoFeature&outputFormat=excel2007");
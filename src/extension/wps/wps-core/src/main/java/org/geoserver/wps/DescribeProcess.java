@@ -100,6 +100,16 @@ public class DescribeProcess {
     }
     
     void processDescription( CodeType id, ProcessDescriptionsType pds ) {
+        // introspecting the process and looking up the PPIOs is expensive, use the cache
+        ProcessMetadataCache cache = ProcessMetadataCache.get(context);
+        if (cache != null) {
+            ProcessDescriptionType cached = cache.getProcessDescription(id.getValue());
+            if (cached != null) {
+                pds.getProcessDescription().add(cached);
+                return;
+            }
+        }
+
         Name name = Ows11Util.name(id);
         ProcessFactory pf = GeoServerProcessors.createProcessFactory(name);
         if ( pf == null || pf.create(name) == null) {
@@ -125,6 +135,10 @@ public class DescribeProcess {
         ProcessOutputsType outputs = wpsf.createProcessOutputsType();
         pd.setProcessOutputs( outputs );
         processOutputs( outputs, pf, name );
+
+        if (cache != null) {
+            cache.putProcessDescription(id.getValue(), pd);
+        }
      }
     
     void dataInputs( DataInputsType inputs, ProcessFactory pf, Name name) {
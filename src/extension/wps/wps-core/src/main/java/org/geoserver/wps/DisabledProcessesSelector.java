@@ -57,6 +57,12 @@ public class DisabledProcessesSelector extends ProcessSelector implements GeoSer
                 }
             }
         }
+
+        // the set of available processes changed
+        ProcessMetadataCache cache = ProcessMetadataCache.get(null);
+        if (cache != null) {
+            cache.clear();
+        }
     }
 
 }
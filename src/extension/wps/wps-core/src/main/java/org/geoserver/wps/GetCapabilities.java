@@ -5,6 +5,7 @@
 
 package org.geoserver.wps;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
@@ -29,7 +30,6 @@ import net.opengis.wps10.ProcessOfferingsType;
 import net.opengis.wps10.WPSCapabilitiesType;
 import net.opengis.wps10.Wps10Factory;
 
-import org.eclipse.emf.common.util.ECollections;
 import org.geoserver.config.SettingsInfo;
 import org.geoserver.ows.Ows11Util;
 import org.geoserver.ows.util.RequestUtils;
@@ -140,30 +140,16 @@ public class GetCapabilities {
         ProcessOfferingsType po = wpsf.createProcessOfferingsType();
         caps.setProcessOfferings(po);
 
-        // gather the process list
-        for (ProcessFactory pf : GeoServerProcessors.getProcessFactories()) {
-            for (Name name : pf.getNames()) {
-                ProcessBriefType p = wpsf.createProcessBriefType();
-                p.setProcessVersion(pf.getVersion(name));
-                po.getProcess().add(p);
-
-                p.setIdentifier(Ows11Util.code(name));
-                p.setTitle(Ows11Util.languageString(pf.getTitle(name)));
-                p.setAbstract(Ows11Util.languageString(pf.getDescription(name)));
+        // gather the process list, scanning all the factories is expensive, use the cache
+        ProcessMetadataCache cache = ProcessMetadataCache.get(context);
+        List<ProcessBriefType> briefs = cache != null ? cache.getProcessBriefs() : null;
+        if (briefs == null) {
+            briefs = processBriefs(wpsf);
+            if (cache != null) {
+                cache.putProcessBriefs(briefs);
             }
         }
-        // sort it
-        ECollections.sort(po.getProcess(), new Comparator() {
-
-            public int compare(Object o1, Object o2) {
-                ProcessBriefType pb1 = (ProcessBriefType) o1;
-                ProcessBriefType pb2 = (ProcessBriefType) o2;
-                
-                final String id1 = pb1.getIdentifier().getValue();
-                final String id2 = pb2.getIdentifier().getValue();
-                return id1.compareTo(id2);
-            }
-        });
+        po.getProcess().addAll(briefs);
 
         LanguagesType1 languages = wpsf.createLanguagesType1();
         caps.setLanguages(languages);
@@ -182,6 +168,34 @@ public class GetCapabilities {
 
     
 
+    /**
+     * Builds the sorted list of available processes
+     */
+    List<ProcessBriefType> processBriefs(Wps10Factory wpsf) {
+        List<ProcessBriefType> briefs = new ArrayList<ProcessBriefType>();
+        for (ProcessFactory pf : GeoServerProcessors.getProcessFactories()) {
+            for (Name name : pf.getNames()) {
+                ProcessBriefType p = wpsf.createProcessBriefType();
+                p.setProcessVersion(pf.getVersion(name));
+                briefs.add(p);
+
+                p.setIdentifier(Ows11Util.code(name));
+                p.setTitle(Ows11Util.languageString(pf.getTitle(name)));
+                p.setAbstract(Ows11Util.languageString(pf.getDescription(name)));
+            }
+        }
+        // sort it
+        Collections.sort(briefs, new Comparator<ProcessBriefType>() {
+
+            public int compare(ProcessBriefType pb1, ProcessBriefType pb2) {
+                final String id1 = pb1.getIdentifier().getValue();
+                final String id2 = pb2.getIdentifier().getValue();
+                return id1.compareTo(id2);
+            }
+        });
+        return briefs;
+    }
+
     ResponsiblePartySubsetType responsibleParty(SettingsInfo settings, Ows11Factory f) {
         ResponsiblePartySubsetType rp = f.createResponsiblePartySubsetType();
         return rp;
@@ -4,6 +4,8 @@ import java.io.File;
 
 import net.opengis.wps10.ExecuteResponseType;
 
+import org.geoserver.wps.executor.ExecutionStatus;
+import org.geoserver.wps.executor.ExecutionStatus.ProcessState;
 import org.geoserver.wps.executor.WPSExecutionManager;
 
 public class GetStatus {
@@ -24,6 +26,21 @@ public class GetStatus {
         // otherwise check for a stored response
         File storedResponse = executionManager.getStoredResponse(request.getExecutionId());
         if (storedResponse == null || !storedResponse.exists()) {
+            // was it lost in a server restart?
+            ExecutionStatus recorded = executionManager.getRecordedStatus(request
+                    .getExecutionId());
+            if (recorded != null && recorded.getPhase() == ProcessState.INTERRUPTED) {
+                throw new WPSException("Execution " + request.getExecutionId() + " of process "
+                        + recorded.getProcessName().getURI()
+                        + " was interrupted by a server restart and did not complete");
+            } else if (recorded != null && recorded.getPhase() == ProcessState.CANCELLED) {
+                throw new WPSException("Execution " + request.getExecutionId() + " of process "
+                        + recorded.getProcessName().getURI() + " was cancelled");
+            } else if (recorded != null && recorded.getPhase() == ProcessState.FAILED) {
+                throw new WPSException("Execution " + request.getExecutionId() + " of process "
+                        + recorded.getProcessName().getURI() + " failed",
+                        recorded.getException());
+            }
             throw new WPSException("Unknown execution id " + request.getExecutionId()
                     + ", either the execution was never submitted or too much time "
                     + "elapsed since the process completed");
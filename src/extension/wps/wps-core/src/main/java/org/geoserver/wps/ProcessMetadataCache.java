@@ -0,0 +1,135 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.opengis.wps10.ProcessBriefType;
+import net.opengis.wps10.ProcessDescriptionType;
+
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.wps.ppio.ProcessParameterIO;
+import org.geotools.data.Parameter;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+/**
+ * Caches the process metadata that is expensive to compute, as it requires scanning and
+ * introspecting all the process factories: the process list used by GetCapabilities, the process
+ * descriptions used by DescribeProcess, and the {@link ProcessParameterIO} matching each process
+ * parameter.
+ * <p>
+ * The cached EMF objects are never handed out directly, callers get copies they can freely attach
+ * to their response. The cache is cleared when the process filters change, see
+ * {@link DisabledProcessesSelector}, and when the application context is refreshed.
+ * </p>
+ */
+public class ProcessMetadataCache implements ApplicationListener<ApplicationEvent> {
+
+    volatile List<ProcessBriefType> processBriefs;
+
+    ConcurrentHashMap<String, ProcessDescriptionType> descriptions = new ConcurrentHashMap<String, ProcessDescriptionType>();
+
+    ConcurrentHashMap<List<Object>, List<ProcessParameterIO>> ppios = new ConcurrentHashMap<List<Object>, List<ProcessParameterIO>>();
+
+    /**
+     * Looks up the cache in the application context
+     *
+     * @param context
+     * @return The cache, or null if not available
+     */
+    public static ProcessMetadataCache get(ApplicationContext context) {
+        if (context != null) {
+            return GeoServerExtensions.bean(ProcessMetadataCache.class, context);
+        } else {
+            return GeoServerExtensions.bean(ProcessMetadataCache.class);
+        }
+    }
+
+    /**
+     * Returns a copy of the cached process list, or null if not cached
+     *
+     * @return
+     */
+    public List<ProcessBriefType> getProcessBriefs() {
+        List<ProcessBriefType> briefs = processBriefs;
+        if (briefs == null) {
+            return null;
+        }
+        return new ArrayList<ProcessBriefType>(EcoreUtil.copyAll(briefs));
+    }
+
+    public void putProcessBriefs(List<ProcessBriefType> briefs) {
+        processBriefs = new ArrayList<ProcessBriefType>(EcoreUtil.copyAll(briefs));
+    }
+
+    /**
+     * Returns a copy of the cached description for the specified process identifier, or null if
+     * not cached
+     *
+     * @param identifier
+     * @return
+     */
+    public ProcessDescriptionType getProcessDescription(String identifier) {
+        ProcessDescriptionType pd = descriptions.get(identifier);
+        if (pd == null) {
+            return null;
+        }
+        return (ProcessDescriptionType) EcoreUtil.copy(pd);
+    }
+
+    public void putProcessDescription(String identifier, ProcessDescriptionType pd) {
+        descriptions.put(identifier, (ProcessDescriptionType) EcoreUtil.copy(pd));
+    }
+
+    /**
+     * Returns the {@link ProcessParameterIO} that can handle the specified parameter, or null if
+     * not cached
+     *
+     * @param p
+     * @return
+     */
+    public List<ProcessParameterIO> getPPIOs(Parameter<?> p) {
+        List<ProcessParameterIO> result = ppios.get(ppioKey(p));
+        if (result == null) {
+            return null;
+        }
+        return new ArrayList<ProcessParameterIO>(result);
+    }
+
+    public void putPPIOs(Parameter<?> p, List<ProcessParameterIO> matches) {
+        ppios.put(ppioKey(p), new ArrayList<ProcessParameterIO>(matches));
+    }
+
+    /**
+     * The PPIO lookup depends only on the parameter key and type
+     */
+    List<Object> ppioKey(Parameter<?> p) {
+        return Arrays.asList((Object) p.key, p.type);
+    }
+
+    /**
+     * Drops all the cached metadata
+     */
+    public void clear() {
+        processBriefs = null;
+        descriptions.clear();
+        ppios.clear();
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationEvent event) {
+        if (event instanceof ContextRefreshedEvent) {
+            // new PPIO and process factories might have been registered
+            clear();
+        }
+    }
+}
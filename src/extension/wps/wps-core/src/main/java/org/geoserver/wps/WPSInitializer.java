@@ -84,11 +84,12 @@ public class WPSInitializer implements GeoServerInitializer {
 
         // the max number of asynch proceesses
         int maxAsynch = info.getMaxAsynchronousProcesses();
-        if (maxAsynch > 0) {
-            processManager.setMaxAsynchronousProcesses(maxAsynch);
-        } else {
-            processManager.setMaxAsynchronousProcesses(defaultMaxProcesses);
+        if (maxAsynch <= 0) {
+            maxAsynch = defaultMaxProcesses;
         }
+        processManager.setMaxAsynchronousProcesses(maxAsynch);
+        // one stored response writer per asynch process that can be running
+        executionManager.setMaxStoredResponseWriters(maxAsynch);
 
         lookupNewProcessGroups(info, geoServer);
     }
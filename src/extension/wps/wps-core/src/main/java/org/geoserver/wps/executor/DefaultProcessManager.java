@@ -1,6 +1,7 @@
 package org.geoserver.wps.executor;
 
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
@@ -32,6 +33,8 @@ import org.springframework.context.event.ContextRefreshedEvent;
 
 public class DefaultProcessManager implements ProcessManager, ExtensionPriority, ApplicationListener<ApplicationEvent> {
 
+    static final Logger LOGGER = Logging.getLogger(DefaultProcessManager.class);
+
     ConcurrentHashMap<String, ExecutionStatusEx> executions = new ConcurrentHashMap<String, DefaultProcessManager.ExecutionStatusEx>();
 
     ThreadPoolExecutor synchService;
@@ -92,20 +95,47 @@ public class DefaultProcessManager implements ProcessManager, ExtensionPriority,
     public Map<String, Object> submitChained(String executionId, Name processName,
             Map<String, Object> inputs) throws ProcessException {
         // straight execution, no thread pooling, we're already running in the parent process thread
-        ProcessListener listener = new ProcessListener(new ExecutionStatus(processName, executionId, ProcessState.RUNNING, 0));
+        ExecutionStatus step = new ExecutionStatus(processName, executionId, ProcessState.RUNNING, 0);
+        ProcessListener listener = new ProcessListener(step);
         ProcessFactory pf = GeoServerProcessors.createProcessFactory(processName);
         if (pf == null) {
             throw new WPSException("No such process: " + processName);
         }
 
+        // the chained process shares the execution id of the process that is using its outputs,
+        // track it as one of its steps
+        ExecutionStatusEx parent = executions.get(executionId);
+        if (parent != null) {
+            parent.steps.add(step);
+        }
+
         // execute the process in the same thread as the caller
-        Process p = pf.create(processName);
-        Map<String, Object> result = p.execute(inputs, listener);
-        if (listener.exception != null) {
-            throw new ProcessException("Process failed: " + listener.exception.getMessage(),
-                    listener.exception);
+        step.setStartTime(new Date());
+        try {
+            Process p = pf.create(processName);
+            Map<String, Object> result = p.execute(inputs, listener);
+            if (listener.exception != null) {
+                throw new ProcessException("Process failed: " + listener.exception.getMessage(),
+                        listener.exception);
+            }
+            return result;
+        } catch (RuntimeException e) {
+            // do not override a cancellation
+            if (step.getPhase() == ProcessState.RUNNING) {
+                step.setPhase(ProcessState.FAILED);
+            }
+            step.setException(e);
+            throw e;
+        } finally {
+            step.setCompletionTime(new Date());
+            if (step.getPhase() == ProcessState.RUNNING) {
+                step.setPhase(ProcessState.COMPLETED);
+            }
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Chained process " + processName.getURI() + " in execution "
+                        + executionId + " took " + step.getElapsedTime() + "ms");
+            }
         }
-        return result;
     }
 
     @Override
@@ -201,6 +231,7 @@ public class DefaultProcessManager implements ProcessManager, ExtensionPriority,
         public Map<String, Object> call() throws Exception {
             resourceManager.setCurrentExecutionId(status.getExecutionId());
             status.setPhase(ProcessState.RUNNING);
+            status.setStartTime(new Date());
             ProcessListener listener = status.listener;
             Name processName = status.getProcessName();
             ProcessFactory pf = GeoServerProcessors.createProcessFactory(processName);
@@ -219,6 +250,7 @@ public class DefaultProcessManager implements ProcessManager, ExtensionPriority,
                 }
                 return result;
             } finally {
+                status.setCompletionTime(new Date());
                 // update status unless cancelled
                 if (status.getPhase() == ProcessState.RUNNING) {
                     status.setPhase(ProcessState.COMPLETED);
@@ -244,7 +276,7 @@ public class DefaultProcessManager implements ProcessManager, ExtensionPriority,
         }
 
         public ExecutionStatus getStatus() {
-            return new ExecutionStatus(processName, executionId, phase, progress);
+            return new ExecutionStatus(this);
         }
     }
 
@@ -4,8 +4,10 @@
  */
 package org.geoserver.wps.executor;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.util.Date;
 import java.util.Iterator;
@@ -258,12 +260,13 @@ public class ExecuteResponseBuilder {
                 File file = resourceManager.getOutputFile(executionId, key + "." + cppio.getFileExtension());
                 
                 // write out the file
-                FileOutputStream fos = null;
+                OutputStream os = null;
                 try {
-                    fos = new FileOutputStream(file);
-                    cppio.encode(o, fos);
+                    os = new BufferedOutputStream(new FileOutputStream(file));
+                    cppio.encode(o, os);
+                    os.flush();
                 } finally {
-                    IOUtils.closeQuietly(fos);
+                    IOUtils.closeQuietly(os);
                 }
                 
                 // create the link
@@ -356,6 +359,8 @@ public class ExecuteResponseBuilder {
     private ServiceException getException(ProcessState phase) {
         if (phase == ProcessState.CANCELLED) {
             return new WPSException("Process was cancelled by the administrator");
+        } else if (phase == ProcessState.INTERRUPTED) {
+            return new WPSException("Process execution was interrupted by a server restart");
         } else {
             return new WPSException("Process failed during execution", exception);
         }
@@ -4,6 +4,11 @@
  */
 package org.geoserver.wps.executor;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 import org.opengis.feature.type.Name;
 
 /**
@@ -15,7 +20,15 @@ import org.opengis.feature.type.Name;
 public class ExecutionStatus {
 
     public enum ProcessState {
-        QUEUED, RUNNING, COMPLETED, CANCELLED
+        QUEUED, RUNNING, COMPLETED, CANCELLED,
+        /**
+         * The execution terminated with an error
+         */
+        FAILED,
+        /**
+         * The execution was still queued or running when the server was shut down
+         */
+        INTERRUPTED
     };
 
     /**
@@ -37,7 +50,27 @@ public class ExecutionStatus {
      * Process execution status
      */
     float progress;
-    
+
+    /**
+     * When the process started running, null if it did not start yet
+     */
+    Date startTime;
+
+    /**
+     * When the process stopped running, null if it did not stop yet
+     */
+    Date completionTime;
+
+    /**
+     * The chained processes run to compute the inputs of this one, in start order
+     */
+    List<ExecutionStatus> steps = new CopyOnWriteArrayList<ExecutionStatus>();
+
+    /**
+     * The error that made the execution fail, if any
+     */
+    Throwable exception;
+
     public ExecutionStatus(Name processName, String executionId, ProcessState phase, float progress) {
         this.processName = processName;
         this.executionId = executionId;
@@ -45,6 +78,23 @@ public class ExecutionStatus {
         this.progress = progress;
     }
 
+    /**
+     * Builds a snapshot of the specified status
+     * 
+     * @param other
+     */
+    public ExecutionStatus(ExecutionStatus other) {
+        this(other.processName, other.executionId, other.phase, other.progress);
+        this.startTime = other.startTime;
+        this.completionTime = other.completionTime;
+        this.exception = other.exception;
+        List<ExecutionStatus> stepsCopy = new ArrayList<ExecutionStatus>();
+        for (ExecutionStatus step : other.steps) {
+            stepsCopy.add(new ExecutionStatus(step));
+        }
+        this.steps.addAll(stepsCopy);
+    }
+
     public Name getProcessName() {
         return processName;
     }
@@ -77,4 +127,52 @@ public class ExecutionStatus {
         this.progress = progress;
     }
 
+    public Date getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(Date startTime) {
+        this.startTime = startTime;
+    }
+
+    public Date getCompletionTime() {
+        return completionTime;
+    }
+
+    public void setCompletionTime(Date completionTime) {
+        this.completionTime = completionTime;
+    }
+
+    public Throwable getException() {
+        return exception;
+    }
+
+    public void setException(Throwable exception) {
+        this.exception = exception;
+    }
+
+    /**
+     * Returns the time spent running so far, in milliseconds, or -1 if the process did not start
+     * yet
+     * 
+     * @return
+     */
+    public long getElapsedTime() {
+        if (startTime == null) {
+            return -1;
+        }
+        Date end = completionTime != null ? completionTime : new Date();
+        return end.getTime() - startTime.getTime();
+    }
+
+    /**
+     * Returns the status of the chained processes that have been run to compute this process
+     * inputs, each one with its own timings
+     * 
+     * @return
+     */
+    public List<ExecutionStatus> getSteps() {
+        return steps;
+    }
+
 }
@@ -0,0 +1,273 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wps.executor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+import org.geoserver.wps.WPSStorageCleaner;
+import org.geoserver.wps.executor.ExecutionStatus.ProcessState;
+import org.geotools.feature.NameImpl;
+import org.geotools.process.ProcessException;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.type.Name;
+
+/**
+ * Keeps a durable record of the asynchronous executions in the WPS temporary storage, one
+ * <code>&lt;executionId&gt;.status</code> property file per execution, so that the status of an
+ * execution survives a server restart.
+ * <p>
+ * The status files of executions that are still queued or running are locked in the
+ * {@link WPSStorageCleaner}, they become eligible for expiration, along with the stored response
+ * and the reference outputs, only once the execution is over.
+ * </p>
+ */
+public class ExecutionStatusStore {
+
+    static final Logger LOGGER = Logging.getLogger(ExecutionStatusStore.class);
+
+    static final String STATUS_EXTENSION = ".status";
+
+    static final String EXECUTION_ID = "executionId";
+
+    static final String PROCESS_NAMESPACE = "processNamespace";
+
+    static final String PROCESS_NAME = "processName";
+
+    static final String PHASE = "phase";
+
+    static final String PROGRESS = "progress";
+
+    static final String OUTPUTS = "outputs";
+
+    static final String EXCEPTION = "exception";
+
+    WPSStorageCleaner cleaner;
+
+    public ExecutionStatusStore(WPSStorageCleaner cleaner) {
+        this.cleaner = cleaner;
+    }
+
+    /**
+     * Saves the specified status, replacing the previous record for the same execution, if any
+     *
+     * @param status
+     */
+    public void save(ExecutionStatus status) {
+        save(status, null);
+    }
+
+    /**
+     * Saves the specified status along with the names of the output files generated so far
+     *
+     * @param status
+     * @param outputs The names of the files stored in the execution output directory, or null
+     */
+    public synchronized void save(ExecutionStatus status, List<String> outputs) {
+        Properties props = new Properties();
+        props.setProperty(EXECUTION_ID, status.getExecutionId());
+        Name name = status.getProcessName();
+        if (name.getNamespaceURI() != null) {
+            props.setProperty(PROCESS_NAMESPACE, name.getNamespaceURI());
+        }
+        props.setProperty(PROCESS_NAME, name.getLocalPart());
+        props.setProperty(PHASE, status.getPhase().name());
+        props.setProperty(PROGRESS, String.valueOf(status.getProgress()));
+        if (status.getException() != null) {
+            Throwable exception = status.getException();
+            props.setProperty(EXCEPTION, exception.getMessage() != null ? exception.getMessage()
+                    : exception.getClass().getName());
+        }
+        if (outputs != null && !outputs.isEmpty()) {
+            StringBuilder sb = new StringBuilder();
+            for (String output : outputs) {
+                if (sb.length() > 0) {
+                    sb.append(',');
+                }
+                sb.append(output);
+            }
+            props.setProperty(OUTPUTS, sb.toString());
+        }
+
+        File file = getStatusFile(status.getExecutionId());
+        // lock before writing, the cleaner could otherwise kick in between the two operations
+        boolean active = isActive(status.getPhase());
+        if (active) {
+            cleaner.lock(file);
+        }
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        OutputStream os = null;
+        try {
+            os = new FileOutputStream(tmp);
+            props.store(os, null);
+            os.close();
+            os = null;
+            if (!tmp.renameTo(file)) {
+                // some platforms do not allow renaming over an existing file
+                file.delete();
+                if (!tmp.renameTo(file)) {
+                    LOGGER.log(Level.WARNING, "Failed to rename " + tmp + " to " + file);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to store the status of execution "
+                    + status.getExecutionId(), e);
+        } finally {
+            IOUtils.closeQuietly(os);
+            tmp.delete();
+            if (!active) {
+                cleaner.unlock(file);
+            }
+        }
+    }
+
+    /**
+     * Returns the last recorded status for the specified execution, or null if the execution is
+     * unknown (or its record expired)
+     *
+     * @param executionId
+     * @return
+     */
+    public ExecutionStatus get(String executionId) {
+        return toStatus(load(getStatusFile(executionId)));
+    }
+
+    /**
+     * Returns the names of the output files recorded for the specified execution
+     *
+     * @param executionId
+     * @return
+     */
+    public List<String> getOutputs(String executionId) {
+        Properties props = load(getStatusFile(executionId));
+        if (props == null || props.getProperty(OUTPUTS) == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<String>();
+        for (String output : props.getProperty(OUTPUTS).split(",")) {
+            result.add(output);
+        }
+        return result;
+    }
+
+    /**
+     * Returns all the recorded execution statuses
+     *
+     * @return
+     */
+    public List<ExecutionStatus> list() {
+        List<ExecutionStatus> result = new ArrayList<ExecutionStatus>();
+        File[] files = cleaner.getStorage().listFiles();
+        if (files == null) {
+            return result;
+        }
+        for (File file : files) {
+            if (file.isFile() && file.getName().endsWith(STATUS_EXTENSION)) {
+                ExecutionStatus status = toStatus(load(file));
+                if (status != null) {
+                    result.add(status);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes the record for the specified execution
+     *
+     * @param executionId
+     */
+    public synchronized void remove(String executionId) {
+        File file = getStatusFile(executionId);
+        cleaner.unlock(file);
+        file.delete();
+    }
+
+    /**
+     * Marks as {@link ProcessState#INTERRUPTED} all the executions that were recorded as queued or
+     * running, to be called on startup, when no execution can be in flight. The executions in the
+     * <code>skip</code> list are left untouched.
+     *
+     * @param skip Execution ids that are known to be in flight
+     * @return The number of executions that have been marked as interrupted
+     */
+    public int markInterrupted(Iterable<String> skip) {
+        List<String> inFlight = new ArrayList<String>();
+        for (String id : skip) {
+            inFlight.add(id);
+        }
+        int count = 0;
+        for (ExecutionStatus status : list()) {
+            if (isActive(status.getPhase()) && !inFlight.contains(status.getExecutionId())) {
+                status.setPhase(ProcessState.INTERRUPTED);
+                save(status, getOutputs(status.getExecutionId()));
+                count++;
+            }
+        }
+        return count;
+    }
+
+    File getStatusFile(String executionId) {
+        return new File(cleaner.getStorage(), executionId + STATUS_EXTENSION);
+    }
+
+    boolean isActive(ProcessState phase) {
+        return phase == ProcessState.QUEUED || phase == ProcessState.RUNNING;
+    }
+
+    Properties load(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        InputStream is = null;
+        try {
+            is = new FileInputStream(file);
+            Properties props = new Properties();
+            props.load(is);
+            return props;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read the execution status file " + file, e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    ExecutionStatus toStatus(Properties props) {
+        if (props == null || props.getProperty(EXECUTION_ID) == null
+                || props.getProperty(PHASE) == null) {
+            return null;
+        }
+        ProcessState phase;
+        try {
+            phase = ProcessState.valueOf(props.getProperty(PHASE));
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Unrecognized phase in execution status record: "
+                    + props.getProperty(PHASE));
+            return null;
+        }
+        Name name = new NameImpl(props.getProperty(PROCESS_NAMESPACE),
+                props.getProperty(PROCESS_NAME));
+        float progress = Float.parseFloat(props.getProperty(PROGRESS, "0"));
+        ExecutionStatus status = new ExecutionStatus(name, props.getProperty(EXECUTION_ID), phase,
+                progress);
+        if (props.getProperty(EXCEPTION) != null) {
+            status.setException(new ProcessException(props.getProperty(EXCEPTION)));
+        }
+        return status;
+    }
+
+}
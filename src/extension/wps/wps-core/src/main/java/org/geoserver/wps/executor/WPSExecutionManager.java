@@ -4,15 +4,20 @@
  */
 package org.geoserver.wps.executor;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -52,7 +57,11 @@ public class WPSExecutionManager implements ApplicationContextAware,
 
     private static final Logger LOGGER = Logging.getLogger(WPSExecutionManager.class);
 
-    private ExecutorService storedResponseWriters = Executors.newCachedThreadPool();
+    /**
+     * Each writer waits for the output of one asynchronous process, there is no point in having
+     * more of them than asynchronous processes that can run in parallel
+     */
+    private ThreadPoolExecutor storedResponseWriters;
 
     ApplicationContext applicationContext;
 
@@ -64,8 +73,13 @@ public class WPSExecutionManager implements ApplicationContextAware,
 
     private int connectionTimeout;
 
+    private ExecutionStatusStore statusStore;
+
+    private boolean recoveryDone;
+
     public WPSExecutionManager(WPSResourceManager resourceManager) {
         this.resourceManager = resourceManager;
+        setMaxStoredResponseWriters(Runtime.getRuntime().availableProcessors() * 2);
     }
 
     /**
@@ -103,6 +117,8 @@ public class WPSExecutionManager implements ApplicationContextAware,
         contexts.put(executionId, context);
         processManager.submit(executionId, processName, inputs, request.isAsynchronous());
         if (request.isAsynchronous()) {
+            context.persistStatus(new ExecutionStatus(processName, executionId,
+                    ProcessState.QUEUED, 0f), null);
             // ah, we need to store the output at the end, schedule a thread that will
             // do as soon as the process is done executing
             storedResponseWriters.submit(new Runnable() {
@@ -133,6 +149,21 @@ public class WPSExecutionManager implements ApplicationContextAware,
         return context.getStatusResponse();
     }
 
+    /**
+     * Returns the last recorded status for an asynch execution that is no longer in flight, or null
+     * if the execution is unknown. This is the only trace left of executions that were interrupted
+     * by a server restart.
+     * 
+     * @param executionId
+     * @return
+     */
+    public ExecutionStatus getRecordedStatus(String executionId) {
+        if (statusStore == null) {
+            return null;
+        }
+        return statusStore.get(executionId);
+    }
+
     /**
      * Returns the stored response file for the specified execution (which has already completed its
      * lifecycle)
@@ -156,6 +187,7 @@ public class WPSExecutionManager implements ApplicationContextAware,
     public void cancel(String executionId) {
         AsynchronousProcessContext context = contexts.get(executionId);
         if (context != null) {
+            context.cancelled = true;
             context.processManager.cancel(executionId);
         }
     }
@@ -209,6 +241,35 @@ public class WPSExecutionManager implements ApplicationContextAware,
         this.connectionTimeout = connectionTimeout;
     }
 
+    /**
+     * Sets the max number of threads writing out the stored responses of asynchronous processes
+     * 
+     * @param maxStoredResponseWriters
+     */
+    public void setMaxStoredResponseWriters(int maxStoredResponseWriters) {
+        if (storedResponseWriters == null) {
+            storedResponseWriters = new ThreadPoolExecutor(maxStoredResponseWriters,
+                    maxStoredResponseWriters, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+            // the writers are idle most of the time, don't keep them around
+            storedResponseWriters.allowCoreThreadTimeOut(true);
+        } else if (maxStoredResponseWriters > storedResponseWriters.getMaximumPoolSize()) {
+            storedResponseWriters.setMaximumPoolSize(maxStoredResponseWriters);
+            storedResponseWriters.setCorePoolSize(maxStoredResponseWriters);
+        } else {
+            storedResponseWriters.setCorePoolSize(maxStoredResponseWriters);
+            storedResponseWriters.setMaximumPoolSize(maxStoredResponseWriters);
+        }
+    }
+
+    public ExecutionStatusStore getStatusStore() {
+        return statusStore;
+    }
+
+    public void setStatusStore(ExecutionStatusStore statusStore) {
+        this.statusStore = statusStore;
+    }
+
     @Override
     public void setApplicationContext(ApplicationContext context) throws BeansException {
         this.applicationContext = context;
@@ -217,11 +278,25 @@ public class WPSExecutionManager implements ApplicationContextAware,
     @Override
     public void onApplicationEvent(ApplicationEvent event) {
         if (event instanceof ContextRefreshedEvent) {
-            if (storedResponseWriters == null) {
-                storedResponseWriters = Executors.newCachedThreadPool();
-            } else if (event instanceof ContextClosedEvent) {
-                storedResponseWriters.shutdownNow();
-            }
+            recoverInterruptedExecutions();
+        } else if (event instanceof ContextClosedEvent) {
+            storedResponseWriters.shutdownNow();
+        }
+    }
+
+    /**
+     * Marks the executions that were left queued or running by a previous run of the server as
+     * interrupted. Child contexts also fire refresh events, the recovery has to happen only once.
+     */
+    synchronized void recoverInterruptedExecutions() {
+        if (recoveryDone || statusStore == null) {
+            return;
+        }
+        recoveryDone = true;
+        int count = statusStore.markInterrupted(contexts.keySet());
+        if (count > 0) {
+            LOGGER.info(count + " asynchronous WPS executions were interrupted by the "
+                    + "server shutdown and have been marked as such");
         }
     }
 
@@ -237,6 +312,8 @@ public class WPSExecutionManager implements ApplicationContextAware,
 
         volatile Exception exception;
 
+        volatile boolean cancelled;
+
         Date started;
 
         private float inputWeight;
@@ -245,6 +322,8 @@ public class WPSExecutionManager implements ApplicationContextAware,
 
         private float processWeight;
 
+        private ExecutionStatus lastPersisted;
+
         public AsynchronousProcessContext(ExecuteRequest request, String executionId,
                 LazyInputMap inputs, ProcessManager processManager,
                 ApplicationContext applicationContext) {
@@ -283,7 +362,7 @@ public class WPSExecutionManager implements ApplicationContextAware,
             if (inner == null || inner.phase == ProcessState.COMPLETED) {
                 if (exception != null) {
                     // failed
-                    return new ExecutionStatus(request.getProcessName(), executionId, ProcessState.COMPLETED, 1f);
+                    return new ExecutionStatus(request.getProcessName(), executionId, ProcessState.FAILED, 1f);
                 } else {
                     // Still running, it's writing the output. Right now we have no way to track the
                     // output progress, so return 66% complete
@@ -314,11 +393,15 @@ public class WPSExecutionManager implements ApplicationContextAware,
                     applicationContext, started);
             responseBuilder.setExecutionId(executionId);
             responseBuilder.setStatus(overallStatus);
+            if (request.isStatusEnabled()) {
+                persistStatus(overallStatus, null);
+            }
             responseBuilder.setException(exception);
             return responseBuilder.build();
         }
 
         public void writeResponseFile() {
+            Exception failure = null;
             try {
                 resourceManager.setCurrentExecutionId(executionId);
                 ExecuteResponseBuilder responseBuilder = new ExecuteResponseBuilder(
@@ -327,8 +410,11 @@ public class WPSExecutionManager implements ApplicationContextAware,
                 try {
                     Map<String, Object> outputs = processManager.getOutput(executionId, -1);
                     responseBuilder.setOutputs(outputs);
+                    persistStatus(new ExecutionStatus(request.getProcessName(), executionId,
+                            ProcessState.RUNNING, 0.66f), null);
                 } catch (Exception exception) {
                     LOGGER.log(Level.SEVERE, "Request failed during execution", exception);
+                    failure = exception;
                     responseBuilder.setException(exception);
                 }
 
@@ -341,6 +427,7 @@ public class WPSExecutionManager implements ApplicationContextAware,
                     // maybe it was an exception during output encoding, try to write out
                     // the error if possible
                     LOGGER.log(Level.SEVERE, "Request failed during output encoding", e);
+                    failure = e;
                     responseBuilder.setException(e);
                     writeOutResponse(responseBuilder, output);
                 }
@@ -349,22 +436,89 @@ public class WPSExecutionManager implements ApplicationContextAware,
                 LOGGER.log(Level.SEVERE,
                         "Failed to write out the stored WPS response for executionId "
                                 + executionId, e);
-
+                if (failure == null) {
+                    failure = e;
+                }
             } finally {
+                // the stored response is now the reference, but keep track of how the execution
+                // ended and of the outputs it produced
+                complete(failure, listOutputs());
                 contexts.remove(executionId);
             }
         }
 
+        /**
+         * Returns the status recorded once the execution is over, successful only if the outputs
+         * were computed and the stored response written out
+         */
+        ExecutionStatus getFinalStatus(Exception failure) {
+            if (failure == null) {
+                return new ExecutionStatus(request.getProcessName(), executionId,
+                        ProcessState.COMPLETED, 1f);
+            }
+            float progress = lastPersisted != null ? lastPersisted.getProgress() : 0f;
+            ExecutionStatus status = new ExecutionStatus(request.getProcessName(), executionId,
+                    cancelled ? ProcessState.CANCELLED : ProcessState.FAILED, progress);
+            if (!cancelled) {
+                status.setException(failure);
+            }
+            return status;
+        }
+
+        /**
+         * Publishes the outcome of the execution and records its final status, atomically, so
+         * that a concurrent status poll cannot persist a terminal status of its own first
+         */
+        synchronized void complete(Exception failure, List<String> outputs) {
+            exception = failure;
+            if (statusStore != null) {
+                ExecutionStatus status = getFinalStatus(failure);
+                statusStore.save(status, outputs);
+                lastPersisted = status;
+            }
+        }
+
+        /**
+         * Records the status in the durable store. Status polling can be frequent, only actual
+         * changes are written out.
+         */
+        synchronized void persistStatus(ExecutionStatus status, List<String> outputs) {
+            if (statusStore == null) {
+                return;
+            }
+            // a late status poll must not resurrect an execution that is over
+            if (lastPersisted != null && !statusStore.isActive(lastPersisted.getPhase())) {
+                return;
+            }
+            if (lastPersisted != null && lastPersisted.getPhase() == status.getPhase()
+                    && Math.abs(lastPersisted.getProgress() - status.getProgress()) < 0.01f
+                    && outputs == null) {
+                return;
+            }
+            statusStore.save(status, outputs);
+            lastPersisted = status;
+        }
+
+        List<String> listOutputs() {
+            File outputDirectory = resourceManager.getStoredResponseFile(executionId)
+                    .getParentFile();
+            String[] names = new File(outputDirectory, executionId).list();
+            if (names == null) {
+                return Collections.emptyList();
+            }
+            return Arrays.asList(names);
+        }
+
         void writeOutResponse(ExecuteResponseBuilder responseBuilder, File output)
                 throws IOException {
-            FileOutputStream fos = null;
+            OutputStream fos = null;
             File tmpOutput = new File(output.getParent(), "tmp" + output.getName());
             try {
                 ExecuteResponseType response = responseBuilder.build();
                 XmlObjectEncodingResponse encoder = new XmlObjectEncodingResponse(
                         ExecuteResponseType.class, "ExecuteResponse", WPSConfiguration.class);
 
-                fos = new FileOutputStream(tmpOutput);
+                fos = new BufferedOutputStream(new FileOutputStream(tmpOutput));
                 encoder.write(response, fos, null);
                 fos.flush();
                 fos.close();
@@ -5,6 +5,7 @@
 package org.geoserver.wps.gs;
 
 import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.image.DataBuffer;
 import java.awt.image.RenderedImage;
@@ -28,6 +29,7 @@ import javax.media.jai.iterator.RandomIterFactory;
 
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.referencing.CRS;
+import org.geotools.referencing.operation.transform.ConcatenatedTransform;
 import org.opengis.metadata.spatial.PixelOrientation;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
@@ -68,6 +70,12 @@ public class GridCoverage2DRIA extends GeometricOpImage {
 
     private final MathTransform dst2srcCRSTransform;
 
+    /** The full transformation from destination grid to source grid */
+    private final MathTransform gridWarp;
+
+    /** {@link #gridWarp} as an affine transform, or {@code null} if it is not affine */
+    private final AffineTransform affineWarp;
+
     /** Color table representing source's IndexColorModel. */
     private byte[][] ctable = null; // ETj: just for keeping compiler quiet: let's see if we really
 
@@ -153,6 +161,10 @@ public class GridCoverage2DRIA extends GeometricOpImage {
             throw new IllegalArgumentException("Can't create a transform between CRS", e);
         }
 
+        // concatenating simplifies the chain, down to a single affine transform when both grids
+        // share the CRS or are related by an affine CRS transform
+        gridWarp = ConcatenatedTransform.create(g2wd, dst2srcCRSTransform, w2gs);
+        affineWarp = gridWarp instanceof AffineTransform ? (AffineTransform) gridWarp : null;
     }
 
     @Override
@@ -396,7 +408,8 @@ public class GridCoverage2DRIA extends GeometricOpImage {
     /**
      * Warps a rectangle.
      * 
-     * Copied and adapted from WarpGeneralOpImage
+     * Copied and adapted from WarpGeneralOpImage. The warp for the whole destination rectangle is
+     * computed upfront, and used to access only the region of the source it maps to.
      */
     @Override
     protected void computeRect(PlanarImage[] sources, WritableRaster dest, Rectangle destRect) {
@@ -405,24 +418,65 @@ public class GridCoverage2DRIA extends GeometricOpImage {
 
         RasterAccessor d = new RasterAccessor(dest, destRect, formatTags[1], getColorModel());
 
+        final PlanarImage src = sources[0];
+
+        int lpad, rpad, tpad, bpad;
+        if (interp != null) {
+            lpad = interp.getLeftPadding();
+            rpad = interp.getRightPadding();
+            tpad = interp.getTopPadding();
+            bpad = interp.getBottomPadding();
+        } else {
+            lpad = rpad = tpad = bpad = 0;
+        }
+
+        // the area destination pixels shall map to in order to be computed from the source, and
+        // the source area that can be accessed to gather interpolation kernels
+        final Rectangle validArea;
+        final Rectangle sourceBounds;
+        if (extender != null) {
+            validArea = src.getBounds();
+            sourceBounds = new Rectangle(src.getMinX() - lpad, src.getMinY() - tpad,
+                    src.getWidth() + lpad + rpad, src.getHeight() + tpad + bpad);
+        } else {
+            validArea = new Rectangle(src.getMinX() + lpad, src.getMinY() + tpad, src.getWidth()
+                    - lpad - rpad, src.getHeight() - tpad - bpad);
+            sourceBounds = src.getBounds();
+        }
+
+        final float[] warpData = warpRect(d.getX(), d.getY(), d.getWidth(), d.getHeight(), null);
+
+        RandomIter iter = null;
+        Rectangle accessed = kernelBounds(warpData, validArea, lpad, tpad);
+        if (accessed != null) {
+            accessed = accessed.intersection(sourceBounds);
+            if (extender != null) {
+                iter = RandomIterFactory.create(src.getExtendedData(accessed, extender),
+                        accessed);
+            } else {
+                iter = RandomIterFactory.create(src, accessed);
+            }
+        }
+        // else no destination pixel maps inside the source, they'll all be set to background
+
         switch (d.getDataType()) {
         case DataBuffer.TYPE_BYTE:
-            computeRectByte(sources[0], d);
+            computeRectByte(iter, validArea, warpData, d);
             break;
         case DataBuffer.TYPE_USHORT:
-            computeRectUShort(sources[0], d);
+            computeRectUShort(iter, validArea, warpData, d);
             break;
         case DataBuffer.TYPE_SHORT:
-            computeRectShort(sources[0], d);
+            computeRectShort(iter, validArea, warpData, d);
             break;
         case DataBuffer.TYPE_INT:
-            computeRectInt(sources[0], d);
+            computeRectInt(iter, validArea, warpData, d);
             break;
         case DataBuffer.TYPE_FLOAT:
-            computeRectFloat(sources[0], d);
+            computeRectFloat(iter, validArea, warpData, d);
             break;
         case DataBuffer.TYPE_DOUBLE:
-            computeRectDouble(sources[0], d);
+            computeRectDouble(iter, validArea, warpData, d);
             break;
         }
 
@@ -432,38 +486,62 @@ public class GridCoverage2DRIA extends GeometricOpImage {
         }
     }
 
-    private void computeRectByte(PlanarImage src, RasterAccessor dst) {
-        int lpad, rpad, tpad, bpad;
-        if (interp != null) {
-            lpad = interp.getLeftPadding();
-            rpad = interp.getRightPadding();
-            tpad = interp.getTopPadding();
-            bpad = interp.getBottomPadding();
-        } else {
-            lpad = rpad = tpad = bpad = 0;
+    /**
+     * Computes the source region read by the interpolation kernels of the warped points falling
+     * inside {@code validArea}.
+     * 
+     * @return the source region, or {@code null} if no point falls inside {@code validArea}
+     */
+    private Rectangle kernelBounds(float[] warpData, Rectangle validArea, int lpad, int tpad) {
+        final int minX = validArea.x;
+        final int maxX = validArea.x + validArea.width;
+        final int minY = validArea.y;
+        final int maxY = validArea.y + validArea.height;
+
+        int minx = Integer.MAX_VALUE, miny = Integer.MAX_VALUE;
+        int maxx = Integer.MIN_VALUE, maxy = Integer.MIN_VALUE;
+        for (int i = 0; i < warpData.length; i += 2) {
+            // use the same mapping to integer coordinates than the compute methods
+            int xint = floor(warpData[i]);
+            int yint = floor(warpData[i + 1]);
+            if (xint < minX || xint >= maxX || yint < minY || yint >= maxY) {
+                continue;
+            }
+            if (xint < minx) {
+                minx = xint;
+            }
+            if (xint > maxx) {
+                maxx = xint;
+            }
+            if (yint < miny) {
+                miny = yint;
+            }
+            if (yint > maxy) {
+                maxy = yint;
+            }
         }
-
-        int minX, maxX, minY, maxY;
-        RandomIter iter;
-        if (extender != null) {
-            minX = src.getMinX();
-            maxX = src.getMaxX();
-            minY = src.getMinY();
-            maxY = src.getMaxY();
-            Rectangle bounds = new Rectangle(src.getMinX() - lpad, src.getMinY() - tpad, src
-                    .getWidth()
-                    + lpad + rpad, src.getHeight() + tpad + bpad);
-            iter = RandomIterFactory.create(src.getExtendedData(bounds, extender), bounds);
-        } else {
-            minX = src.getMinX() + lpad;
-            maxX = src.getMaxX() - rpad;
-            minY = src.getMinY() + tpad;
-            maxY = src.getMaxY() - bpad;
-            iter = RandomIterFactory.create(src, src.getBounds());
+        if (minx > maxx) {
+            return null;
         }
+        final int kwidth = interp == null ? 1 : interp.getWidth();
+        final int kheight = interp == null ? 1 : interp.getHeight();
+        return new Rectangle(minx - lpad, miny - tpad, maxx - minx + kwidth, maxy - miny
+                + kheight);
+    }
+
+    private void computeRectByte(RandomIter iter, Rectangle validArea, float[] warpData,
+            RasterAccessor dst) {
+        int lpad = interp.getLeftPadding();
+        int tpad = interp.getTopPadding();
+
+        int minX = validArea.x;
+        int maxX = validArea.x + validArea.width;
+        int minY = validArea.y;
+        int maxY = validArea.y + validArea.height;
 
         int kwidth = interp.getWidth();
         int kheight = interp.getHeight();
+        final boolean nearest = interp instanceof InterpolationNearest;
 
         int dstWidth = dst.getWidth();
         int dstHeight = dst.getHeight();
@@ -477,8 +555,6 @@ public class GridCoverage2DRIA extends GeometricOpImage {
         int precH = 1 << interp.getSubsampleBitsH();
         int precV = 1 << interp.getSubsampleBitsV();
 
-        float[] warpData = new float[2 * dstWidth];
-
         int[][] samples = new int[kheight][kwidth];
 
         int lineOffset = 0;
@@ -488,23 +564,18 @@ public class GridCoverage2DRIA extends GeometricOpImage {
             backgroundByte[i] = (byte) backgroundValues[i];
         }
 
+        int count = 0;
         if (ctable == null) { // source does not have IndexColorModel
             for (int h = 0; h < dstHeight; h++) {
                 int pixelOffset = lineOffset;
                 lineOffset += lineStride;
 
-                // warp.warpRect(dst.getX(), dst.getY() + h, dstWidth, 1, warpData);
-                warpRect(dst.getX(), dst.getY() + h, dstWidth, 1, warpData);
-
-                int count = 0;
                 for (int w = 0; w < dstWidth; w++) {
                     float sx = warpData[count++];
                     float sy = warpData[count++];
 
                     int xint = floor(sx);
                     int yint = floor(sy);
-                    int xfrac = (int) ((sx - xint) * precH);
-                    int yfrac = (int) ((sy - yint) * precV);
 
                     if (xint < minX || xint >= maxX || yint < minY || yint >= maxY) {
                         /* Fill with a background color. */
@@ -513,7 +584,15 @@ public class GridCoverage2DRIA extends GeometricOpImage {
                                 data[b][pixelOffset + bandOffsets[b]] = backgroundByte[b];
                             }
                         }
+                    } else if (nearest) {
+                        // no kernel to gather nor interpolation to perform
+                        for (int b = 0; b < dstBands; b++) {
+                            data[b][pixelOffset + bandOffsets[b]] = (byte) iter.getSample(xint,
+                                    yint, b);
+                        }
                     } else {
+                        int xfrac = (int) ((sx - xint) * precH);
+                        int yfrac = (int) ((sy - yint) * precV);
                         xint -= lpad;
                         yint -= tpad;
 
@@ -537,10 +616,6 @@ public class GridCoverage2DRIA extends GeometricOpImage {
                 int pixelOffset = lineOffset;
                 lineOffset += lineStride;
 
-                // warp.warpRect(dst.getX(), dst.getY() + h, dstWidth, 1, warpData);
-                warpRect(dst.getX(), dst.getY() + h, dstWidth, 1, warpData);
-
-                int count = 0;
                 for (int w = 0; w < dstWidth; w++) {
                     float sx = warpData[count++];
                     float sy = warpData[count++];
@@ -581,38 +656,19 @@ public class GridCoverage2DRIA extends GeometricOpImage {
         }
     }
 
-    private void computeRectUShort(PlanarImage src, RasterAccessor dst) {
-        int lpad, rpad, tpad, bpad;
-        if (interp != null) {
-            lpad = interp.getLeftPadding();
-            rpad = interp.getRightPadding();
-            tpad = interp.getTopPadding();
-            bpad = interp.getBottomPadding();
-        } else {
-            lpad = rpad = tpad = bpad = 0;
-        }
+    private void computeRectUShort(RandomIter iter, Rectangle validArea, float[] warpData,
+            RasterAccessor dst) {
+        int lpad = interp.getLeftPadding();
+        int tpad = interp.getTopPadding();
 
-        int minX, maxX, minY, maxY;
-        RandomIter iter;
-        if (extender != null) {
-            minX = src.getMinX();
-            maxX = src.getMaxX();
-            minY = src.getMinY();
-            maxY = src.getMaxY();
-            Rectangle bounds = new Rectangle(src.getMinX() - lpad, src.getMinY() - tpad, src
-                    .getWidth()
-                    + lpad + rpad, src.getHeight() + tpad + bpad);
-            iter = RandomIterFactory.create(src.getExtendedData(bounds, extender), bounds);
-        } else {
-            minX = src.getMinX() + lpad;
-            maxX = src.getMaxX() - rpad;
-            minY = src.getMinY() + tpad;
-            maxY = src.getMaxY() - bpad;
-            iter = RandomIterFactory.create(src, src.getBounds());
-        }
+        int minX = validArea.x;
+        int maxX = validArea.x + validArea.width;
+        int minY = validArea.y;
+        int maxY = validArea.y + validArea.height;
 
         int kwidth = interp.getWidth();
         int kheight = interp.getHeight();
+        final boolean nearest = interp instanceof InterpolationNearest;
 
         int dstWidth = dst.getWidth();
         int dstHeight = dst.getHeight();
@@ -626,8 +682,6 @@ public class GridCoverage2DRIA extends GeometricOpImage {
         int precH = 1 << interp.getSubsampleBitsH();
         int precV = 1 << interp.getSubsampleBitsV();
 
-        float[] warpData = new float[2 * dstWidth];
-
         int[][] samples = new int[kheight][kwidth];
 
         int lineOffset = 0;
@@ -637,22 +691,17 @@ public class GridCoverage2DRIA extends GeometricOpImage {
             backgroundUShort[i] = (short) backgroundValues[i];
         }
 
+        int count = 0;
         for (int h = 0; h < dstHeight; h++) {
             int pixelOffset = lineOffset;
             lineOffset += lineStride;
 
-            // warp.warpRect(dst.getX(), dst.getY() + h, dstWidth, 1, warpData);
-            warpRect(dst.getX(), dst.getY() + h, dstWidth, 1, warpData);
-
-            int count = 0;
             for (int w = 0; w < dstWidth; w++) {
                 float sx = warpData[count++];
                 float sy = warpData[count++];
 
                 int xint = floor(sx);
                 int yint = floor(sy);
-                int xfrac = (int) ((sx - xint) * precH);
-                int yfrac = (int) ((sy - yint) * precV);
 
                 if (xint < minX || xint >= maxX || yint < minY || yint >= maxY) {
                     /* Fill with a background color. */
@@ -661,7 +710,15 @@ public class GridCoverage2DRIA extends GeometricOpImage {
                             data[b][pixelOffset + bandOffsets[b]] = backgroundUShort[b];
                         }
                     }
+                } else if (nearest) {
+                    // no kernel to gather nor interpolation to perform
+                    for (int b = 0; b < dstBands; b++) {
+                        data[b][pixelOffset + bandOffsets[b]] = (short) iter.getSample(xint,
+                                yint, b);
+                    }
                 } else {
+                    int xfrac = (int) ((sx - xint) * precH);
+                    int yfrac = (int) ((sy - yint) * precV);
                     xint -= lpad;
                     yint -= tpad;
 
@@ -682,38 +739,19 @@ public class GridCoverage2DRIA extends GeometricOpImage {
         }
     }
 
-    private void computeRectShort(PlanarImage src, RasterAccessor dst) {
-        int lpad, rpad, tpad, bpad;
-        if (interp != null) {
-            lpad = interp.getLeftPadding();
-            rpad = interp.getRightPadding();
-            tpad = interp.getTopPadding();
-            bpad = interp.getBottomPadding();
-        } else {
-            lpad = rpad = tpad = bpad = 0;
-        }
+    private void computeRectShort(RandomIter iter, Rectangle validArea, float[] warpData,
+            RasterAccessor dst) {
+        int lpad = interp.getLeftPadding();
+        int tpad = interp.getTopPadding();
 
-        int minX, maxX, minY, maxY;
-        RandomIter iter;
-        if (extender != null) {
-            minX = src.getMinX();
-            maxX = src.getMaxX();
-            minY = src.getMinY();
-            maxY = src.getMaxY();
-            Rectangle bounds = new Rectangle(src.getMinX() - lpad, src.getMinY() - tpad, src
-                    .getWidth()
-                    + lpad + rpad, src.getHeight() + tpad + bpad);
-            iter = RandomIterFactory.create(src.getExtendedData(bounds, extender), bounds);
-        } else {
-            minX = src.getMinX() + lpad;
-            maxX = src.getMaxX() - rpad;
-            minY = src.getMinY() + tpad;
-            maxY = src.getMaxY() - bpad;
-            iter = RandomIterFactory.create(src, src.getBounds());
-        }
+        int minX = validArea.x;
+        int maxX = validArea.x + validArea.width;
+        int minY = validArea.y;
+        int maxY = validArea.y + validArea.height;
 
         int kwidth = interp.getWidth();
         int kheight = interp.getHeight();
+        final boolean nearest = interp instanceof InterpolationNearest;
 
         int dstWidth = dst.getWidth();
         int dstHeight = dst.getHeight();
@@ -727,8 +765,6 @@ public class GridCoverage2DRIA extends GeometricOpImage {
         int precH = 1 << interp.getSubsampleBitsH();
         int precV = 1 << interp.getSubsampleBitsV();
 
-        float[] warpData = new float[2 * dstWidth];
-
         int[][] samples = new int[kheight][kwidth];
 
         int lineOffset = 0;
@@ -738,22 +774,17 @@ public class GridCoverage2DRIA extends GeometricOpImage {
             backgroundShort[i] = (short) backgroundValues[i];
         }
 
+        int count = 0;
         for (int h = 0; h < dstHeight; h++) {
             int pixelOffset = lineOffset;
             lineOffset += lineStride;
 
-            // warp.warpRect(dst.getX(), dst.getY() + h, dstWidth, 1, warpData);
-            warpRect(dst.getX(), dst.getY() + h, dstWidth, 1, warpData);
-
-            int count = 0;
             for (int w = 0; w < dstWidth; w++) {
                 float sx = warpData[count++];
                 float sy = warpData[count++];
 
                 int xint = floor(sx);
                 int yint = floor(sy);
-                int xfrac = (int) ((sx - xint) * precH);
-                int yfrac = (int) ((sy - yint) * precV);
 
                 if (xint < minX || xint >= maxX || yint < minY || yint >= maxY) {
                     /* Fill with a background color. */
@@ -762,7 +793,15 @@ public class GridCoverage2DRIA extends GeometricOpImage {
                             data[b][pixelOffset + bandOffsets[b]] = backgroundShort[b];
                         }
                     }
+                } else if (nearest) {
+                    // no kernel to gather nor interpolation to perform
+                    for (int b = 0; b < dstBands; b++) {
+                        data[b][pixelOffset + bandOffsets[b]] = (short) iter.getSample(xint,
+                                yint, b);
+                    }
                 } else {
+                    int xfrac = (int) ((sx - xint) * precH);
+                    int yfrac = (int) ((sy - yint) * precV);
                     xint -= lpad;
                     yint -= tpad;
 
@@ -783,38 +822,19 @@ public class GridCoverage2DRIA extends GeometricOpImage {
         }
     }
 
-    private void computeRectInt(PlanarImage src, RasterAccessor dst) {
-        int lpad, rpad, tpad, bpad;
-        if (interp != null) {
-            lpad = interp.getLeftPadding();
-            rpad = interp.getRightPadding();
-            tpad = interp.getTopPadding();
-            bpad = interp.getBottomPadding();
-        } else {
-            lpad = rpad = tpad = bpad = 0;
-        }
+    private void computeRectInt(RandomIter iter, Rectangle validArea, float[] warpData,
+            RasterAccessor dst) {
+        int lpad = interp.getLeftPadding();
+        int tpad = interp.getTopPadding();
 
-        int minX, maxX, minY, maxY;
-        RandomIter iter;
-        if (extender != null) {
-            minX = src.getMinX();
-            maxX = src.getMaxX();
-            minY = src.getMinY();
-            maxY = src.getMaxY();
-            Rectangle bounds = new Rectangle(src.getMinX() - lpad, src.getMinY() - tpad, src
-                    .getWidth()
-                    + lpad + rpad, src.getHeight() + tpad + bpad);
-            iter = RandomIterFactory.create(src.getExtendedData(bounds, extender), bounds);
-        } else {
-            minX = src.getMinX() + lpad;
-            maxX = src.getMaxX() - rpad;
-            minY = src.getMinY() + tpad;
-            maxY = src.getMaxY() - bpad;
-            iter = RandomIterFactory.create(src, src.getBounds());
-        }
+        int minX = validArea.x;
+        int maxX = validArea.x + validArea.width;
+        int minY = validArea.y;
+        int maxY = validArea.y + validArea.height;
 
         int kwidth = interp.getWidth();
         int kheight = interp.getHeight();
+        final boolean nearest = interp instanceof InterpolationNearest;
 
         int dstWidth = dst.getWidth();
         int dstHeight = dst.getHeight();
@@ -828,8 +848,6 @@ public class GridCoverage2DRIA extends GeometricOpImage {
         int precH = 1 << interp.getSubsampleBitsH();
         int precV = 1 << interp.getSubsampleBitsV();
 
-        float[] warpData = new float[2 * dstWidth];
-
         int[][] samples = new int[kheight][kwidth];
 
         int lineOffset = 0;
@@ -839,22 +857,17 @@ public class GridCoverage2DRIA extends GeometricOpImage {
             backgroundInt[i] = (int) backgroundValues[i];
         }
 
+        int count = 0;
         for (int h = 0; h < dstHeight; h++) {
             int pixelOffset = lineOffset;
             lineOffset += lineStride;
 
-            // warp.warpRect(dst.getX(), dst.getY() + h, dstWidth, 1, warpData);
-            warpRect(dst.getX(), dst.getY() + h, dstWidth, 1, warpData);
-
-            int count = 0;
             for (int w = 0; w < dstWidth; w++) {
                 float sx = warpData[count++];
                 float sy = warpData[count++];
 
                 int xint = floor(sx);
                 int yint = floor(sy);
-                int xfrac = (int) ((sx - xint) * precH);
-                int yfrac = (int) ((sy - yint) * precV);
 
                 if (xint < minX || xint >= maxX || yint < minY || yint >= maxY) {
                     /* Fill with a background color. */
@@ -863,7 +876,14 @@ public class GridCoverage2DRIA extends GeometricOpImage {
                             data[b][pixelOffset + bandOffsets[b]] = backgroundInt[b];
                         }
                     }
+                } else if (nearest) {
+                    // no kernel to gather nor interpolation to perform
+                    for (int b = 0; b < dstBands; b++) {
+                        data[b][pixelOffset + bandOffsets[b]] = iter.getSample(xint, yint, b);
+                    }
                 } else {
+                    int xfrac = (int) ((sx - xint) * precH);
+                    int yfrac = (int) ((sy - yint) * precV);
                     xint -= lpad;
                     yint -= tpad;
 
@@ -884,38 +904,19 @@ public class GridCoverage2DRIA extends GeometricOpImage {
         }
     }
 
-    private void computeRectFloat(PlanarImage src, RasterAccessor dst) {
-        int lpad, rpad, tpad, bpad;
-        if (interp != null) {
-            lpad = interp.getLeftPadding();
-            rpad = interp.getRightPadding();
-            tpad = interp.getTopPadding();
-            bpad = interp.getBottomPadding();
-        } else {
-            lpad = rpad = tpad = bpad = 0;
-        }
+    private void computeRectFloat(RandomIter iter, Rectangle validArea, float[] warpData,
+            RasterAccessor dst) {
+        int lpad = interp.getLeftPadding();
+        int tpad = interp.getTopPadding();
 
-        int minX, maxX, minY, maxY;
-        RandomIter iter;
-        if (extender != null) {
-            minX = src.getMinX();
-            maxX = src.getMaxX();
-            minY = src.getMinY();
-            maxY = src.getMaxY();
-            Rectangle bounds = new Rectangle(src.getMinX() - lpad, src.getMinY() - tpad, src
-                    .getWidth()
-                    + lpad + rpad, src.getHeight() + tpad + bpad);
-            iter = RandomIterFactory.create(src.getExtendedData(bounds, extender), bounds);
-        } else {
-            minX = src.getMinX() + lpad;
-            maxX = src.getMaxX() - rpad;
-            minY = src.getMinY() + tpad;
-            maxY = src.getMaxY() - bpad;
-            iter = RandomIterFactory.create(src, src.getBounds());
-        }
+        int minX = validArea.x;
+        int maxX = validArea.x + validArea.width;
+        int minY = validArea.y;
+        int maxY = validArea.y + validArea.height;
 
         int kwidth = interp.getWidth();
         int kheight = interp.getHeight();
+        final boolean nearest = interp instanceof InterpolationNearest;
 
         int dstWidth = dst.getWidth();
         int dstHeight = dst.getHeight();
@@ -926,8 +927,6 @@ public class GridCoverage2DRIA extends GeometricOpImage {
         int[] bandOffsets = dst.getBandOffsets();
         float[][] data = dst.getFloatDataArrays();
 
-        float[] warpData = new float[2 * dstWidth];
-
         float[][] samples = new float[kheight][kwidth];
 
         int lineOffset = 0;
@@ -937,22 +936,17 @@ public class GridCoverage2DRIA extends GeometricOpImage {
             backgroundFloat[i] = (float) backgroundValues[i];
         }
 
+        int count = 0;
         for (int h = 0; h < dstHeight; h++) {
             int pixelOffset = lineOffset;
             lineOffset += lineStride;
 
-            // warp.warpRect(dst.getX(), dst.getY() + h, dstWidth, 1, warpData);
-            warpRect(dst.getX(), dst.getY() + h, dstWidth, 1, warpData);
-
-            int count = 0;
             for (int w = 0; w < dstWidth; w++) {
                 float sx = warpData[count++];
                 float sy = warpData[count++];
 
                 int xint = floor(sx);
                 int yint = floor(sy);
-                float xfrac = sx - xint;
-                float yfrac = sy - yint;
 
                 if (xint < minX || xint >= maxX || yint < minY || yint >= maxY) {
                     /* Fill with a background color. */
@@ -961,7 +955,15 @@ public class GridCoverage2DRIA extends GeometricOpImage {
                             data[b][pixelOffset + bandOffsets[b]] = backgroundFloat[b];
                         }
                     }
+                } else if (nearest) {
+                    // no kernel to gather nor interpolation to perform
+                    for (int b = 0; b < dstBands; b++) {
+                        data[b][pixelOffset + bandOffsets[b]] = iter.getSampleFloat(xint,
+                                yint, b);
+                    }
                 } else {
+                    float xfrac = sx - xint;
+                    float yfrac = sy - yint;
                     xint -= lpad;
                     yint -= tpad;
 
@@ -982,38 +984,19 @@ public class GridCoverage2DRIA extends GeometricOpImage {
         }
     }
 
-    private void computeRectDouble(PlanarImage src, RasterAccessor dst) {
-        int lpad, rpad, tpad, bpad;
-        if (interp != null) {
-            lpad = interp.getLeftPadding();
-            rpad = interp.getRightPadding();
-            tpad = interp.getTopPadding();
-            bpad = interp.getBottomPadding();
-        } else {
-            lpad = rpad = tpad = bpad = 0;
-        }
+    private void computeRectDouble(RandomIter iter, Rectangle validArea, float[] warpData,
+            RasterAccessor dst) {
+        int lpad = interp.getLeftPadding();
+        int tpad = interp.getTopPadding();
 
-        int minX, maxX, minY, maxY;
-        RandomIter iter;
-        if (extender != null) {
-            minX = src.getMinX();
-            maxX = src.getMaxX();
-            minY = src.getMinY();
-            maxY = src.getMaxY();
-            Rectangle bounds = new Rectangle(src.getMinX() - lpad, src.getMinY() - tpad, src
-                    .getWidth()
-                    + lpad + rpad, src.getHeight() + tpad + bpad);
-            iter = RandomIterFactory.create(src.getExtendedData(bounds, extender), bounds);
-        } else {
-            minX = src.getMinX() + lpad;
-            maxX = src.getMaxX() - rpad;
-            minY = src.getMinY() + tpad;
-            maxY = src.getMaxY() - bpad;
-            iter = RandomIterFactory.create(src, src.getBounds());
-        }
+        int minX = validArea.x;
+        int maxX = validArea.x + validArea.width;
+        int minY = validArea.y;
+        int maxY = validArea.y + validArea.height;
 
         int kwidth = interp.getWidth();
         int kheight = interp.getHeight();
+        final boolean nearest = interp instanceof InterpolationNearest;
 
         int dstWidth = dst.getWidth();
         int dstHeight = dst.getHeight();
@@ -1024,28 +1007,21 @@ public class GridCoverage2DRIA extends GeometricOpImage {
         int[] bandOffsets = dst.getBandOffsets();
         double[][] data = dst.getDoubleDataArrays();
 
-        float[] warpData = new float[2 * dstWidth];
-
         double[][] samples = new double[kheight][kwidth];
 
         int lineOffset = 0;
 
+        int count = 0;
         for (int h = 0; h < dstHeight; h++) {
             int pixelOffset = lineOffset;
             lineOffset += lineStride;
 
-            // warp.warpRect(dst.getX(), dst.getY() + h, dstWidth, 1, warpData);
-            warpRect(dst.getX(), dst.getY() + h, dstWidth, 1, warpData);
-
-            int count = 0;
             for (int w = 0; w < dstWidth; w++) {
                 float sx = warpData[count++];
                 float sy = warpData[count++];
 
                 int xint = floor(sx);
                 int yint = floor(sy);
-                float xfrac = sx - xint;
-                float yfrac = sy - yint;
 
                 if (xint < minX || xint >= maxX || yint < minY || yint >= maxY) {
                     /* Fill with a background color. */
@@ -1054,7 +1030,15 @@ public class GridCoverage2DRIA extends GeometricOpImage {
                             data[b][pixelOffset + bandOffsets[b]] = backgroundValues[b];
                         }
                     }
+                } else if (nearest) {
+                    // no kernel to gather nor interpolation to perform
+                    for (int b = 0; b < dstBands; b++) {
+                        data[b][pixelOffset + bandOffsets[b]] = iter.getSampleDouble(xint,
+                                yint, b);
+                    }
                 } else {
+                    float xfrac = sx - xint;
+                    float yfrac = sy - yint;
                     xint -= lpad;
                     yint -= tpad;
 
@@ -1123,20 +1107,52 @@ public class GridCoverage2DRIA extends GeometricOpImage {
         height += y0;
         int index = 0; // destRect index
 
-        double xy[] = new double[2];
+        if (affineWarp != null) {
+            // the whole grid to grid transform is affine, compute it inline
+            final double m00 = affineWarp.getScaleX();
+            final double m01 = affineWarp.getShearX();
+            final double m02 = affineWarp.getTranslateX();
+            final double m10 = affineWarp.getShearY();
+            final double m11 = affineWarp.getScaleY();
+            final double m12 = affineWarp.getTranslateY();
+            for (int y = y0; y < height; y += periodY) {
+                for (int x = x0; x < width; x += periodX) {
+                    destRect[index++] = (float) (m00 * x + m01 * y + m02);
+                    destRect[index++] = (float) (m10 * x + m11 * y + m12);
+                }
+            }
+            return destRect;
+        }
 
+        // transform a whole row at a time
+        final int rowPoints = (width - x0 + periodX - 1) / periodX;
+        final double[] row = new double[2 * rowPoints];
         for (int y = y0; y < height; y += periodY) {
+            int i = 0;
             for (int x = x0; x < width; x += periodX) {
-                xy[0] = x;
-                xy[1] = y;
-                try {
-                    mapSrcPoint(xy);
-                    destRect[index++] = (float) xy[0];
-                    destRect[index++] = (float) xy[1];
-                } catch (TransformException e) {
-                    LOGGER.log(Level.WARNING, "Error transforming {0}", xy);
-                    destRect[index++] = Float.NaN; // ???
-                    destRect[index++] = Float.NaN; // ???
+                row[i++] = x;
+                row[i++] = y;
+            }
+            try {
+                gridWarp.transform(row, 0, row, 0, rowPoints);
+                for (i = 0; i < row.length; i++) {
+                    destRect[index++] = (float) row[i];
+                }
+            } catch (TransformException rowFailed) {
+                // go point by point so that only the failing points are set to NaN
+                double xy[] = new double[2];
+                for (int x = x0; x < width; x += periodX) {
+                    xy[0] = x;
+                    xy[1] = y;
+                    try {
+                        gridWarp.transform(xy, 0, xy, 0, 1);
+                        destRect[index++] = (float) xy[0];
+                        destRect[index++] = (float) xy[1];
+                    } catch (TransformException e) {
+                        LOGGER.log(Level.WARNING, "Error transforming {0}", xy);
+                        destRect[index++] = Float.NaN; // ???
+                        destRect[index++] = Float.NaN; // ???
+                    }
                 }
             }
         }
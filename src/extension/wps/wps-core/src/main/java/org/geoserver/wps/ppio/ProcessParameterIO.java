@@ -15,6 +15,7 @@ import java.util.Date;
 import java.util.List;
 
 import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.wps.ProcessMetadataCache;
 import org.geotools.data.Parameter;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.springframework.context.ApplicationContext;
@@ -156,6 +157,15 @@ public abstract class ProcessParameterIO {
             return result;
         }
 
+        // the lookup is performed for each parameter of each process, use the cache if possible
+        ProcessMetadataCache cache = ProcessMetadataCache.get(context);
+        if (cache != null) {
+            List<ProcessParameterIO> cached = cache.getPPIOs(p);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
         // load all extensions
         List<ProcessParameterIO> l = new ArrayList<ProcessParameterIO>(defaults);
         if (context != null) {
@@ -184,6 +194,9 @@ public abstract class ProcessParameterIO {
             }
         }
 
+        if (cache != null) {
+            cache.putPPIOs(p, matches);
+        }
         return matches;
     }
 
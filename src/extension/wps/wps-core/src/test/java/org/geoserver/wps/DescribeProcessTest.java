@@ -3,6 +3,8 @@ package org.geoserver.wps;
 import static org.custommonkey.xmlunit.XMLAssert.*;
 import junit.framework.Test;
 
+import org.geoserver.platform.GeoServerExtensions;
+
 import org.w3c.dom.Document;
 public class DescribeProcessTest extends WPSTestSupport {
 
@@ -30,6 +32,20 @@ public class DescribeProcessTest extends WPSTestSupport {
         testBufferDescription(d);
     }
 
+    public void testCachedDescription() throws Exception {
+        ProcessMetadataCache cache = GeoServerExtensions.bean(ProcessMetadataCache.class);
+        cache.clear();
+        assertNull(cache.getProcessDescription("JTS:buffer"));
+
+        Document d = getAsDOM( root() + "service=wps&request=describeprocess&identifier=JTS:buffer");
+        testBufferDescription(d);
+        assertNotNull(cache.getProcessDescription("JTS:buffer"));
+
+        // the second time the description comes from the cache, and it has to be the same
+        d = getAsDOM( root() + "service=wps&request=describeprocess&identifier=JTS:buffer");
+        testBufferDescription(d);
+    }
+
     public void testGetBufferFeatureCollection() throws Exception { // Standard Test A.4.3.1
         Document d = getAsDOM( root() + "service=wps&request=describeprocess&identifier=gs:BufferFeatureCollection");
         // print(d);
@@ -0,0 +1,82 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wps.executor;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.wps.WPSTestSupport;
+import org.geoserver.wps.executor.DefaultProcessManager.ExecutionStatusEx;
+import org.geoserver.wps.executor.ExecutionStatus.ProcessState;
+import org.geoserver.wps.resource.WPSResourceManager;
+import org.geotools.feature.NameImpl;
+import org.opengis.feature.type.Name;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKTReader;
+
+public class DefaultProcessManagerTest extends WPSTestSupport {
+
+    static final Name PARENT = new NameImpl("JTS", "union");
+
+    static final Name BUFFER = new NameImpl("JTS", "buffer");
+
+    static final Name AREA = new NameImpl("JTS", "area");
+
+    DefaultProcessManager manager;
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        super.setUpInternal();
+        manager = new DefaultProcessManager(GeoServerExtensions.bean(WPSResourceManager.class));
+    }
+
+    public void testChainedSteps() throws Exception {
+        // the execution using the outputs of the chained processes
+        manager.executions.put("exec", new ExecutionStatusEx(PARENT, "exec"));
+
+        Geometry point = new WKTReader().read("POINT(0 0)");
+        Map<String, Object> inputs = new HashMap<String, Object>();
+        inputs.put("geom", point);
+        inputs.put("distance", 10d);
+        Map<String, Object> result = manager.submitChained("exec", BUFFER, inputs);
+        Geometry buffer = (Geometry) result.values().iterator().next();
+        assertTrue(buffer.getArea() > 300);
+
+        // the second step fails, the geometry is missing
+        inputs = new HashMap<String, Object>();
+        inputs.put("geom", null);
+        try {
+            manager.submitChained("exec", AREA, inputs);
+            fail("The area process should have failed without a geometry");
+        } catch (RuntimeException e) {
+            // fine
+        }
+
+        List<ExecutionStatus> steps = manager.getStatus("exec").getSteps();
+        assertEquals(2, steps.size());
+
+        ExecutionStatus first = steps.get(0);
+        assertEquals(BUFFER, first.getProcessName());
+        assertEquals(ProcessState.COMPLETED, first.getPhase());
+        assertNull(first.getException());
+
+        ExecutionStatus second = steps.get(1);
+        assertEquals(AREA, second.getProcessName());
+        assertEquals(ProcessState.FAILED, second.getPhase());
+        assertNotNull(second.getException());
+
+        for (ExecutionStatus step : steps) {
+            assertEquals("exec", step.getExecutionId());
+            assertNotNull(step.getStartTime());
+            assertNotNull(step.getCompletionTime());
+            assertFalse(step.getCompletionTime().before(step.getStartTime()));
+            assertTrue(step.getElapsedTime() >= 0);
+        }
+        assertFalse(second.getStartTime().before(first.getCompletionTime()));
+    }
+}
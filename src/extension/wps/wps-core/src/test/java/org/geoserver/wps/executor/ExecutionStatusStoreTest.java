@@ -0,0 +1,115 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wps.executor;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.geoserver.wps.WPSStorageCleaner;
+import org.geoserver.wps.WPSTestSupport;
+import org.geoserver.wps.executor.ExecutionStatus.ProcessState;
+import org.geotools.feature.NameImpl;
+import org.geotools.process.ProcessException;
+import org.opengis.feature.type.Name;
+
+public class ExecutionStatusStoreTest extends WPSTestSupport {
+
+    static final Name BUFFER = new NameImpl("JTS", "buffer");
+
+    WPSStorageCleaner cleaner;
+
+    ExecutionStatusStore store;
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        super.setUpInternal();
+        cleaner = new WPSStorageCleaner(getDataDirectory());
+        store = new ExecutionStatusStore(cleaner);
+    }
+
+    public void testSaveAndGet() throws Exception {
+        assertNull(store.get("unknown"));
+
+        store.save(new ExecutionStatus(BUFFER, "exec1", ProcessState.RUNNING, 0.5f));
+        ExecutionStatus status = store.get("exec1");
+        assertEquals("exec1", status.getExecutionId());
+        assertEquals(BUFFER, status.getProcessName());
+        assertEquals(ProcessState.RUNNING, status.getPhase());
+        assertEquals(0.5f, status.getProgress(), 0f);
+        assertTrue(store.getOutputs("exec1").isEmpty());
+
+        store.save(new ExecutionStatus(BUFFER, "exec1", ProcessState.COMPLETED, 1f),
+                Arrays.asList("result.xml", "result.tiff"));
+        status = store.get("exec1");
+        assertEquals(ProcessState.COMPLETED, status.getPhase());
+        assertEquals(Arrays.asList("result.xml", "result.tiff"), store.getOutputs("exec1"));
+
+        store.remove("exec1");
+        assertNull(store.get("exec1"));
+    }
+
+    public void testFailedAndCancelled() throws Exception {
+        ExecutionStatus failed = new ExecutionStatus(BUFFER, "failed", ProcessState.FAILED, 0.4f);
+        failed.setException(new ProcessException("Invalid geometry"));
+        store.save(failed);
+        store.save(new ExecutionStatus(BUFFER, "cancelled", ProcessState.CANCELLED, 0.2f));
+
+        ExecutionStatus status = store.get("failed");
+        assertEquals(ProcessState.FAILED, status.getPhase());
+        assertEquals(0.4f, status.getProgress(), 0f);
+        assertEquals("Invalid geometry", status.getException().getMessage());
+        status = store.get("cancelled");
+        assertEquals(ProcessState.CANCELLED, status.getPhase());
+        assertNull(status.getException());
+
+        // executions that are over are not marked as interrupted
+        assertEquals(0, store.markInterrupted(Collections.<String> emptySet()));
+        assertEquals(ProcessState.FAILED, store.get("failed").getPhase());
+        assertEquals(ProcessState.CANCELLED, store.get("cancelled").getPhase());
+
+        store.remove("failed");
+        store.remove("cancelled");
+    }
+
+    public void testMarkInterrupted() throws Exception {
+        store.save(new ExecutionStatus(BUFFER, "queued", ProcessState.QUEUED, 0f));
+        store.save(new ExecutionStatus(BUFFER, "running", ProcessState.RUNNING, 0.3f));
+        store.save(new ExecutionStatus(BUFFER, "inflight", ProcessState.RUNNING, 0.3f));
+        store.save(new ExecutionStatus(BUFFER, "completed", ProcessState.COMPLETED, 1f));
+
+        assertEquals(2, store.markInterrupted(Collections.singleton("inflight")));
+        assertEquals(ProcessState.INTERRUPTED, store.get("queued").getPhase());
+        assertEquals(ProcessState.INTERRUPTED, store.get("running").getPhase());
+        assertEquals(0.3f, store.get("running").getProgress(), 0f);
+        assertEquals(ProcessState.RUNNING, store.get("inflight").getPhase());
+        assertEquals(ProcessState.COMPLETED, store.get("completed").getPhase());
+
+        for (String id : new String[] { "queued", "running", "inflight", "completed" }) {
+            store.remove(id);
+        }
+    }
+
+    public void testActiveExecutionsDoNotExpire() throws Exception {
+        store.save(new ExecutionStatus(BUFFER, "active", ProcessState.RUNNING, 0f));
+        store.save(new ExecutionStatus(BUFFER, "done", ProcessState.COMPLETED, 1f));
+        File active = store.getStatusFile("active");
+        File done = store.getStatusFile("done");
+        long old = System.currentTimeMillis() - 60000;
+        active.setLastModified(old);
+        done.setLastModified(old);
+
+        cleaner.setExpirationDelay(1000);
+        cleaner.run();
+        assertTrue(active.exists());
+        assertFalse(done.exists());
+
+        // once completed, the record can expire as well
+        store.save(new ExecutionStatus(BUFFER, "active", ProcessState.COMPLETED, 1f));
+        active.setLastModified(old);
+        cleaner.run();
+        assertFalse(active.exists());
+    }
+}
@@ -3,6 +3,7 @@ package org.geoserver.wps.gs;
 import java.awt.Color;
 import java.awt.geom.Point2D;
 import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
 
@@ -214,5 +215,37 @@ public class Coverage2RenderedImageAdapterTest extends TestCase {
 //        Thread.sleep(20000);
     }
 
+    public void testWarpRectMatchesPointMapping() {
+        GridCoverage2D src = createTestCoverage(500, 500, 0, 0, 10, 10);
+        GridCoverage2D dst = createTestCoverage(250, 250, 0, 0, 10, 10);
 
+        GridCoverage2DRIA cria = GridCoverage2DRIA.create(src, dst, NODATA);
+
+        float[] warp = cria.warpRect(10, 20, 5, 3, null);
+        int index = 0;
+        for (int y = 20; y < 23; y++) {
+            for (int x = 10; x < 15; x++) {
+                Point2D mapped = cria.mapSourcePoint(new Point2D.Double(x, y), 0);
+                assertEquals(mapped.getX(), warp[index++], 1e-4);
+                assertEquals(mapped.getY(), warp[index++], 1e-4);
+            }
+        }
+    }
+
+    public void testSampledValues() {
+        GridCoverage2D src = createTestCoverage(500, 500, 0, 0, 10, 10);
+        GridCoverage2D dst = createTestCoverage(250, 250, 0, 0, 10, 10);
+
+        GridCoverage2DRIA cria = GridCoverage2DRIA.create(src, dst, NODATA);
+
+        RenderedImage srcImage = src.getRenderedImage();
+        Raster srcData = srcImage.getData();
+        Raster data = cria.getData();
+        for (int y = 0; y < 250; y += 7) {
+            for (int x = 0; x < 250; x += 7) {
+                assertEquals(srcData.getSampleFloat(x * 2, y * 2, 0),
+                        data.getSampleFloat(x, y, 0), 0f);
+            }
+        }
+    }
 }
@@ -230,6 +230,20 @@ public class XStreamPersister {
     Map<Class<?>, String> backwardBreifMap = new HashMap<Class<?>, String>();
 
     private Level forceLevel = LOGGER.getLevel() == null? Level.INFO : LOGGER.getLevel();
+
+    /**
+     * The reflection cache, shared among all persisters so that the fields of the catalog and
+     * configuration classes get looked up only once, instead of once per persister
+     */
+    static final FieldDictionary FIELD_DICTIONARY;
+    static {
+        //control the order in which fields are sorted
+        SortableFieldKeySorter sorter = new SortableFieldKeySorter();
+        //sorter.registerFieldOrder( DefaultCatalogDAO.class, new String[]{ "workspaces", "namespaces", "stores", "styles", 
+            /* these we actually omit, but the sorter needs them specified */
+        //    "layerGroups", "resources", "maps", "defaultStores", "listeners", "layers",  "resourcePool", "resourceLoader", "LOGGER" } ); 
+        FIELD_DICTIONARY = new FieldDictionary( sorter );
+    }
     
     /**
      * Constructs the persister and underlying xstream.
@@ -243,13 +257,7 @@ public class XStreamPersister {
      */
     protected XStreamPersister(HierarchicalStreamDriver streamDriver) {
         
-        //control the order in which fields are sorted
-        SortableFieldKeySorter sorter = new SortableFieldKeySorter();
-        //sorter.registerFieldOrder( DefaultCatalogDAO.class, new String[]{ "workspaces", "namespaces", "stores", "styles", 
-            /* these we actually omit, but the sorter needs them specified */
-        //    "layerGroups", "resources", "maps", "defaultStores", "listeners", "layers",  "resourcePool", "resourceLoader", "LOGGER" } ); 
-        
-        ReflectionProvider reflectionProvider = new CustomReflectionProvider( new FieldDictionary( sorter ) ); 
+        ReflectionProvider reflectionProvider = new CustomReflectionProvider( FIELD_DICTIONARY ); 
             //new Sun14ReflectionProvider( new FieldDictionary( sorter  ) ); 
         if ( streamDriver != null ) {
             xs = new XStream( reflectionProvider, streamDriver );
@@ -32,6 +32,11 @@ import com.thoughtworks.xstream.io.json.JettisonMappedXmlDriver;
  */
 public class XStreamPersisterFactory {
 
+    /**
+     * Lazily created persister shared among callers, see {@link #getSharedXMLPersister()}
+     */
+    volatile XStreamPersister sharedXMLPersister;
+
     /**
      * Creates an instance configured to persist XML. 
      */
@@ -39,6 +44,30 @@ public class XStreamPersisterFactory {
         return new XStreamPersister();
     }
 
+    /**
+     * Returns an instance configured to persist XML that is shared among all callers.
+     * <p>
+     * Configuring a persister is expensive, code that only needs the default configuration (to
+     * look up aliases, or to save/load objects without a catalog) should use this method instead
+     * of {@link #createXMLPersister()}. The returned instance is safe for concurrent use as long as
+     * it is not altered: callers must not invoke any of its setters, nor register aliases or
+     * converters on its {@link XStreamPersister#getXStream() XStream}.
+     * </p>
+     */
+    public XStreamPersister getSharedXMLPersister() {
+        XStreamPersister xp = sharedXMLPersister;
+        if (xp == null) {
+            synchronized (this) {
+                xp = sharedXMLPersister;
+                if (xp == null) {
+                    xp = createXMLPersister();
+                    sharedXMLPersister = xp;
+                }
+            }
+        }
+        return xp;
+    }
+
     /**
      * Creates an instance configured to persist JSON.
      */
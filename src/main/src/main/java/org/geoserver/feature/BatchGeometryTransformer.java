@@ -0,0 +1,204 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.feature;
+
+import org.geotools.geometry.jts.GeometryCoordinateSequenceTransformer;
+import org.opengis.referencing.operation.MathTransform2D;
+import org.opengis.referencing.operation.TransformException;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Transforms the geometries of many features with a single {@link MathTransform2D} call.
+ * <p>
+ * The geometries are first {@link #add(Geometry) added}, which packs their x/y ordinates in a
+ * primitive array, then the whole array is {@link #transform() transformed} in one go, and finally
+ * each geometry is {@link #rebuild(Geometry, int) rebuilt} reading the transformed ordinates
+ * straight into new coordinate sequences. Geometry classes outside of the JTS core ones are
+ * transformed one by one with a {@link GeometryCoordinateSequenceTransformer}.
+ * </p>
+ * <p>
+ * Instances are not thread safe, and are meant to be used for a single batch.
+ * </p>
+ */
+class BatchGeometryTransformer {
+
+    static final Package JTS_PACKAGE = Geometry.class.getPackage();
+
+    MathTransform2D transform;
+
+    double[] ordinates;
+
+    int size;
+
+    int cursor;
+
+    BatchGeometryTransformer(MathTransform2D transform) {
+        this(transform, 1024);
+    }
+
+    BatchGeometryTransformer(MathTransform2D transform, int capacity) {
+        this.transform = transform;
+        this.ordinates = new double[Math.max(2, capacity)];
+    }
+
+    /**
+     * Returns true if the geometry is made only of JTS core geometries, and can thus be batched
+     */
+    static boolean canBatch(Geometry geometry) {
+        if (geometry.getClass().getPackage() != JTS_PACKAGE) {
+            return false;
+        }
+        if (geometry instanceof GeometryCollection) {
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                if (!canBatch(geometry.getGeometryN(i))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Packs the geometry ordinates in the batch
+     *
+     * @return The offset of the geometry in the batch, to be used for {@link #rebuild}
+     */
+    int add(Geometry geometry) {
+        int offset = size;
+        pack(geometry);
+        return offset;
+    }
+
+    void pack(Geometry geometry) {
+        if (geometry instanceof Point) {
+            pack(((Point) geometry).getCoordinateSequence());
+        } else if (geometry instanceof LineString) {
+            pack(((LineString) geometry).getCoordinateSequence());
+        } else if (geometry instanceof Polygon) {
+            Polygon polygon = (Polygon) geometry;
+            pack(polygon.getExteriorRing().getCoordinateSequence());
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                pack(polygon.getInteriorRingN(i).getCoordinateSequence());
+            }
+        } else if (geometry instanceof GeometryCollection) {
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                pack(geometry.getGeometryN(i));
+            }
+        }
+    }
+
+    void pack(CoordinateSequence cs) {
+        int n = cs.size();
+        ensureCapacity(size + n * 2);
+        for (int i = 0; i < n; i++) {
+            ordinates[size++] = cs.getOrdinate(i, 0);
+            ordinates[size++] = cs.getOrdinate(i, 1);
+        }
+    }
+
+    void ensureCapacity(int required) {
+        if (required > ordinates.length) {
+            double[] grown = new double[Math.max(required, ordinates.length * 2)];
+            System.arraycopy(ordinates, 0, grown, 0, size);
+            ordinates = grown;
+        }
+    }
+
+    /**
+     * Transforms all the packed ordinates
+     */
+    void transform() throws TransformException {
+        if (size > 0) {
+            transform.transform(ordinates, 0, ordinates, 0, size / 2);
+        }
+    }
+
+    /**
+     * Builds the transformed version of a geometry previously added to the batch
+     *
+     * @param original The original geometry
+     * @param offset The offset returned by {@link #add(Geometry)}
+     * @return
+     */
+    Geometry rebuild(Geometry original, int offset) {
+        cursor = offset;
+        Geometry result = build(original);
+        result.setUserData(original.getUserData());
+        return result;
+    }
+
+    Geometry build(Geometry geometry) {
+        GeometryFactory gf = geometry.getFactory();
+        if (geometry instanceof Point) {
+            return gf.createPoint(build(gf, ((Point) geometry).getCoordinateSequence()));
+        } else if (geometry instanceof LinearRing) {
+            return gf.createLinearRing(build(gf, ((LinearRing) geometry).getCoordinateSequence()));
+        } else if (geometry instanceof LineString) {
+            return gf.createLineString(build(gf, ((LineString) geometry).getCoordinateSequence()));
+        } else if (geometry instanceof Polygon) {
+            Polygon polygon = (Polygon) geometry;
+            LinearRing shell = gf.createLinearRing(build(gf, polygon.getExteriorRing()
+                    .getCoordinateSequence()));
+            LinearRing[] holes = new LinearRing[polygon.getNumInteriorRing()];
+            for (int i = 0; i < holes.length; i++) {
+                holes[i] = gf.createLinearRing(build(gf, polygon.getInteriorRingN(i)
+                        .getCoordinateSequence()));
+            }
+            return gf.createPolygon(shell, holes);
+        } else if (geometry instanceof MultiPoint) {
+            Point[] points = new Point[geometry.getNumGeometries()];
+            for (int i = 0; i < points.length; i++) {
+                points[i] = (Point) build(geometry.getGeometryN(i));
+            }
+            return gf.createMultiPoint(points);
+        } else if (geometry instanceof MultiLineString) {
+            LineString[] lines = new LineString[geometry.getNumGeometries()];
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = (LineString) build(geometry.getGeometryN(i));
+            }
+            return gf.createMultiLineString(lines);
+        } else if (geometry instanceof MultiPolygon) {
+            Polygon[] polygons = new Polygon[geometry.getNumGeometries()];
+            for (int i = 0; i < polygons.length; i++) {
+                polygons[i] = (Polygon) build(geometry.getGeometryN(i));
+            }
+            return gf.createMultiPolygon(polygons);
+        } else {
+            Geometry[] geometries = new Geometry[geometry.getNumGeometries()];
+            for (int i = 0; i < geometries.length; i++) {
+                geometries[i] = build(geometry.getGeometryN(i));
+            }
+            return gf.createGeometryCollection(geometries);
+        }
+    }
+
+    /**
+     * Builds a new sequence out of the transformed ordinates, z values are carried over unchanged
+     */
+    CoordinateSequence build(GeometryFactory gf, CoordinateSequence original) {
+        int n = original.size();
+        int dimension = original.getDimension();
+        CoordinateSequence cs = gf.getCoordinateSequenceFactory().create(n, dimension);
+        for (int i = 0; i < n; i++) {
+            cs.setOrdinate(i, 0, ordinates[cursor++]);
+            cs.setOrdinate(i, 1, ordinates[cursor++]);
+            if (dimension > 2) {
+                cs.setOrdinate(i, 2, original.getOrdinate(i, 2));
+            }
+        }
+        return cs;
+    }
+}
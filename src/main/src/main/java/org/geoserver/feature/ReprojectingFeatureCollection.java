@@ -5,8 +5,12 @@
 package org.geoserver.feature;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
@@ -57,6 +61,11 @@ import com.vividsolutions.jts.geom.Geometry;
  */
 public class ReprojectingFeatureCollection extends DecoratingFeatureCollection {
     static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2(null);
+
+    /**
+     * Default number of features reprojected in a single batch
+     */
+    static final int BATCH_SIZE = 256;
     
     /**
      * The schema of reprojected features
@@ -77,7 +86,12 @@ public class ReprojectingFeatureCollection extends DecoratingFeatureCollection {
     /**
      * MathTransform cache, keyed by source CRS
      */
-    HashMap /* <CoordinateReferenceSystem,GeometryCoordinateSequenceTransformer> */transformers;
+    HashMap<CoordinateReferenceSystem, MathTransform2D> transforms;
+
+    /**
+     * Number of features read ahead and reprojected together by {@link #features()}
+     */
+    int batchSize = BATCH_SIZE;
 
     /**
      * Transformation hints
@@ -94,7 +108,7 @@ public class ReprojectingFeatureCollection extends DecoratingFeatureCollection {
         this.schema = FeatureTypes.transform(delegate.getSchema(), target);
 
         // create transform cache
-        transformers = new HashMap();
+        transforms = new HashMap<CoordinateReferenceSystem, MathTransform2D>();
 
         // cache "default" transform
         CoordinateReferenceSystem source = delegate.getSchema().getCoordinateReferenceSystem();
@@ -103,10 +117,7 @@ public class ReprojectingFeatureCollection extends DecoratingFeatureCollection {
             MathTransform2D tx = (MathTransform2D) ReferencingFactoryFinder
                     .getCoordinateOperationFactory(hints).createOperation(source, target)
                     .getMathTransform();
-
-            GeometryCoordinateSequenceTransformer transformer = new GeometryCoordinateSequenceTransformer();
-            transformer.setMathTransform(tx);
-            transformers.put(source, transformer);
+            transforms.put(source, tx);
         } else {
             throw new RuntimeException("Source was null in trying to create a reprojected feature collection!");
         }
@@ -128,6 +139,13 @@ public class ReprojectingFeatureCollection extends DecoratingFeatureCollection {
         this.defaultSource = defaultSource;
     }
 
+    /**
+     * Sets the number of features read ahead and reprojected together while iterating
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
     public SimpleFeatureIterator features() {
         return new ReprojectingFeatureIterator(delegate.features());
     }
@@ -178,6 +196,7 @@ public class ReprojectingFeatureCollection extends DecoratingFeatureCollection {
                 ReprojectingFeatureCollection wrapper = new ReprojectingFeatureCollection(sub,
                         target);
                 wrapper.setDefaultSource(defaultSource);
+                wrapper.setBatchSize(batchSize);
 
                 return wrapper;
             } catch (Exception e) {
@@ -189,28 +208,26 @@ public class ReprojectingFeatureCollection extends DecoratingFeatureCollection {
     }
 
     public Object[] toArray() {
-        Object[] array = delegate.toArray();
-
-        for (int i = 0; i < array.length; i++) {
-            try {
-                array[i] = reproject((SimpleFeature) array[i]);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        }
-
-        return array;
+        return reproject(delegate.toArray());
     }
 
     public Object[] toArray(Object[] a) {
-        Object[] array = delegate.toArray(a);
+        return reproject(delegate.toArray(a));
+    }
 
-        for (int i = 0; i < array.length; i++) {
-            try {
-                array[i] = reproject((SimpleFeature) array[i]);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+    Object[] reproject(Object[] array) {
+        List<SimpleFeature> features = new ArrayList<SimpleFeature>(array.length);
+        for (Object feature : array) {
+            features.add((SimpleFeature) feature);
+        }
+
+        try {
+            List<SimpleFeature> reprojected = reproject(features);
+            for (int i = 0; i < array.length; i++) {
+                array[i] = reprojected.get(i);
             }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
 
         return array;
@@ -246,76 +263,168 @@ public class ReprojectingFeatureCollection extends DecoratingFeatureCollection {
     }
 
     SimpleFeature reproject(SimpleFeature feature) throws IOException {
-        Object[] attributes = new Object[schema.getAttributeCount()];
-
-        for (int i = 0; i < attributes.length; i++) {
-            AttributeDescriptor type = schema.getDescriptor(i);
-            Object object = feature.getAttribute(type.getName());
-
-            if (object instanceof Geometry) {
-                // check for crs
-                Geometry geometry = (Geometry) object;
-                CoordinateReferenceSystem crs = (CoordinateReferenceSystem) geometry.getUserData();
+        return reproject(Collections.singletonList(feature)).get(0);
+    }
 
-                if (crs == null) {
-                    // no crs specified on geometry, check default
-                    if (defaultSource != null) {
-                        crs = defaultSource;
+    /**
+     * Reprojects a batch of features. The geometries sharing the same source CRS are packed
+     * together and transformed with a single {@link MathTransform2D} call, which is a lot cheaper
+     * than going through them one coordinate at a time.
+     */
+    List<SimpleFeature> reproject(List<SimpleFeature> features) throws IOException {
+        Object[][] values = new Object[features.size()][];
+        Map<MathTransform2D, BatchGeometryTransformer> batches = null;
+
+        // first pass, collect the attributes and pack the geometries to be transformed
+        for (int f = 0; f < values.length; f++) {
+            SimpleFeature feature = features.get(f);
+            Object[] attributes = new Object[schema.getAttributeCount()];
+
+            for (int i = 0; i < attributes.length; i++) {
+                AttributeDescriptor type = schema.getDescriptor(i);
+                Object object = feature.getAttribute(type.getName());
+
+                if (object instanceof Geometry) {
+                    Geometry geometry = (Geometry) object;
+                    MathTransform2D tx = getTransform(geometry);
+
+                    if (tx != null) {
+                        if (BatchGeometryTransformer.canBatch(geometry)) {
+                            if (batches == null) {
+                                batches = new HashMap<MathTransform2D, BatchGeometryTransformer>();
+                            }
+                            BatchGeometryTransformer batch = batches.get(tx);
+                            if (batch == null) {
+                                batch = new BatchGeometryTransformer(tx);
+                                batches.put(tx, batch);
+                            }
+                            object = new PendingGeometry(geometry, batch, batch.add(geometry));
+                        } else {
+                            object = transform(geometry, tx);
+                        }
                     }
                 }
 
-                if (crs != null) {
-                    // if equal, nothing to do
-                    if (!crs.equals(target)) {
-                        GeometryCoordinateSequenceTransformer transformer = (GeometryCoordinateSequenceTransformer) transformers
-                                .get(crs);
+                attributes[i] = object;
+            }
+            values[f] = attributes;
+        }
 
-                        if (transformer == null) {
-                            transformer = new GeometryCoordinateSequenceTransformer();
+        // transform all the packed coordinates in one shot
+        if (batches != null) {
+            for (BatchGeometryTransformer batch : batches.values()) {
+                try {
+                    batch.transform();
+                } catch (TransformException e) {
+                    String msg = "Error occured transforming a batch of " + values.length
+                            + " features";
+                    throw (IOException) new IOException(msg).initCause(e);
+                }
+            }
+        }
 
-                            MathTransform2D tx;
+        // second pass, rebuild geometries and features
+        List<SimpleFeature> result = new ArrayList<SimpleFeature>(values.length);
+        for (int f = 0; f < values.length; f++) {
+            SimpleFeature feature = features.get(f);
+            Object[] attributes = values[f];
+            for (int i = 0; i < attributes.length; i++) {
+                if (attributes[i] instanceof PendingGeometry) {
+                    PendingGeometry pending = (PendingGeometry) attributes[i];
+                    attributes[i] = pending.batch.rebuild(pending.geometry, pending.offset);
+                }
+            }
 
-                            try {
-                                tx = (MathTransform2D) ReferencingFactoryFinder
-                                        .getCoordinateOperationFactory(hints).createOperation(crs,
-                                                target).getMathTransform();
-                            } catch (Exception e) {
-                                String msg = "Could not transform for crs: " + crs;
-                                throw (IOException) new IOException(msg).initCause(e);
-                            }
+            try {
+                SimpleFeature reprojected = SimpleFeatureBuilder.build(schema, attributes,
+                        feature.getID());
+                //copy over the user data from original
+                reprojected.getUserData().putAll(feature.getUserData());
+                result.add(reprojected);
+            } catch (IllegalAttributeException e) {
+                String msg = "Error creating reprojeced feature";
+                throw (IOException) new IOException(msg).initCause(e);
+            }
+        }
 
-                            transformer.setMathTransform(tx);
-                            transformers.put(crs, transformer);
-                        }
+        return result;
+    }
 
-                        // do the transformation
-                        try {
-                            object = transformer.transform(geometry);
-                        } catch (TransformException e) {
-                            String msg = "Error occured transforming " + geometry.toString();
-                            throw (IOException) new IOException(msg).initCause(e);
-                        }
-                    }
-                }
+    /**
+     * Returns the transform to be applied to the geometry, or null if the geometry does not need
+     * to be reprojected
+     */
+    MathTransform2D getTransform(Geometry geometry) throws IOException {
+        // check for crs
+        CoordinateReferenceSystem crs = (CoordinateReferenceSystem) geometry.getUserData();
+
+        if (crs == null) {
+            // no crs specified on geometry, check default
+            if (defaultSource != null) {
+                crs = defaultSource;
             }
+        }
 
-            attributes[i] = object;
+        // if missing or equal, nothing to do
+        if (crs == null || crs.equals(target)) {
+            return null;
+        }
+
+        MathTransform2D tx = transforms.get(crs);
+        if (tx == null) {
+            try {
+                tx = (MathTransform2D) ReferencingFactoryFinder
+                        .getCoordinateOperationFactory(hints).createOperation(crs, target)
+                        .getMathTransform();
+            } catch (Exception e) {
+                String msg = "Could not transform for crs: " + crs;
+                throw (IOException) new IOException(msg).initCause(e);
+            }
+            transforms.put(crs, tx);
         }
 
+        return tx;
+    }
+
+    Geometry transform(Geometry geometry, MathTransform2D tx) throws IOException {
+        GeometryCoordinateSequenceTransformer transformer = new GeometryCoordinateSequenceTransformer();
+        transformer.setMathTransform(tx);
         try {
-            SimpleFeature f = SimpleFeatureBuilder.build(schema, attributes, feature.getID());
-            //copy over the user data from original
-            f.getUserData().putAll(feature.getUserData());
-            return f;
-        } catch (IllegalAttributeException e) {
-            String msg = "Error creating reprojeced feature";
+            return transformer.transform(geometry);
+        } catch (TransformException e) {
+            String msg = "Error occured transforming " + geometry.toString();
             throw (IOException) new IOException(msg).initCause(e);
         }
     }
 
+    /**
+     * A geometry packed in a batch, waiting for the batch to be transformed
+     */
+    static class PendingGeometry {
+        Geometry geometry;
+
+        BatchGeometryTransformer batch;
+
+        int offset;
+
+        PendingGeometry(Geometry geometry, BatchGeometryTransformer batch, int offset) {
+            this.geometry = geometry;
+            this.batch = batch;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Reads ahead {@link #BATCH_SIZE} features at a time from the delegate, and reprojects them in
+     * a single batch
+     */
     class ReprojectingFeatureIterator implements SimpleFeatureIterator {
         SimpleFeatureIterator delegate;
 
+        List<SimpleFeature> batch;
+
+        int index;
+
         public ReprojectingFeatureIterator(SimpleFeatureIterator delegate) {
             this.delegate = delegate;
         }
@@ -325,21 +434,33 @@ public class ReprojectingFeatureCollection extends DecoratingFeatureCollection {
         }
 
         public boolean hasNext() {
-            return delegate.hasNext();
+            return (batch != null && index < batch.size()) || delegate.hasNext();
         }
 
         public SimpleFeature next() throws NoSuchElementException {
-            SimpleFeature feature = delegate.next();
+            if (batch == null || index >= batch.size()) {
+                List<SimpleFeature> features = new ArrayList<SimpleFeature>(batchSize);
+                while (features.size() < batchSize && delegate.hasNext()) {
+                    features.add(delegate.next());
+                }
+                if (features.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
 
-            try {
-                return reproject(feature);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+                try {
+                    batch = reproject(features);
+                    index = 0;
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
             }
+
+            return batch.get(index++);
         }
 
         public void close() {
             delegate = null;
+            batch = null;
         }
     }
 
@@ -0,0 +1,213 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.security.web.util.AntPathRequestMatcher;
+import org.springframework.security.web.util.RequestMatcher;
+
+/**
+ * Selects the filter chain of a request with a single pass over the request path, instead of
+ * testing the ant patterns of each chain in turn.
+ * <p>
+ * The patterns of the form <code>/some/path/**</code>, which are the vast majority, are compiled
+ * in a character trie. The universal patterns <code>/**</code> and <code>**</code> are reduced to
+ * the index of the first chain using them, and only the other patterns are matched with an
+ * {@link AntPathRequestMatcher}, and only when they belong to a chain coming before the one
+ * selected by the trie. The outcome is the same as checking each pattern with an
+ * {@link AntPathRequestMatcher} in chain order, case insensitive.
+ * </p>
+ * <p>
+ * Each chain is represented by the {@link RequestMatcher} returned by {@link #add(String...)}. The
+ * first one invoked for a request computes the selected chain, the others reuse the result until
+ * another request is matched on the same thread, or {@link #clear()} is called.
+ * </p>
+ */
+public class CompiledFilterChainMatcher {
+
+    static final String MATCH_ALL = "/**";
+
+    static final int NO_MATCH = Integer.MAX_VALUE;
+
+    static final ThreadLocal<Selection> SELECTION = new ThreadLocal<Selection>() {
+        protected Selection initialValue() {
+            return new Selection();
+        }
+    };
+
+    /**
+     * The last chain selection on the current thread
+     */
+    static class Selection {
+        CompiledFilterChainMatcher matcher;
+
+        HttpServletRequest request;
+
+        int chain;
+    }
+
+    /**
+     * A node of the trie, holding the first chain whose sub path pattern ends here
+     */
+    static class Node {
+        char[] keys = new char[0];
+
+        Node[] children = new Node[0];
+
+        int chain = NO_MATCH;
+
+        Node child(char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node addChild(char c) {
+            Node child = child(c);
+            if (child == null) {
+                child = new Node();
+                char[] newKeys = new char[keys.length + 1];
+                System.arraycopy(keys, 0, newKeys, 0, keys.length);
+                newKeys[keys.length] = c;
+                Node[] newChildren = new Node[children.length + 1];
+                System.arraycopy(children, 0, newChildren, 0, children.length);
+                newChildren[children.length] = child;
+                keys = newKeys;
+                children = newChildren;
+            }
+            return child;
+        }
+    }
+
+    Node root = new Node();
+
+    int matchAll = NO_MATCH;
+
+    List<AntPathRequestMatcher> antMatchers = new ArrayList<AntPathRequestMatcher>();
+
+    List<Integer> antChains = new ArrayList<Integer>();
+
+    int chains;
+
+    /**
+     * Adds a chain matching any of the specified ant patterns, after the ones already added
+     *
+     * @return the matcher to be associated to the chain filters
+     */
+    public RequestMatcher add(String... patterns) {
+        int chain = chains++;
+        for (String pattern : patterns) {
+            String p = pattern.toLowerCase();
+            if (MATCH_ALL.equals(p) || "**".equals(p)) {
+                matchAll = Math.min(matchAll, chain);
+            } else if (p.endsWith(MATCH_ALL) && p.indexOf('?') == -1
+                    && p.indexOf('*') == p.length() - 2) {
+                Node node = root;
+                String subpath = p.substring(0, p.length() - MATCH_ALL.length());
+                for (int i = 0; i < subpath.length(); i++) {
+                    node = node.addChild(subpath.charAt(i));
+                }
+                node.chain = Math.min(node.chain, chain);
+            } else {
+                antMatchers.add(new AntPathRequestMatcher(pattern));
+                antChains.add(chain);
+            }
+        }
+        return new ChainMatcher(chain, patterns);
+    }
+
+    /**
+     * Returns the index of the chain selected for the request, or -1 if no chain matches it
+     */
+    public int select(HttpServletRequest request) {
+        Selection selection = SELECTION.get();
+        if (selection.matcher != this || selection.request != request) {
+            selection.chain = match(request);
+            selection.matcher = this;
+            selection.request = request;
+        }
+        return selection.chain;
+    }
+
+    int match(HttpServletRequest request) {
+        String path = request.getServletPath();
+        if (path == null) {
+            path = "";
+        }
+        if (request.getPathInfo() != null) {
+            path += request.getPathInfo();
+        }
+
+        // walk the trie along the path, a sub path matches if followed by a separator or
+        // by the end of the path
+        int best = matchAll;
+        Node node = root;
+        for (int i = 0; node != null; i++) {
+            boolean boundary = i == path.length() || path.charAt(i) == '/';
+            if (boundary && node.chain < best) {
+                best = node.chain;
+            }
+            if (i == path.length()) {
+                break;
+            }
+            node = node.child(Character.toLowerCase(path.charAt(i)));
+        }
+
+        // the other patterns matter only if they come before the best chain so far
+        for (int i = 0; i < antChains.size() && antChains.get(i) < best; i++) {
+            if (antMatchers.get(i).matches(request)) {
+                best = antChains.get(i);
+                break;
+            }
+        }
+
+        return best == NO_MATCH ? -1 : best;
+    }
+
+    /**
+     * Forgets the last selection made on the current thread, so that neither the request nor the
+     * thread local entry are retained
+     */
+    public static void clear() {
+        SELECTION.remove();
+    }
+
+    /**
+     * Matches the requests for which a specific chain gets selected
+     */
+    class ChainMatcher implements RequestMatcher {
+        int chain;
+
+        String[] patterns;
+
+        ChainMatcher(int chain, String[] patterns) {
+            this.chain = chain;
+            this.patterns = patterns;
+        }
+
+        public boolean matches(HttpServletRequest request) {
+            return select(request) == chain;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("Chain ").append(chain).append(" [");
+            for (int i = 0; i < patterns.length; i++) {
+                sb.append(patterns[i]);
+                if (i < patterns.length - 1) {
+                    sb.append(",");
+                }
+            }
+            return sb.append("]").toString();
+        }
+    }
+}
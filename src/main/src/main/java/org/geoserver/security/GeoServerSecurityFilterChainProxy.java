@@ -25,7 +25,6 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.security.web.FilterChainProxy;
 import org.springframework.security.web.SecurityFilterChain;
-import org.springframework.security.web.util.AntPathRequestMatcher;
 import org.springframework.security.web.util.RequestMatcher;
 
 public class GeoServerSecurityFilterChainProxy extends FilterChainProxy 
@@ -98,6 +97,7 @@ public class GeoServerSecurityFilterChainProxy extends FilterChainProxy
         }
         finally {
             REQUEST.remove();
+            CompiledFilterChainMatcher.clear();
         }
     }
 
@@ -131,6 +131,10 @@ public class GeoServerSecurityFilterChainProxy extends FilterChainProxy
         Map<RequestMatcher,List<Filter>> filterChainMap = 
                 new LinkedHashMap<RequestMatcher,List<Filter>>();
 
+        // selects the chain in a single pass over the request path, rather than having
+        // each chain test its ant patterns in turn
+        CompiledFilterChainMatcher matcher = new CompiledFilterChainMatcher();
+
         for (String pattern : rawFilterChainMap.keySet()) {
             List<Filter> filters = new ArrayList<Filter>();
             for (String filterName : rawFilterChainMap.get(pattern)) {
@@ -153,9 +157,7 @@ public class GeoServerSecurityFilterChainProxy extends FilterChainProxy
             }
             //JD: we probably want to actually have seperate filter instances for each pattern 
             // component
-            for (String p : pattern.split(",")) {
-                filterChainMap.put(new AntPathRequestMatcher(p), filters);
-            }
+            filterChainMap.put(matcher.add(pattern.split(",")), filters);
         }
 
         synchronized (this) {
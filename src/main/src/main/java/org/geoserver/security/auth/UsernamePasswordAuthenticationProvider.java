@@ -36,6 +36,8 @@ public class UsernamePasswordAuthenticationProvider extends GeoServerAuthenticat
     /** auth provider to delegate to */
     DaoAuthenticationProvider authProvider;
     String userGroupServiceName;
+    GeoServerUserGroupService userGroupService;
+    VerifiedCredentialCache credentialCache;
     
     @Override
     public void initializeFromConfig(SecurityNamedServiceConfig config) throws IOException {
@@ -49,6 +51,12 @@ public class UsernamePasswordAuthenticationProvider extends GeoServerAuthenticat
                 + upAuthConfig.getUserGroupServiceName());
         }
         userGroupServiceName = upAuthConfig.getUserGroupServiceName();
+
+        // stop the previous cache from listening, the service may well be the same instance
+        if (userGroupService != null && credentialCache != null) {
+            userGroupService.unregisterUserGroupLoadedListener(credentialCache);
+        }
+        userGroupService = ugService;
         
         //create delegate auth provider
         authProvider = new DaoAuthenticationProvider();
@@ -57,9 +65,11 @@ public class UsernamePasswordAuthenticationProvider extends GeoServerAuthenticat
         //set up the password encoder
         // multiplex password encoder actually allows us to handle all types of passwords for 
         // decoding purposes, regardless of whatever the current one used by the user group service
-        // is
-        authProvider.setPasswordEncoder(
+        // is, verified credentials are remembered to skip the expensive digest checks
+        credentialCache = new VerifiedCredentialCache(
             new GeoServerMultiplexingPasswordEncoder(getSecurityManager(),ugService));
+        ugService.registerUserGroupLoadedListener(credentialCache);
+        authProvider.setPasswordEncoder(credentialCache);
 
         try {
             authProvider.afterPropertiesSet();
@@ -68,6 +78,13 @@ public class UsernamePasswordAuthenticationProvider extends GeoServerAuthenticat
         }
     }
 
+    /**
+     * Returns the cache of the credentials verified by this provider
+     */
+    public VerifiedCredentialCache getCredentialCache() {
+        return credentialCache;
+    }
+
     @Override
     public boolean supports(Class<? extends Object> authentication, HttpServletRequest request) {
         return authProvider.supports(authentication);
@@ -0,0 +1,178 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security.auth;
+
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.geoserver.security.event.UserGroupLoadedEvent;
+import org.geoserver.security.event.UserGroupLoadedListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.security.authentication.encoding.PasswordEncoder;
+import org.springframework.security.crypto.codec.Hex;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Password encoder wrapper remembering the credentials its delegate already verified, so that
+ * the clients authenticating on every request do not pay for an expensive password check (the
+ * digest encoder runs 100000 SHA-256 iterations) each time.
+ * <p>
+ * The passwords are never stored: an entry is a HMAC of the encoded password and of the raw
+ * password, keyed by a random secret generated at startup. The encoded password is salted and
+ * changes along with the password, so a password change makes the old entries unreachable, and
+ * they are dropped anyways when the user group service fires a {@link UserGroupLoadedEvent}. Only
+ * successful checks are remembered, for at most {@link #TTL} seconds.
+ * </p>
+ * <p>
+ * The size and time to live are set with the
+ * <code>org.geoserver.security.credentialCacheSize</code> and
+ * <code>org.geoserver.security.credentialCacheTTL</code> system properties, a size of 0
+ * disabling the cache.
+ * </p>
+ *
+ */
+public class VerifiedCredentialCache implements PasswordEncoder, UserGroupLoadedListener {
+
+    public static final int SIZE = Integer.getInteger(
+            "org.geoserver.security.credentialCacheSize", 1000);
+
+    public static final int TTL = Integer.getInteger(
+            "org.geoserver.security.credentialCacheTTL", 300);
+
+    static final String ALGORITHM = "HmacSHA256";
+
+    static final SecretKeySpec KEY;
+    static {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        KEY = new SecretKeySpec(secret, ALGORITHM);
+    }
+
+    static final ThreadLocal<Mac> MAC = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(KEY);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("No " + ALGORITHM + " algorithm available!", e);
+            }
+        }
+    };
+
+    /**
+     * Returns the hex encoded HMAC of the strings, keyed by the secret of this JVM. The strings are
+     * separated by a NUL character, so that moving characters from one to the other changes the
+     * result.
+     *
+     * @param strings
+     * @return
+     */
+    public static String hmac(String... strings) {
+        Mac mac = MAC.get();
+        try {
+            for (int i = 0; i < strings.length; i++) {
+                if (i > 0) {
+                    mac.update((byte) 0);
+                }
+                if (strings[i] != null) {
+                    mac.update(strings[i].getBytes("UTF-8"));
+                }
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+        return new String(Hex.encode(mac.doFinal()));
+    }
+
+    PasswordEncoder delegate;
+
+    Cache<String, Boolean> verified;
+
+    AtomicLong hits = new AtomicLong();
+
+    AtomicLong misses = new AtomicLong();
+
+    public VerifiedCredentialCache(PasswordEncoder delegate) {
+        this(delegate, SIZE, TTL);
+    }
+
+    /**
+     * @param delegate The encoder checking the passwords
+     * @param size The max number of credentials remembered
+     * @param ttl The time a credential is remembered, in seconds
+     */
+    public VerifiedCredentialCache(PasswordEncoder delegate, int size, int ttl) {
+        this.delegate = delegate;
+        if (size > 0 && ttl > 0) {
+            verified = CacheBuilder.newBuilder().maximumSize(size)
+                    .expireAfterWrite(ttl, TimeUnit.SECONDS).build();
+        }
+    }
+
+    public PasswordEncoder getDelegate() {
+        return delegate;
+    }
+
+    public String encodePassword(String rawPass, Object salt) throws DataAccessException {
+        return delegate.encodePassword(rawPass, salt);
+    }
+
+    public boolean isPasswordValid(String encPass, String rawPass, Object salt)
+            throws DataAccessException {
+        if (verified == null || encPass == null || rawPass == null) {
+            return delegate.isPasswordValid(encPass, rawPass, salt);
+        }
+
+        String key = hmac(encPass, rawPass, salt != null ? salt.toString() : null);
+        if (verified.getIfPresent(key) != null) {
+            hits.incrementAndGet();
+            return true;
+        }
+
+        misses.incrementAndGet();
+        boolean valid = delegate.isPasswordValid(encPass, rawPass, salt);
+        if (valid) {
+            verified.put(key, Boolean.TRUE);
+        }
+        return valid;
+    }
+
+    public void usersAndGroupsChanged(UserGroupLoadedEvent event) {
+        clear();
+    }
+
+    /**
+     * Forgets all the verified credentials
+     */
+    public void clear() {
+        if (verified != null) {
+            verified.invalidateAll();
+        }
+    }
+
+    /**
+     * Returns the number of password checks answered from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of password checks delegated to the wrapped encoder
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+}
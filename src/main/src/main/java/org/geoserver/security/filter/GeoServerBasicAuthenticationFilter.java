@@ -7,8 +7,6 @@ package org.geoserver.security.filter;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -17,11 +15,11 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 
 import org.geoserver.security.GeoServerSecurityManager;
+import org.geoserver.security.auth.VerifiedCredentialCache;
 import org.geoserver.security.config.BasicAuthenticationFilterConfig;
 import org.geoserver.security.config.SecurityNamedServiceConfig;
 import org.geoserver.security.impl.GeoServerUser;
 import org.springframework.security.crypto.codec.Base64;
-import org.springframework.security.crypto.codec.Hex;
 import org.springframework.security.web.AuthenticationEntryPoint;
 import org.springframework.security.web.authentication.www.BasicAuthenticationEntryPoint;
 import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
@@ -35,18 +33,10 @@ import org.springframework.security.web.authentication.www.BasicAuthenticationFi
 public class GeoServerBasicAuthenticationFilter extends GeoServerCompositeFilter 
     implements AuthenticationCachingFilter, GeoServerAuthenticationFilter {
     private BasicAuthenticationEntryPoint aep;
-    private MessageDigest digest;
     @Override
     public void initializeFromConfig(SecurityNamedServiceConfig config) throws IOException {
         super.initializeFromConfig(config);
 
-        try {            
-            digest = MessageDigest.getInstance("MD5");
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException("No MD5 algorithm available!");
-        } 
-
-        
         aep= new BasicAuthenticationEntryPoint();
         aep.setRealmName(GeoServerSecurityManager.REALM);
         try {
@@ -84,7 +74,8 @@ public class GeoServerBasicAuthenticationFilter extends GeoServerCompositeFilter
 
 
     /**
-     * returns username:md5(password:filtername)
+     * returns username:hmac(password:filtername), the HMAC being keyed
+     * by a secret of this JVM (see {@link VerifiedCredentialCache#hmac(String...)})
      */
     @Override
     public String getCacheKey(HttpServletRequest request) {
@@ -113,16 +104,8 @@ public class GeoServerBasicAuthenticationFilter extends GeoServerCompositeFilter
             if (GeoServerUser.ROOT_USERNAME.equals(username))
                     return null;
             
-            StringBuffer buff = new StringBuffer(password);
-            buff.append(":");
-            buff.append(getName());
-            String digestString = null;
-            try {
-                digestString = new String(Hex.encode(digest.digest(buff.toString().getBytes("utf-8"))));
-            } catch (UnsupportedEncodingException e) {
-                throw new RuntimeException(e);
-            }        
-            buff = new StringBuffer(username);
+            String digestString = VerifiedCredentialCache.hmac(password, getName());
+            StringBuffer buff = new StringBuffer(username);
             buff.append(":");
             buff.append(digestString);
             return buff.toString();        
@@ -70,6 +70,16 @@ public class RoleCalculator  {
     }
 
 
+    /**
+     * Returns the cached {@link RoleGraph} of the role service,
+     * <code>null</code> if the roles of the service cannot be cached
+     * 
+     * @return
+     */
+    protected RoleGraph getRoleGraph() {
+        return RoleGraph.get(getRoleService());
+    }
+
     /**
      * Check if the role service is not null
      * 
@@ -110,8 +120,13 @@ public class RoleCalculator  {
         Set<GeoServerRole> set1 = new HashSet<GeoServerRole>();
         
         // alle roles for the user
-        set1.addAll(getRoleService().getRolesForUser(user.getUsername()));
-        addInheritedRoles(set1);
+        RoleGraph graph = getRoleGraph();
+        if (graph!=null) {
+            set1.addAll(graph.getRolesForUser(getRoleService(), user.getUsername()));
+        } else {
+            set1.addAll(getRoleService().getRolesForUser(user.getUsername()));
+            addInheritedRoles(set1);
+        }
         
         // add all roles for enabled groups
         if (getUserGroupService()!=null) {
@@ -180,8 +195,13 @@ public class RoleCalculator  {
     public SortedSet<GeoServerRole> calculateRoles(GeoServerUserGroup group) throws IOException {
         
         SortedSet<GeoServerRole> roles = new TreeSet<GeoServerRole>();
-        roles.addAll(getRoleService().getRolesForGroup(group.getGroupname()));
-        addInheritedRoles(roles);
+        RoleGraph graph = getRoleGraph();
+        if (graph!=null) {
+            roles.addAll(graph.getRolesForGroup(getRoleService(), group.getGroupname()));
+        } else {
+            roles.addAll(getRoleService().getRolesForGroup(group.getGroupname()));
+            addInheritedRoles(roles);
+        }
         return roles;
     }
     
@@ -193,8 +213,15 @@ public class RoleCalculator  {
      */
     public void addInheritedRoles(Collection<GeoServerRole> coll) throws IOException {
         Set<GeoServerRole> inherited = new HashSet<GeoServerRole>();
-        for (GeoServerRole role : coll)
-            addParentRole(role, inherited);
+        RoleGraph graph = getRoleGraph();
+        for (GeoServerRole role : coll) {
+            Set<GeoServerRole> ancestors = graph == null ? null : 
+                graph.getAncestors(getRoleService(), role.getAuthority());
+            if (ancestors!=null)
+                inherited.addAll(ancestors);
+            else
+                addParentRole(role, inherited);
+        }
         coll.addAll(inherited);        
     }
 
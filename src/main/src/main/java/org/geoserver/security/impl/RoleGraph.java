@@ -0,0 +1,256 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security.impl;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.security.AuthorizingRoleService;
+import org.geoserver.security.GeoServerRoleService;
+import org.geoserver.security.GeoServerRoleStore;
+import org.geoserver.security.event.RoleLoadedEvent;
+import org.geoserver.security.event.RoleLoadedListener;
+
+/**
+ * In memory snapshot of the roles of a {@link GeoServerRoleService}: the roles, their parent
+ * links and the user/group role assignments, with the inherited roles already resolved.
+ * <p>
+ * Used by {@link RoleCalculator} so that the role resolution of an authentication is a map
+ * lookup, instead of a call to the role service for the user, for each of its groups and for
+ * each ancestor of each role (each one being a query for the JDBC role service).
+ * </p>
+ * <p>
+ * The snapshot is loaded once per role service, on first use, and dropped when the service
+ * fires a {@link RoleLoadedEvent}, that is, when it's reloaded or a role store commits. Setting
+ * the <code>org.geoserver.security.disableRoleGraph</code> system property to true disables the
+ * cache.
+ * </p>
+ *
+ */
+public class RoleGraph implements RoleLoadedListener {
+
+    static Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geoserver.security");
+
+    static final boolean ENABLED = !Boolean.getBoolean("org.geoserver.security.disableRoleGraph");
+
+    /**
+     * The graphs, by role service. The graph does not reference the service, so that the
+     * entry goes away along with the service
+     */
+    static final Map<GeoServerRoleService, RoleGraph> GRAPHS =
+        new WeakHashMap<GeoServerRoleService, RoleGraph>();
+
+    /**
+     * Returns the role graph of a role service, or <code>null</code> if the roles of the
+     * service cannot be cached: stores see their uncommitted changes and the authorizing
+     * wrappers filter the roles for the current user.
+     *
+     * @param service
+     * @return
+     */
+    public static RoleGraph get(GeoServerRoleService service) {
+        if (!ENABLED || service == null || service instanceof GeoServerRoleStore
+                || service instanceof AuthorizingRoleService) {
+            return null;
+        }
+        synchronized (GRAPHS) {
+            RoleGraph graph = GRAPHS.get(service);
+            if (graph == null) {
+                graph = new RoleGraph();
+                service.registerRoleLoadedListener(graph);
+                GRAPHS.put(service, graph);
+            }
+            return graph;
+        }
+    }
+
+    volatile Snapshot snapshot;
+
+    /**
+     * Incremented on each change event, a load overlapping a change is not kept
+     */
+    AtomicLong generation = new AtomicLong();
+
+    AtomicLong hits = new AtomicLong();
+
+    AtomicLong loads = new AtomicLong();
+
+    volatile long loadTime;
+
+    /**
+     * Returns the roles assigned to the user, including the inherited ones
+     *
+     * @param service
+     * @param username
+     * @return
+     * @throws IOException
+     */
+    public SortedSet<GeoServerRole> getRolesForUser(GeoServerRoleService service,
+            String username) throws IOException {
+        return lookup(getSnapshot(service).userRoles, username);
+    }
+
+    /**
+     * Returns the roles assigned to the group, including the inherited ones
+     *
+     * @param service
+     * @param groupname
+     * @return
+     * @throws IOException
+     */
+    public SortedSet<GeoServerRole> getRolesForGroup(GeoServerRoleService service,
+            String groupname) throws IOException {
+        return lookup(getSnapshot(service).groupRoles, groupname);
+    }
+
+    /**
+     * Returns the ancestors of a role, or <code>null</code> if the role is unknown
+     *
+     * @param service
+     * @param role
+     * @return
+     * @throws IOException
+     */
+    public Set<GeoServerRole> getAncestors(GeoServerRoleService service, String role)
+            throws IOException {
+        return getSnapshot(service).ancestors.get(role);
+    }
+
+    SortedSet<GeoServerRole> lookup(Map<String, SortedSet<GeoServerRole>> map, String name) {
+        SortedSet<GeoServerRole> roles = map.get(name);
+        if (roles == null) {
+            return Collections.unmodifiableSortedSet(new TreeSet<GeoServerRole>());
+        }
+        return roles;
+    }
+
+    Snapshot getSnapshot(GeoServerRoleService service) throws IOException {
+        Snapshot result = snapshot;
+        if (result != null) {
+            hits.incrementAndGet();
+            return result;
+        }
+
+        synchronized (this) {
+            result = snapshot;
+            if (result != null) {
+                hits.incrementAndGet();
+                return result;
+            }
+
+            long current = generation.get();
+            long start = System.currentTimeMillis();
+            result = new Snapshot(service);
+            loadTime = System.currentTimeMillis() - start;
+            loads.incrementAndGet();
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Loaded role graph for service named " + service.getName()
+                        + " in " + loadTime + "ms");
+            }
+            // keep it only if nothing changed in the meantime
+            if (generation.get() == current) {
+                snapshot = result;
+            }
+            return result;
+        }
+    }
+
+    public void rolesChanged(RoleLoadedEvent event) {
+        generation.incrementAndGet();
+        snapshot = null;
+    }
+
+    /**
+     * Returns the number of role lookups served from the loaded graph
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of times the graph has been loaded from the role service
+     */
+    public long getLoads() {
+        return loads.get();
+    }
+
+    /**
+     * Returns the time the last load took, in milliseconds
+     */
+    public long getLoadTime() {
+        return loadTime;
+    }
+
+    /**
+     * The roles of the service at a given time
+     */
+    static class Snapshot {
+        Map<String, Set<GeoServerRole>> ancestors = new HashMap<String, Set<GeoServerRole>>();
+
+        Map<String, SortedSet<GeoServerRole>> userRoles = new HashMap<String, SortedSet<GeoServerRole>>();
+
+        Map<String, SortedSet<GeoServerRole>> groupRoles = new HashMap<String, SortedSet<GeoServerRole>>();
+
+        Snapshot(GeoServerRoleService service) throws IOException {
+            Map<String, GeoServerRole> roles = new HashMap<String, GeoServerRole>();
+            for (GeoServerRole role : service.getRoles()) {
+                roles.put(role.getAuthority(), role);
+            }
+
+            Map<String, String> parents = service.getParentMappings();
+            for (GeoServerRole role : roles.values()) {
+                Set<GeoServerRole> set = new HashSet<GeoServerRole>();
+                String parent = parents.get(role.getAuthority());
+                while (parent != null) {
+                    GeoServerRole parentRole = roles.get(parent);
+                    // stop on dangling links and cycles, like RoleCalculator does
+                    if (parentRole == null || parentRole.equals(role) || !set.add(parentRole)) {
+                        break;
+                    }
+                    parent = parents.get(parent);
+                }
+                ancestors.put(role.getAuthority(), Collections.unmodifiableSet(set));
+            }
+
+            for (GeoServerRole role : roles.values()) {
+                Set<GeoServerRole> inherited = ancestors.get(role.getAuthority());
+                for (String user : service.getUserNamesForRole(role)) {
+                    add(userRoles, user, role, inherited);
+                }
+                for (String group : service.getGroupNamesForRole(role)) {
+                    add(groupRoles, group, role, inherited);
+                }
+            }
+
+            for (Map.Entry<String, SortedSet<GeoServerRole>> entry : userRoles.entrySet()) {
+                entry.setValue(Collections.unmodifiableSortedSet(entry.getValue()));
+            }
+            for (Map.Entry<String, SortedSet<GeoServerRole>> entry : groupRoles.entrySet()) {
+                entry.setValue(Collections.unmodifiableSortedSet(entry.getValue()));
+            }
+        }
+
+        void add(Map<String, SortedSet<GeoServerRole>> map, String name, GeoServerRole role,
+                Set<GeoServerRole> inherited) {
+            SortedSet<GeoServerRole> set = map.get(name);
+            if (set == null) {
+                set = new TreeSet<GeoServerRole>();
+                map.put(name, set);
+            }
+            set.add(role);
+            set.addAll(inherited);
+        }
+    }
+}
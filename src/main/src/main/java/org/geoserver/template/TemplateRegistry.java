@@ -0,0 +1,294 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.template;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.template.GeoServerTemplateLoader.ClassTemplateSource;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import freemarker.cache.TemplateLoader;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+/**
+ * A registry of compiled freemarker templates, shared by the template based outputs (KML, GeoRSS,
+ * GetFeatureInfo HTML, the REST HTML pages).
+ * <p>
+ * A template is looked up once for each configuration, calling class, resource and template name,
+ * compiled, and cached. Lookups do not lock: two threads missing the same entry at the same time
+ * will both compile the template, and the last one wins. The compiled templates are never modified
+ * once cached, and can be processed concurrently.
+ * </p>
+ * <p>
+ * Entries are kept in synch with the data directory by watching the modification time of the
+ * template files: a template file modified on disk is recompiled at the next lookup. The full
+ * lookup, which probes several data directory locations, is instead repeated at most every
+ * {@link #CHECK_INTERVAL} milliseconds, to catch templates added in a location taking precedence
+ * over the cached one, or removed.
+ * </p>
+ * <p>
+ * Templates are compiled against the configuration they are looked up with, without changing its
+ * template loader, so templates included by others are resolved with the configuration own
+ * loader.
+ * </p>
+ */
+public class TemplateRegistry {
+
+    static final Logger LOGGER = org.geotools.util.logging.Logging
+            .getLogger("org.geoserver.template");
+
+    /**
+     * Minimum amount of milliseconds between two full lookups of the same template, can be set
+     * with the "org.geoserver.template.checkInterval" system property
+     */
+    public static final long CHECK_INTERVAL = Long.getLong("org.geoserver.template.checkInterval",
+            1000);
+
+    static final TemplateRegistry INSTANCE = new TemplateRegistry(CHECK_INTERVAL);
+
+    /**
+     * Returns the registry shared by all the template based outputs
+     */
+    public static TemplateRegistry get() {
+        return INSTANCE;
+    }
+
+    ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+
+    long checkInterval;
+
+    TemplateRegistry(long checkInterval) {
+        this.checkInterval = checkInterval;
+    }
+
+    /**
+     * Returns a template looked up with a {@link GeoServerTemplateLoader} set on the specified
+     * resource.
+     *
+     * @param config The configuration the template is compiled against
+     * @param caller The class used to look up the template on the classpath, may be null
+     * @param resource The resource the template is looked up against, may be null
+     * @param path The template name
+     * @param encoding The template encoding
+     *
+     * @throws FileNotFoundException If the template could not be found
+     */
+    public Template getTemplate(Configuration config, final Class caller,
+            final ResourceInfo resource, String path, String encoding) throws IOException {
+        Object resourceKey = null;
+        if (resource != null) {
+            resourceKey = Arrays.asList(resource.getId(), resource.getStore().getWorkspace()
+                    .getName(), resource.getStore().getName(), resource.getName());
+        }
+        Key key = new Key(config, caller, resourceKey, path, encoding);
+        return lookup(key, new LoaderFactory() {
+
+            public TemplateLoader createLoader() throws IOException {
+                GeoServerTemplateLoader loader = new GeoServerTemplateLoader(caller);
+                loader.setResource(resource);
+                return loader;
+            }
+        }, config, path, encoding);
+    }
+
+    /**
+     * Returns a template looked up with a {@link GeoServerTemplateLoader} set on the specified
+     * feature type.
+     *
+     * @param config The configuration the template is compiled against
+     * @param caller The class used to look up the template on the classpath, may be null
+     * @param featureType The feature type the template is looked up against
+     * @param path The template name
+     * @param encoding The template encoding
+     *
+     * @throws FileNotFoundException If the template could not be found
+     */
+    public Template getTemplate(Configuration config, final Class caller,
+            final SimpleFeatureType featureType, String path, String encoding) throws IOException {
+        Key key = new Key(config, caller, featureType.getName(), path, encoding);
+        return lookup(key, new LoaderFactory() {
+
+            public TemplateLoader createLoader() throws IOException {
+                GeoServerTemplateLoader loader = new GeoServerTemplateLoader(caller);
+                loader.setFeatureType(featureType);
+                return loader;
+            }
+        }, config, path, encoding);
+    }
+
+    /**
+     * Returns a template looked up with the template loader of the configuration.
+     * <p>
+     * Meant for outputs building a new configuration for each request, which all share the same
+     * template loading setup for a given owner: the templates are cached by owner and name only,
+     * and compiled against the configuration they were first looked up with.
+     * </p>
+     *
+     * @param config The configuration providing the template loader
+     * @param owner The object identifying the template loading setup, usually the class building
+     *        the configuration
+     * @param path The template name
+     *
+     * @throws FileNotFoundException If the template could not be found
+     */
+    public Template getTemplate(final Configuration config, Object owner, String path)
+            throws IOException {
+        Key key = new Key(owner, path);
+        return lookup(key, new LoaderFactory() {
+
+            public TemplateLoader createLoader() throws IOException {
+                return config.getTemplateLoader();
+            }
+        }, config, path, config.getEncoding(config.getLocale()));
+    }
+
+    /**
+     * Drops all the cached templates
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    Template lookup(Key key, LoaderFactory factory, Configuration config, String path,
+            String encoding) throws IOException {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(key);
+        if (entry == null || !isFresh(entry, now)) {
+            entry = load(entry, factory.createLoader(), config, path, encoding, now);
+            entries.put(key, entry);
+        }
+
+        if (entry.template == null) {
+            throw new FileNotFoundException("Template " + path + " not found.");
+        }
+        return entry.template;
+    }
+
+    boolean isFresh(Entry entry, long now) {
+        if (now - entry.checked >= checkInterval) {
+            return false;
+        }
+        if (entry.file != null) {
+            return entry.file.lastModified() == entry.lastModified
+                    && entry.file.length() == entry.length;
+        }
+        return true;
+    }
+
+    Entry load(Entry previous, TemplateLoader loader, Configuration config, String path,
+            String encoding, long now) throws IOException {
+        Object source = loader.findTemplateSource(path);
+        if (source == null) {
+            return new Entry(null, null, null, 0, 0, now);
+        }
+
+        try {
+            File file = source instanceof File ? (File) source : null;
+            String sourceId = getSourceId(source);
+            long lastModified = file != null ? file.lastModified() : loader.getLastModified(source);
+            long length = file != null ? file.length() : -1;
+
+            if (previous != null && previous.template != null
+                    && sourceId.equals(previous.sourceId) && lastModified == previous.lastModified
+                    && length == previous.length) {
+                // same source as before, only the lookup needed refreshing
+                return new Entry(previous.template, file, sourceId, lastModified, length, now);
+            }
+
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Compiling template " + path + " from " + sourceId);
+            }
+            Reader reader = loader.getReader(source, config.getEncoding(config.getLocale()));
+            try {
+                Template template = new Template(path, reader, config);
+                if (encoding != null) {
+                    template.setEncoding(encoding);
+                }
+                return new Entry(template, file, sourceId, lastModified, length, now);
+            } finally {
+                reader.close();
+            }
+        } finally {
+            loader.closeTemplateSource(source);
+        }
+    }
+
+    /**
+     * Returns a string identifying the template source, computed before the source gets closed
+     */
+    String getSourceId(Object source) {
+        if (source instanceof File) {
+            return ((File) source).getAbsolutePath();
+        } else if (source instanceof ClassTemplateSource) {
+            return String.valueOf(((ClassTemplateSource) source).source);
+        }
+        return String.valueOf(source);
+    }
+
+    /**
+     * Builds the template loader used for a full lookup
+     */
+    interface LoaderFactory {
+        TemplateLoader createLoader() throws IOException;
+    }
+
+    /**
+     * A cached template, or a failed lookup when the template is null
+     */
+    static class Entry {
+        final Template template;
+
+        final File file;
+
+        final String sourceId;
+
+        final long lastModified;
+
+        final long length;
+
+        final long checked;
+
+        Entry(Template template, File file, String sourceId, long lastModified, long length,
+                long checked) {
+            this.template = template;
+            this.file = file;
+            this.sourceId = sourceId;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.checked = checked;
+        }
+    }
+
+    static class Key {
+        Object[] parts;
+
+        Key(Object... parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(parts);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            return Arrays.equals(parts, ((Key) obj).parts);
+        }
+    }
+}
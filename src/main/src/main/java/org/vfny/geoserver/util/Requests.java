@@ -246,6 +246,19 @@ public final class Requests {
         //Conect to get the response headers
         conn.connect();
 
+        return getInputStream(conn);
+    }
+
+    /**
+     * Returns the input stream of an already opened connection, decoding the gzip or deflate
+     * content encodings. The caller is in charge of setting the Accept-Encoding header, as well
+     * as any other request header, before connecting
+     *
+     * @param conn The connection
+     * @return The decoded response body
+     * @throws IOException
+     */
+    public static InputStream getInputStream(URLConnection conn) throws IOException {
         //Return the correct inputstream
         //If the connection is a url, connection, check the response encoding.
         if (conn instanceof HttpURLConnection) {
@@ -667,6 +667,26 @@ public class XStreamPersisterTest extends GeoServerTestSupport {
         assertTrue(CRS.equalsIgnoreMetadata(crs, crs2));
     }
 
+    public void testSharedPersister() throws Exception {
+        XStreamPersisterFactory xpf = new XStreamPersisterFactory();
+        XStreamPersister shared = xpf.getSharedXMLPersister();
+        assertSame(shared, xpf.getSharedXMLPersister());
+        assertNotSame(shared, xpf.createXMLPersister());
+        assertEquals("layer", shared.getClassAliasingMapper().serializedClass(LayerInfo.class));
+
+        // the shared persister encodes the same way as a fresh one
+        Catalog catalog = new CatalogImpl();
+        WorkspaceInfo ws = catalog.getFactory().createWorkspace();
+        ws.setName("foo");
+
+        ByteArrayOutputStream out1 = out();
+        shared.save(ws, out1);
+        ByteArrayOutputStream out2 = out();
+        persister.save(ws, out2);
+        assertEquals(out2.toString("UTF-8"), out1.toString("UTF-8"));
+        assertEquals("foo", shared.load(in(out1), WorkspaceInfo.class).getName());
+    }
+
     ByteArrayOutputStream out() {
         return new ByteArrayOutputStream();
     }
@@ -10,9 +10,13 @@ import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.FeatureIterator;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.geometry.jts.GeometryCoordinateSequenceTransformer;
 import org.geotools.referencing.CRS;
 import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.operation.MathTransform2D;
 
+import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.io.WKTReader;
 
@@ -52,4 +56,61 @@ public class ReprojectingFeatureCollectionTest extends TestCase {
             it.close();
         }
     }
+
+    public void testBatchReprojection() throws Exception {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("foo");
+        tb.setSRS("epsg:4326");
+        tb.add("geom", Geometry.class);
+        tb.add("name", String.class);
+
+        String[] wkts = new String[] { "POINT(-120 50)", "LINESTRING(-121 49, -122 50, -123 51)",
+                "POLYGON((-120 50, -121 50, -121 51, -120 50), "
+                        + "(-120.2 50.2, -120.4 50.2, -120.4 50.4, -120.2 50.2))",
+                "MULTIPOINT((-120 50), (-121 51))",
+                "MULTILINESTRING((-121 49, -122 50), (-123 51, -124 52))",
+                "MULTIPOLYGON(((-120 50, -121 50, -121 51, -120 50)), "
+                        + "((-122 50, -123 50, -123 51, -122 50)))",
+                "GEOMETRYCOLLECTION(POINT(-120 50), LINESTRING(-121 49, -122 50))",
+                "POINT EMPTY" };
+
+        SimpleFeatureBuilder b = new SimpleFeatureBuilder(tb.buildFeatureType());
+        DefaultFeatureCollection features = new DefaultFeatureCollection(null, b.getFeatureType());
+        WKTReader reader = new WKTReader();
+        for (int i = 0; i < wkts.length; i++) {
+            b.add(reader.read(wkts[i]));
+            b.add("feature" + i);
+            features.add(b.buildFeature("f" + i));
+        }
+
+        CoordinateReferenceSystem target = CRS.decode("EPSG:3005");
+        MathTransform2D tx = (MathTransform2D) CRS.findMathTransform(CRS.decode("EPSG:4326"),
+                target, true);
+        GeometryCoordinateSequenceTransformer transformer = new GeometryCoordinateSequenceTransformer();
+        transformer.setMathTransform(tx);
+
+        ReprojectingFeatureCollection reprojected = new ReprojectingFeatureCollection(features,
+                target);
+        // make sure the features span more than one batch
+        reprojected.setBatchSize(3);
+
+        FeatureIterator it = reprojected.features();
+        int count = 0;
+        try {
+            while (it.hasNext()) {
+                SimpleFeature f = (SimpleFeature) it.next();
+                int idx = Integer.parseInt(f.getID().substring(1));
+                Geometry expected = transformer.transform(reader.read(wkts[idx]));
+                Geometry actual = (Geometry) f.getDefaultGeometry();
+
+                assertEquals(expected.getGeometryType(), actual.getGeometryType());
+                assertTrue(expected.equalsExact(actual, 1e-6));
+                assertEquals("feature" + idx, f.getAttribute("name"));
+                count++;
+            }
+        } finally {
+            it.close();
+        }
+        assertEquals(wkts.length, count);
+    }
 }
@@ -0,0 +1,115 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.springframework.security.web.util.AntPathRequestMatcher;
+import org.springframework.security.web.util.RequestMatcher;
+
+import com.mockrunner.mock.web.MockHttpServletRequest;
+
+public class CompiledFilterChainMatcherTest extends TestCase {
+
+    static final String[][] CHAINS = new String[][] {
+        { "/web/**", "/gwc/rest/web/**" },
+        { "/j_spring_security_check/**", "/j_spring_security_check" },
+        { "/j_spring_security_logout/**" },
+        { "/rest/**/*.xml" },
+        { "/rest/**" },
+        { "/gwc/rest/**" },
+        { "/wms", "/ows?/**" },
+        { "/**" } };
+
+    static final String[][] PATHS = new String[][] {
+        { "/web/", null }, { "/web", "/wicket/page" }, { "/web", null }, { "/webfoo", null },
+        { "/WEB/", "?wicket:bookmarkablePage" }, { "/gwc", "/rest/web/foo" },
+        { "/gwc", "/rest/layers/topp:states.xml" }, { "/gwc", "/service/wmts" },
+        { "/gwc", "/rest" }, { "/gwc", "/restx" }, { "/j_spring_security_check", null },
+        { "/j_spring_security_check", "/" }, { "/j_spring_security_logout", null },
+        { "/rest", "/workspaces.xml" }, { "/rest", "/workspaces/topp.json" },
+        { "/rest", null }, { "/wms", null }, { "/wms", "/kml" }, { "/ows", null },
+        { "/ows1", "/foo" }, { "/wfs", null }, { "/topp", "/wms" }, { "", null }, { "/", null } };
+
+    CompiledFilterChainMatcher compiled;
+
+    List<RequestMatcher> matchers;
+
+    @Override
+    protected void setUp() throws Exception {
+        compiled = new CompiledFilterChainMatcher();
+        matchers = new ArrayList<RequestMatcher>();
+        for (String[] patterns : CHAINS) {
+            matchers.add(compiled.add(patterns));
+        }
+    }
+
+    MockHttpServletRequest request(String servletPath, String pathInfo) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setServletPath(servletPath);
+        request.setPathInfo(pathInfo);
+        return request;
+    }
+
+    /**
+     * Returns the chain that testing the ant patterns in order selects
+     */
+    int antSelect(MockHttpServletRequest request) {
+        for (int i = 0; i < CHAINS.length; i++) {
+            for (String pattern : CHAINS[i]) {
+                if (new AntPathRequestMatcher(pattern).matches(request)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    public void testSameAsAntMatchers() throws Exception {
+        for (String[] path : PATHS) {
+            MockHttpServletRequest request = request(path[0], path[1]);
+            int expected = antSelect(request);
+            assertEquals(path[0] + path[1], expected, compiled.select(request));
+
+            // only the selected chain matches
+            for (int i = 0; i < matchers.size(); i++) {
+                assertEquals(i == expected, matchers.get(i).matches(request));
+            }
+        }
+    }
+
+    public void testSelection() throws Exception {
+        assertEquals(0, compiled.select(request("/web", "/wicket/page")));
+        assertEquals(0, compiled.select(request("/gwc", "/rest/web/foo")));
+        assertEquals(3, compiled.select(request("/rest", "/workspaces.xml")));
+        assertEquals(4, compiled.select(request("/rest", "/workspaces.json")));
+        assertEquals(5, compiled.select(request("/gwc", "/rest/layers")));
+        assertEquals(7, compiled.select(request("/gwc", "/service/wmts")));
+        assertEquals(7, compiled.select(request("/webfoo", null)));
+    }
+
+    public void testNoMatch() throws Exception {
+        CompiledFilterChainMatcher matcher = new CompiledFilterChainMatcher();
+        RequestMatcher web = matcher.add("/web/**");
+        assertEquals(-1, matcher.select(request("/wms", null)));
+        assertFalse(web.matches(request("/wms", null)));
+        assertTrue(web.matches(request("/web", null)));
+    }
+
+    public void testSelectionReused() throws Exception {
+        MockHttpServletRequest request = request("/web", null);
+        assertEquals(0, compiled.select(request));
+
+        // the same request object is not matched again
+        request.setServletPath("/rest");
+        assertEquals(0, compiled.select(request));
+
+        CompiledFilterChainMatcher.clear();
+        assertEquals(4, compiled.select(request));
+    }
+}
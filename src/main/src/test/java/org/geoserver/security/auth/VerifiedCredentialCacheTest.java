@@ -0,0 +1,69 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.security.auth;
+
+import junit.framework.TestCase;
+
+import org.springframework.security.authentication.encoding.PlaintextPasswordEncoder;
+
+public class VerifiedCredentialCacheTest extends TestCase {
+
+    static class CountingEncoder extends PlaintextPasswordEncoder {
+        int checks;
+
+        @Override
+        public boolean isPasswordValid(String encPass, String rawPass, Object salt) {
+            checks++;
+            return super.isPasswordValid(encPass, rawPass, salt);
+        }
+    }
+
+    public void testCachesValidCredentials() {
+        CountingEncoder encoder = new CountingEncoder();
+        VerifiedCredentialCache cache = new VerifiedCredentialCache(encoder, 10, 60);
+
+        assertTrue(cache.isPasswordValid("secret", "secret", null));
+        assertTrue(cache.isPasswordValid("secret", "secret", null));
+        assertEquals(1, encoder.checks);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // wrong passwords are always checked
+        assertFalse(cache.isPasswordValid("secret", "wrong", null));
+        assertFalse(cache.isPasswordValid("secret", "wrong", null));
+        assertEquals(3, encoder.checks);
+
+        // a changed password does not match the old entry
+        assertFalse(cache.isPasswordValid("changed", "secret", null));
+        assertEquals(4, encoder.checks);
+    }
+
+    public void testClear() {
+        CountingEncoder encoder = new CountingEncoder();
+        VerifiedCredentialCache cache = new VerifiedCredentialCache(encoder, 10, 60);
+
+        assertTrue(cache.isPasswordValid("secret", "secret", null));
+        cache.usersAndGroupsChanged(null);
+        assertTrue(cache.isPasswordValid("secret", "secret", null));
+        assertEquals(2, encoder.checks);
+    }
+
+    public void testDisabled() {
+        CountingEncoder encoder = new CountingEncoder();
+        VerifiedCredentialCache cache = new VerifiedCredentialCache(encoder, 0, 60);
+
+        assertTrue(cache.isPasswordValid("secret", "secret", null));
+        assertTrue(cache.isPasswordValid("secret", "secret", null));
+        assertEquals(2, encoder.checks);
+    }
+
+    public void testHmac() {
+        String hmac = VerifiedCredentialCache.hmac("user", "password");
+        assertEquals(hmac, VerifiedCredentialCache.hmac("user", "password"));
+        assertEquals(64, hmac.length());
+        assertFalse(hmac.equals(VerifiedCredentialCache.hmac("userp", "assword")));
+        assertFalse(hmac.contains("password"));
+    }
+}
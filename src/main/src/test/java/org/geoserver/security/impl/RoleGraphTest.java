@@ -0,0 +1,110 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+
+package org.geoserver.security.impl;
+
+import java.util.SortedSet;
+
+import junit.framework.TestCase;
+
+import org.geoserver.security.GeoServerRoleService;
+import org.geoserver.security.GeoServerRoleStore;
+import org.geoserver.security.config.impl.MemoryRoleServiceConfigImpl;
+
+public class RoleGraphTest extends TestCase {
+
+    GeoServerRoleService service;
+
+    GeoServerRoleStore store;
+
+    GeoServerRole parent, child, grandChild, other;
+
+    @Override
+    protected void setUp() throws Exception {
+        MemoryRoleServiceConfigImpl config = new MemoryRoleServiceConfigImpl();
+        config.setName("graph");
+        service = new MemoryRoleService();
+        service.initializeFromConfig(config);
+
+        store = service.createStore();
+        parent = store.createRoleObject("parent");
+        child = store.createRoleObject("child");
+        grandChild = store.createRoleObject("grandChild");
+        other = store.createRoleObject("other");
+        store.addRole(parent);
+        store.addRole(child);
+        store.addRole(grandChild);
+        store.addRole(other);
+        store.setParentRole(child, parent);
+        store.setParentRole(grandChild, child);
+
+        store.associateRoleToUser(grandChild, "user1");
+        store.associateRoleToUser(other, "user2");
+        store.associateRoleToGroup(child, "group1");
+        store.store();
+    }
+
+    public void testNoGraphForStores() throws Exception {
+        assertNull(RoleGraph.get(store));
+        assertNotNull(RoleGraph.get(service));
+        assertSame(RoleGraph.get(service), RoleGraph.get(service));
+    }
+
+    public void testInheritedRoles() throws Exception {
+        RoleGraph graph = RoleGraph.get(service);
+
+        SortedSet<GeoServerRole> roles = graph.getRolesForUser(service, "user1");
+        assertEquals(3, roles.size());
+        assertTrue(roles.contains(grandChild));
+        assertTrue(roles.contains(child));
+        assertTrue(roles.contains(parent));
+
+        roles = graph.getRolesForUser(service, "user2");
+        assertEquals(1, roles.size());
+        assertTrue(roles.contains(other));
+
+        assertTrue(graph.getRolesForUser(service, "unknown").isEmpty());
+
+        roles = graph.getRolesForGroup(service, "group1");
+        assertEquals(2, roles.size());
+        assertTrue(roles.contains(child));
+        assertTrue(roles.contains(parent));
+
+        assertEquals(2, graph.getAncestors(service, "grandChild").size());
+        assertNull(graph.getAncestors(service, "unknown"));
+
+        assertEquals(1, graph.getLoads());
+        assertEquals(5, graph.getHits());
+    }
+
+    public void testSameAsUncached() throws Exception {
+        RoleCalculator cached = new RoleCalculator(service);
+        RoleCalculator uncached = new RoleCalculator(store);
+
+        for (String user : new String[] { "user1", "user2", "unknown" }) {
+            GeoServerUser u = new GeoServerUser(user);
+            assertEquals(uncached.calculateRoles(u), cached.calculateRoles(u));
+        }
+        GeoServerUserGroup group = new GeoServerUserGroup("group1");
+        assertEquals(uncached.calculateRoles(group), cached.calculateRoles(group));
+    }
+
+    public void testInvalidation() throws Exception {
+        RoleGraph graph = RoleGraph.get(service);
+        assertEquals(1, graph.getRolesForUser(service, "user2").size());
+        assertEquals(1, graph.getLoads());
+
+        // uncommitted changes are not seen
+        store.setParentRole(other, parent);
+        assertEquals(1, graph.getRolesForUser(service, "user2").size());
+
+        // committed ones are
+        store.store();
+        SortedSet<GeoServerRole> roles = graph.getRolesForUser(service, "user2");
+        assertEquals(2, roles.size());
+        assertTrue(roles.contains(parent));
+        assertEquals(2, graph.getLoads());
+    }
+}
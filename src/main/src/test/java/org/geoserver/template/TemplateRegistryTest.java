@@ -0,0 +1,85 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.template;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.StringWriter;
+
+import org.apache.commons.io.FileUtils;
+import org.geoserver.data.test.MockData;
+import org.geoserver.test.GeoServerTestSupport;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import freemarker.cache.FileTemplateLoader;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+public class TemplateRegistryTest extends GeoServerTestSupport {
+
+    public void testFeatureTypeTemplate() throws Exception {
+        SimpleFeatureType type = (SimpleFeatureType) getCatalog().getFeatureTypeByName(
+                getLayerId(MockData.BRIDGES)).getFeatureType();
+        Configuration config = new Configuration();
+        TemplateRegistry registry = new TemplateRegistry(Long.MAX_VALUE);
+
+        setupTemplate(MockData.BRIDGES, "registry.ftl", "one");
+        Template template = registry.getTemplate(config, getClass(), type, "registry.ftl", "UTF-8");
+        assertEquals("one", process(template));
+        assertEquals("UTF-8", template.getEncoding());
+        assertSame(template, registry.getTemplate(config, getClass(), type, "registry.ftl",
+                "UTF-8"));
+
+        // a modified template gets recompiled
+        setupTemplate(MockData.BRIDGES, "registry.ftl", "three");
+        Template modified = registry.getTemplate(config, getClass(), type, "registry.ftl",
+                "UTF-8");
+        assertNotSame(template, modified);
+        assertEquals("three", process(modified));
+
+        // templates are not shared among configurations
+        assertNotSame(modified, registry.getTemplate(new Configuration(), getClass(), type,
+                "registry.ftl", "UTF-8"));
+    }
+
+    public void testFullLookupInterval() throws Exception {
+        File dir = new File(getTestData().getDataDirectoryRoot(), "registry");
+        dir.mkdir();
+        Configuration config = new Configuration();
+        config.setTemplateLoader(new FileTemplateLoader(dir));
+        TemplateRegistry registry = new TemplateRegistry(Long.MAX_VALUE);
+
+        try {
+            registry.getTemplate(config, getClass(), "added.ftl");
+            fail("The template does not exist yet");
+        } catch (FileNotFoundException e) {
+            // fine
+        }
+
+        // the failed lookup is cached until the next full lookup
+        FileUtils.writeStringToFile(new File(dir, "added.ftl"), "added");
+        try {
+            registry.getTemplate(config, getClass(), "added.ftl");
+            fail("The failed lookup should have been cached");
+        } catch (FileNotFoundException e) {
+            // fine
+        }
+
+        registry.checkInterval = 0;
+        Template template = registry.getTemplate(config, getClass(), "added.ftl");
+        assertEquals("added", process(template));
+        // the template is not recompiled if the lookup finds the same file
+        assertSame(template, registry.getTemplate(config, getClass(), "added.ftl"));
+
+        registry.clear();
+        assertNotSame(template, registry.getTemplate(config, getClass(), "added.ftl"));
+    }
+
+    String process(Template template) throws Exception {
+        StringWriter writer = new StringWriter();
+        template.process(null, writer);
+        return writer.toString();
+    }
+}
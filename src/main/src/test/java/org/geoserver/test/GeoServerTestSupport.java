@@ -11,6 +11,7 @@ import java.io.InputStream;
 import javax.xml.namespace.QName;
 
 import org.geoserver.data.test.MockData;
+import org.geoserver.template.TemplateRegistry;
 
 
 
@@ -66,6 +67,8 @@ public abstract class GeoServerTestSupport extends GeoServerAbstractTestSupport
         throws IOException {
         
         getTestData().copyToFeatureTypeDirectory( new ByteArrayInputStream(body.getBytes()), featureTypeName, template );
+        // make sure the new template is picked up right away
+        TemplateRegistry.get().clear();
     }
 
     
@@ -4,16 +4,20 @@
  */
 package org.geoserver.rest.format;
 
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.geoserver.template.TemplateRegistry;
 import org.restlet.data.MediaType;
-import org.restlet.ext.freemarker.TemplateRepresentation;
 import org.restlet.resource.Representation;
 
 import freemarker.template.Configuration;
+import freemarker.template.Template;
 
 /**
  * A read-only format which uses a Freemarker template for output.
  * <p>
- * This class is a thin wrapper around {@link TemplateRepresentation}.
+ * The compiled template is cached in the {@link TemplateRegistry}.
  * </p>
  * 
  * @author David Winslow <dwinslow@openplans.org>
@@ -27,6 +31,10 @@ public class FreemarkerFormat extends DataFormat {
      * the name of the template to execute.
      */
     private String myTemplateFileName;
+    /**
+     * the class used to load the template.
+     */
+    private Class myClass;
 
     /**
      * Set up a new FreemarkerFormat
@@ -38,6 +46,7 @@ public class FreemarkerFormat extends DataFormat {
     public FreemarkerFormat(String templateName, Class c, MediaType type){
         super(type);
         myTemplateFileName = templateName;
+        myClass = c;
         myConfig = new Configuration();
         myConfig.setClassForTemplateLoading(c, "");
     }
@@ -49,7 +58,16 @@ public class FreemarkerFormat extends DataFormat {
     
     @Override
     public Representation toRepresentation(Object object) {
-        return new TemplateRepresentation(myTemplateFileName, myConfig, object, mediaType);
+        // compiled templates are shared among all the formats loading them from the same class
+        Template template;
+        try {
+            template = TemplateRegistry.get().getTemplate(myConfig,
+                    Arrays.asList(FreemarkerFormat.class, myClass), myTemplateFileName);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return new ReflectiveHTMLFormat.TemplateOutputRepresentation(template,
+                myConfig.getObjectWrapper(), object, mediaType);
     }
 
 }
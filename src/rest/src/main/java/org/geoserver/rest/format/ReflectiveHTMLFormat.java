@@ -4,7 +4,11 @@
  */
 package org.geoserver.rest.format;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
@@ -14,11 +18,12 @@ import java.util.logging.Logger;
 import org.geoserver.ows.util.ClassProperties;
 import org.geoserver.ows.util.OwsUtils;
 import org.geoserver.rest.PageInfo;
+import org.geoserver.template.TemplateRegistry;
 import org.geotools.util.logging.Logging;
 import org.restlet.data.MediaType;
 import org.restlet.data.Request;
 import org.restlet.data.Response;
-import org.restlet.ext.freemarker.TemplateRepresentation;
+import org.restlet.resource.OutputRepresentation;
 import org.restlet.resource.Representation;
 import org.restlet.resource.Resource;
 
@@ -30,6 +35,7 @@ import freemarker.template.Configuration;
 import freemarker.template.ObjectWrapper;
 import freemarker.template.SimpleHash;
 import freemarker.template.Template;
+import freemarker.template.TemplateException;
 import freemarker.template.TemplateModel;
 import freemarker.template.TemplateModelException;
 
@@ -185,27 +191,29 @@ public class ReflectiveHTMLFormat extends DataFormat {
             clazz = clazz.getSuperclass();
         }
         
-        if ( template != null ) {
-            templateName = template.getName();
-        }
-        else {
+        if ( template == null ) {
             //use a fallback
-            templateName = "Object.ftl";
+            template = tryLoadTemplate(configuration, "Object.ftl");
         }
         
-        return new TemplateRepresentation( templateName, configuration, object, getMediaType() );
+        return new TemplateOutputRepresentation( template, configuration.getObjectWrapper(), 
+            object, getMediaType() );
     }
     
     /**
      * Tries to load a template, will return null if it's not found. If the template exists
-     * but it contains syntax errors an exception will be thrown instead
+     * but it contains syntax errors an exception will be thrown instead.
+     * <p>
+     * Templates are cached in the {@link TemplateRegistry} by format class and name, so that 
+     * they are looked up and compiled only once instead of at each request.
+     * </p>
      * 
      * @param configuration The template configuration.
      * @param templateName The name of the template to load.
      */
     protected Template tryLoadTemplate(Configuration configuration, String templateName) {
         try {
-            return configuration.getTemplate(templateName);
+            return TemplateRegistry.get().getTemplate(configuration, getClass(), templateName);
         } catch(ParseException e) {
             throw new RuntimeException(e);
         } catch(IOException io) {
@@ -241,6 +249,46 @@ public class ReflectiveHTMLFormat extends DataFormat {
         return null;
     }
 
+    /**
+     * Processes a template, compiled against another configuration, with the object wrapper
+     * of the current request.
+     */
+    static class TemplateOutputRepresentation extends OutputRepresentation {
+        
+        Template template;
+        
+        ObjectWrapper wrapper;
+        
+        Object dataModel;
+
+        TemplateOutputRepresentation(Template template, ObjectWrapper wrapper, Object dataModel,
+                MediaType mediaType) {
+            super(mediaType);
+            this.template = template;
+            this.wrapper = wrapper;
+            this.dataModel = dataModel;
+        }
+
+        @Override
+        public void write(OutputStream outputStream) throws IOException {
+            if ( template == null ) {
+                throw new IOException( "Could not find a template to encode the object" );
+            }
+            String encoding = getCharacterSet() != null ? getCharacterSet().getName()
+                    : template.getEncoding();
+            Writer writer = encoding != null ? new OutputStreamWriter(outputStream, encoding)
+                    : new OutputStreamWriter(outputStream);
+            writer = new BufferedWriter(writer);
+            try {
+                template.process(dataModel, writer, wrapper);
+            } catch (TemplateException e) {
+                throw (IOException) new IOException("Error processing template "
+                        + template.getName()).initCause(e);
+            }
+            writer.flush();
+        }
+    }
+
     /**
      * Wraps the object being serialized in a {@link SimpleHash} template model.
      * <p>
@@ -40,7 +40,24 @@ public abstract class AbstractCatalogListResource extends CatalogResourceBase {
         return XStreamPersister.unwrapProxies( handleListGet() );
     }
     
+    /**
+     * Returns the objects to be listed.
+     * <p>
+     * Subclasses listing large portions of the catalog should return a
+     * {@link StreamingCatalogCollection}, which gets encoded as the objects are read from the
+     * catalog.
+     * </p>
+     */
     protected abstract Collection handleListGet() throws Exception;
+
+    /**
+     * Releases the resources held by the listed collection, once encoded
+     */
+    protected void close(Object data) {
+        if (data instanceof StreamingCatalogCollection) {
+            ((StreamingCatalogCollection) data).close();
+        }
+    }
     
     //JD: we create custom formats here because we need to set up the collection aliases
     // correctly, basically whatever collection we get back we ant to alias to layers, featureTypes,
@@ -57,7 +74,11 @@ public abstract class AbstractCatalogListResource extends CatalogResourceBase {
             @Override
             protected void write(Object data, OutputStream output) throws IOException {
                 aliasCollection(data, f.getXStream());
-                f.getXStream().toXML(data, output);
+                try {
+                    f.getXStream().toXML(data, output);
+                } finally {
+                    close(data);
+                }
             }
         };
     }
@@ -74,14 +95,18 @@ public abstract class AbstractCatalogListResource extends CatalogResourceBase {
             @Override
             protected void write(Object data, OutputStream output) throws IOException {
                 aliasCollection(data, f.getXStream());
-                f.getXStream().toXML(data, output);
+                try {
+                    f.getXStream().toXML(data, output);
+                } finally {
+                    close(data);
+                }
             }
         };
     }
     
     @Override
     protected void configureXStream(XStream xstream) {
-        XStreamPersister xp = xpf.createXMLPersister();
+        XStreamPersister xp = xpf.getSharedXMLPersister();
         final String name = xp.getClassAliasingMapper().serializedClass( clazz );
         xstream.alias( name, clazz );
         
@@ -145,7 +170,7 @@ public abstract class AbstractCatalogListResource extends CatalogResourceBase {
      * </p>
      */
     protected void aliasCollection( Object data, XStream xstream ) {
-        XStreamPersister xp = xpf.createXMLPersister();
+        XStreamPersister xp = xpf.getSharedXMLPersister();
         final String alias = xp.getClassAliasingMapper().serializedClass( clazz );
         xstream.alias(alias + "s", Collection.class, data.getClass());
     }
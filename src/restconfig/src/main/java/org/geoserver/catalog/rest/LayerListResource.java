@@ -4,10 +4,11 @@
  */
 package org.geoserver.catalog.rest;
 
-import java.util.List;
+import java.util.Collection;
 
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.Predicates;
 import org.restlet.Context;
 import org.restlet.data.Request;
 import org.restlet.data.Response;
@@ -21,9 +22,10 @@ public class LayerListResource extends AbstractCatalogListResource {
     }
 
     @Override
-    protected List handleListGet() throws Exception {
+    protected Collection handleListGet() throws Exception {
         LOGGER.fine( "GET all layers");
-        return catalog.getLayers();
+        return new StreamingCatalogCollection<LayerInfo>(catalog, LayerInfo.class,
+                Predicates.acceptAll());
     }
 
 }
@@ -4,10 +4,11 @@
  */
 package org.geoserver.catalog.rest;
 
-import java.util.List;
+import java.util.Collection;
 
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.Predicates;
 import org.geoserver.catalog.rest.NamespaceResource.NamespaceHTMLFormat;
 import org.geoserver.rest.format.DataFormat;
 import org.restlet.Context;
@@ -26,9 +27,10 @@ public class NamespaceListResource extends AbstractCatalogListResource {
         return new NamespaceHTMLFormat( request, response, this, catalog );
     }
     @Override
-    protected List handleListGet() throws Exception {
+    protected Collection handleListGet() throws Exception {
         LOGGER.fine( "GET all namespaces");
-        return catalog.getNamespaces();
+        return new StreamingCatalogCollection<NamespaceInfo>(catalog, NamespaceInfo.class,
+                Predicates.acceptAll());
     }
 
 }
@@ -0,0 +1,106 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org.  All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.catalog.rest;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.util.CloseableIterator;
+import org.opengis.filter.Filter;
+
+/**
+ * Collection backed by {@link Catalog#list(Class, Filter)}, allowing list resources to encode
+ * catalog objects as they are read from the catalog, instead of loading them all in memory
+ * first.
+ * <p>
+ * Each call to {@link #iterator()} runs a new catalog query. The underlying catalog iterators are
+ * closed once exhausted, and in any case by {@link #close()}, which the list resource formats call
+ * once the collection has been encoded.
+ * </p>
+ */
+public class StreamingCatalogCollection<T extends CatalogInfo> extends AbstractCollection<T> {
+
+    Catalog catalog;
+
+    Class<T> clazz;
+
+    Filter filter;
+
+    List<CloseableIterator<T>> open = new ArrayList<CloseableIterator<T>>();
+
+    public StreamingCatalogCollection(Catalog catalog, Class<T> clazz, Filter filter) {
+        this.catalog = catalog;
+        this.clazz = clazz;
+        this.filter = filter;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        final CloseableIterator<T> it = catalog.list(clazz, filter);
+        open.add(it);
+
+        return new Iterator<T>() {
+            boolean closed;
+
+            public boolean hasNext() {
+                if (closed) {
+                    return false;
+                }
+                if (!it.hasNext()) {
+                    close();
+                    return false;
+                }
+                return true;
+            }
+
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return it.next();
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            void close() {
+                closed = true;
+                it.close();
+                open.remove(it);
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return catalog.count(clazz, filter);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        CloseableIterator<T> it = catalog.list(clazz, filter, null, 1, null);
+        try {
+            return !it.hasNext();
+        } finally {
+            it.close();
+        }
+    }
+
+    /**
+     * Closes the catalog iterators that have not been fully consumed
+     */
+    public void close() {
+        for (CloseableIterator<T> it : open) {
+            it.close();
+        }
+        open.clear();
+    }
+}
@@ -4,9 +4,10 @@
  */
 package org.geoserver.catalog.rest;
 
-import java.util.List;
+import java.util.Collection;
 
 import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.Predicates;
 import org.geoserver.catalog.WorkspaceInfo;
 import org.geoserver.catalog.rest.WorkspaceResource.WorkspaceHTMLFormat;
 import org.geoserver.rest.format.DataFormat;
@@ -22,9 +23,10 @@ public class WorkspaceListResource extends AbstractCatalogListResource {
     }
 
     @Override
-    protected List handleListGet() throws Exception {
+    protected Collection handleListGet() throws Exception {
         LOGGER.fine( "GET all workspaces" );
-        return catalog.getWorkspaces();
+        return new StreamingCatalogCollection<WorkspaceInfo>(catalog, WorkspaceInfo.class,
+                Predicates.acceptAll());
     }
     
     @Override
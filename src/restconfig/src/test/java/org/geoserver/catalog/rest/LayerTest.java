@@ -6,6 +6,10 @@ package org.geoserver.catalog.rest;
 
 import static org.custommonkey.xmlunit.XMLAssert.*;
 
+import net.sf.json.JSON;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.LayerInfo;
 import org.w3c.dom.Document;
@@ -31,9 +35,18 @@ public class LayerTest extends CatalogRESTTestSupport {
     
     public void testGetAllAsXML() throws Exception {
         Document dom = getAsDOM( "/rest/layers.xml");
+        assertEquals( "layers", dom.getDocumentElement().getNodeName() );
         assertXpathEvaluatesTo(catalog.getLayers().size()+"", "count(//layer)", dom );
     }
     
+    public void testGetAllAsJSON() throws Exception {
+        JSON json = getAsJSON( "/rest/layers.json");
+        assertTrue( json instanceof JSONObject );
+        
+        JSONArray layers = ((JSONObject)json).getJSONObject("layers").getJSONArray("layer");
+        assertEquals( catalog.getLayers().size(), layers.size() );
+    }
+    
     public void testGetAllAsHTML() throws Exception {
         getAsDOM( "/rest/layers.html");
     }
@@ -26,6 +26,7 @@ public class JDBCRoleStore extends JDBCRoleService implements GeoServerRoleStore
 
     protected boolean modified;
     protected Connection connection;
+    protected JDBCRoleService service;
     
     
     /** 
@@ -200,7 +201,8 @@ public class JDBCRoleStore extends JDBCRoleService implements GeoServerRoleStore
 
     /**
      * Executes {@link Connection#commit()} and frees
-     * the connection
+     * the connection, notifying the listeners
+     * of the service
      * @see org.geoserver.security.GeoServerRoleStore#store()
      */
     public void store() throws IOException {
@@ -212,6 +214,9 @@ public class JDBCRoleStore extends JDBCRoleService implements GeoServerRoleStore
             throw new IOException(ex);
         }
         setModified(false);
+        // the listeners of the service, role caches included, must see the commit
+        if (service!=null)
+            service.fireRoleChangedEvent();
     }
 
 
@@ -382,6 +387,7 @@ public class JDBCRoleStore extends JDBCRoleService implements GeoServerRoleStore
      */
     public void initializeFromService(GeoServerRoleService service) throws IOException {
         JDBCRoleService jdbcService= (JDBCRoleService) service;
+        this.service=jdbcService;
         this.name=service.getName();
         this.adminRoleName=jdbcService.adminRoleName;
         this.groupAdminRoleName=jdbcService.groupAdminRoleName;
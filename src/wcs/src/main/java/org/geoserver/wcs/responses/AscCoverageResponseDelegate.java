@@ -83,9 +83,11 @@ public class AscCoverageResponseDelegate implements CoverageResponseDelegate {
         }
 
         ArcGridWriter writer=null;
+        // pull the tiles as the writer needs them
+        GridCoverage2D prefetching = PrefetchingRenderedImage.wrap(sourceCoverage);
         try {
             writer = new ArcGridWriter(output);
-            writer.write(sourceCoverage, null);
+            writer.write(prefetching, null);
 
             if (gzipOut != null) {
                 gzipOut.finish();
@@ -103,6 +105,7 @@ public class AscCoverageResponseDelegate implements CoverageResponseDelegate {
         	if(gzipOut!=null)
         		IOUtils.closeQuietly(gzipOut);
         	
+            PrefetchingRenderedImage.dispose(prefetching);
             sourceCoverage.dispose(false);
 		}
     }
@@ -70,11 +70,12 @@ public class GeoTIFFCoverageResponseDelegate implements CoverageResponseDelegate
         final ParameterValueGroup writerParams = format.getWriteParameters();
         writerParams.parameter(AbstractGridFormat.GEOTOOLS_WRITE_PARAMS.getName().toString()).setValue(wp);
 
-        // write down
+        // write down, pulling the tiles as the writer needs them
         GeoTiffWriter writer = (GeoTiffWriter) format.getWriter(output);
+        GridCoverage2D prefetching = PrefetchingRenderedImage.wrap(sourceCoverage);
         try {
             if (writer != null)
-                writer.write(sourceCoverage, (GeneralParameterValue[]) writerParams.values()
+                writer.write(prefetching, (GeneralParameterValue[]) writerParams.values()
                         .toArray(new GeneralParameterValue[1]));
         } finally {
             try {
@@ -83,6 +84,7 @@ public class GeoTIFFCoverageResponseDelegate implements CoverageResponseDelegate
             } catch (Throwable e) {
                 // eating exception
             }
+            PrefetchingRenderedImage.dispose(prefetching);
             sourceCoverage.dispose(false);
         }
     }
@@ -0,0 +1,372 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.wcs.responses;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.media.jai.OpImage;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.RenderedOp;
+import javax.media.jai.TileCache;
+
+import org.geotools.coverage.CoverageFactoryFinder;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridCoverageFactory;
+import org.geotools.util.logging.Logging;
+import org.opengis.coverage.grid.GridCoverage;
+
+/**
+ * Wraps the image of a coverage being encoded so that its tiles are computed on demand, in the
+ * order the encoder pulls them, while a bounded window of the following tiles is computed in
+ * background.
+ * <p>
+ * Encoders like the GeoTIFF and ArcGrid ones consume the image tile by tile, or row by row,
+ * which forces the whole crop/resample chain to be computed tile by tile as well. Each tile is
+ * requested once per row of pixels by row based encoders, so the last row of tiles handed out is
+ * kept around, and once a tile falls out of it it is also removed from the JAI tile cache: a tile
+ * of the final image is never going to be used again, keeping it in the cache only evicts tiles
+ * other requests might use.
+ * </p>
+ * <p>
+ * The prefetch window size can be set with the "org.geoserver.wcs.tilePrefetch" system variable,
+ * zero disables the prefetching (the tiles are still computed on demand and released once used).
+ * </p>
+ */
+public class PrefetchingRenderedImage implements RenderedImage {
+
+    static final Logger LOGGER = Logging.getLogger(PrefetchingRenderedImage.class);
+
+    /**
+     * The number of tiles computed in advance of the one being encoded
+     */
+    public static final int WINDOW = Integer.getInteger("org.geoserver.wcs.tilePrefetch", 4);
+
+    static final int POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+    static ExecutorService EXECUTOR;
+
+    static final GridCoverageFactory FACTORY = CoverageFactoryFinder.getGridCoverageFactory(null);
+
+    final RenderedImage source;
+
+    final int window;
+
+    final int numXTiles;
+
+    final int numTiles;
+
+    /**
+     * The tiles being computed in background, by tile index
+     */
+    final TreeMap<Integer, Future<Raster>> pending = new TreeMap<Integer, Future<Raster>>();
+
+    /**
+     * The last row of tiles handed out, by tile index
+     */
+    final LinkedHashMap<Integer, Raster> recent;
+
+    /**
+     * The index of the next tile to be prefetched
+     */
+    int next;
+
+    /**
+     * Wraps the image of the coverage into a {@link PrefetchingRenderedImage}, the returned
+     * coverage should be disposed once encoded, and the image with it
+     */
+    public static GridCoverage2D wrap(GridCoverage2D coverage) {
+        RenderedImage image = coverage.getRenderedImage();
+        if (image instanceof PrefetchingRenderedImage
+                || image.getNumXTiles() * image.getNumYTiles() <= 1) {
+            return coverage;
+        }
+
+        PrefetchingRenderedImage prefetching = new PrefetchingRenderedImage(image, WINDOW);
+        return FACTORY.create(coverage.getName(), prefetching, coverage.getGridGeometry(),
+                coverage.getSampleDimensions(), new GridCoverage[] { coverage }, coverage
+                        .getProperties());
+    }
+
+    /**
+     * Cancels the background computations of the coverage image, if it was wrapped by
+     * {@link #wrap(GridCoverage2D)}, and releases its tiles
+     */
+    public static void dispose(GridCoverage2D coverage) {
+        RenderedImage image = coverage.getRenderedImage();
+        if (image instanceof PrefetchingRenderedImage) {
+            ((PrefetchingRenderedImage) image).dispose();
+        }
+    }
+
+    public PrefetchingRenderedImage(RenderedImage source, int window) {
+        this.source = source;
+        this.window = Math.max(0, window);
+        this.numXTiles = source.getNumXTiles();
+        this.numTiles = numXTiles * source.getNumYTiles();
+        this.recent = new LinkedHashMap<Integer, Raster>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Raster> eldest) {
+                if (size() > numXTiles) {
+                    release(eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    static synchronized ExecutorService getExecutor() {
+        if (EXECUTOR == null) {
+            EXECUTOR = Executors.newFixedThreadPool(POOL_SIZE, new ThreadFactory() {
+                AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "WCSTilePrefetcher-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return EXECUTOR;
+    }
+
+    public Raster getTile(int tileX, int tileY) {
+        int index = (tileY - getMinTileY()) * numXTiles + (tileX - getMinTileX());
+        Future<Raster> future;
+        synchronized (this) {
+            Raster raster = recent.get(index);
+            if (raster != null) {
+                return raster;
+            }
+            future = pending.remove(index);
+            prefetch(index);
+        }
+
+        Raster raster = null;
+        if (future != null) {
+            try {
+                raster = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new RuntimeException("Failed to compute tile " + tileX + "," + tileY, e
+                        .getCause());
+            }
+        }
+        if (raster == null) {
+            raster = source.getTile(tileX, tileY);
+        }
+
+        synchronized (this) {
+            recent.put(index, raster);
+        }
+        return raster;
+    }
+
+    /**
+     * Schedules the computation of the tiles following the specified one, and cancels the
+     * prefetched tiles that fell out of the window
+     */
+    void prefetch(int index) {
+        if (window == 0) {
+            return;
+        }
+        next = Math.max(next, index + 1);
+        int last = Math.min(numTiles - 1, index + window);
+        for (; next <= last; next++) {
+            if (!recent.containsKey(next)) {
+                pending.put(next, getExecutor().submit(new TileComputation(next)));
+            }
+        }
+        while (pending.size() > window) {
+            Map.Entry<Integer, Future<Raster>> eldest = pending.pollFirstEntry();
+            eldest.getValue().cancel(false);
+            release(eldest.getKey());
+        }
+    }
+
+    /**
+     * Removes the tile from the tile cache of the source, if any
+     */
+    void release(int index) {
+        PlanarImage rendering = null;
+        if (source instanceof RenderedOp) {
+            rendering = ((RenderedOp) source).getCurrentRendering();
+        } else if (source instanceof PlanarImage) {
+            rendering = (PlanarImage) source;
+        }
+        if (rendering instanceof OpImage) {
+            TileCache cache = ((OpImage) rendering).getTileCache();
+            if (cache != null) {
+                cache.remove(rendering, getMinTileX() + index % numXTiles, getMinTileY() + index
+                        / numXTiles);
+            }
+        }
+    }
+
+    /**
+     * Cancels the pending computations and releases the tiles still held
+     */
+    public synchronized void dispose() {
+        for (Map.Entry<Integer, Future<Raster>> entry : pending.entrySet()) {
+            entry.getValue().cancel(false);
+            release(entry.getKey());
+        }
+        pending.clear();
+        for (Integer index : recent.keySet()) {
+            release(index);
+        }
+        recent.clear();
+    }
+
+    public Raster getData() {
+        return getData(new Rectangle(getMinX(), getMinY(), getWidth(), getHeight()));
+    }
+
+    public Raster getData(Rectangle rect) {
+        SampleModel sm = getSampleModel().createCompatibleSampleModel(rect.width, rect.height);
+        WritableRaster raster = Raster.createWritableRaster(sm, new Point(rect.x, rect.y));
+        return copyData(raster);
+    }
+
+    public WritableRaster copyData(WritableRaster raster) {
+        if (raster == null) {
+            SampleModel sm = getSampleModel().createCompatibleSampleModel(getWidth(), getHeight());
+            raster = Raster.createWritableRaster(sm, new Point(getMinX(), getMinY()));
+        }
+
+        Rectangle bounds = raster.getBounds().intersection(
+                new Rectangle(getMinX(), getMinY(), getWidth(), getHeight()));
+        if (bounds.isEmpty()) {
+            return raster;
+        }
+        int minTileX = XToTileX(bounds.x);
+        int maxTileX = XToTileX(bounds.x + bounds.width - 1);
+        int minTileY = YToTileY(bounds.y);
+        int maxTileY = YToTileY(bounds.y + bounds.height - 1);
+        for (int ty = minTileY; ty <= maxTileY; ty++) {
+            for (int tx = minTileX; tx <= maxTileX; tx++) {
+                raster.setRect(getTile(tx, ty));
+            }
+        }
+        return raster;
+    }
+
+    int XToTileX(int x) {
+        return (int) Math.floor((x - getTileGridXOffset()) / (double) getTileWidth());
+    }
+
+    int YToTileY(int y) {
+        return (int) Math.floor((y - getTileGridYOffset()) / (double) getTileHeight());
+    }
+
+    public Vector<RenderedImage> getSources() {
+        Vector<RenderedImage> sources = new Vector<RenderedImage>();
+        sources.add(source);
+        return sources;
+    }
+
+    public Object getProperty(String name) {
+        return source.getProperty(name);
+    }
+
+    public String[] getPropertyNames() {
+        return source.getPropertyNames();
+    }
+
+    public ColorModel getColorModel() {
+        return source.getColorModel();
+    }
+
+    public SampleModel getSampleModel() {
+        return source.getSampleModel();
+    }
+
+    public int getWidth() {
+        return source.getWidth();
+    }
+
+    public int getHeight() {
+        return source.getHeight();
+    }
+
+    public int getMinX() {
+        return source.getMinX();
+    }
+
+    public int getMinY() {
+        return source.getMinY();
+    }
+
+    public int getNumXTiles() {
+        return source.getNumXTiles();
+    }
+
+    public int getNumYTiles() {
+        return source.getNumYTiles();
+    }
+
+    public int getMinTileX() {
+        return source.getMinTileX();
+    }
+
+    public int getMinTileY() {
+        return source.getMinTileY();
+    }
+
+    public int getTileWidth() {
+        return source.getTileWidth();
+    }
+
+    public int getTileHeight() {
+        return source.getTileHeight();
+    }
+
+    public int getTileGridXOffset() {
+        return source.getTileGridXOffset();
+    }
+
+    public int getTileGridYOffset() {
+        return source.getTileGridYOffset();
+    }
+
+    class TileComputation implements Callable<Raster> {
+        int index;
+
+        TileComputation(int index) {
+            this.index = index;
+        }
+
+        public Raster call() throws Exception {
+            if (LOGGER.isLoggable(Level.FINEST)) {
+                LOGGER.finest("Prefetching tile " + index);
+            }
+            return source.getTile(getMinTileX() + index % numXTiles, getMinTileY() + index
+                    / numXTiles);
+        }
+    }
+}
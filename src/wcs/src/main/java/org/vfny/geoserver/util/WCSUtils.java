@@ -315,6 +315,60 @@ public class WCSUtils {
         }
     }
 
+    /**
+     * Checks the output limits before the coverage is read, guessing the size of a pixel from the
+     * coverage metadata, so that requests that are bound to exceed the limits are rejected without
+     * paying for the read. The check is skipped if the pixel size cannot be guessed, the output
+     * is checked again anyways once the coverage has been read.
+     * 
+     * @param info The WCS configuration
+     * @param meta The coverage being read, its dimensions are assumed to be all part of the output
+     * @param gridRange The output grid range
+     */
+    public static void checkOutputLimits(WCSInfo info, CoverageInfo meta, GridEnvelope2D gridRange) {
+        // do we have to check a limit at all?
+        long limit = info.getMaxOutputMemory() * 1024;
+        if(limit <= 0) {
+            return;
+        }
+        
+        long pixelSize = guessPixelSize(meta);
+        if(pixelSize <= 0) {
+            return;
+        }
+        long pixels = 1;
+        for(int i = 0; i < gridRange.getDimension(); i++) {
+            pixels *= gridRange.getSpan(i);
+        }
+        long actual = pixels * pixelSize / 8;
+        if(actual > limit) {
+            throw new WcsException("This request is trying to generate too much data, " +
+                    "the limit is " + formatBytes(limit) + " but the actual amount of bytes to be " +
+                            "written in the output is " + formatBytes(actual));
+        }
+    }
+    
+    /**
+     * Guesses the size of a pixel, in bits, from the coverage dimensions metadata, returns -1 if
+     * the size could not be guessed
+     */
+    static long guessPixelSize(CoverageInfo meta) {
+        if(meta.getDimensions() == null || meta.getDimensions().isEmpty()) {
+            return -1;
+        }
+        long pixelSize = 0;
+        for (CoverageDimensionInfo dimension : meta.getDimensions()) {
+            int size = guessSizeFromRange(dimension.getRange());
+            if(size == 0) {
+                LOGGER.log(Level.INFO, "Failed to guess the size of dimension " 
+                        + dimension.getName() + ", skipping the pre-read check");
+                return -1;
+            }
+            pixelSize += size;
+        }
+        return pixelSize;
+    }
+
     /**
      * Checks the coverage read is below the input limits. Mind, at this point the reader might have
      * have subsampled the original image in some way so it is expected the coverage is actually
@@ -408,30 +462,19 @@ public class WCSUtils {
                 double[] readResoutions = reader.getReadingResolutions(policy, resolutions);
                 double[] baseResolutions = reader.getReadingResolutions(OverviewPolicy.IGNORE, resolutions);
                 for (int i = 0; i < spans.length; i++) {
-                    spans[i] *= readResoutions[i] / baseResolutions[i]; 
+                    // reading from an overview reads fewer pixels
+                    spans[i] *= baseResolutions[i] / readResoutions[i]; 
                 }
                 
                 // compute how many pixels we're going to read
                 long pixels = 1;
-                for (int i = 0; i < requestedGrid.getDimension(); i++) {
-                    pixels *= Math.ceil(requestedGrid.getSpan(i));
+                for (int i = 0; i < spans.length; i++) {
+                    pixels *= Math.ceil(spans[i]);
                 }
                 
                 // compute the size of a pixel using the coverage metadata (the reader won't give
                 // us any information about the bands)
-                long pixelSize = 0;
-                if(meta.getDimensions() != null) {
-                    for (CoverageDimensionInfo dimension : meta.getDimensions()) {
-                        int size = guessSizeFromRange(dimension.getRange());
-                        if(size == 0) {
-                            LOGGER.log(Level.INFO, "Failed to guess the size of dimension " 
-                                    + dimension.getName() + ", skipping the pre-read check");
-                            pixelSize = -1;
-                            break;
-                        }
-                        pixelSize += size;
-                    }
-                }
+                long pixelSize = guessPixelSize(meta);
                 
                 actual = pixels * pixelSize / 8;
             }
@@ -400,6 +400,33 @@ public class DefaultWebCoverageService100 implements WebCoverageService100 {
                         readParameters, filter, "FILTER", "Filter");
             }
             
+            //
+            // compute the grid geometry of the requested coverage
+            //
+            // compute intersection envelope to be used
+            GeneralEnvelope destinationEnvelope = (GeneralEnvelope) getHorizontalEnvelope(computeIntersectionEnvelope(
+                    requestedEnvelope, nativeEnvelope));
+            if(targetCRS != null) {
+                MathTransform mt = CRS.findMathTransform(nativeCRS, targetCRS);
+                destinationEnvelope = CRS.transform(mt, destinationEnvelope);
+                destinationEnvelope.setCoordinateReferenceSystem(targetCRS);
+            }
+
+            final GridGeometry2D destinationGridGeometry;
+            if (destinationSize != null) {
+                destinationGridGeometry = new GridGeometry2D(new GridEnvelope2D(destinationSize),
+                        destinationEnvelope);
+            } else {
+                destinationGridGeometry = new GridGeometry2D(PixelInCell.CELL_CENTER,
+                        destinationG2W, destinationEnvelope, null);
+            }
+
+            // if all the bands are going to be returned we can check the output size before
+            // reading anything
+            if (request.getRangeSubset() == null) {
+                WCSUtils.checkOutputLimits(wcs, meta, destinationGridGeometry.getGridRange2D());
+            }
+
             // Check we're not going to read too much data
             WCSUtils.checkInputLimits(wcs, meta, reader, requestedGridGeometry);
 
@@ -483,27 +510,6 @@ public class DefaultWebCoverageService100 implements WebCoverageService100 {
                 }
             }
 
-            //
-            // final step for the requested coverage
-            //
-            // compute intersection envelope to be used
-            GeneralEnvelope destinationEnvelope = (GeneralEnvelope) getHorizontalEnvelope(computeIntersectionEnvelope(
-                    requestedEnvelope, nativeEnvelope));
-            if(targetCRS != null) {
-                MathTransform mt = CRS.findMathTransform(nativeCRS, targetCRS);
-                destinationEnvelope = CRS.transform(mt, destinationEnvelope);
-                destinationEnvelope.setCoordinateReferenceSystem(targetCRS);
-            }
-
-            final GridGeometry2D destinationGridGeometry;
-            if (destinationSize != null) {
-                destinationGridGeometry = new GridGeometry2D(new GridEnvelope2D(destinationSize),
-                        destinationEnvelope);
-            } else {
-                destinationGridGeometry = new GridGeometry2D(PixelInCell.CELL_CENTER,
-                        destinationG2W, destinationEnvelope, null);
-            }
-
             // verify we're not going to build a raster exceeding the output limits
             WCSUtils.checkOutputLimits(wcs, destinationGridGeometry.getGridRange2D(),
                     bandSelectedCoverage.getRenderedImage().getSampleModel());
@@ -398,6 +398,37 @@ public class DefaultWebCoverageService111 implements WebCoverageService111 {
                 readParametersClone[readParameters.length+addedParams--]=elevation;            
             readParameters=readParametersClone;
             
+            /**
+             * Compute the output grid geometry
+             */
+            // adjust the grid geometry to use the final bbox and crs
+            final GeneralEnvelope intersectionEnvelope;
+            boolean reprojectionNeeded = !CRS.equalsIgnoreMetadata(nativeCRS, targetCRS);
+            if(reprojectionNeeded) {
+                CoordinateOperationFactory of = CRS.getCoordinateOperationFactory(true);
+                CoordinateOperation co = of.createOperation(nativeCRS, targetCRS);
+                intersectionEnvelope = CRS.transform(co, intersectionEnvelopeInSourceCRS);
+            } else {
+                intersectionEnvelope = new GeneralEnvelope(intersectionEnvelopeInSourceCRS);
+            }
+            // adjust to have at least one pixel in the output
+            if(intersectionEnvelope.getSpan(0) < Math.abs(pixelSizeX)) {
+                double minX = intersectionEnvelope.getMinimum(0);
+                intersectionEnvelope.setRange(0, minX, minX + pixelSizeX);
+            }
+            if(intersectionEnvelope.getSpan(1) < Math.abs(pixelSizeY)) {
+                double minY = intersectionEnvelope.getMinimum(1);
+                intersectionEnvelope.setRange(1, minY, minY + pixelSizeY);
+            }
+
+            final GridGeometry2D destinationGridGeometry = new GridGeometry2D(PixelInCell.CELL_CENTER, gridToCRS, intersectionEnvelope, null);
+            
+            // if all the bands are going to be returned we can check the output size before
+            // reading anything
+            if (request.getRangeSubset() == null) {
+                WCSUtils.checkOutputLimits(wcs, meta, destinationGridGeometry.getGridRange2D());
+            }
+            
             // Check we're not being requested to read too much data from input (first check,
             // guesses the grid size using the information contained in CoverageInfo)
             WCSUtils.checkInputLimits(wcs, meta, reader, requestedGridGeometry);
@@ -493,31 +524,6 @@ public class DefaultWebCoverageService111 implements WebCoverageService111 {
                 }
             }
 
-            /**
-             * Reproject
-             */
-            // adjust the grid geometry to use the final bbox and crs
-            final GeneralEnvelope intersectionEnvelope;
-            boolean reprojectionNeeded = !CRS.equalsIgnoreMetadata(nativeCRS, targetCRS);
-            if(reprojectionNeeded) {
-                CoordinateOperationFactory of = CRS.getCoordinateOperationFactory(true);
-                CoordinateOperation co = of.createOperation(nativeCRS, targetCRS);
-                intersectionEnvelope = CRS.transform(co, intersectionEnvelopeInSourceCRS);
-            } else {
-                intersectionEnvelope = intersectionEnvelopeInSourceCRS;
-            }
-            // adjust to have at least one pixel in the output
-            if(intersectionEnvelope.getSpan(0) < Math.abs(pixelSizeX)) {
-                double minX = intersectionEnvelope.getMinimum(0);
-                intersectionEnvelope.setRange(0, minX, minX + pixelSizeX);
-            }
-            if(intersectionEnvelope.getSpan(1) < Math.abs(pixelSizeY)) {
-                double minY = intersectionEnvelope.getMinimum(1);
-                intersectionEnvelope.setRange(1, minY, minY + pixelSizeY);
-            }
-
-            final GridGeometry2D destinationGridGeometry = new GridGeometry2D(PixelInCell.CELL_CENTER, gridToCRS, intersectionEnvelope, null);
-            
             // before extracting the output make sure it's not too big
             WCSUtils.checkOutputLimits(wcs, destinationGridGeometry.getGridRange2D(), 
                     bandSelectedCoverage.getRenderedImage().getSampleModel());
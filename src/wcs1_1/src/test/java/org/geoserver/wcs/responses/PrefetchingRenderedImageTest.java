@@ -0,0 +1,104 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.wcs.responses;
+
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.JAI;
+import javax.media.jai.RenderedOp;
+import javax.media.jai.iterator.RectIter;
+import javax.media.jai.iterator.RectIterFactory;
+import javax.media.jai.operator.FormatDescriptor;
+
+import junit.framework.TestCase;
+
+public class PrefetchingRenderedImageTest extends TestCase {
+
+    BufferedImage reference;
+
+    RenderedOp tiled;
+
+    @Override
+    protected void setUp() throws Exception {
+        reference = new BufferedImage(100, 100, BufferedImage.TYPE_BYTE_GRAY);
+        WritableRaster raster = reference.getRaster();
+        for (int y = 0; y < 100; y++) {
+            for (int x = 0; x < 100; x++) {
+                raster.setSample(x, y, 0, (x + y) % 256);
+            }
+        }
+
+        ImageLayout layout = new ImageLayout();
+        layout.setTileWidth(16);
+        layout.setTileHeight(16);
+        tiled = FormatDescriptor.create(reference, DataBuffer.TYPE_BYTE, new RenderingHints(
+                JAI.KEY_IMAGE_LAYOUT, layout));
+    }
+
+    public void testRowByRow() throws Exception {
+        PrefetchingRenderedImage image = new PrefetchingRenderedImage(tiled, 3);
+        assertEquals(7, image.getNumXTiles());
+
+        // walk the image like the ArcGrid writer does
+        RectIter it = RectIterFactory.create(image, null);
+        int y = 0;
+        it.startLines();
+        while (!it.finishedLines()) {
+            int x = 0;
+            it.startPixels();
+            while (!it.finishedPixels()) {
+                assertEquals(reference.getRaster().getSample(x, y, 0), it.getSample(0));
+                it.nextPixel();
+                x++;
+            }
+            it.nextLine();
+            y++;
+        }
+        assertEquals(100, y);
+
+        // only the last row of tiles is kept around
+        assertTrue(image.recent.size() <= image.getNumXTiles());
+        assertTrue(image.pending.size() <= 3);
+
+        image.dispose();
+        assertTrue(image.recent.isEmpty());
+        assertTrue(image.pending.isEmpty());
+    }
+
+    public void testGetData() throws Exception {
+        PrefetchingRenderedImage image = new PrefetchingRenderedImage(tiled, 3);
+
+        // read random regions, like the GeoTIFF writer does when the tiling does not match
+        Rectangle rect = new Rectangle(10, 20, 50, 30);
+        Raster data = image.getData(rect);
+        assertEquals(rect, data.getBounds());
+        for (int y = rect.y; y < rect.y + rect.height; y++) {
+            for (int x = rect.x; x < rect.x + rect.width; x++) {
+                assertEquals(reference.getRaster().getSample(x, y, 0), data.getSample(x, y, 0));
+            }
+        }
+
+        data = image.getData();
+        assertEquals(new Rectangle(0, 0, 100, 100), data.getBounds());
+        assertEquals(reference.getRaster().getSample(99, 99, 0), data.getSample(99, 99, 0));
+        image.dispose();
+    }
+
+    public void testNoPrefetch() throws Exception {
+        PrefetchingRenderedImage image = new PrefetchingRenderedImage(tiled, 0);
+        Raster tile = image.getTile(1, 1);
+        assertEquals(new Rectangle(16, 16, 16, 16), tile.getBounds());
+        assertTrue(image.pending.isEmpty());
+        // asking again for the same tile returns the same raster
+        assertSame(tile, image.getTile(1, 1));
+        image.dispose();
+    }
+}
@@ -131,6 +131,7 @@ public class WMSAdminPage extends BaseServiceAdminPage<WMSInfo> {
         TextField<Integer> pngCompressionField = new TextField<Integer>("png.compression", pngCompression, Integer.class);
         pngCompressionField.add(new RangeValidator<Integer>(0, 100));
         form.add(pngCompressionField);
+        form.add(new CheckBox("png.parallel", defaultedModel(metadataModel, WMS.PNG_PARALLEL_ENCODING, WMS.PNG_PARALLEL_ENCODING_DEFAULT)));
         // jpeg compression levels
     	MapModel jpegCompression = defaultedModel(metadataModel, WMS.JPEG_COMPRESSION, WMS.JPEG_COMPRESSION_DEFAULT);
         TextField<Integer> jpegCompressionField = new TextField<Integer>("jpeg.compression", jpegCompression, Integer.class);
@@ -9,6 +9,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -31,6 +32,9 @@ import org.geoserver.wfs.request.Insert;
 import org.geoserver.wfs.request.TransactionElement;
 import org.geoserver.wfs.request.TransactionRequest;
 import org.geoserver.wfs.request.TransactionResponse;
+import org.geoserver.wfs.xml.TransactionSpool;
+import org.geoserver.wfs.xml.TransactionSpool.FeatureBatches;
+import org.geoserver.wfs.xml.TransactionSpool.StreamedInsert;
 import org.geotools.data.DataUtilities;
 import org.geotools.data.FeatureStore;
 import org.geotools.data.simple.SimpleFeatureCollection;
@@ -63,11 +67,33 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
     static Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geoserver.wfs");
     private FilterFactory filterFactory;
 
+    /**
+     * Default number of features parsed and inserted at a time when the inserts are streamed, can
+     * be set with the "org.geoserver.wfs.insertBatchSize" system variable
+     */
+    public static final int BATCH_SIZE = Integer.getInteger("org.geoserver.wfs.insertBatchSize",
+            1000);
+
+    int batchSize = BATCH_SIZE;
+
     public InsertElementHandler(GeoServer gs, FilterFactory filterFactory) {
         super(gs);
         this.filterFactory = filterFactory;
     }
 
+    /**
+     * Sets the number of features parsed and inserted at a time when the inserts are streamed,
+     * see {@link TransactionSpool}. All batches are inserted in the same transaction, the pre and
+     * post insert events are fired for each batch.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
     public void checkValidity(TransactionElement element, Map<QName, FeatureTypeInfo> featureTypeInfos)
         throws WFSTransactionException {
         if (!getInfo().getServiceLevel().getOps().contains( WFSInfo.Operation.TRANSACTION_INSERT)) {
@@ -75,7 +101,6 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
         }
     }
 
-    @SuppressWarnings("unchecked")
     public void execute(TransactionElement element, TransactionRequest request, Map featureStores, 
         TransactionResponse response, TransactionListener listener) throws WFSTransactionException {
         
@@ -85,140 +110,169 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
         long inserted = response.getTotalInserted().longValue();
 
         try {
-            // group features by their schema
-            HashMap /* <SimpleFeatureType,FeatureCollection> */ schema2features = new HashMap();
-
-            
-            List featureList = insert.getFeatures();
-            for (Iterator f = featureList.iterator(); f.hasNext();) {
-                SimpleFeature feature = (SimpleFeature) f.next();
-                SimpleFeatureType schema = feature.getFeatureType();
-                SimpleFeatureCollection collection;
-                collection = (SimpleFeatureCollection) schema2features.get(schema);
-
-                if (collection == null) {
-                    collection = new DefaultFeatureCollection(null, schema);
-                    schema2features.put(schema, collection);
+            StreamedInsert streamed = TransactionSpool.getStreamedInsert(insert);
+            if (streamed == null) {
+                List featureList = insert.getFeatures();
+                insertFeatures(featureList, insert, request, featureStores, response, listener);
+                inserted += featureList.size();
+            } else {
+                // parse and insert the features a batch at a time
+                FeatureBatches batches = streamed.getFeatures(batchSize);
+                try {
+                    List featureList;
+                    while (!(featureList = batches.next()).isEmpty()) {
+                        insertFeatures(featureList, insert, request, featureStores, response,
+                                listener);
+                        inserted += featureList.size();
+                    }
+                } finally {
+                    batches.close();
                 }
+            }
+        } catch (Exception e) {
+            String msg = "Error performing insert: " + e.getMessage();
+            throw new WFSTransactionException(msg, e, insert.getHandle());
+        }
 
-                // do a check for idegen = useExisting, if set try to tell the datastore to use
-                // the privided fid
-                if (insert.isIdGenUseExisting()) {
-                    feature.getUserData().put(Hints.USE_PROVIDED_FID, true);
-                }
+        // update transaction summary
+        response.setTotalInserted(BigInteger.valueOf(inserted));
+    }
 
-                collection.add(feature);
+    /**
+     * Inserts the features, grouped by schema, and reports back their fids
+     */
+    @SuppressWarnings("unchecked")
+    void insertFeatures(List featureList, Insert insert, TransactionRequest request,
+            Map featureStores, TransactionResponse response, TransactionListener listener)
+            throws Exception {
+        // JD: change from set fo list because if inserting
+        // features into different feature stores, they could very well
+        // get given the same id
+        // JD: change from list to map so that the map can later be
+        // processed and we can report the fids back in the same order
+        // as they were supplied
+        Map<String, List<FeatureId>> schema2fids = new HashMap<String, List<FeatureId>>();
+
+        // group features by their schema
+        Map<SimpleFeatureType, DefaultFeatureCollection> schema2features = 
+            new LinkedHashMap<SimpleFeatureType, DefaultFeatureCollection>();
+
+        for (Iterator f = featureList.iterator(); f.hasNext();) {
+            SimpleFeature feature = (SimpleFeature) f.next();
+            SimpleFeatureType schema = feature.getFeatureType();
+            DefaultFeatureCollection collection = schema2features.get(schema);
+
+            if (collection == null) {
+                collection = new DefaultFeatureCollection(null, schema);
+                schema2features.put(schema, collection);
             }
 
-            // JD: change from set fo list because if inserting
-            // features into different feature stores, they could very well
-            // get given the same id
-            // JD: change from list to map so that the map can later be
-            // processed and we can report the fids back in the same order
-            // as they were supplied
-            Map<String, List<FeatureId>> schema2fids = new HashMap<String, List<FeatureId>>();
-
-            for (Iterator c = schema2features.values().iterator(); c.hasNext();) {
-                SimpleFeatureCollection collection = (SimpleFeatureCollection) c.next();
-                SimpleFeatureType schema = collection.getSchema();
-
-                final QName elementName = new QName(schema.getName().getNamespaceURI(), schema.getTypeName());
-                SimpleFeatureStore store;
-                store = DataUtilities.simple((FeatureStore) featureStores.get(elementName));
-
-                if (store == null) {
-                    throw new WFSException(request, "Could not locate FeatureStore for '" + elementName
-                        + "'");
-                }
+            // do a check for idegen = useExisting, if set try to tell the datastore to use
+            // the privided fid
+            if (insert.isIdGenUseExisting()) {
+                feature.getUserData().put(Hints.USE_PROVIDED_FID, true);
+            }
 
-                if (collection != null) {
-                    // if we really need to, make sure we are inserting coordinates that do
-                    // match the CRS area of validity
-                    if(getInfo().isCiteCompliant()) {
-                        checkFeatureCoordinatesRange(collection);
-                    }
-                    
-                    // reprojection
-                    final GeometryDescriptor defaultGeometry = store.getSchema().getGeometryDescriptor();
-                    if(defaultGeometry != null) {
-                        CoordinateReferenceSystem target = defaultGeometry.getCoordinateReferenceSystem();
-                        if (target != null) {
-                            collection = new ReprojectingFeatureCollection(collection, target);
-                        }
-                    }
-                    
-                    // Need to use the namespace here for the
-                    // lookup, due to our weird
-                    // prefixed internal typenames. see
-                    // http://jira.codehaus.org/secure/ViewIssue.jspa?key=GEOS-143
-
-                    // Once we get our datastores making features
-                    // with the correct namespaces
-                    // we can do something like this:
-                    // FeatureTypeInfo typeInfo =
-                    // catalog.getFeatureTypeInfo(schema.getTypeName(),
-                    // schema.getNamespace());
-                    // until then (when geos-144 is resolved) we're
-                    // stuck with:
-                    // QName qName = (QName) typeNames.get( i );
-                    // FeatureTypeInfo typeInfo =
-                    // catalog.featureType( qName.getPrefix(),
-                    // qName.getLocalPart() );
-
-                    // this is possible with the insert hack above.
-                    LOGGER.finer("Use featureValidation to check contents of insert");
-
-                    // featureValidation(
-                    // typeInfo.getDataStore().getId(), schema,
-                    // collection );
-                    List<FeatureId> fids = schema2fids.get(schema.getTypeName());
-
-                    if (fids == null) {
-                        fids = new LinkedList<FeatureId>();
-                        schema2fids.put(schema.getTypeName(), fids);
-                    }
+            collection.add(feature);
+        }
 
-                    //fire pre insert event
-                    TransactionEvent event = new TransactionEvent(TransactionEventType.PRE_INSERT,
-                            request, elementName, collection);
-                    event.setSource(Insert.WFS11.unadapt(insert));
-                    
-                    listener.dataStoreChange( event );
-                    fids.addAll(store.addFeatures(collection));
-                    
-                    //fire post insert event
-                    SimpleFeatureCollection features = store.getFeatures(filterFactory.id(new HashSet<FeatureId>(fids)));
-                    event = new TransactionEvent(TransactionEventType.POST_INSERT, request, 
-                        elementName, features, Insert.WFS11.unadapt(insert));
-                    listener.dataStoreChange( event );
-                }
-            }
+        for (DefaultFeatureCollection collection : schema2features.values()) {
+            insertFeatures(collection, insert, request, featureStores, schema2fids, listener);
+        }
 
-            // report back fids, we need to keep the same order the
-            // fids were reported in the original feature collection
-            for (Iterator f = featureList.iterator(); f.hasNext();) {
-                SimpleFeature feature = (SimpleFeature) f.next();
-                SimpleFeatureType schema = feature.getFeatureType();
+        // report back fids, we need to keep the same order the
+        // fids were reported in the original feature collection
+        for (Iterator f = featureList.iterator(); f.hasNext();) {
+            SimpleFeature feature = (SimpleFeature) f.next();
+            SimpleFeatureType schema = feature.getFeatureType();
 
-                // get the next fid
-                LinkedList<FeatureId> fids = (LinkedList<FeatureId>) schema2fids.get(schema.getTypeName());
-                FeatureId fid = fids.removeFirst();
+            // get the next fid
+            LinkedList<FeatureId> fids = (LinkedList<FeatureId>) schema2fids.get(schema.getTypeName());
+            FeatureId fid = fids.removeFirst();
 
-                response.addInsertedFeature(insert.getHandle(), fid);
-            }
+            response.addInsertedFeature(insert.getHandle(), fid);
+        }
+    }
 
-            // update the insert counter
-            inserted += featureList.size();
-        } catch (Exception e) {
-            String msg = "Error performing insert: " + e.getMessage();
-            throw new WFSTransactionException(msg, e, insert.getHandle());
+    /**
+     * Adds the features sharing the same schema to their store, firing the pre and post insert
+     * events
+     */
+    void insertFeatures(SimpleFeatureCollection collection, Insert insert, TransactionRequest request,
+            Map featureStores, Map<String, List<FeatureId>> schema2fids,
+            TransactionListener listener) throws Exception {
+        SimpleFeatureType schema = collection.getSchema();
+
+        final QName elementName = new QName(schema.getName().getNamespaceURI(), schema.getTypeName());
+        SimpleFeatureStore store;
+        store = DataUtilities.simple((FeatureStore) featureStores.get(elementName));
+
+        if (store == null) {
+            throw new WFSException(request, "Could not locate FeatureStore for '" + elementName
+                + "'");
         }
 
-        // update transaction summary
-        response.setTotalInserted(BigInteger.valueOf(inserted));
+        // if we really need to, make sure we are inserting coordinates that do
+        // match the CRS area of validity
+        if(getInfo().isCiteCompliant()) {
+            checkFeatureCoordinatesRange(collection);
+        }
+        
+        // reprojection
+        final GeometryDescriptor defaultGeometry = store.getSchema().getGeometryDescriptor();
+        if(defaultGeometry != null) {
+            CoordinateReferenceSystem target = defaultGeometry.getCoordinateReferenceSystem();
+            if (target != null) {
+                collection = new ReprojectingFeatureCollection(collection, target);
+            }
+        }
+        
+        // Need to use the namespace here for the
+        // lookup, due to our weird
+        // prefixed internal typenames. see
+        // http://jira.codehaus.org/secure/ViewIssue.jspa?key=GEOS-143
+
+        // Once we get our datastores making features
+        // with the correct namespaces
+        // we can do something like this:
+        // FeatureTypeInfo typeInfo =
+        // catalog.getFeatureTypeInfo(schema.getTypeName(),
+        // schema.getNamespace());
+        // until then (when geos-144 is resolved) we're
+        // stuck with:
+        // QName qName = (QName) typeNames.get( i );
+        // FeatureTypeInfo typeInfo =
+        // catalog.featureType( qName.getPrefix(),
+        // qName.getLocalPart() );
+
+        // this is possible with the insert hack above.
+        LOGGER.finer("Use featureValidation to check contents of insert");
+
+        // featureValidation(
+        // typeInfo.getDataStore().getId(), schema,
+        // collection );
+        List<FeatureId> fids = schema2fids.get(schema.getTypeName());
+
+        if (fids == null) {
+            fids = new LinkedList<FeatureId>();
+            schema2fids.put(schema.getTypeName(), fids);
+        }
+
+        //fire pre insert event
+        TransactionEvent event = new TransactionEvent(TransactionEventType.PRE_INSERT,
+                request, elementName, collection);
+        event.setSource(Insert.WFS11.unadapt(insert));
+        
+        listener.dataStoreChange( event );
+        fids.addAll(store.addFeatures(collection));
+        
+        //fire post insert event
+        SimpleFeatureCollection features = store.getFeatures(filterFactory.id(new HashSet<FeatureId>(fids)));
+        event = new TransactionEvent(TransactionEventType.POST_INSERT, request, 
+            elementName, features, Insert.WFS11.unadapt(insert));
+        listener.dataStoreChange( event );
     }
 
-    
     /**
      * Checks that all features coordinates are within the expected coordinate range
      * @param collection
@@ -256,6 +310,12 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
         
         List typeNames = new ArrayList();
 
+        StreamedInsert streamed = TransactionSpool.getStreamedInsert(insert);
+        if (streamed != null) {
+            typeNames.addAll(streamed.getTypeNames());
+            return (QName[]) typeNames.toArray(new QName[typeNames.size()]);
+        }
+
         List features = insert.getFeatures();
         if (!features.isEmpty()) {
             for (Iterator f = features.iterator(); f.hasNext();) {
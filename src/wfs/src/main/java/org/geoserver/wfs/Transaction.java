@@ -28,6 +28,7 @@ import org.geoserver.platform.ServiceException;
 import org.geoserver.wfs.request.TransactionElement;
 import org.geoserver.wfs.request.TransactionRequest;
 import org.geoserver.wfs.request.TransactionResponse;
+import org.geoserver.wfs.xml.TransactionSpool;
 import org.geotools.data.DefaultTransaction;
 import org.geotools.data.FeatureLockException;
 import org.geotools.data.FeatureSource;
@@ -108,6 +109,9 @@ public class Transaction {
         } catch (Throwable t) {
             abort(request); // release any locks
             throw new WFSException(request, t);
+        } finally {
+            // remove the spooled request of the streamed inserts, if any
+            TransactionSpool.dispose(request);
         }
     }
 
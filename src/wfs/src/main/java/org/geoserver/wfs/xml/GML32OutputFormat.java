@@ -90,6 +90,12 @@ public class GML32OutputFormat extends GML3OutputFormat {
         return new Encoder(config);
     }
 
+    @Override
+    protected boolean useStreamingWriter(WFSInfo wfs, FeatureCollectionResponse results) {
+        // the streaming writer only knows about the GML 3.1 wfs 1.1 feature collection
+        return false;
+    }
+
     @Override
     protected void setAdditionalSchemaLocations(Encoder encoder, GetFeatureRequest request, WFSInfo wfs) {
         //since wfs 2.0 schema does not depend on gml 3.2 schema we register it manually
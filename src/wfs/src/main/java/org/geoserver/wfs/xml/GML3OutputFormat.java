@@ -23,6 +23,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -196,16 +197,44 @@ public class GML3OutputFormat extends WFSGetFeatureOutputFormat {
             configuration.getProperties().remove(GMLConfiguration.ENCODE_FEATURE_MEMBER);
         }
         
-        //declare wfs schema location
+        //declare wfs and application schema locations
+        Map<String, String> schemaLocations = buildSchemaLocations(request, wfs, ns2metas);
+        Charset charset = Charset.forName( geoServer.getSettings().getCharset() );
+
+        if (useStreamingWriter(wfs, results)) {
+            new StreamingGML3Writer(catalog, wfs, getNumDecimals(ns2metas)).write(results,
+                    schemaLocations, output, charset);
+            return;
+        }
+
         Object gft = getFeature.getParameters()[0];
         
         Encoder encoder = createEncoder(configuration, ns2metas, gft);
-        encoder.setEncoding(Charset.forName( geoServer.getSettings().getCharset() ));
+        encoder.setEncoding(charset);
+
+        for (Map.Entry<String, String> entry : schemaLocations.entrySet()) {
+            encoder.setSchemaLocation(entry.getKey(), entry.getValue());
+        }
 
+        setAdditionalSchemaLocations(encoder, request, wfs);
+        if (this.isComplexFeature(results)) {
+            complexFeatureStreamIntercept(results, output, encoder);
+        } else {
+            encode(results, output, encoder);
+        }
+        
+    }
+    
+    /**
+     * Returns the wfs and application schema locations, by namespace URI
+     */
+    protected Map<String, String> buildSchemaLocations(GetFeatureRequest request, WFSInfo wfs,
+            Map<String, Set<FeatureTypeInfo>> ns2metas) throws IOException {
+        Map<String, String> schemaLocations = new LinkedHashMap<String, String>();
         if (wfs.isCanonicalSchemaLocation()) {
-            encoder.setSchemaLocation(getWfsNamespace(), getCanonicalWfsSchemaLocation());
+            schemaLocations.put(getWfsNamespace(), getCanonicalWfsSchemaLocation());
         } else {
-            encoder.setSchemaLocation(getWfsNamespace(),
+            schemaLocations.put(getWfsNamespace(),
                     buildSchemaURL(request.getBaseURL(), getRelativeWfsSchemaLocation()));
         }
 
@@ -227,7 +256,7 @@ public class GML3OutputFormat extends WFSGetFeatureOutputFormat {
                 if (userSchemaLocation != null && userSchemaLocation instanceof Map) {
                     Map<String, String> schemaURIs = (Map<String, String>) userSchemaLocation;
                     for (String namespace : schemaURIs.keySet()) {
-                        encoder.setSchemaLocation(namespace, schemaURIs.get(namespace));
+                        schemaLocations.put(namespace, schemaURIs.get(namespace));
                     }
                 } else {
                     typeNames.append(meta.getPrefixedName());
@@ -243,19 +272,36 @@ public class GML3OutputFormat extends WFSGetFeatureOutputFormat {
                 String schemaLocation = buildURL(request.getBaseURL(), "wfs", params, URLType.SERVICE);
                 LOGGER.finer("Unable to find user-defined schema location for: " + namespaceURI
                         + ". Using a built schema location by default: " + schemaLocation);
-                encoder.setSchemaLocation(namespaceURI, schemaLocation);
+                schemaLocations.put(namespaceURI, schemaLocation);
             }
         }
+        return schemaLocations;
+    }
 
-        setAdditionalSchemaLocations(encoder, request, wfs);
-        if (this.isComplexFeature(results)) {
-            complexFeatureStreamIntercept(results, output, encoder);
-        } else {
-            encode(results, output, encoder);
+    /**
+     * Returns true if the features should be written by the {@link StreamingGML3Writer} instead
+     * of the encoder
+     */
+    protected boolean useStreamingWriter(WFSInfo wfs, FeatureCollectionResponse results) {
+        return StreamingGML3Writer.isEnabled(wfs) && !isComplexFeature(results)
+                && StreamingGML3Writer.canEncode(results);
+    }
+
+    /**
+     * Returns the max number of decimals configured for the feature types, or the global one
+     */
+    int getNumDecimals(Map<String, Set<FeatureTypeInfo>> ns2metas) {
+        int numDecimals = -1;
+        for (Set<FeatureTypeInfo> metas : ns2metas.values()) {
+            for (FeatureTypeInfo meta : metas) {
+                if (meta.getNumDecimals() > 0) {
+                    numDecimals = Math.max(numDecimals, meta.getNumDecimals());
+                }
+            }
         }
-        
+        return numDecimals == -1 ? geoServer.getSettings().getNumDecimals() : numDecimals;
     }
-    
+
     protected Encoder createEncoder(Configuration configuration, 
         Map<String, Set<FeatureTypeInfo>> featureTypes, Object request ) {
         return new Encoder(configuration, configuration.schema());
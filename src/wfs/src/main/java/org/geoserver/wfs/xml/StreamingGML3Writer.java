@@ -0,0 +1,566 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.wfs.xml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.wfs.WFSInfo;
+import org.geoserver.wfs.request.FeatureCollectionResponse;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.gml2.SrsSyntax;
+import org.geotools.gml2.bindings.GML2EncodingUtils;
+import org.geotools.gml3.GML;
+import org.geotools.util.Converters;
+import org.geotools.util.logging.Logging;
+import org.geotools.xml.impl.DatatypeConverterImpl;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.geometry.BoundingBox;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Writes a WFS 1.1 GetFeature response of simple features as GML 3.1 straight to a StAX stream,
+ * without going through the GeoTools XSD encoder.
+ * <p>
+ * The element names, namespace prefixes and srsName of each feature type are computed once, and
+ * the geometries are written with the same elements the encoder would pick out of the
+ * {@link GML3Profile} mappings used by the {@link FeatureTypeSchemaBuilder} (a multipolygon is a
+ * MultiSurface, a multilinestring a MultiLineString, and so on). Coordinates are rounded to the
+ * configured number of decimals.
+ * </p>
+ * <p>
+ * The writer is enabled by setting the {@link #ENABLED} key to true in the metadata of the WFS
+ * service. Feature types using the GML properties (name, description, ...) as attributes are
+ * left to the encoder, see {@link #canEncode(FeatureCollectionResponse)}. Unlike the encoder, the
+ * bounds of the whole collection are not written, only the ones of each feature.
+ * </p>
+ */
+public class StreamingGML3Writer {
+
+    static final Logger LOGGER = Logging.getLogger(StreamingGML3Writer.class);
+
+    /**
+     * The WFS service metadata key enabling the streaming writer for GML 3.1 outputs
+     */
+    public static final String ENABLED = "gml3.streamingWriter";
+
+    static final String WFS_NS = org.geoserver.wfs.xml.v1_1_0.WFS.NAMESPACE;
+
+    static final String GML_NS = GML.NAMESPACE;
+
+    static final String XSI_NS = "http://www.w3.org/2001/XMLSchema-instance";
+
+    /**
+     * Attribute names that would clash with the GML properties of the feature
+     */
+    static final Set<String> GML_PROPERTIES = new HashSet<String>(Arrays.asList("name",
+            "description", "boundedBy", "location", "metaDataProperty"));
+
+    static final XMLOutputFactory XML_FACTORY = XMLOutputFactory.newInstance();
+
+    Catalog catalog;
+
+    SrsSyntax srsSyntax;
+
+    boolean featureBounding;
+
+    boolean encodeFeatureMember;
+
+    boolean srsDimension;
+
+    int numDecimals;
+
+    double scale;
+
+    Map<SimpleFeatureType, TypeMapping> mappings = new HashMap<SimpleFeatureType, TypeMapping>();
+
+    /**
+     * The prefixes made up for the namespaces missing from the catalog, by URI
+     */
+    Map<String, String> featurePrefixes = new HashMap<String, String>();
+
+    StringBuilder sb = new StringBuilder();
+
+    XMLStreamWriter w;
+
+    /**
+     * @param catalog The catalog used to look up the namespace prefixes
+     * @param wfs The service configuration
+     * @param numDecimals The number of decimals coordinates are rounded to, negative to disable
+     *        rounding
+     */
+    public StreamingGML3Writer(Catalog catalog, WFSInfo wfs, int numDecimals) {
+        this.catalog = catalog;
+        this.srsSyntax = wfs.getGML().get(WFSInfo.Version.V_11).getSrsNameStyle().toSrsSyntax();
+        this.featureBounding = wfs.isFeatureBounding();
+        this.encodeFeatureMember = wfs.isEncodeFeatureMember();
+        // cite compliance forces us to forgo the srsDimension attribute
+        this.srsDimension = !wfs.isCiteCompliant();
+        this.numDecimals = numDecimals;
+        this.scale = numDecimals >= 0 ? Math.pow(10, numDecimals) : 0;
+    }
+
+    /**
+     * Returns true if the writer is enabled for the service
+     */
+    public static boolean isEnabled(WFSInfo wfs) {
+        return Boolean.TRUE.equals(wfs.getMetadata().get(ENABLED, Boolean.class));
+    }
+
+    /**
+     * Returns true if all the collections in the response can be written by this class, that is,
+     * they are made of simple features whose attributes do not clash with the GML properties
+     */
+    public static boolean canEncode(FeatureCollectionResponse results) {
+        for (FeatureCollection fc : results.getFeature()) {
+            if (!(fc.getSchema() instanceof SimpleFeatureType)) {
+                return false;
+            }
+            SimpleFeatureType schema = (SimpleFeatureType) fc.getSchema();
+            for (AttributeDescriptor ad : schema.getAttributeDescriptors()) {
+                if (GML_PROPERTIES.contains(ad.getLocalName())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes out the response
+     *
+     * @param results The features
+     * @param schemaLocations The schema locations, by namespace URI
+     * @param output The target stream
+     * @param charset The charset of the document
+     */
+    public void write(FeatureCollectionResponse results, Map<String, String> schemaLocations,
+            OutputStream output, Charset charset) throws IOException {
+        try {
+            w = XML_FACTORY.createXMLStreamWriter(output, charset.name());
+            w.writeStartDocument(charset.name(), "1.0");
+
+            List<FeatureCollection> collections = results.getFeature();
+            for (FeatureCollection fc : collections) {
+                getMapping((SimpleFeatureType) fc.getSchema());
+            }
+
+            w.setPrefix("wfs", WFS_NS);
+            w.setPrefix("gml", GML_NS);
+            w.setPrefix("xsi", XSI_NS);
+            w.writeStartElement("wfs", "FeatureCollection", WFS_NS);
+            w.writeNamespace("wfs", WFS_NS);
+            w.writeNamespace("gml", GML_NS);
+            w.writeNamespace("xsi", XSI_NS);
+            Map<String, String> namespaces = new LinkedHashMap<String, String>();
+            for (TypeMapping mapping : mappings.values()) {
+                namespaces.put(mapping.uri, mapping.prefix);
+            }
+            for (Map.Entry<String, String> ns : namespaces.entrySet()) {
+                w.setPrefix(ns.getValue(), ns.getKey());
+                w.writeNamespace(ns.getValue(), ns.getKey());
+            }
+
+            if (results.getNumberOfFeatures() != null) {
+                w.writeAttribute("numberOfFeatures", results.getNumberOfFeatures().toString());
+            }
+            if (results.getTimeStamp() != null) {
+                w.writeAttribute("timeStamp", DatatypeConverterImpl.getInstance().printDateTime(
+                        results.getTimeStamp()));
+            }
+            if (results.getLockId() != null) {
+                w.writeAttribute("lockId", results.getLockId());
+            }
+            if (!schemaLocations.isEmpty()) {
+                sb.setLength(0);
+                for (Map.Entry<String, String> location : schemaLocations.entrySet()) {
+                    if (sb.length() > 0) {
+                        sb.append(' ');
+                    }
+                    sb.append(location.getKey()).append(' ').append(location.getValue());
+                }
+                w.writeAttribute("xsi", XSI_NS, "schemaLocation", sb.toString());
+            }
+
+            if (!encodeFeatureMember) {
+                w.writeStartElement("gml", "featureMembers", GML_NS);
+            }
+            for (FeatureCollection fc : collections) {
+                TypeMapping mapping = getMapping((SimpleFeatureType) fc.getSchema());
+                SimpleFeatureIterator fi = ((SimpleFeatureCollection) fc).features();
+                try {
+                    while (fi.hasNext()) {
+                        if (encodeFeatureMember) {
+                            w.writeStartElement("gml", "featureMember", GML_NS);
+                            writeFeature(fi.next(), mapping);
+                            w.writeEndElement();
+                        } else {
+                            writeFeature(fi.next(), mapping);
+                        }
+                    }
+                } finally {
+                    fi.close();
+                }
+            }
+            if (!encodeFeatureMember) {
+                w.writeEndElement();
+            }
+
+            w.writeEndElement();
+            w.writeEndDocument();
+            w.flush();
+        } catch (XMLStreamException e) {
+            throw (IOException) new IOException("Failed to write the GML3 output: "
+                    + e.getMessage()).initCause(e);
+        }
+    }
+
+    TypeMapping getMapping(SimpleFeatureType schema) {
+        TypeMapping mapping = mappings.get(schema);
+        if (mapping == null) {
+            mapping = new TypeMapping(schema);
+            mappings.put(schema, mapping);
+        }
+        return mapping;
+    }
+
+    void writeFeature(SimpleFeature f, TypeMapping mapping) throws XMLStreamException {
+        w.writeStartElement(mapping.prefix, mapping.localName, mapping.uri);
+        if (f.getID() != null) {
+            w.writeAttribute("gml", GML_NS, "id", f.getID());
+        }
+
+        if (featureBounding) {
+            BoundingBox bounds = f.getBounds();
+            if (bounds != null && !bounds.isEmpty()) {
+                w.writeStartElement("gml", "boundedBy", GML_NS);
+                w.writeStartElement("gml", "Envelope", GML_NS);
+                if (mapping.defaultSrsName != null) {
+                    w.writeAttribute("srsName", mapping.defaultSrsName);
+                }
+                writeCorner("lowerCorner", bounds.getMinX(), bounds.getMinY());
+                writeCorner("upperCorner", bounds.getMaxX(), bounds.getMaxY());
+                w.writeEndElement();
+                w.writeEndElement();
+            }
+        }
+
+        for (int i = 0; i < mapping.attributes.length; i++) {
+            Object value = f.getAttribute(i);
+            if (value == null) {
+                continue;
+            }
+            w.writeStartElement(mapping.prefix, mapping.attributes[i], mapping.uri);
+            if (value instanceof Geometry) {
+                writeGeometry((Geometry) value, mapping.srsNames[i]);
+            } else {
+                w.writeCharacters(toString(value));
+            }
+            w.writeEndElement();
+        }
+
+        w.writeEndElement();
+    }
+
+    void writeCorner(String name, double x, double y) throws XMLStreamException {
+        w.writeStartElement("gml", name, GML_NS);
+        sb.setLength(0);
+        appendNumber(x);
+        sb.append(' ');
+        appendNumber(y);
+        w.writeCharacters(sb.toString());
+        w.writeEndElement();
+    }
+
+    /**
+     * Writes a geometry, with the srsName attribute if not null
+     */
+    void writeGeometry(Geometry g, String srsName) throws XMLStreamException {
+        int dimension = getDimension(g);
+        if (g instanceof Point) {
+            startGeometry("Point", srsName, dimension);
+            w.writeStartElement("gml", "pos", GML_NS);
+            // an empty point has no coordinate at all
+            writeCoordinates(g.isEmpty() ? new Coordinate[0]
+                    : new Coordinate[] { g.getCoordinate() }, dimension);
+            w.writeEndElement();
+            w.writeEndElement();
+        } else if (g instanceof LinearRing) {
+            writeRing((LinearRing) g, srsName, dimension);
+        } else if (g instanceof LineString) {
+            startGeometry("LineString", srsName, dimension);
+            writePosList(((LineString) g).getCoordinates(), dimension);
+            w.writeEndElement();
+        } else if (g instanceof Polygon) {
+            Polygon polygon = (Polygon) g;
+            startGeometry("Polygon", srsName, dimension);
+            w.writeStartElement("gml", "exterior", GML_NS);
+            writeRing((LinearRing) polygon.getExteriorRing(), null, dimension);
+            w.writeEndElement();
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                w.writeStartElement("gml", "interior", GML_NS);
+                writeRing((LinearRing) polygon.getInteriorRingN(i), null, dimension);
+                w.writeEndElement();
+            }
+            w.writeEndElement();
+        } else if (g instanceof MultiPoint) {
+            writeCollection((GeometryCollection) g, "MultiPoint", "pointMember", srsName,
+                    dimension);
+        } else if (g instanceof MultiLineString) {
+            writeCollection((GeometryCollection) g, "MultiLineString", "lineStringMember",
+                    srsName, dimension);
+        } else if (g instanceof MultiPolygon) {
+            writeCollection((GeometryCollection) g, "MultiSurface", "surfaceMember", srsName,
+                    dimension);
+        } else if (g instanceof GeometryCollection) {
+            writeCollection((GeometryCollection) g, "MultiGeometry", "geometryMember", srsName,
+                    dimension);
+        } else {
+            throw new IllegalArgumentException("Unsupported geometry type "
+                    + g.getClass().getName());
+        }
+    }
+
+    void writeRing(LinearRing ring, String srsName, int dimension) throws XMLStreamException {
+        startGeometry("LinearRing", srsName, dimension);
+        writePosList(ring.getCoordinates(), dimension);
+        w.writeEndElement();
+    }
+
+    void writeCollection(GeometryCollection collection, String name, String member,
+            String srsName, int dimension) throws XMLStreamException {
+        startGeometry(name, srsName, dimension);
+        for (int i = 0; i < collection.getNumGeometries(); i++) {
+            w.writeStartElement("gml", member, GML_NS);
+            writeGeometry(collection.getGeometryN(i), null);
+            w.writeEndElement();
+        }
+        w.writeEndElement();
+    }
+
+    void startGeometry(String name, String srsName, int dimension) throws XMLStreamException {
+        w.writeStartElement("gml", name, GML_NS);
+        if (srsName != null) {
+            w.writeAttribute("srsName", srsName);
+        }
+        if (srsDimension) {
+            w.writeAttribute("srsDimension", dimension == 3 ? "3" : "2");
+        }
+    }
+
+    void writePosList(Coordinate[] coordinates, int dimension) throws XMLStreamException {
+        w.writeStartElement("gml", "posList", GML_NS);
+        writeCoordinates(coordinates, dimension);
+        w.writeEndElement();
+    }
+
+    void writeCoordinates(Coordinate[] coordinates, int dimension) throws XMLStreamException {
+        sb.setLength(0);
+        for (int i = 0; i < coordinates.length; i++) {
+            Coordinate c = coordinates[i];
+            if (i > 0) {
+                sb.append(' ');
+            }
+            appendNumber(c.x);
+            sb.append(' ');
+            appendNumber(c.y);
+            if (dimension == 3) {
+                sb.append(' ');
+                appendNumber(c.z);
+            }
+        }
+        w.writeCharacters(sb.toString());
+    }
+
+    /**
+     * Appends the number to the buffer in plain decimal notation, rounded to the configured
+     * number of decimals
+     */
+    void appendNumber(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            sb.append(value);
+            return;
+        }
+        if (numDecimals >= 0 && numDecimals <= 15 && Math.abs(value * scale) < 1e15) {
+            // fast path, the rounded value fits in a long
+            long rounded = Math.round(value * scale);
+            if (rounded < 0) {
+                sb.append('-');
+                rounded = -rounded;
+            }
+            long unit = (long) scale;
+            sb.append(rounded / unit);
+            long decimals = rounded % unit;
+            if (decimals > 0) {
+                sb.append('.');
+                int start = sb.length();
+                sb.append(decimals);
+                // pad with the leading zeros, and drop the trailing ones
+                for (int i = sb.length() - start; i < numDecimals; i++) {
+                    sb.insert(start, '0');
+                }
+                int end = sb.length();
+                while (sb.charAt(end - 1) == '0') {
+                    end--;
+                }
+                sb.setLength(end);
+            }
+        } else {
+            BigDecimal number = BigDecimal.valueOf(value);
+            if (numDecimals >= 0) {
+                number = number.setScale(numDecimals, RoundingMode.HALF_UP);
+            }
+            if (number.signum() == 0) {
+                sb.append('0');
+            } else {
+                sb.append(number.stripTrailingZeros().toPlainString());
+            }
+        }
+    }
+
+    int getDimension(Geometry g) {
+        Coordinate c = g.getCoordinate();
+        return c != null && !Double.isNaN(c.z) ? 3 : 2;
+    }
+
+    String toString(Object value) {
+        if (value instanceof java.sql.Date) {
+            return DatatypeConverterImpl.getInstance().printDate(toCalendar((Date) value));
+        } else if (value instanceof java.sql.Time) {
+            return DatatypeConverterImpl.getInstance().printTime(toCalendar((Date) value));
+        } else if (value instanceof Date) {
+            return DatatypeConverterImpl.getInstance().printDateTime(toCalendar((Date) value));
+        } else if (value instanceof Calendar) {
+            return DatatypeConverterImpl.getInstance().printDateTime((Calendar) value);
+        } else if (value instanceof String || value instanceof Number
+                || value instanceof Boolean) {
+            return value.toString();
+        }
+        String converted = Converters.convert(value, String.class);
+        return converted != null ? converted : value.toString();
+    }
+
+    Calendar toCalendar(Date date) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+        calendar.setTime(date);
+        return calendar;
+    }
+
+    /**
+     * Returns the prefix of a namespace not found in the catalog, a progressive one for each
+     * namespace in the document (feature1, feature2, ...) so that they do not clash
+     */
+    String getFeaturePrefix(String uri) {
+        String prefix = featurePrefixes.get(uri);
+        if (prefix == null) {
+            int i = featurePrefixes.size() + 1;
+            do {
+                prefix = "feature" + i++;
+            } while (featurePrefixes.containsValue(prefix)
+                    || catalog.getNamespaceByPrefix(prefix) != null);
+            featurePrefixes.put(uri, prefix);
+        }
+        return prefix;
+    }
+
+    /**
+     * The names used to write the features of a given type
+     */
+    class TypeMapping {
+        String uri;
+
+        String prefix;
+
+        String localName;
+
+        String[] attributes;
+
+        String[] srsNames;
+
+        String defaultSrsName;
+
+        TypeMapping(SimpleFeatureType schema) {
+            uri = schema.getName().getNamespaceURI();
+            localName = schema.getTypeName();
+            NamespaceInfo ns = uri != null ? catalog.getNamespaceByURI(uri) : null;
+            if (ns != null) {
+                prefix = ns.getPrefix();
+            } else {
+                if (uri == null) {
+                    uri = catalog.getDefaultNamespace().getURI();
+                }
+                prefix = getFeaturePrefix(uri);
+            }
+
+            List<AttributeDescriptor> descriptors = schema.getAttributeDescriptors();
+            attributes = new String[descriptors.size()];
+            srsNames = new String[descriptors.size()];
+            for (int i = 0; i < attributes.length; i++) {
+                AttributeDescriptor ad = descriptors.get(i);
+                attributes[i] = ad.getLocalName();
+                if (ad instanceof GeometryDescriptor) {
+                    srsNames[i] = getSrsName(((GeometryDescriptor) ad)
+                            .getCoordinateReferenceSystem());
+                }
+            }
+            if (schema.getGeometryDescriptor() != null) {
+                defaultSrsName = getSrsName(schema.getGeometryDescriptor()
+                        .getCoordinateReferenceSystem());
+            }
+        }
+
+        String getSrsName(CoordinateReferenceSystem crs) {
+            if (crs == null) {
+                return null;
+            }
+            try {
+                String code = GML2EncodingUtils.epsgCode(crs);
+                if (code != null) {
+                    return srsSyntax.getPrefix() + code;
+                }
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Could not find the EPSG code of " + crs, e);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,438 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.xml;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import net.opengis.wfs.InsertElementType;
+import net.opengis.wfs.TransactionType;
+
+import org.eclipse.emf.common.notify.Adapter;
+import org.eclipse.emf.common.notify.impl.AdapterImpl;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.wfs.WFSInfo;
+import org.geoserver.wfs.request.Insert;
+import org.geoserver.wfs.request.TransactionElement;
+import org.geoserver.wfs.request.TransactionRequest;
+import org.geotools.util.logging.Logging;
+import org.geotools.xml.Parser;
+
+/**
+ * Reads WFS 1.0 and 1.1 Transaction requests without keeping the features of their Insert
+ * elements in memory.
+ * <p>
+ * The request is spooled to a temporary file and parsed with the content of the Insert elements
+ * left out. Each Insert of the parsed request is then adapted by a {@link StreamedInsert}, which
+ * parses the features back from the spooled request a batch at a time while the insert is being
+ * executed. Requests inserting anything else than features of the catalog are parsed in full, as
+ * usual.
+ * </p>
+ * <p>
+ * Streaming is enabled by setting the {@link #ENABLED} key of the WFS metadata to true. It is not
+ * used for strict requests, since the Insert elements left empty would not validate. Transaction
+ * plugins do not see the features of the streamed inserts in
+ * {@link org.geoserver.wfs.TransactionPlugin#beforeTransaction(TransactionRequest)}, and the
+ * insert events are fired once per batch.
+ * </p>
+ */
+public class TransactionSpool {
+
+    static final Logger LOGGER = Logging.getLogger(TransactionSpool.class);
+
+    /**
+     * WFS metadata key enabling the streaming of inserts
+     */
+    public static final String ENABLED = "transaction.streamingInsert";
+
+    static final String WFS_NAMESPACE = "http://www.opengis.net/wfs";
+
+    static final QName TRANSACTION = new QName(WFS_NAMESPACE, "Transaction");
+
+    static final QName INSERT = new QName(WFS_NAMESPACE, "Insert");
+
+    static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+    static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newInstance();
+
+    /**
+     * Creates the parsers reading the spooled request, set up the same way as the one of the
+     * request reader
+     */
+    public interface ParserFactory {
+        Parser createParser();
+    }
+
+    File file;
+
+    ParserFactory parserFactory;
+
+    StartElement root;
+
+    TransactionSpool(ParserFactory parserFactory) {
+        this.parserFactory = parserFactory;
+    }
+
+    /**
+     * Returns true if the request element should be read with {@link #parse}
+     */
+    public static boolean isEnabled(QName element, WFSInfo wfs, Map kvp) {
+        return TRANSACTION.equals(element)
+                && Boolean.TRUE.equals(wfs.getMetadata().get(ENABLED, Boolean.class))
+                && !wfs.isCiteCompliant() && !Boolean.TRUE.equals(kvp.get("strict"));
+    }
+
+    /**
+     * Parses a transaction request, leaving the features of its Insert elements in the spooled
+     * request
+     */
+    public static Object parse(Reader reader, Catalog catalog, ParserFactory parserFactory)
+            throws Exception {
+        TransactionSpool spool = new TransactionSpool(parserFactory);
+        boolean streamed = false;
+        try {
+            spool.write(reader);
+
+            List<StreamedInsert> inserts = new ArrayList<StreamedInsert>();
+            StringWriter skeleton = new StringWriter();
+            if (spool.scan(catalog, inserts, skeleton)) {
+                Object parsed = parserFactory.createParser().parse(
+                        new StringReader(skeleton.toString()));
+                if (parsed instanceof TransactionType
+                        && ((TransactionType) parsed).getInsert().size() == inserts.size()) {
+                    List elements = ((TransactionType) parsed).getInsert();
+                    for (int i = 0; i < inserts.size(); i++) {
+                        ((InsertElementType) elements.get(i)).eAdapters().add(inserts.get(i));
+                    }
+                    streamed = true;
+                    return parsed;
+                }
+            }
+
+            // nothing we can stream, parse the whole request
+            Reader in = spool.open();
+            try {
+                return parserFactory.createParser().parse(in);
+            } finally {
+                in.close();
+            }
+        } finally {
+            if (!streamed) {
+                spool.dispose();
+            }
+        }
+    }
+
+    /**
+     * Returns the streamed insert adapting the element, or null if the element features have been
+     * parsed along with the request
+     */
+    public static StreamedInsert getStreamedInsert(TransactionElement element) {
+        if (element instanceof Insert && element.getAdaptee() != null) {
+            for (Adapter adapter : element.getAdaptee().eAdapters()) {
+                if (adapter instanceof StreamedInsert) {
+                    return (StreamedInsert) adapter;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the spooled request backing the streamed inserts of the transaction, if any
+     */
+    public static void dispose(TransactionRequest request) {
+        for (TransactionElement element : request.getElements()) {
+            StreamedInsert insert = getStreamedInsert(element);
+            if (insert != null) {
+                insert.spool.dispose();
+            }
+        }
+    }
+
+    void write(Reader reader) throws IOException {
+        file = File.createTempFile("transaction", ".xml");
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+                "UTF-8"));
+        try {
+            char[] buffer = new char[8192];
+            int n;
+            while ((n = reader.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    Reader open() throws IOException {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    }
+
+    void dispose() {
+        if (file != null && file.exists() && !file.delete()) {
+            LOGGER.warning("Could not remove the spooled transaction " + file.getPath());
+        }
+    }
+
+    /**
+     * Writes out the request without the content of its Insert elements, collecting the
+     * inserts along the way. Returns false if there is nothing to stream, or some insert contains
+     * something else than features of the catalog.
+     */
+    boolean scan(Catalog catalog, List<StreamedInsert> inserts, Writer skeleton)
+            throws IOException, XMLStreamException {
+        Map<QName, Boolean> featureTypes = new HashMap<QName, Boolean>();
+        boolean streamable = true;
+
+        Reader in = open();
+        try {
+            XMLEventReader events = INPUT_FACTORY.createXMLEventReader(in);
+            XMLEventWriter out = OUTPUT_FACTORY.createXMLEventWriter(skeleton);
+
+            int depth = 0;
+            StreamedInsert insert = null;
+            while (events.hasNext()) {
+                XMLEvent event = events.nextEvent();
+                if (event.isStartDocument() || event.isEndDocument()) {
+                    continue;
+                }
+
+                if (event.isStartElement()) {
+                    StartElement start = event.asStartElement();
+                    if (depth == 0) {
+                        root = start;
+                    } else if (depth == 1 && INSERT.equals(start.getName())) {
+                        insert = new StreamedInsert(this, inserts.size(), start);
+                        inserts.add(insert);
+                    } else if (insert != null && depth == 2) {
+                        insert.count++;
+                        insert.typeNames.add(start.getName());
+                        streamable &= isFeatureType(start.getName(), catalog, featureTypes);
+                    }
+                    depth++;
+                    if (insert != null && depth > 2) {
+                        continue;
+                    }
+                } else if (event.isEndElement()) {
+                    depth--;
+                    if (insert != null) {
+                        if (depth > 1) {
+                            continue;
+                        }
+                        insert = null;
+                    }
+                } else if (insert != null && depth > 1) {
+                    continue;
+                }
+                out.add(event);
+            }
+            out.close();
+            events.close();
+        } finally {
+            in.close();
+        }
+
+        return streamable && !inserts.isEmpty();
+    }
+
+    boolean isFeatureType(QName name, Catalog catalog, Map<QName, Boolean> featureTypes) {
+        Boolean featureType = featureTypes.get(name);
+        if (featureType == null) {
+            featureType = name.getNamespaceURI() != null && !"".equals(name.getNamespaceURI())
+                    && catalog.getFeatureTypeByName(name.getNamespaceURI(), name.getLocalPart()) != null;
+            featureTypes.put(name, featureType);
+        }
+        return featureType;
+    }
+
+    /**
+     * Adapts an Insert element whose features are left in the spooled request
+     */
+    public static class StreamedInsert extends AdapterImpl {
+
+        TransactionSpool spool;
+
+        int index;
+
+        StartElement start;
+
+        int count;
+
+        Set<QName> typeNames = new LinkedHashSet<QName>();
+
+        StreamedInsert(TransactionSpool spool, int index, StartElement start) {
+            this.spool = spool;
+            this.index = index;
+            this.start = start;
+        }
+
+        /**
+         * The number of features in the insert
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * The names of the elements of the inserted features
+         */
+        public Set<QName> getTypeNames() {
+            return typeNames;
+        }
+
+        /**
+         * Opens the features of the insert, to be read <code>batchSize</code> at a time
+         */
+        public FeatureBatches getFeatures(int batchSize) throws IOException, XMLStreamException {
+            return new FeatureBatches(this, batchSize);
+        }
+    }
+
+    /**
+     * Parses the features of a streamed insert a batch at a time
+     */
+    public static class FeatureBatches {
+
+        StreamedInsert insert;
+
+        int batchSize;
+
+        Reader in;
+
+        XMLEventReader events;
+
+        boolean done;
+
+        FeatureBatches(StreamedInsert insert, int batchSize) throws IOException,
+                XMLStreamException {
+            this.insert = insert;
+            this.batchSize = Math.max(1, batchSize);
+            this.in = insert.spool.open();
+            this.events = INPUT_FACTORY.createXMLEventReader(in);
+
+            // move right after the start of the insert
+            int depth = 0;
+            int inserts = 0;
+            while (events.hasNext()) {
+                XMLEvent event = events.nextEvent();
+                if (event.isStartElement()) {
+                    if (depth == 1 && INSERT.equals(event.asStartElement().getName())
+                            && inserts++ == insert.index) {
+                        return;
+                    }
+                    depth++;
+                } else if (event.isEndElement()) {
+                    depth--;
+                }
+            }
+            done = true;
+        }
+
+        /**
+         * Parses the next batch of features, returning an empty list once all of them have been
+         * read
+         */
+        public List next() throws Exception {
+            if (done) {
+                return Collections.EMPTY_LIST;
+            }
+
+            StringWriter batch = new StringWriter();
+            XMLEventWriter out = OUTPUT_FACTORY.createXMLEventWriter(batch);
+            out.add(insert.spool.root);
+            out.add(insert.start);
+
+            int features = 0;
+            int depth = 0;
+            while (events.hasNext()) {
+                XMLEvent event = events.peek();
+                if (depth == 0) {
+                    if (event.isEndElement()) {
+                        // end of the insert
+                        done = true;
+                        break;
+                    }
+                    if (event.isStartElement()) {
+                        if (features == batchSize) {
+                            break;
+                        }
+                        features++;
+                    }
+                }
+                event = events.nextEvent();
+                if (event.isStartElement()) {
+                    depth++;
+                } else if (event.isEndElement()) {
+                    depth--;
+                }
+                out.add(event);
+            }
+            if (!events.hasNext()) {
+                done = true;
+            }
+            if (features == 0) {
+                return Collections.EMPTY_LIST;
+            }
+
+            out.add(EVENT_FACTORY.createEndElement(insert.start.getName(),
+                    insert.start.getNamespaces()));
+            out.add(EVENT_FACTORY.createEndElement(insert.spool.root.getName(),
+                    insert.spool.root.getNamespaces()));
+            out.close();
+
+            if (LOGGER.isLoggable(Level.FINEST)) {
+                LOGGER.finest("Parsing insert batch: " + batch);
+            }
+            Object parsed = insert.spool.parserFactory.createParser().parse(
+                    new StringReader(batch.toString()));
+            return ((InsertElementType) ((TransactionType) parsed).getInsert().get(0)).getFeature();
+        }
+
+        public void close() {
+            try {
+                events.close();
+            } catch (XMLStreamException e) {
+                LOGGER.log(Level.FINE, "Error closing the spooled transaction", e);
+            }
+            try {
+                in.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Error closing the spooled transaction", e);
+            }
+        }
+    }
+}
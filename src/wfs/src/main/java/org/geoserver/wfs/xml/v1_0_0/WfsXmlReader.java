@@ -16,6 +16,8 @@ import org.geoserver.catalog.NamespaceInfo;
 import org.geoserver.config.GeoServer;
 import org.geoserver.ows.XmlRequestReader;
 import org.geoserver.wfs.WFSException;
+import org.geoserver.wfs.WFSInfo;
+import org.geoserver.wfs.xml.TransactionSpool;
 import org.geoserver.wfs.xml.WFSURIHandler;
 import org.geotools.util.Version;
 import org.geotools.xml.Configuration;
@@ -50,29 +52,24 @@ public class WfsXmlReader extends XmlRequestReader {
 
     public Object read(Object request, Reader reader, Map kvp) throws Exception {
         //TODO: refactor this method to use WFSXmlUtils
-        Catalog catalog = geoServer.getCatalog();
-
         //check the strict flag to determine if we should validate or not
         Boolean strict = (Boolean) kvp.get("strict");
         if ( strict == null ) {
             strict = Boolean.FALSE;
         }
-        
-        //create the parser instance
-        Parser parser = new Parser(configuration);
-        
-        //"inject" namespace mappings
-        List<NamespaceInfo> namespaces = catalog.getNamespaces();
-        for ( NamespaceInfo ns : namespaces ) {
-            //if ( namespaces[i].isDefault() ) 
-            //    continue;
-            
-            parser.getNamespaces().declarePrefix( 
-                ns.getPrefix(), ns.getURI());
+
+        WFSInfo wfs = geoServer.getService(WFSInfo.class);
+        if (TransactionSpool.isEnabled(getElement(), wfs, kvp)) {
+            return TransactionSpool.parse(reader, geoServer.getCatalog(),
+                    new TransactionSpool.ParserFactory() {
+                        public Parser createParser() {
+                            return WfsXmlReader.this.createParser(false);
+                        }
+                    });
         }
-        //set validation based on strict or not
-        parser.setValidating(strict.booleanValue());
-        parser.getURIHandlers().add(0, new WFSURIHandler(geoServer));
+
+        //create the parser instance
+        Parser parser = createParser(strict.booleanValue());
 
         //parse
         Object parsed = parser.parse(reader); 
@@ -91,4 +88,23 @@ public class WfsXmlReader extends XmlRequestReader {
         
         return parsed;
     }
+
+    Parser createParser(boolean strict) {
+        Catalog catalog = geoServer.getCatalog();
+        Parser parser = new Parser(configuration);
+        
+        //"inject" namespace mappings
+        List<NamespaceInfo> namespaces = catalog.getNamespaces();
+        for ( NamespaceInfo ns : namespaces ) {
+            //if ( namespaces[i].isDefault() ) 
+            //    continue;
+            
+            parser.getNamespaces().declarePrefix( 
+                ns.getPrefix(), ns.getURI());
+        }
+        //set validation based on strict or not
+        parser.setValidating(strict);
+        parser.getURIHandlers().add(0, new WFSURIHandler(geoServer));
+        return parser;
+    }
 }
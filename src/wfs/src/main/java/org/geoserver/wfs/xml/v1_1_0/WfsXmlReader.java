@@ -12,6 +12,7 @@ import javax.xml.namespace.QName;
 import org.geoserver.config.GeoServer;
 import org.geoserver.ows.XmlRequestReader;
 import org.geoserver.wfs.WFSInfo;
+import org.geoserver.wfs.xml.TransactionSpool;
 import org.geoserver.wfs.xml.WFSURIHandler;
 import org.geoserver.wfs.xml.WFSXmlUtils;
 import org.geotools.util.Version;
@@ -53,10 +54,21 @@ public class WfsXmlReader extends XmlRequestReader {
         this.configuration = configuration;
     }
 
-    public Object read(Object request, Reader reader, Map kvp) throws Exception {
+    public Object read(Object request, Reader reader, final Map kvp) throws Exception {
         //TODO: make this configurable?
         configuration.getProperties().add(Parser.Properties.PARSE_UNKNOWN_ELEMENTS);
 
+        if (TransactionSpool.isEnabled(getElement(), geoServer.getService(WFSInfo.class), kvp)) {
+            return TransactionSpool.parse(reader, geoServer.getCatalog(),
+                    new TransactionSpool.ParserFactory() {
+                        public Parser createParser() {
+                            Parser parser = new Parser(configuration);
+                            WFSXmlUtils.initRequestParser(parser, wfs, geoServer, kvp);
+                            return parser;
+                        }
+                    });
+        }
+
         Parser parser = new Parser(configuration);
         WFSXmlUtils.initRequestParser(parser, wfs, geoServer, kvp);
         
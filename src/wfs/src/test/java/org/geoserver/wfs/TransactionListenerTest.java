@@ -5,6 +5,7 @@ import net.opengis.wfs.InsertElementType;
 import net.opengis.wfs.UpdateElementType;
 
 import org.geoserver.data.test.MockData;
+import org.geoserver.wfs.xml.TransactionSpool;
 import org.opengis.feature.Feature;
 import org.w3c.dom.Document;
 
@@ -109,6 +110,57 @@ public class TransactionListenerTest extends WFSTestSupport {
         assertEquals(fid, inserted.getIdentifier().getID());
     }
 
+    public void testInsertStreamed() throws Exception {
+        WFSInfo wfs = getWFS();
+        wfs.getMetadata().put(TransactionSpool.ENABLED, true);
+        getGeoServer().save(wfs);
+
+        InsertElementHandler handler = (InsertElementHandler) applicationContext
+                .getBean("wfsInsertElementHandler");
+        int batchSize = handler.getBatchSize();
+        handler.setBatchSize(2);
+        try {
+            StringBuilder insert = new StringBuilder("<wfs:Transaction service=\"WFS\" version=\"1.0.0\" "
+                    + "xmlns:cgf=\"http://www.opengis.net/cite/geometry\" "
+                    + "xmlns:ogc=\"http://www.opengis.net/ogc\" "
+                    + "xmlns:wfs=\"http://www.opengis.net/wfs\" "
+                    + "xmlns:gml=\"http://www.opengis.net/gml\"> "
+                    + "<wfs:Insert > ");
+            for (int i = 0; i < 3; i++) {
+                insert.append("<cgf:Lines>" + "<cgf:lineStringProperty>" + "<gml:LineString>"
+                        + "<gml:coordinates decimal=\".\" cs=\",\" ts=\" \">"
+                        + "494475.71056415,5433016.8189323 494982.70115662,5435041.95096618"
+                        + "</gml:coordinates>" + "</gml:LineString>"
+                        + "</cgf:lineStringProperty>" + "<cgf:id>b000" + i + "</cgf:id>"
+                        + "</cgf:Lines>");
+            }
+            insert.append("</wfs:Insert>" + "</wfs:Transaction>");
+
+            Document dom = postAsDOM("wfs", insert.toString());
+            assertEquals(3, dom.getElementsByTagName("ogc:FeatureId").getLength());
+
+            // the features are parsed and inserted two at a time, with a pre and post insert
+            // event for each batch
+            assertEquals(4, listener.events.size());
+            TransactionEventType[] types = new TransactionEventType[] {
+                    TransactionEventType.PRE_INSERT, TransactionEventType.POST_INSERT,
+                    TransactionEventType.PRE_INSERT, TransactionEventType.POST_INSERT };
+            int[] sizes = new int[] { 2, 2, 1, 1 };
+            for (int i = 0; i < types.length; i++) {
+                TransactionEvent event = (TransactionEvent) listener.events.get(i);
+                assertTrue(event.getSource() instanceof InsertElementType);
+                assertEquals(types[i], event.getType());
+                assertEquals(MockData.LINES, event.getLayerName());
+                assertEquals(sizes[i], event.getAffectedFeatures().size());
+            }
+            assertEquals(6, listener.features.size());
+        } finally {
+            handler.setBatchSize(batchSize);
+            wfs.getMetadata().remove(TransactionSpool.ENABLED);
+            getGeoServer().save(wfs);
+        }
+    }
+
     public void testUpdate() throws Exception {
         // perform an update
         String insert = "<wfs:Transaction service=\"WFS\" version=\"1.0.0\" "
@@ -0,0 +1,162 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.v1_1;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import net.opengis.wfs.WfsFactory;
+
+import org.custommonkey.xmlunit.XMLAssert;
+import org.custommonkey.xmlunit.XMLUnit;
+import org.custommonkey.xmlunit.XpathEngine;
+import org.geoserver.data.test.MockData;
+import org.geoserver.wfs.WFSInfo;
+import org.geoserver.wfs.WFSTestSupport;
+import org.geoserver.wfs.request.FeatureCollectionResponse;
+import org.geoserver.wfs.xml.StreamingGML3Writer;
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+
+public class StreamingGML3WriterTest extends WFSTestSupport {
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        super.setUpInternal();
+        setStreaming(true);
+    }
+
+    @Override
+    protected void setUpNamespaces(Map<String, String> namespaces) {
+        namespaces.put("ex", "http://www.example.com/coords");
+    }
+
+    void setStreaming(boolean enabled) {
+        WFSInfo wfs = getWFS();
+        wfs.getMetadata().put(StreamingGML3Writer.ENABLED, enabled);
+        getGeoServer().save(wfs);
+    }
+
+    public void testPoints() throws Exception {
+        Document doc = getAsDOM("wfs?request=GetFeature&typename=cdf:Fifteen&version=1.1.0&service=wfs");
+        assertEquals("wfs:FeatureCollection", doc.getDocumentElement().getNodeName());
+        XMLAssert.assertXpathEvaluatesTo("15", "/wfs:FeatureCollection/@numberOfFeatures", doc);
+        XMLAssert.assertXpathEvaluatesTo("15",
+                "count(/wfs:FeatureCollection/gml:featureMembers/cdf:Fifteen)", doc);
+        XMLAssert.assertXpathEvaluatesTo("Fifteen.2",
+                "//wfs:FeatureCollection/gml:featureMembers/cdf:Fifteen[2]/@gml:id", doc);
+        XMLAssert.assertXpathExists("//cdf:Fifteen/cdf:pointProperty/gml:Point[@srsDimension = '2']/gml:pos", doc);
+    }
+
+    public void testSameAsEncoder() throws Exception {
+        String request = "wfs?request=GetFeature&version=1.1.0&service=wfs&typename="
+                + getLayerId(MockData.BUILDINGS);
+        Document streamed = getAsDOM(request);
+        setStreaming(false);
+        Document encoded = getAsDOM(request);
+
+        XpathEngine xpath = XMLUnit.newXpathEngine();
+        String[] paths = new String[] { "count(//cite:Buildings)",
+                "//cite:Buildings[1]/@gml:id", "//cite:Buildings[1]/cite:FID",
+                "//cite:Buildings[1]/cite:ADDRESS", "local-name(//cite:Buildings[1]/cite:the_geom/*)",
+                "//cite:Buildings[1]/cite:the_geom//gml:posList",
+                "//cite:Buildings[1]/cite:the_geom/*/@srsName",
+                "//cite:Buildings[1]/gml:boundedBy/gml:Envelope/gml:lowerCorner" };
+        for (String path : paths) {
+            assertEquals(path, xpath.evaluate(path, encoded), xpath.evaluate(path, streamed));
+        }
+    }
+
+    public void testFeatureMember() throws Exception {
+        WFSInfo wfs = getWFS();
+        wfs.setEncodeFeatureMember(true);
+        getGeoServer().save(wfs);
+
+        Document doc = getAsDOM("wfs?request=GetFeature&typename=cdf:Fifteen&version=1.1.0&service=wfs");
+        XMLAssert.assertXpathEvaluatesTo("15",
+                "count(/wfs:FeatureCollection/gml:featureMember/cdf:Fifteen)", doc);
+        XMLAssert.assertXpathNotExists("//gml:featureMembers", doc);
+    }
+
+    public void testUnmappedNamespaces() throws Exception {
+        // same type name, two namespaces the catalog knows nothing about
+        FeatureCollectionResponse response = FeatureCollectionResponse.adapt(WfsFactory.eINSTANCE
+                .createFeatureCollectionType());
+        String[] uris = new String[] { "http://www.example.com/one", "http://www.example.com/two" };
+        for (String uri : uris) {
+            SimpleFeatureType type = DataUtilities.createType(uri, "Unmapped", "name:String");
+            response.getFeature().add(DataUtilities.collection(SimpleFeatureBuilder.build(type,
+                    new Object[] { "foo" }, "Unmapped.1")));
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new StreamingGML3Writer(getCatalog(), getWFS(), -1).write(response,
+                Collections.<String, String> emptyMap(), output, Charset.forName("UTF-8"));
+
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document doc = factory.newDocumentBuilder().parse(
+                new ByteArrayInputStream(output.toByteArray()));
+        for (int i = 0; i < uris.length; i++) {
+            assertEquals(1, doc.getElementsByTagNameNS(uris[i], "Unmapped").getLength());
+            Element feature = (Element) doc.getElementsByTagNameNS(uris[i], "Unmapped").item(0);
+            assertEquals("feature" + (i + 1), feature.getPrefix());
+            assertEquals(1, feature.getElementsByTagNameNS(uris[i], "name").getLength());
+        }
+    }
+
+    public void testCoordinateFormatting() throws Exception {
+        GeometryFactory gf = new GeometryFactory();
+        Point[] points = new Point[] { gf.createPoint(new Coordinate(12345678.123456, 1e20)),
+                gf.createPoint(new Coordinate(-0.00001, 0.0001)),
+                gf.createPoint((Coordinate) null) };
+
+        // plain decimals, rounded to the requested number of decimals
+        String[] expected = new String[] { "12345678.1235 100000000000000000000", "0 0.0001", "" };
+        Document doc = writePoints(points, 4);
+        for (int i = 0; i < points.length; i++) {
+            XMLAssert.assertXpathEvaluatesTo(expected[i], "(//ex:Coords)[" + (i + 1)
+                    + "]/ex:geom/gml:Point/gml:pos", doc);
+        }
+
+        // plain decimals, no rounding
+        expected = new String[] { "12345678.123456 100000000000000000000", "-0.00001 0.0001", "" };
+        doc = writePoints(points, -1);
+        for (int i = 0; i < points.length; i++) {
+            XMLAssert.assertXpathEvaluatesTo(expected[i], "(//ex:Coords)[" + (i + 1)
+                    + "]/ex:geom/gml:Point/gml:pos", doc);
+        }
+    }
+
+    Document writePoints(Point[] points, int numDecimals) throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("http://www.example.com/coords",
+                "Coords", "geom:Point");
+        FeatureCollectionResponse response = FeatureCollectionResponse.adapt(WfsFactory.eINSTANCE
+                .createFeatureCollectionType());
+        DefaultFeatureCollection features = new DefaultFeatureCollection(null, type);
+        for (int i = 0; i < points.length; i++) {
+            features.add(SimpleFeatureBuilder.build(type, new Object[] { points[i] }, "Coords."
+                    + i));
+        }
+        response.getFeature().add(features);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new StreamingGML3Writer(getCatalog(), getWFS(), numDecimals).write(response,
+                Collections.<String, String> emptyMap(), output, Charset.forName("UTF-8"));
+        return dom(new ByteArrayInputStream(output.toByteArray()));
+    }
+}
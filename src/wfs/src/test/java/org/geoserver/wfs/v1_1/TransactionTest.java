@@ -11,7 +11,9 @@ import org.geoserver.catalog.CatalogBuilder;
 import org.geoserver.catalog.DataStoreInfo;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.data.test.MockData;
+import org.geoserver.wfs.WFSInfo;
 import org.geoserver.wfs.WFSTestSupport;
+import org.geoserver.wfs.xml.TransactionSpool;
 import org.geotools.data.DataStore;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.FeatureStore;
@@ -595,6 +597,58 @@ public class TransactionTest extends WFSTestSupport {
 
     }
     
+    public void testInsertStreamed() throws Exception {
+        WFSInfo wfs = getWFS();
+        wfs.getMetadata().put(TransactionSpool.ENABLED, true);
+        getGeoServer().save(wfs);
+        try {
+            String insert = "<wfs:Insert handle=\"insert-%d\">"
+                + " <cite:RoadSegments>"
+                + "  <cite:the_geom>"
+                + "<gml:MultiLineString srsName=\"EPSG:4326\">"
+                + " <gml:lineStringMember>"
+                + "  <gml:LineString>"
+                + "   <gml:posList>4.2582 52.0643 4.2584 52.0648</gml:posList>"
+                + "  </gml:LineString>"
+                + " </gml:lineStringMember>"
+                + "</gml:MultiLineString>"
+                + "  </cite:the_geom>"
+                + "  <cite:FID>%d</cite:FID>"
+                + "  <cite:NAME>streamed</cite:NAME>" 
+                + " </cite:RoadSegments>"
+                + "</wfs:Insert>";
+            String xml = "<wfs:Transaction service=\"WFS\" version=\"1.1.0\" "
+                + " xmlns:wfs=\"http://www.opengis.net/wfs\" "
+                + " xmlns:ogc=\"http://www.opengis.net/ogc\" "
+                + " xmlns:gml=\"http://www.opengis.net/gml\" "
+                + " xmlns:cite=\"http://www.opengis.net/cite\">"
+                + String.format(insert, 1, 201)
+                + "<wfs:Update typeName=\"cite:RoadSegments\">"
+                + " <wfs:Property>"
+                + "  <wfs:Name>cite:NAME</wfs:Name>"
+                + "  <wfs:Value>updated</wfs:Value>"
+                + " </wfs:Property>"
+                + " <ogc:Filter>"
+                + "  <ogc:PropertyIsEqualTo>"
+                + "   <ogc:PropertyName>FID</ogc:PropertyName>"
+                + "   <ogc:Literal>102</ogc:Literal>"
+                + "  </ogc:PropertyIsEqualTo>"
+                + " </ogc:Filter>"
+                + "</wfs:Update>"
+                + String.format(insert, 2, 202)
+                + "</wfs:Transaction>";
+
+            Document dom = postAsDOM("wfs", xml);
+            assertEquals("wfs:TransactionResponse", dom.getDocumentElement().getNodeName());
+            assertEquals("2", getFirstElementByTagName(dom, "wfs:totalInserted").getFirstChild().getNodeValue());
+            assertEquals("1", getFirstElementByTagName(dom, "wfs:totalUpdated").getFirstChild().getNodeValue());
+            assertEquals(2, dom.getElementsByTagName("ogc:FeatureId").getLength());
+        } finally {
+            wfs.getMetadata().remove(TransactionSpool.ENABLED);
+            getGeoServer().save(wfs);
+        }
+    }
+    
     public void testUpdateLayerQualified() throws Exception {
         String xml =
             "<wfs:Transaction service=\"WFS\" version=\"1.1.0\"" + 
@@ -0,0 +1,645 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.namespace.QName;
+
+import net.opengis.wfs.PropertyType;
+import net.opengis.wfs.TransactionResponseType;
+import net.opengis.wfs.TransactionType;
+import net.opengis.wfs.UpdateElementType;
+
+import org.apache.commons.io.IOUtils;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.DimensionInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.config.GeoServerDataDirectory;
+import org.geoserver.config.impl.GeoServerLifecycleHandler;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.security.AccessLevel;
+import org.geoserver.security.DataAccessLimits;
+import org.geoserver.security.VectorAccessLimits;
+import org.geoserver.security.WrapperPolicy;
+import org.geoserver.security.decorators.SecuredFeatureTypeInfo;
+import org.geoserver.wfs.TransactionEvent;
+import org.geoserver.wfs.TransactionEventType;
+import org.geoserver.wfs.TransactionPlugin;
+import org.geoserver.wfs.WFSException;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.visitor.UniqueVisitor;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.Filter;
+
+/**
+ * Keeps the domain of the time and elevation dimensions of vector layers, that is, the sorted
+ * distinct values of the dimension attribute, so that capabilities documents and the dimension
+ * defaults can be computed without scanning the whole layer every time.
+ * <p>
+ * A domain is computed on first use and persisted in the <code>dimensions</code> directory of
+ * the data directory, so that it survives restarts. Afterwards it's maintained as follows:
+ * <ul>
+ * <li>the values of features inserted by a committed WFS transaction are added to it</li>
+ * <li>WFS updates touching the dimension attribute and WFS deletes drop it, as removed values
+ * cannot be tracked without counting, it will be computed again on next use</li>
+ * <li>changes to the feature type configuration drop it</li>
+ * <li>if a refresh interval is configured, all known domains are periodically computed again, to
+ * catch up with changes made to the data outside of GeoServer</li>
+ * </ul>
+ * </p>
+ * <p>
+ * The domains are shared among all users, so they are always computed against the feature types
+ * of the raw catalog, which are not subject to data security. Users whose access to the layer is
+ * limited by a read filter or by a restricted attribute set get the domain computed against their
+ * own secured view of the layer instead, bypassing the index.
+ * </p>
+ */
+public class DimensionDomainIndex implements TransactionPlugin, CatalogListener,
+        GeoServerLifecycleHandler {
+
+    static final Logger LOGGER = Logging.getLogger(DimensionDomainIndex.class);
+
+    static final String INDEX_DIRECTORY = "dimensions";
+
+    static final String DIRTY_DOMAINS = "DIMENSION_INDEX_DIRTY_DOMAINS";
+
+    static final String INSERTED_VALUES = "DIMENSION_INDEX_INSERTED_VALUES";
+
+    WMS wms;
+
+    Catalog rawCatalog;
+
+    GeoServerDataDirectory dataDirectory;
+
+    Map<String, Domain> domains = new ConcurrentHashMap<String, Domain>();
+
+    long refreshInterval;
+
+    ScheduledExecutorService scheduler;
+
+    public DimensionDomainIndex(WMS wms, GeoServerDataDirectory dataDirectory) {
+        this(wms, (Catalog) GeoServerExtensions.bean("rawCatalog"), dataDirectory);
+    }
+
+    public DimensionDomainIndex(WMS wms, Catalog rawCatalog, GeoServerDataDirectory dataDirectory) {
+        this.wms = wms;
+        this.rawCatalog = rawCatalog != null ? rawCatalog : wms.getCatalog();
+        this.dataDirectory = dataDirectory;
+        wms.getCatalog().addListener(this);
+    }
+
+    /**
+     * The interval, in seconds, between two full refreshes of the known domains, zero or negative
+     * if the domains are never refreshed
+     */
+    public long getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    public synchronized void setRefreshInterval(long refreshInterval) {
+        this.refreshInterval = refreshInterval;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+        if (refreshInterval > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "DimensionDomainIndexRefresh");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            scheduler.scheduleWithFixedDelay(new Runnable() {
+
+                public void run() {
+                    refresh();
+                }
+            }, refreshInterval, refreshInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Returns the sorted distinct values of the specified dimension, {@link Date} objects for the
+     * time dimension, {@link Double} ones for the elevation dimension
+     *
+     * @param typeInfo The feature type, as seen by the current user
+     * @param dimensionName Either {@link ResourceInfo#TIME} or {@link ResourceInfo#ELEVATION}
+     * @param dimension The dimension configuration
+     * @return A sorted set of values the caller can modify
+     * @throws IOException
+     */
+    public TreeSet<Object> getValues(FeatureTypeInfo typeInfo, String dimensionName,
+            DimensionInfo dimension) throws IOException {
+        if (isReadRestricted(typeInfo)) {
+            // the shared domain might contain values this user cannot see
+            return compute(typeInfo, dimensionName, dimension).values;
+        }
+
+        String key = getKey(typeInfo, dimensionName);
+        Domain domain = domains.get(key);
+        if (domain == null || !domain.attribute.equals(dimension.getAttribute())) {
+            domain = load(key, dimension.getAttribute());
+            if (domain == null) {
+                FeatureTypeInfo rawInfo = rawCatalog.getFeatureType(typeInfo.getId());
+                if (rawInfo == null) {
+                    // not in the catalog (yet), cannot be indexed
+                    return compute(typeInfo, dimensionName, dimension).values;
+                }
+                domain = compute(rawInfo, dimensionName, dimension);
+                store(key, domain);
+            }
+            domains.put(key, domain);
+        }
+        return domain.copy();
+    }
+
+    /**
+     * Returns true if the feature type has been secured in a way that makes the user see only part
+     * of the data
+     */
+    boolean isReadRestricted(FeatureTypeInfo typeInfo) {
+        if (!(typeInfo instanceof SecuredFeatureTypeInfo)) {
+            return false;
+        }
+        WrapperPolicy policy = ((SecuredFeatureTypeInfo) typeInfo).getPolicy();
+        if (policy.getAccessLevel() != AccessLevel.READ_ONLY
+                && policy.getAccessLevel() != AccessLevel.READ_WRITE) {
+            // reading the data is going to fail, let the secured feature source report it
+            return true;
+        }
+        if (policy.getLimits() instanceof DataAccessLimits) {
+            Filter readFilter = ((DataAccessLimits) policy.getLimits()).getReadFilter();
+            if (readFilter != null && readFilter != Filter.INCLUDE) {
+                return true;
+            }
+        }
+        if (policy.getLimits() instanceof VectorAccessLimits) {
+            return ((VectorAccessLimits) policy.getLimits()).getReadAttributes() != null;
+        }
+        return false;
+    }
+
+    /**
+     * Computes again all the domains known to the index
+     */
+    public void refresh() {
+        for (String key : new ArrayList<String>(domains.keySet())) {
+            Domain domain = domains.get(key);
+            int idx = key.lastIndexOf('/');
+            FeatureTypeInfo typeInfo = rawCatalog.getFeatureType(key.substring(0, idx));
+            String dimensionName = key.substring(idx + 1);
+            DimensionInfo dimension = typeInfo == null ? null : typeInfo.getMetadata().get(
+                    dimensionName, DimensionInfo.class);
+            if (dimension == null || !dimension.isEnabled()) {
+                invalidate(key);
+                continue;
+            }
+            try {
+                Domain updated = compute(typeInfo, dimensionName, dimension);
+                if (domains.get(key) == domain) {
+                    store(key, updated);
+                    domains.put(key, updated);
+                }
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to refresh the " + dimensionName
+                        + " domain of " + typeInfo.getPrefixedName(), e);
+            }
+        }
+    }
+
+    /**
+     * Drops the domains of the specified feature type
+     */
+    public void invalidate(FeatureTypeInfo typeInfo) {
+        invalidate(getKey(typeInfo, ResourceInfo.TIME));
+        invalidate(getKey(typeInfo, ResourceInfo.ELEVATION));
+    }
+
+    void invalidate(String key) {
+        domains.remove(key);
+        File file = getFile(key, false);
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Drops all the domains, in memory and on disk
+     */
+    public void clear() {
+        domains.clear();
+        File dir = getDirectory(false);
+        File[] files = dir == null ? null : dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    String getKey(FeatureTypeInfo typeInfo, String dimensionName) {
+        return typeInfo.getId() + "/" + dimensionName;
+    }
+
+    Domain compute(FeatureTypeInfo typeInfo, String dimensionName, DimensionInfo dimension)
+            throws IOException {
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Computing the " + dimensionName + " domain of "
+                    + typeInfo.getPrefixedName());
+        }
+        FeatureCollection collection = wms.getDimensionCollection(typeInfo, dimension);
+        UniqueVisitor visitor = new UniqueVisitor(dimension.getAttribute());
+        collection.accepts(visitor, null);
+
+        Domain domain = new Domain(dimension.getAttribute());
+        domain.addAll(visitor.getUnique());
+        return domain;
+    }
+
+    File getDirectory(boolean create) {
+        try {
+            if (create) {
+                return dataDirectory.findOrCreateDir(INDEX_DIRECTORY);
+            } else {
+                return dataDirectory.findFile(INDEX_DIRECTORY);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to locate the dimension index directory", e);
+            return null;
+        }
+    }
+
+    File getFile(String key, boolean create) {
+        File dir = getDirectory(create);
+        if (dir == null) {
+            return null;
+        }
+        return new File(dir, key.replaceAll("[^\\w\\-\\.]", "_") + ".txt");
+    }
+
+    /**
+     * Loads a persisted domain, the first line contains the attribute name, the following ones the
+     * values, as millisecond or double values
+     */
+    Domain load(String key, String attribute) {
+        File file = getFile(key, false);
+        if (file == null || !file.exists()) {
+            return null;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            if (!attribute.equals(reader.readLine())) {
+                return null;
+            }
+            boolean time = key.endsWith("/" + ResourceInfo.TIME);
+            Domain domain = new Domain(attribute);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() > 0) {
+                    domain.values.add(time ? new Date(Long.parseLong(line)) : Double
+                            .valueOf(line));
+                }
+            }
+            return domain;
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to load the dimension domain from " + file, e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+
+    void store(String key, Domain domain) {
+        File file = getFile(key, true);
+        if (file == null) {
+            return;
+        }
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"));
+            writer.write(domain.attribute);
+            writer.write('\n');
+            for (Object value : domain.copy()) {
+                writeValue(writer, value);
+            }
+            writer.close();
+            writer = null;
+            if (!tmp.renameTo(file)) {
+                // some platforms do not allow renaming over an existing file
+                file.delete();
+                tmp.renameTo(file);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to store the dimension domain in " + file, e);
+        } finally {
+            IOUtils.closeQuietly(writer);
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Appends the new values to the persisted domain
+     */
+    void append(String key, Collection<Object> values) {
+        File file = getFile(key, false);
+        if (file == null || !file.exists()) {
+            return;
+        }
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true),
+                    "UTF-8"));
+            for (Object value : values) {
+                writeValue(writer, value);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to update the dimension domain in " + file, e);
+            invalidate(key);
+        } finally {
+            IOUtils.closeQuietly(writer);
+        }
+    }
+
+    void writeValue(Writer writer, Object value) throws IOException {
+        if (value instanceof Date) {
+            writer.write(String.valueOf(((Date) value).getTime()));
+        } else {
+            writer.write(String.valueOf(value));
+        }
+        writer.write('\n');
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // Transaction listening
+    // ----------------------------------------------------------------------------------------
+
+    public TransactionType beforeTransaction(TransactionType request) throws WFSException {
+        return request;
+    }
+
+    public void beforeCommit(TransactionType request) throws WFSException {
+        // nothing to do
+    }
+
+    public int getPriority() {
+        return 0;
+    }
+
+    /**
+     * Collects the changes, they are applied to the domains only once the transaction is committed
+     */
+    @SuppressWarnings("unchecked")
+    public void dataStoreChange(TransactionEvent event) throws WFSException {
+        try {
+            TransactionEventType type = event.getType();
+            if (type == TransactionEventType.POST_INSERT || type == TransactionEventType.PRE_UPDATE) {
+                return;
+            }
+            FeatureTypeInfo typeInfo = getFeatureType(event.getLayerName());
+            if (typeInfo == null) {
+                return;
+            }
+
+            Map<Object, Object> properties = event.getRequest().getExtendedProperties();
+            Set<String> dirty = (Set<String>) properties.get(DIRTY_DOMAINS);
+            if (dirty == null) {
+                dirty = new HashSet<String>();
+                properties.put(DIRTY_DOMAINS, dirty);
+            }
+            Map<String, Domain> inserted = (Map<String, Domain>) properties.get(INSERTED_VALUES);
+            if (inserted == null) {
+                inserted = new HashMap<String, Domain>();
+                properties.put(INSERTED_VALUES, inserted);
+            }
+
+            for (String dimensionName : new String[] { ResourceInfo.TIME, ResourceInfo.ELEVATION }) {
+                String key = getKey(typeInfo, dimensionName);
+                Domain domain = domains.get(key);
+                if (domain == null) {
+                    // not indexed yet, nothing to maintain
+                    continue;
+                }
+
+                if (type == TransactionEventType.PRE_INSERT) {
+                    Domain values = inserted.get(key);
+                    if (values == null) {
+                        values = new Domain(domain.attribute);
+                        inserted.put(key, values);
+                    }
+                    SimpleFeatureIterator fi = event.getAffectedFeatures().features();
+                    try {
+                        while (fi.hasNext()) {
+                            SimpleFeature feature = fi.next();
+                            values.add(feature.getAttribute(domain.attribute));
+                        }
+                    } finally {
+                        fi.close();
+                    }
+                } else if (type == TransactionEventType.POST_UPDATE) {
+                    if (updates(event.getSource(), domain.attribute)) {
+                        dirty.add(key);
+                    }
+                } else if (type == TransactionEventType.PRE_DELETE) {
+                    dirty.add(key);
+                }
+            }
+        } catch (RuntimeException e) {
+            // never make the transaction fail due to the index, it will just be less accurate
+            LOGGER.log(Level.WARNING, "Failed to track the dimension changes in the transaction",
+                    e);
+        }
+    }
+
+    boolean updates(Object source, String attribute) {
+        if (!(source instanceof UpdateElementType)) {
+            return true;
+        }
+        for (Object o : ((UpdateElementType) source).getProperty()) {
+            QName name = ((PropertyType) o).getName();
+            if (name == null || attribute.equals(name.getLocalPart())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void afterTransaction(TransactionType request, TransactionResponseType result,
+            boolean committed) {
+        if (!committed) {
+            return;
+        }
+        Map<Object, Object> properties = request.getExtendedProperties();
+        Set<String> dirty = (Set<String>) properties.get(DIRTY_DOMAINS);
+        if (dirty != null) {
+            for (String key : dirty) {
+                invalidate(key);
+            }
+        }
+        Map<String, Domain> inserted = (Map<String, Domain>) properties.get(INSERTED_VALUES);
+        if (inserted != null) {
+            for (Map.Entry<String, Domain> entry : inserted.entrySet()) {
+                String key = entry.getKey();
+                Domain domain = domains.get(key);
+                if (domain == null || (dirty != null && dirty.contains(key))) {
+                    continue;
+                }
+                List<Object> added = domain.merge(entry.getValue());
+                if (!added.isEmpty()) {
+                    append(key, added);
+                }
+            }
+        }
+    }
+
+    FeatureTypeInfo getFeatureType(QName name) {
+        if (name == null) {
+            return null;
+        }
+        Catalog catalog = rawCatalog;
+        NamespaceInfo ns = name.getNamespaceURI() == null ? null : catalog
+                .getNamespaceByURI(name.getNamespaceURI());
+        if (ns != null) {
+            return catalog.getFeatureTypeByName(ns, name.getLocalPart());
+        }
+        return catalog.getFeatureTypeByName(name.getLocalPart());
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // Catalog listening
+    // ----------------------------------------------------------------------------------------
+
+    public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+        // nothing to do
+    }
+
+    public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+        if (event.getSource() instanceof FeatureTypeInfo) {
+            invalidate((FeatureTypeInfo) event.getSource());
+        }
+    }
+
+    public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+        // we react on post modify
+    }
+
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+        // the dimension configuration, or the data the feature type points to, might have changed
+        if (event.getSource() instanceof FeatureTypeInfo) {
+            invalidate((FeatureTypeInfo) event.getSource());
+        }
+    }
+
+    public void reloaded() {
+        domains.clear();
+    }
+
+    // ----------------------------------------------------------------------------------------
+    // Lifecycle
+    // ----------------------------------------------------------------------------------------
+
+    public void onReset() {
+        // reset is a request to drop all caches
+        clear();
+    }
+
+    public void onDispose() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        domains.clear();
+    }
+
+    public void onReload() {
+        domains.clear();
+    }
+
+    /**
+     * The sorted distinct values of a dimension
+     */
+    static class Domain {
+        String attribute;
+
+        TreeSet<Object> values = new TreeSet<Object>();
+
+        Domain(String attribute) {
+            this.attribute = attribute;
+        }
+
+        /**
+         * Adds a raw attribute value, dates are normalized to {@link Date}, numbers to
+         * {@link Double}, null values are skipped
+         */
+        void add(Object value) {
+            if (value instanceof Date) {
+                values.add(new Date(((Date) value).getTime()));
+            } else if (value instanceof Number) {
+                values.add(((Number) value).doubleValue());
+            }
+        }
+
+        void addAll(Collection<?> values) {
+            for (Object value : values) {
+                add(value);
+            }
+        }
+
+        /**
+         * Adds the values of the other domain, returns the ones that were not already there
+         */
+        synchronized List<Object> merge(Domain other) {
+            List<Object> added = new ArrayList<Object>();
+            for (Object value : other.values) {
+                if (values.add(value)) {
+                    added.add(value);
+                }
+            }
+            return added;
+        }
+
+        synchronized TreeSet<Object> copy() {
+            return new TreeSet<Object>(values);
+        }
+    }
+}
@@ -4,9 +4,13 @@
  */
 package org.geoserver.wms;
 
+import java.io.IOException;
+
 import org.geoserver.ows.Response;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wms.legendgraphic.BufferedImageLegendGraphic;
+import org.geoserver.wms.legendgraphic.EncodedLegendGraphic;
+import org.geoserver.wms.legendgraphic.LegendGraphicCache;
 import org.geotools.filter.function.EnvFunction;
 
 /**
@@ -18,10 +22,25 @@ public class GetLegendGraphic {
 
     private final WMS wms;
 
+    private LegendGraphicCache legendCache;
+
     public GetLegendGraphic(final WMS wms) {
         this.wms = wms;
     }
 
+    /**
+     * Sets the cache of encoded legends, if null (the default) every legend is built from scratch
+     * 
+     * @param legendCache
+     */
+    public void setLegendCache(LegendGraphicCache legendCache) {
+        this.legendCache = legendCache;
+    }
+
+    public LegendGraphicCache getLegendCache() {
+        return legendCache;
+    }
+
     /**
      * Produces a representation of the map's legend graphic given by the {@code request} by means
      * of a {@link GetLegendGraphicOutputFormat}.
@@ -45,8 +64,25 @@ public class GetLegendGraphic {
             throw new ServiceException("There is no support for creating legends in "
                     + outputFormat + " format", "InvalidFormat");
         }
-        Object legend = format.produceLegendGraphic(request);
-        return legend;
+
+        String key = legendCache != null ? legendCache.getKey(request) : null;
+        if (key == null) {
+            return format.produceLegendGraphic(request);
+        }
+
+        EncodedLegendGraphic encoded = legendCache.get(key);
+        if (encoded == null) {
+            Object legend = format.produceLegendGraphic(request);
+            try {
+                encoded = legendCache.put(key, legend, request);
+            } catch (IOException e) {
+                throw new ServiceException("Failed to encode the legend graphic", e);
+            }
+            if (encoded == null) {
+                return legend;
+            }
+        }
+        return encoded;
     }
 
 }
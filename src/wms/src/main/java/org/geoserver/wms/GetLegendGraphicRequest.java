@@ -8,6 +8,9 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.StyleInfo;
+
 import org.geotools.styling.Rule;
 import org.geotools.styling.Style;
 import org.opengis.feature.type.FeatureType;
@@ -321,4 +324,32 @@ public class GetLegendGraphicRequest extends WMSRequest {
     public void setEnv(Map enviroment) {
         this.env = enviroment;
     }
+
+    /**
+     * The catalog layer the legend is requested for, or null if the LAYER parameter was not
+     * provided
+     */
+    private LayerInfo layerInfo;
+
+    /**
+     * The catalog style the legend is built from, or null if it comes from the SLD or SLD_BODY
+     * parameters
+     */
+    private StyleInfo styleInfo;
+
+    public LayerInfo getLayerInfo() {
+        return layerInfo;
+    }
+
+    public void setLayerInfo(LayerInfo layerInfo) {
+        this.layerInfo = layerInfo;
+    }
+
+    public StyleInfo getStyleInfo() {
+        return styleInfo;
+    }
+
+    public void setStyleInfo(StyleInfo styleInfo) {
+        this.styleInfo = styleInfo;
+    }
 }
@@ -102,6 +102,14 @@ public class WMS implements ApplicationContextAware {
 
     public static final int PNG_COMPRESSION_DEFAULT = 25;
 
+    public static final String PNG_PARALLEL_ENCODING = "pngParallelEncoding";
+
+    public static final Boolean PNG_PARALLEL_ENCODING_DEFAULT = Boolean.FALSE;
+
+    public static final String STRIPE_RENDERING_MIN_PIXELS = "stripeRenderingMinPixels";
+
+    public static final Integer STRIPE_RENDERING_MIN_PIXELS_DEFAULT = 0;
+
     public static final String MAX_ALLOWED_FRAMES = "maxAllowedFrames";
 
     public static final int MAX_ALLOWED_FRAMES_DEFAULT = Integer.MAX_VALUE;
@@ -459,6 +467,23 @@ public class WMS implements ApplicationContextAware {
                 PNG_COMPRESSION_DEFAULT);
     }
 
+    /**
+     * Returns true if large PNG images should be filtered and compressed using multiple threads
+     */
+    public boolean isPngParallelEncoding() {
+        return getMetadataValue(PNG_PARALLEL_ENCODING, PNG_PARALLEL_ENCODING_DEFAULT,
+                Boolean.class);
+    }
+
+    /**
+     * Returns the size, in pixels, above which maps get rendered in stripes by multiple threads, a
+     * value of zero or less (the default) disables striped rendering
+     */
+    public int getStripeRenderingMinPixels() {
+        return getMetadataValue(STRIPE_RENDERING_MIN_PIXELS, STRIPE_RENDERING_MIN_PIXELS_DEFAULT,
+                Integer.class);
+    }
+
     public int getJpegCompression() {
         WMSInfo serviceInfo = getServiceInfo();
         return getMetadataPercentage(serviceInfo.getMetadata(), JPEG_COMPRESSION,
@@ -861,6 +886,25 @@ public class WMS implements ApplicationContextAware {
                     + " does not have time support enabled");
         }
 
+        DimensionDomainIndex index = getDimensionDomainIndex();
+        if (index != null) {
+            TreeSet<Object> values = index.getValues(typeInfo, ResourceInfo.TIME, time);
+            if (values.isEmpty()) {
+                return time.getPresentation() == DimensionPresentation.LIST ? null
+                        : new TreeSet<Date>();
+            }
+            TreeSet<Date> result = new TreeSet<Date>();
+            if (time.getPresentation() == DimensionPresentation.LIST) {
+                for (Object value : values) {
+                    result.add((Date) value);
+                }
+            } else {
+                result.add((Date) values.first());
+                result.add((Date) values.last());
+            }
+            return result;
+        }
+
         FeatureCollection collection = getDimensionCollection(typeInfo, time);
 
         TreeSet<Date> result = new TreeSet<Date>();
@@ -910,12 +954,31 @@ public class WMS implements ApplicationContextAware {
                     + " does not have elevation support enabled");
         }
 
+        boolean list = elevation.getPresentation() == DimensionPresentation.LIST
+                || (elevation.getPresentation() == DimensionPresentation.DISCRETE_INTERVAL && elevation
+                        .getResolution() == null);
+        DimensionDomainIndex index = getDimensionDomainIndex();
+        if (index != null) {
+            TreeSet<Object> values = index.getValues(typeInfo, ResourceInfo.ELEVATION, elevation);
+            if (values.isEmpty()) {
+                return list ? null : new TreeSet<Double>();
+            }
+            TreeSet<Double> result = new TreeSet<Double>();
+            if (list) {
+                for (Object value : values) {
+                    result.add((Double) value);
+                }
+            } else {
+                result.add((Double) values.first());
+                result.add((Double) values.last());
+            }
+            return result;
+        }
+
         FeatureCollection collection = getDimensionCollection(typeInfo, elevation);
 
         TreeSet<Double> result = new TreeSet<Double>();
-        if (elevation.getPresentation() == DimensionPresentation.LIST
-                || (elevation.getPresentation() == DimensionPresentation.DISCRETE_INTERVAL && elevation
-                        .getResolution() == null)) {
+        if (list) {
             final UniqueVisitor visitor = new UniqueVisitor(elevation.getAttribute());
             collection.accepts(visitor, null);
 
@@ -960,6 +1023,11 @@ public class WMS implements ApplicationContextAware {
         }
 
         // current is the max time we have
+        DimensionDomainIndex index = getDimensionDomainIndex();
+        if (index != null) {
+            TreeSet<Object> values = index.getValues(typeInfo, ResourceInfo.TIME, time);
+            return values.isEmpty() ? null : (Date) values.last();
+        }
         FeatureCollection collection = getDimensionCollection(typeInfo, time);
         final MaxVisitor max = new MaxVisitor(time.getAttribute());
         collection.accepts(max, null);
@@ -997,6 +1065,11 @@ public class WMS implements ApplicationContextAware {
                     + " does not have time support enabled");
         }
 
+        DimensionDomainIndex index = getDimensionDomainIndex();
+        if (index != null) {
+            TreeSet<Object> values = index.getValues(typeInfo, ResourceInfo.ELEVATION, elevation);
+            return values.isEmpty() ? null : (Double) values.first();
+        }
         FeatureCollection collection = getDimensionCollection(typeInfo, elevation);
         final MinVisitor min = new MinVisitor(elevation.getAttribute());
         collection.accepts(min, null);
@@ -1027,6 +1100,16 @@ public class WMS implements ApplicationContextAware {
         return dimensions.getMinElevation();
     }
 
+    /**
+     * Returns the index of the vector dimension domains, or null if not available
+     */
+    DimensionDomainIndex getDimensionDomainIndex() {
+        if (applicationContext == null) {
+            return null;
+        }
+        return GeoServerExtensions.bean(DimensionDomainIndex.class, applicationContext);
+    }
+
     /**
      * Returns the collection of all values of the dimension attribute, eventually sorted if the
      * native capabilities allow for it
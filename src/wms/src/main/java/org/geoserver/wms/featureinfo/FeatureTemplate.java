@@ -16,7 +16,7 @@ import java.util.Locale;
 import java.util.Map;
 
 import org.geoserver.template.FeatureWrapper;
-import org.geoserver.template.GeoServerTemplateLoader;
+import org.geoserver.template.TemplateRegistry;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 
@@ -273,7 +273,8 @@ public class FeatureTemplate {
 
     /**
      * Returns the template for the specified feature type. Looking up templates is pretty
-     * expensive, so we cache templates by feture type and template.
+     * expensive, so we cache templates by feture type and template, on top of the shared
+     * {@link TemplateRegistry} cache.
      *
      */
     private Template lookupTemplate(SimpleFeatureType featureType, String template, Class lookup) throws IOException {
@@ -285,17 +286,9 @@ public class FeatureTemplate {
         if(t != null)
             return t;
         
-        // otherwise, build a loader and do the lookup
-        GeoServerTemplateLoader templateLoader = 
-            new GeoServerTemplateLoader(lookup!=null?lookup:getClass());
-        templateLoader.setFeatureType(featureType);
-
-        //Configuration is not thread safe
-        synchronized (templateConfig) {
-            templateConfig.setTemplateLoader(templateLoader);
-            t = templateConfig.getTemplate(template);
-            t.setEncoding("UTF-8");
-        }
+        // otherwise, do the lookup in the registry
+        t = TemplateRegistry.get().getTemplate(templateConfig, lookup != null ? lookup : getClass(),
+                featureType, template, "UTF-8");
         templateCache.put(key, t);
         return t;
     }
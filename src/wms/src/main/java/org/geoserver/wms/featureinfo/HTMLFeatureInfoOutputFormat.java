@@ -16,7 +16,7 @@ import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.template.DirectTemplateFeatureCollectionFactory;
 import org.geoserver.template.FeatureWrapper;
-import org.geoserver.template.GeoServerTemplateLoader;
+import org.geoserver.template.TemplateRegistry;
 import org.geoserver.wms.GetFeatureInfoRequest;
 import org.geoserver.wms.WMS;
 import org.geotools.data.simple.SimpleFeatureCollection;
@@ -56,8 +56,6 @@ public class HTMLFeatureInfoOutputFormat extends GetFeatureInfoOutputFormat {
         templateConfig.setObjectWrapper(new FeatureWrapper(tfcFactory));
     }
 
-    GeoServerTemplateLoader templateLoader;
-
     private WMS wms;
 
     public HTMLFeatureInfoOutputFormat(final WMS wms) {
@@ -163,26 +161,16 @@ public class HTMLFeatureInfoOutputFormat extends GetFeatureInfoOutputFormat {
      */
     Template getTemplate(Name name, String templateFileName, Charset charset)
             throws IOException {
-        // setup template subsystem
-        if (templateLoader == null) {
-            templateLoader = new GeoServerTemplateLoader(getClass());
-        }
-
+        ResourceInfo ri = null;
         if (name != null) {
-            ResourceInfo ri = wms.getResourceInfo(name);
-            if (ri != null) {
-                templateLoader.setResource(ri);
-            } else {
+            ri = wms.getResourceInfo(name);
+            if (ri == null) {
                 throw new IllegalArgumentException("Can't find neither a FeatureType nor "
                         + "a CoverageInfo or WMSLayerInfo named " + name);
             }                        
         }
 
-        synchronized (templateConfig) {
-            templateConfig.setTemplateLoader(templateLoader);
-            Template t = templateConfig.getTemplate(templateFileName);
-            t.setEncoding(charset.name());
-            return t;
-        }
+        return TemplateRegistry.get().getTemplate(templateConfig, getClass(), ri,
+                templateFileName, charset.name());
     }
 }
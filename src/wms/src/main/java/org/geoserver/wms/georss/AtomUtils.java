@@ -18,6 +18,7 @@ import java.util.TimeZone;
 
 import org.geoserver.ows.URLMangler.URLType;
 import org.geoserver.ows.util.ResponseUtils;
+import org.geoserver.template.TemplateRegistry;
 import org.geoserver.wms.WMS;
 import org.geoserver.wms.WMSMapContent;
 import org.geoserver.wms.WMSRequests;
@@ -45,12 +46,6 @@ public final class AtomUtils {
      */
     private static NumberFormat doubleDigit = new DecimalFormat("00");
 
-    /**
-     * A FeatureTemplate used for formatting feature info.
-     * @TODO: Are these things threadsafe?
-     */
-    private static FeatureTemplate featureTemplate = new FeatureTemplate();
-
     /**
      * This is a utility class so don't allow instantiation.
      */
@@ -103,17 +98,25 @@ public final class AtomUtils {
         return getEntryURL(wms, feature, context);
     }
 
+    /**
+     * Returns the title of the feature, as produced by its title.ftl template. The compiled
+     * templates are shared through the {@link TemplateRegistry}, the {@link FeatureTemplate}
+     * running them is not thread safe, so a new one is used for each call.
+     */
     public static String getFeatureTitle(SimpleFeature feature){
         try{
-            return featureTemplate.title(feature);
+            return new FeatureTemplate().title(feature);
         } catch (IOException ioe){
             return feature.getID();
         }
     }
 
+    /**
+     * Returns the description of the feature, as produced by its description.ftl template
+     */
     public static String getFeatureDescription(SimpleFeature feature){
         try{
-            return featureTemplate.description(feature);
+            return new FeatureTemplate().description(feature);
         } catch (IOException ioe) {
             return feature.getID();
         }
@@ -9,6 +9,7 @@ import java.awt.image.DataBuffer;
 import java.awt.image.IndexColorModel;
 import java.io.File;
 import java.io.FilenameFilter;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.logging.Logger;
 
@@ -17,10 +18,14 @@ import javax.imageio.ImageReader;
 import javax.imageio.ImageTypeSpecifier;
 import javax.imageio.stream.ImageInputStream;
 
+import org.geoserver.wms.map.quantize.SharedColorIndexer;
 import org.geotools.image.palette.InverseColorMapOp;
-import org.geotools.util.SoftValueHashMap;
 import org.vfny.geoserver.global.GeoserverDataDirectory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
 /**
  * Allows access to palettes (implemented as {@link IndexColorModel} classes)
  * 
@@ -43,8 +48,55 @@ public class PaletteManager {
      */
     public static final String SAFE = "SAFE";
     public static final IndexColorModel safePalette = buildDefaultPalette();
-    static SoftValueHashMap<String, PaletteCacheEntry> paletteCache = new SoftValueHashMap<String, PaletteCacheEntry>();
-    static SoftValueHashMap<IndexColorModel, InverseColorMapOp> opCache = new SoftValueHashMap<IndexColorModel, InverseColorMapOp>();
+
+    /**
+     * The memory budget, in bytes, for the inverse color maps and the shared color indexers
+     * built out of the palettes, can be set with the "org.geoserver.wms.paletteCacheSize"
+     * system variable. The budget is split evenly among the two.
+     */
+    public static final long CACHE_SIZE = Long.getLong("org.geoserver.wms.paletteCacheSize",
+            16 * 1024 * 1024);
+
+    /**
+     * The number of colors cached by each shared color indexer
+     */
+    static final int INDEXER_COLORS = 4096;
+
+    /**
+     * Estimated size of an inverse color map, a 5 bits per channel lookup table plus the palette
+     * itself
+     */
+    static final int INVERSE_MAP_WEIGHT = (1 << 15) + 4 * 256;
+
+    /**
+     * Named palettes, kept by strong references (they are small, and reading them again from
+     * the data directory would hit the disk)
+     */
+    static Cache<String, PaletteCacheEntry> paletteCache = CacheBuilder.newBuilder()
+            .maximumSize(256).build();
+
+    /**
+     * Inverse color maps, used by the bitmask paletting, by palette contents. Building one takes
+     * way longer than indexing a map with it, so they are kept by strong references within
+     * the {@link #CACHE_SIZE} budget instead of being let go at the first GC pressure.
+     */
+    static Cache<PaletteKey, InverseColorMapOp> opCache = CacheBuilder.newBuilder()
+            .maximumWeight(CACHE_SIZE / 2).weigher(new Weigher<PaletteKey, InverseColorMapOp>() {
+                public int weigh(PaletteKey key, InverseColorMapOp value) {
+                    return INVERSE_MAP_WEIGHT;
+                }
+            }).build();
+
+    /**
+     * Color indexers used by the translucent paletting, by palette contents, shared among
+     * requests so that the colors of hot layers are resolved only once
+     */
+    static Cache<PaletteKey, SharedColorIndexer> indexerCache = CacheBuilder.newBuilder()
+            .maximumWeight(CACHE_SIZE / 2).weigher(new Weigher<PaletteKey, SharedColorIndexer>() {
+                public int weigh(PaletteKey key, SharedColorIndexer value) {
+                    return value.getSize() * 8 + 4 * 256;
+                }
+            }).build();
 
     /**
      * TODO: we should probably provide the data directory as a constructor
@@ -68,11 +120,10 @@ public class PaletteManager {
 		}
 
 		// check for cached one, making sure it's not stale
-		final PaletteCacheEntry entry = (PaletteCacheEntry) paletteCache
-				.get(name);
+		final PaletteCacheEntry entry = paletteCache.getIfPresent(name);
 		if (entry != null) {
 			if (entry.isStale()) {
-				paletteCache.remove(name);
+				paletteCache.invalidate(name);
 			} else {
 				return entry.icm;
 			}
@@ -142,17 +193,34 @@ public class PaletteManager {
 		return null;
 	}
 	
-	public static InverseColorMapOp getInverseColorMapOp(IndexColorModel icm) {
-	    // check for cached one, making sure it's not stale
-        InverseColorMapOp op = (InverseColorMapOp) opCache.get(icm);
-        if (op != null) {
-            return op;
-        } else {
+    /**
+     * Returns the inverse color map for the specified palette, shared among all the requests
+     * using a palette with the same colors
+     */
+    public static InverseColorMapOp getInverseColorMapOp(IndexColorModel icm) {
+        PaletteKey key = new PaletteKey(icm);
+        InverseColorMapOp op = opCache.getIfPresent(key);
+        if (op == null) {
+            // concurrent misses might build it twice, the last one wins
             op = new InverseColorMapOp(icm);
-            opCache.put(icm,  op);
-            return op;
+            opCache.put(key, op);
         }
-	}
+        return op;
+    }
+
+    /**
+     * Returns a thread safe color indexer for the specified palette, shared among all the
+     * requests using a palette with the same colors
+     */
+    public static SharedColorIndexer getColorIndexer(IndexColorModel icm) {
+        PaletteKey key = new PaletteKey(icm);
+        SharedColorIndexer indexer = indexerCache.getIfPresent(key);
+        if (indexer == null) {
+            indexer = new SharedColorIndexer(icm, INDEXER_COLORS);
+            indexerCache.put(key, indexer);
+        }
+        return indexer;
+    }
 
 	/**
 	 * Builds the internet safe paletteInverter
@@ -221,4 +289,38 @@ public class PaletteManager {
 			return !file.exists() || (file.lastModified() != lastModified);
 		}
 	}
+
+    /**
+     * Identifies a palette by its colors, {@link IndexColorModel} does not compare them in
+     * its equals method
+     */
+    static class PaletteKey {
+        int[] rgbs;
+
+        int transparentPixel;
+
+        int hashCode;
+
+        PaletteKey(IndexColorModel icm) {
+            rgbs = new int[icm.getMapSize()];
+            icm.getRGBs(rgbs);
+            transparentPixel = icm.getTransparentPixel();
+            hashCode = 31 * Arrays.hashCode(rgbs) + transparentPixel;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof PaletteKey))
+                return false;
+            PaletteKey other = (PaletteKey) obj;
+            return transparentPixel == other.transparentPixel && Arrays.equals(rgbs, other.rgbs);
+        }
+    }
 }
@@ -0,0 +1,51 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.legendgraphic;
+
+/**
+ * A legend graphic already encoded in its output format, as held by the {@link LegendGraphicCache}
+ */
+public class EncodedLegendGraphic {
+
+    private final byte[] data;
+
+    private final String mimeType;
+
+    private final String etag;
+
+    private final long lastModified;
+
+    public EncodedLegendGraphic(byte[] data, String mimeType, String etag, long lastModified) {
+        this.data = data;
+        this.mimeType = mimeType;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * The encoded legend, must not be modified
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * The entity tag identifying the legend contents, quotes included
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * The time the legend was encoded, in milliseconds since the epoch
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+}
@@ -0,0 +1,92 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.legendgraphic;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.geoserver.ows.Dispatcher;
+import org.geoserver.ows.Request;
+import org.geoserver.ows.Response;
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.ServiceException;
+import org.springframework.util.Assert;
+
+/**
+ * OWS {@link Response} writing out an {@link EncodedLegendGraphic} as is, along with its ETag and
+ * Last-Modified headers. Clients that already have the same legend get a 304 with no body.
+ */
+public class EncodedLegendGraphicResponse extends Response {
+
+    public EncodedLegendGraphicResponse() {
+        super(EncodedLegendGraphic.class);
+    }
+
+    @Override
+    public String getMimeType(Object value, Operation operation) throws ServiceException {
+        Assert.isInstanceOf(EncodedLegendGraphic.class, value);
+        return ((EncodedLegendGraphic) value).getMimeType();
+    }
+
+    @Override
+    public String[][] getHeaders(Object value, Operation operation) throws ServiceException {
+        Assert.isInstanceOf(EncodedLegendGraphic.class, value);
+        EncodedLegendGraphic legend = (EncodedLegendGraphic) value;
+        SimpleDateFormat format = new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss", Locale.ENGLISH);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        String lastModified = format.format(new Date(legend.getLastModified())) + " GMT";
+        return new String[][] { { "ETag", legend.getEtag() }, { "Last-Modified", lastModified } };
+    }
+
+    @Override
+    public void write(Object value, OutputStream output, Operation operation) throws IOException,
+            ServiceException {
+        Assert.isInstanceOf(EncodedLegendGraphic.class, value);
+        EncodedLegendGraphic legend = (EncodedLegendGraphic) value;
+        Request request = Dispatcher.REQUEST.get();
+        if (request != null && request.getHttpRequest() != null
+                && request.getHttpResponse() != null
+                && isNotModified(request.getHttpRequest(), legend)) {
+            request.getHttpResponse().setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        output.write(legend.getData());
+    }
+
+    /**
+     * Returns true if the client already has the same legend, according to the If-None-Match
+     * header or, failing that, to the If-Modified-Since one
+     */
+    boolean isNotModified(HttpServletRequest request, EncodedLegendGraphic legend) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            for (String etag : ifNoneMatch.split(",")) {
+                etag = etag.trim();
+                if (etag.equals(legend.getEtag()) || etag.equals("*")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException e) {
+            // unparseable date, ignore it
+            return false;
+        }
+        // the header has a resolution of seconds
+        return ifModifiedSince >= 0 && legend.getLastModified() / 1000 <= ifModifiedSince / 1000;
+    }
+
+}
@@ -19,6 +19,7 @@ import java.util.logging.Logger;
 import org.geoserver.catalog.CoverageInfo;
 import org.geoserver.catalog.LayerInfo;
 import org.geoserver.catalog.LayerInfo.Type;
+import org.geoserver.catalog.StyleInfo;
 import org.geoserver.ows.KvpRequestReader;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wms.GetLegendGraphicRequest;
@@ -122,6 +123,7 @@ public class GetLegendGraphicKvpReader extends KvpRequestReader {
             }
 
             mli = new MapLayerInfo(layerInfo);
+            request.setLayerInfo(layerInfo);
 
             try {
                 if (layerInfo.getType() == Type.VECTOR) {
@@ -251,9 +253,12 @@ public class GetLegendGraphicKvpReader extends KvpRequestReader {
                 LOGGER.finer("taking style from STYLE parameter");
             }
 
-            sldStyle = wms.getStyleByName(styleName);
+            StyleInfo styleInfo = wms.getCatalog().getStyleByName(styleName);
+            sldStyle = styleInfo == null ? null : styleInfo.getStyle();
+            req.setStyleInfo(styleInfo);
         } else {
             sldStyle = layer.getDefaultStyle();
+            req.setStyleInfo(layer.getLayerInfo().getDefaultStyle());
         }
 
         req.setStyle(sldStyle);
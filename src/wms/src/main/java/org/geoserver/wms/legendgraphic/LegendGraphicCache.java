@@ -0,0 +1,301 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.legendgraphic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.ows.Dispatcher;
+import org.geoserver.ows.Request;
+import org.geoserver.ows.Response;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.Operation;
+import org.geoserver.wms.GetLegendGraphicRequest;
+import org.geotools.util.logging.Logging;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+/**
+ * A cache of encoded legend graphics, web clients tend to request the very same legend at every
+ * map refresh.
+ * <p>
+ * Only legends built from catalog styles are cached. The key is made of the layer, the style and
+ * its version, and all the request parameters affecting the output (size, format, transparency,
+ * scale, rule, legend options and environment variables). The style version is bumped, and the
+ * legends built out of it evicted, whenever the style is modified or removed. Changes to layers
+ * and resources flush the whole cache.
+ * </p>
+ * <p>
+ * The cache is bounded by the total size of the encoded legends.
+ * </p>
+ */
+public class LegendGraphicCache implements CatalogListener {
+
+    static final Logger LOGGER = Logging.getLogger(LegendGraphicCache.class);
+
+    static final long DEFAULT_MAX_SIZE = 16 * 1024 * 1024;
+
+    Cache<String, EncodedLegendGraphic> legends;
+
+    ConcurrentHashMap<String, AtomicLong> styleVersions = new ConcurrentHashMap<String, AtomicLong>();
+
+    AtomicLong hits = new AtomicLong();
+
+    AtomicLong misses = new AtomicLong();
+
+    public LegendGraphicCache(Catalog catalog) {
+        this(catalog, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param catalog The catalog to listen to for style changes
+     * @param maxSize The max total size of the cached legends, in bytes
+     */
+    public LegendGraphicCache(Catalog catalog, long maxSize) {
+        legends = CacheBuilder.newBuilder().maximumWeight(maxSize)
+                .weigher(new Weigher<String, EncodedLegendGraphic>() {
+
+                    public int weigh(String key, EncodedLegendGraphic value) {
+                        return key.length() * 2 + value.getData().length;
+                    }
+                }).build();
+        if (catalog != null) {
+            catalog.addListener(this);
+        }
+    }
+
+    /**
+     * Returns the cache key for the specified request, or null if the request output cannot be
+     * cached
+     *
+     * @param request
+     * @return
+     */
+    public String getKey(GetLegendGraphicRequest request) {
+        StyleInfo style = request.getStyleInfo();
+        if (style == null || style.getId() == null) {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(style.getId()).append('@').append(getStyleVersion(style.getId()));
+        sb.append('|');
+        LayerInfo layer = request.getLayerInfo();
+        if (layer != null) {
+            sb.append(layer.getId());
+        }
+        sb.append('|').append(request.getWidth()).append('x').append(request.getHeight());
+        sb.append('|').append(request.getFormat() == null ? null : request.getFormat()
+                .toLowerCase());
+        sb.append('|').append(request.isTransparent());
+        sb.append('|').append(request.getScale());
+        sb.append('|').append(request.getRule());
+        sb.append('|').append(request.getFeatureType());
+        sb.append('|').append(sorted(request.getLegendOptions()));
+        sb.append('|').append(sorted(request.getEnv()));
+
+        // the environment variables injected in the styles, see EnviromentInjectionCallback
+        Request owsRequest = Dispatcher.REQUEST.get();
+        if (owsRequest != null && owsRequest.getKvp() != null
+                && owsRequest.getKvp().get("env") instanceof Map) {
+            sb.append('|').append(sorted((Map) owsRequest.getKvp().get("env")));
+        }
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null && !(auth instanceof AnonymousAuthenticationToken)) {
+            sb.append('|').append(auth.getName());
+        }
+        return sb.toString();
+    }
+
+    String sorted(Map map) {
+        if (map == null || map.isEmpty()) {
+            return "";
+        }
+        TreeMap<String, Object> result = new TreeMap<String, Object>(String.CASE_INSENSITIVE_ORDER);
+        for (Object o : map.entrySet()) {
+            Map.Entry e = (Map.Entry) o;
+            result.put(String.valueOf(e.getKey()), e.getValue());
+        }
+        return result.toString();
+    }
+
+    long getStyleVersion(String styleId) {
+        AtomicLong version = styleVersions.get(styleId);
+        return version == null ? 0 : version.get();
+    }
+
+    /**
+     * Returns the cached legend for the specified key, or null if not found
+     *
+     * @param key
+     * @return
+     */
+    public EncodedLegendGraphic get(String key) {
+        EncodedLegendGraphic legend = legends.getIfPresent(key);
+        if (legend != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return legend;
+    }
+
+    /**
+     * Encodes the legend using the {@link Response} matching its type and the requested format,
+     * and caches the result
+     *
+     * @param key The cache key, as returned by {@link #getKey(GetLegendGraphicRequest)}
+     * @param legend The legend produced by the output format
+     * @param request The request
+     * @return The encoded legend, or null if no response is available for the legend
+     * @throws IOException
+     */
+    public EncodedLegendGraphic put(String key, Object legend, GetLegendGraphicRequest request)
+            throws IOException {
+        Operation operation = new Operation("GetLegendGraphic", null, null,
+                new Object[] { request });
+        Response response = findResponse(legend, request.getFormat(), operation);
+        if (response == null) {
+            return null;
+        }
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        response.write(legend, bos, operation);
+        byte[] data = bos.toByteArray();
+        EncodedLegendGraphic encoded = new EncodedLegendGraphic(data, response.getMimeType(
+                legend, operation), etag(data), System.currentTimeMillis());
+        legends.put(key, encoded);
+        return encoded;
+    }
+
+    Response findResponse(Object legend, String format, Operation operation) {
+        List<Response> responses = GeoServerExtensions.extensions(Response.class);
+        for (Response response : responses) {
+            if (response.getBinding().isInstance(legend) && response.canHandle(operation)) {
+                for (String of : response.getOutputFormats()) {
+                    if (of.equalsIgnoreCase(format)) {
+                        return response;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    String etag(byte[] data) {
+        try {
+            byte[] hash = MessageDigest.getInstance("MD5").digest(data);
+            StringBuilder sb = new StringBuilder(hash.length * 2 + 2);
+            sb.append('"');
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            sb.append('"');
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Evicts all the legends built from the specified style, and makes sure legends being built
+     * from the old version of the style won't be found either
+     *
+     * @param styleId
+     */
+    public void invalidateStyle(String styleId) {
+        AtomicLong version = styleVersions.get(styleId);
+        if (version == null) {
+            styleVersions.putIfAbsent(styleId, new AtomicLong());
+            version = styleVersions.get(styleId);
+        }
+        version.incrementAndGet();
+
+        String prefix = styleId + "@";
+        for (String key : legends.asMap().keySet()) {
+            if (key.startsWith(prefix)) {
+                legends.invalidate(key);
+            }
+        }
+    }
+
+    /**
+     * Drops all the cached legends
+     */
+    public void clear() {
+        legends.invalidateAll();
+    }
+
+    /**
+     * Number of legends served from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of legends that had to be built and encoded
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+        // nothing to do, new styles and layers cannot be in the cache
+    }
+
+    public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+        handleChange(event.getSource());
+    }
+
+    public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+        // wait for the post modify, the change is not visible yet
+    }
+
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+        handleChange(event.getSource());
+    }
+
+    void handleChange(Object source) {
+        if (source instanceof StyleInfo) {
+            String id = ((StyleInfo) source).getId();
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Evicting the cached legends of style " + id);
+            }
+            invalidateStyle(id);
+        } else if (source instanceof LayerInfo || source instanceof ResourceInfo) {
+            clear();
+        }
+    }
+
+    public void reloaded() {
+        clear();
+    }
+}
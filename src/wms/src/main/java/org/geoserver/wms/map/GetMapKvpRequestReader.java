@@ -109,6 +109,11 @@ public class GetMapKvpRequestReader extends KvpRequestReader implements HttpServ
      */
     private boolean laxStyleMatchAllowed = true;
 
+    /**
+     * Cache of parsed SLD_BODY and remote SLD documents, optional
+     */
+    private SLDCache sldCache;
+
     public GetMapKvpRequestReader(WMS wms) {
         super(GetMapRequest.class);
         this.wms = wms;
@@ -133,6 +138,14 @@ public class GetMapKvpRequestReader extends KvpRequestReader implements HttpServ
         this.filterFactory = filterFactory;
     }
 
+    public SLDCache getSldCache() {
+        return sldCache;
+    }
+
+    public void setSldCache(SLDCache sldCache) {
+        this.sldCache = sldCache;
+    }
+
     public boolean isParseStyle() {
         return parseStyles;
     }
@@ -252,8 +265,13 @@ public class GetMapKvpRequestReader extends KvpRequestReader implements HttpServ
                 }
             }
 
-            InputStream input = new ByteArrayInputStream(getMap.getSldBody().getBytes());
-            StyledLayerDescriptor sld = parseSld(getMap, input);
+            StyledLayerDescriptor sld;
+            if (sldCache != null) {
+                sld = sldCache.getBody(getMap.getSldBody(), getMap.getSldVersion());
+            } else {
+                InputStream input = new ByteArrayInputStream(getMap.getSldBody().getBytes());
+                sld = parseSld(getMap, input);
+            }
             processSld(getMap, requestedLayerInfos, sld, styleNameList);
 
             // set filter in, we'll check consistency later
@@ -286,15 +304,22 @@ public class GetMapKvpRequestReader extends KvpRequestReader implements HttpServ
                 }
             }
 
-            // JD: GEOS-420, Wrap the sldUrl in getINputStream method in order
-            // to do compression
-            InputStream input = Requests.getInputStream(sldUrl);
-
-            try {
-                StyledLayerDescriptor sld = parseSld(getMap, input);
+            if (sldCache != null && !getMap.getValidateSchema().booleanValue()) {
+                // the document was not just downloaded for validation, see if we can avoid
+                // downloading it at all
+                StyledLayerDescriptor sld = sldCache.getRemote(sldUrl, getMap.getSldVersion());
                 processSld(getMap, requestedLayerInfos, sld, styleNameList);
-            } finally {
-                input.close();
+            } else {
+                // JD: GEOS-420, Wrap the sldUrl in getINputStream method in order
+                // to do compression
+                InputStream input = Requests.getInputStream(sldUrl);
+    
+                try {
+                    StyledLayerDescriptor sld = parseSld(getMap, input);
+                    processSld(getMap, requestedLayerInfos, sld, styleNameList);
+                } finally {
+                    input.close();
+                }
             }
 
             // set filter in, we'll check consistency later
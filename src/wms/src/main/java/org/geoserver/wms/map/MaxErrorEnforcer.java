@@ -4,6 +4,10 @@
  */
 package org.geoserver.wms.map;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.geotools.renderer.GTRenderer;
 import org.geotools.renderer.RenderListener;
 import org.opengis.feature.simple.SimpleFeature;
@@ -15,13 +19,13 @@ import org.opengis.feature.simple.SimpleFeature;
  */
 public class MaxErrorEnforcer {
 
-    GTRenderer renderer;
+    List<GTRenderer> renderers = new CopyOnWriteArrayList<GTRenderer>();
 
     int maxErrors;
 
-    int errors;
+    AtomicInteger errors = new AtomicInteger();
     
-    Exception lastException;
+    volatile Exception lastException;
 
     /**
      * Builds a new max errors enforcer. If maxErrors is not positive the enforcer will do nothing
@@ -30,24 +34,37 @@ public class MaxErrorEnforcer {
      * @param maxErrors
      */
     public MaxErrorEnforcer(GTRenderer renderer, int maxErrors) {
-        this.renderer = renderer;
         this.maxErrors = maxErrors;
-        this.errors = 0;
+        add(renderer);
+    }
 
-        if (maxErrors > 0) {
-            renderer.addRenderListener(new RenderListener() {
+    /**
+     * Adds another renderer, sharing the same error count with the others, all of them being
+     * stopped once the threshold is exceeded. Used when a single map is painted by multiple
+     * renderers
+     */
+    public void add(GTRenderer renderer) {
+        if (maxErrors <= 0) {
+            return;
+        }
+        renderers.add(renderer);
+        renderer.addRenderListener(new RenderListener() {
 
-                public void featureRenderer(SimpleFeature feature) {
-                }
+            public void featureRenderer(SimpleFeature feature) {
+            }
 
-                public void errorOccurred(Exception e) {
-                    errors++;
-                    lastException = e;
-                    if (errors > MaxErrorEnforcer.this.maxErrors) {
-                        MaxErrorEnforcer.this.renderer.stopRendering();
+            public void errorOccurred(Exception e) {
+                lastException = e;
+                if (errors.incrementAndGet() > maxErrors) {
+                    for (GTRenderer renderer : renderers) {
+                        renderer.stopRendering();
                     }
                 }
-            });
+            }
+        });
+        if (exceedsMaxErrors()) {
+            // the threshold was already exceeded, don't allow the newcomer to go on
+            renderer.stopRendering();
         }
     }
 
@@ -56,7 +73,7 @@ public class MaxErrorEnforcer {
      * @return
      */
     public boolean exceedsMaxErrors() {
-        return maxErrors > 0 && errors > maxErrors;
+        return maxErrors > 0 && errors.get() > maxErrors;
     }
     
     /**
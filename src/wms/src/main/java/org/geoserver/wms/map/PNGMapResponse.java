@@ -108,6 +108,16 @@ public class PNGMapResponse extends RenderedImageMapResponse {
         // check to see if we have to see a translucent or bitmask quantizer
         image = applyPalette(image, mapContent, "image/png8", true);
 
+        if (wms.isPngParallelEncoding() && ParallelPNGEncoder.isSupported(image)) {
+            int level = Math.round(9 * wms.getPngCompression() / 100f);
+            new ParallelPNGEncoder(level).encode(image, outStream);
+            RasterCleaner.addImage(image);
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Writing png image with the parallel encoder ... done!");
+            }
+            return;
+        }
+
         Boolean PNGNativeAcc = wms.getPNGNativeAcceleration();
         float quality = (100 - wms.getPngCompression()) / 100.0f;
         SampleModel sm = image.getSampleModel();
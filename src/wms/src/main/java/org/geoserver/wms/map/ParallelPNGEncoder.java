@@ -0,0 +1,591 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.Rectangle;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.geotools.util.logging.Logging;
+
+/**
+ * A PNG encoder that splits the image in bands of rows, filters and deflates them in parallel, and
+ * then writes out the compressed bands, in order, as IDAT chunks.
+ * <p>
+ * All the bands are part of a single zlib stream, as the PNG specification requires: each band but
+ * the last is terminated with a sync flush, and is compressed using the tail of the previous band
+ * as the preset dictionary, so that the compression ratio stays close to the one of a single
+ * deflate stream. The sync flush is only available in the Java 7 {@link Deflater} API, on older
+ * JVMs {@link #isSupported(RenderedImage)} always returns false.
+ * </p>
+ * <p>
+ * Only 8 bit gray, gray/alpha, RGB, RGBA (non premultiplied) and paletted images are supported,
+ * the caller should fall back on another encoder for the others.
+ * </p>
+ */
+public class ParallelPNGEncoder {
+
+    static final Logger LOGGER = Logging.getLogger(ParallelPNGEncoder.class);
+
+    static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+
+    static final int COLOR_GRAY = 0;
+
+    static final int COLOR_RGB = 2;
+
+    static final int COLOR_PALETTE = 3;
+
+    static final int COLOR_GRAY_ALPHA = 4;
+
+    static final int COLOR_RGBA = 6;
+
+    /**
+     * The deflate window size, that is, the max useful dictionary size
+     */
+    static final int DICTIONARY_SIZE = 32 * 1024;
+
+    /**
+     * Bands smaller than this are not worth the parallelization overhead
+     */
+    static final int MIN_BAND_SIZE = 256 * 1024;
+
+    /**
+     * Deflater.SYNC_FLUSH, Java 7 and later
+     */
+    static final int SYNC_FLUSH = 2;
+
+    /**
+     * Deflater.deflate(byte[], int, int, int), Java 7 and later
+     */
+    static final Method DEFLATE_FLUSH;
+
+    static {
+        Method method = null;
+        try {
+            method = Deflater.class.getMethod("deflate", byte[].class, int.class, int.class,
+                    int.class);
+        } catch (NoSuchMethodException e) {
+            LOGGER.info("Parallel PNG encoding requires Java 7 or newer, it will be disabled");
+        }
+        DEFLATE_FLUSH = method;
+    }
+
+    static volatile ExecutorService executor;
+
+    int compressionLevel;
+
+    /**
+     * @param compressionLevel The deflate compression level, between 1 and 9
+     */
+    public ParallelPNGEncoder(int compressionLevel) {
+        this.compressionLevel = Math.max(1, Math.min(9, compressionLevel));
+    }
+
+    /**
+     * Returns true if the image can be encoded by this encoder
+     */
+    public static boolean isSupported(RenderedImage image) {
+        return DEFLATE_FLUSH != null && getColorType(image) >= 0;
+    }
+
+    /**
+     * The shared pool the bands are compressed into
+     */
+    static ExecutorService getExecutor() {
+        if (executor == null) {
+            synchronized (ParallelPNGEncoder.class) {
+                if (executor == null) {
+                    int threads = Runtime.getRuntime().availableProcessors();
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60L,
+                            TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                            new ThreadFactory() {
+                                AtomicInteger count = new AtomicInteger();
+
+                                public Thread newThread(Runnable r) {
+                                    Thread t = new Thread(r, "PNGEncoder-"
+                                            + count.incrementAndGet());
+                                    t.setDaemon(true);
+                                    return t;
+                                }
+                            });
+                    pool.allowCoreThreadTimeOut(true);
+                    executor = pool;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Returns the PNG color type for the image, or -1 if the image is not supported
+     */
+    static int getColorType(RenderedImage image) {
+        ColorModel cm = image.getColorModel();
+        SampleModel sm = image.getSampleModel();
+        if (cm == null || sm == null) {
+            return -1;
+        }
+        if (cm instanceof IndexColorModel) {
+            return sm.getNumBands() == 1 && sm.getSampleSize(0) <= 8 ? COLOR_PALETTE : -1;
+        }
+
+        int bands = sm.getNumBands();
+        for (int b = 0; b < bands; b++) {
+            if (sm.getSampleSize(b) != 8) {
+                return -1;
+            }
+        }
+        if (cm.isAlphaPremultiplied() || cm.getNumComponents() != bands) {
+            return -1;
+        }
+        int csType = cm.getColorSpace().getType();
+        if (csType == ColorSpace.TYPE_GRAY) {
+            if (bands == 1) {
+                return COLOR_GRAY;
+            } else if (bands == 2 && cm.hasAlpha()) {
+                return COLOR_GRAY_ALPHA;
+            }
+        } else if (csType == ColorSpace.TYPE_RGB) {
+            if (bands == 3 && !cm.hasAlpha()) {
+                return COLOR_RGB;
+            } else if (bands == 4 && cm.hasAlpha()) {
+                return COLOR_RGBA;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Encodes the image as a PNG
+     *
+     * @param image The image to be encoded, see {@link #isSupported(RenderedImage)}
+     * @param out The destination stream
+     * @throws IOException
+     */
+    public void encode(RenderedImage image, OutputStream out) throws IOException {
+        int colorType = getColorType(image);
+        if (colorType < 0 || DEFLATE_FLUSH == null) {
+            throw new IllegalArgumentException("Unsupported image " + image);
+        }
+
+        // header chunks
+        out.write(SIGNATURE);
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        writeInt(header, image.getWidth());
+        writeInt(header, image.getHeight());
+        header.write(8);
+        header.write(colorType);
+        header.write(0); // deflate compression
+        header.write(0); // adaptive filtering
+        header.write(0); // no interlace
+        writeChunk(out, "IHDR", header.toByteArray());
+        if (colorType == COLOR_PALETTE) {
+            writePalette(out, (IndexColorModel) image.getColorModel());
+        }
+
+        // split in bands
+        int height = image.getHeight();
+        int rowsPerBand = getRowsPerBand(image.getWidth(), height, image.getSampleModel()
+                .getNumBands());
+        List<BandEncoder> encoders = new ArrayList<BandEncoder>();
+        for (int row = 0; row < height; row += rowsPerBand) {
+            int lastRow = Math.min(height, row + rowsPerBand);
+            encoders.add(new BandEncoder(image, colorType, row, lastRow, lastRow == height));
+        }
+
+        // compress them, in parallel if there is more than one
+        List<Future<CompressedBand>> futures = new ArrayList<Future<CompressedBand>>();
+        if (encoders.size() > 1) {
+            ExecutorService pool = getExecutor();
+            for (BandEncoder encoder : encoders) {
+                futures.add(pool.submit(encoder));
+            }
+        }
+
+        // and write them out in order as they become available
+        try {
+            long adler = 1;
+            for (int i = 0; i < encoders.size(); i++) {
+                CompressedBand band;
+                if (futures.isEmpty()) {
+                    band = encoders.get(i).call();
+                } else {
+                    band = futures.get(i).get();
+                }
+                adler = combineAdler32(adler, band.adler, band.length);
+
+                byte[] prefix = null;
+                if (i == 0) {
+                    // zlib header, deflate with a 32k window, no dictionary
+                    prefix = new byte[] { 0x78, (byte) 0x9C };
+                }
+                byte[] suffix = null;
+                if (i == encoders.size() - 1) {
+                    suffix = new byte[] { (byte) (adler >>> 24), (byte) (adler >>> 16),
+                            (byte) (adler >>> 8), (byte) adler };
+                }
+                writeChunk(out, "IDAT", prefix, band.data, suffix);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while encoding the PNG image");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw (IOException) new IOException("Failed to encode the PNG image").initCause(cause);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw (IOException) new IOException("Failed to encode the PNG image").initCause(e);
+        } finally {
+            // in case of failure, don't leave work around
+            for (Future<CompressedBand> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        writeChunk(out, "IEND");
+        out.flush();
+    }
+
+    /**
+     * Returns the number of rows in each band. Images smaller than two bands of
+     * {@link #MIN_BAND_SIZE} are not worth splitting, and are encoded as a single band, in the
+     * calling thread.
+     */
+    static int getRowsPerBand(int width, int height, int bpp) {
+        long rowSize = (long) width * bpp + 1;
+        if (rowSize * height < 2L * MIN_BAND_SIZE) {
+            return Math.max(1, height);
+        }
+        return (int) Math.max(1, MIN_BAND_SIZE / rowSize);
+    }
+
+    void writePalette(OutputStream out, IndexColorModel icm) throws IOException {
+        int size = icm.getMapSize();
+        byte[] palette = new byte[size * 3];
+        byte[] alphas = new byte[size];
+        int lastTranslucent = -1;
+        for (int i = 0; i < size; i++) {
+            palette[i * 3] = (byte) icm.getRed(i);
+            palette[i * 3 + 1] = (byte) icm.getGreen(i);
+            palette[i * 3 + 2] = (byte) icm.getBlue(i);
+            alphas[i] = (byte) icm.getAlpha(i);
+            if (icm.getAlpha(i) != 255) {
+                lastTranslucent = i;
+            }
+        }
+        writeChunk(out, "PLTE", palette);
+        if (lastTranslucent >= 0) {
+            byte[] trns = new byte[lastTranslucent + 1];
+            System.arraycopy(alphas, 0, trns, 0, trns.length);
+            writeChunk(out, "tRNS", trns);
+        }
+    }
+
+    static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    static void writeChunk(OutputStream out, String type, byte[]... parts) throws IOException {
+        int length = 0;
+        for (byte[] part : parts) {
+            if (part != null) {
+                length += part.length;
+            }
+        }
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        writeInt(out, length);
+        out.write(typeBytes);
+        for (byte[] part : parts) {
+            if (part != null) {
+                crc.update(part);
+                out.write(part);
+            }
+        }
+        writeInt(out, (int) crc.getValue());
+    }
+
+    /**
+     * Computes the Adler32 of two concatenated sequences given their checksums and the length of
+     * the second one, as zlib's adler32_combine does
+     */
+    static long combineAdler32(long adler1, long adler2, long length2) {
+        final long BASE = 65521;
+        long rem = length2 % BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % BASE;
+        sum1 += (adler2 & 0xffff) + BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + BASE - rem;
+        if (sum1 >= BASE) {
+            sum1 -= BASE;
+        }
+        if (sum1 >= BASE) {
+            sum1 -= BASE;
+        }
+        if (sum2 >= (BASE << 1)) {
+            sum2 -= (BASE << 1);
+        }
+        if (sum2 >= BASE) {
+            sum2 -= BASE;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    static class CompressedBand {
+        byte[] data;
+
+        long adler;
+
+        int length;
+    }
+
+    /**
+     * Filters and compresses a band of rows. The rows preceding the band are filtered again to
+     * build the same dictionary the decoder will have in its window when reaching the band.
+     */
+    class BandEncoder implements Callable<CompressedBand> {
+
+        RenderedImage image;
+
+        int colorType;
+
+        int firstRow;
+
+        int lastRow;
+
+        boolean last;
+
+        int bpp;
+
+        int rowBytes;
+
+        byte[][] candidates;
+
+        public BandEncoder(RenderedImage image, int colorType, int firstRow, int lastRow,
+                boolean last) {
+            this.image = image;
+            this.colorType = colorType;
+            this.firstRow = firstRow;
+            this.lastRow = lastRow;
+            this.last = last;
+            this.bpp = image.getSampleModel().getNumBands();
+            this.rowBytes = image.getWidth() * bpp;
+        }
+
+        public CompressedBand call() throws Exception {
+            int dictionaryRows = Math.min(firstRow, (DICTIONARY_SIZE + rowBytes) / (rowBytes + 1));
+            int startRow = firstRow - dictionaryRows;
+            int readRow = startRow > 0 ? startRow - 1 : startRow;
+            Raster raster;
+            if (image instanceof BufferedImage) {
+                // no need to copy, we only read from it
+                raster = ((BufferedImage) image).getRaster();
+            } else {
+                raster = image.getData(new Rectangle(image.getMinX(), image.getMinY() + readRow,
+                        image.getWidth(), lastRow - readRow));
+            }
+            int x = raster.getMinX();
+            int y = raster.getMinY() + (image instanceof BufferedImage ? readRow : 0);
+            int width = image.getWidth();
+            // byte components can be grabbed already in band order, avoiding the int samples
+            boolean bytes = raster.getSampleModel() instanceof ComponentSampleModel
+                    && raster.getTransferType() == DataBuffer.TYPE_BYTE;
+
+            ByteArrayOutputStream dictionary = new ByteArrayOutputStream(dictionaryRows
+                    * (rowBytes + 1));
+            ByteArrayOutputStream filtered = new ByteArrayOutputStream((lastRow - firstRow)
+                    * (rowBytes + 1));
+            int[] samples = bytes ? null : new int[rowBytes];
+            byte[] prior = new byte[rowBytes];
+            byte[] current = new byte[rowBytes];
+            candidates = new byte[5][rowBytes + 1];
+            for (int row = readRow; row < lastRow; row++, y++) {
+                if (bytes) {
+                    raster.getDataElements(x, y, width, 1, current);
+                } else {
+                    raster.getPixels(x, y, width, 1, samples);
+                    for (int i = 0; i < rowBytes; i++) {
+                        current[i] = (byte) samples[i];
+                    }
+                }
+                if (row >= startRow) {
+                    byte[] line = filter(current, prior);
+                    if (row < firstRow) {
+                        dictionary.write(line, 0, line.length);
+                    } else {
+                        filtered.write(line, 0, line.length);
+                    }
+                }
+                byte[] tmp = prior;
+                prior = current;
+                current = tmp;
+            }
+
+            byte[] data = filtered.toByteArray();
+            CompressedBand result = new CompressedBand();
+            Adler32 adler = new Adler32();
+            adler.update(data);
+            result.adler = adler.getValue();
+            result.length = data.length;
+            result.data = deflate(data, dictionary.toByteArray());
+            return result;
+        }
+
+        byte[] deflate(byte[] data, byte[] dictionary) throws Exception {
+            Deflater deflater = new Deflater(compressionLevel, true);
+            try {
+                if (dictionary.length > 0) {
+                    int length = Math.min(DICTIONARY_SIZE, dictionary.length);
+                    deflater.setDictionary(dictionary, dictionary.length - length, length);
+                }
+                deflater.setInput(data);
+                ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 4 + 64);
+                byte[] buffer = new byte[64 * 1024];
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        int n = deflater.deflate(buffer);
+                        bos.write(buffer, 0, n);
+                    }
+                } else {
+                    // sync flush, the output ends on a byte boundary and the next band can follow
+                    int n;
+                    do {
+                        n = deflateSync(deflater, buffer);
+                        bos.write(buffer, 0, n);
+                    } while (n == buffer.length);
+                }
+                return bos.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        int deflateSync(Deflater deflater, byte[] buffer) throws Exception {
+            try {
+                return (Integer) DEFLATE_FLUSH.invoke(deflater, buffer, 0, buffer.length,
+                        SYNC_FLUSH);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * Filters a row, picking the filter that minimizes the sum of absolute differences, the
+         * heuristic suggested by the PNG specification. Paletted images are not filtered.
+         */
+        byte[] filter(byte[] raw, byte[] prior) {
+            byte[] none = candidates[0];
+            none[0] = 0;
+            System.arraycopy(raw, 0, none, 1, rowBytes);
+            if (colorType == COLOR_PALETTE) {
+                return none;
+            }
+
+            byte[] sub = candidates[1];
+            byte[] up = candidates[2];
+            byte[] average = candidates[3];
+            byte[] paeth = candidates[4];
+            sub[0] = 1;
+            up[0] = 2;
+            average[0] = 3;
+            paeth[0] = 4;
+            long sumNone = 0, sumSub = 0, sumUp = 0, sumAverage = 0, sumPaeth = 0;
+            for (int i = 0; i < rowBytes; i++) {
+                int x = raw[i] & 0xFF;
+                int a = i >= bpp ? raw[i - bpp] & 0xFF : 0;
+                int b = prior[i] & 0xFF;
+                int c = i >= bpp ? prior[i - bpp] & 0xFF : 0;
+
+                byte value = (byte) x;
+                sumNone += value < 0 ? -value : value;
+                value = (byte) (x - a);
+                sub[i + 1] = value;
+                sumSub += value < 0 ? -value : value;
+                value = (byte) (x - b);
+                up[i + 1] = value;
+                sumUp += value < 0 ? -value : value;
+                value = (byte) (x - ((a + b) >>> 1));
+                average[i + 1] = value;
+                sumAverage += value < 0 ? -value : value;
+                value = (byte) (x - paeth(a, b, c));
+                paeth[i + 1] = value;
+                sumPaeth += value < 0 ? -value : value;
+            }
+
+            byte[] best = none;
+            long bestSum = sumNone;
+            if (sumSub < bestSum) {
+                best = sub;
+                bestSum = sumSub;
+            }
+            if (sumUp < bestSum) {
+                best = up;
+                bestSum = sumUp;
+            }
+            if (sumAverage < bestSum) {
+                best = average;
+                bestSum = sumAverage;
+            }
+            if (sumPaeth < bestSum) {
+                best = paeth;
+            }
+            return best;
+        }
+
+        int paeth(int a, int b, int c) {
+            int p = a + b - c;
+            int pa = Math.abs(p - a);
+            int pb = Math.abs(p - b);
+            int pc = Math.abs(p - c);
+            if (pa <= pb && pa <= pc) {
+                return a;
+            } else if (pb <= pc) {
+                return b;
+            } else {
+                return c;
+            }
+        }
+    }
+}
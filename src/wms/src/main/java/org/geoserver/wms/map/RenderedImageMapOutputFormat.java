@@ -306,7 +306,9 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         // multiple featureTypeStyles against the same layer
         StreamingRenderer testRenderer = new StreamingRenderer();
         testRenderer.setMapContent(mapContent);
-        memory += testRenderer.getMaxBackBufferMemory(paintArea.width, paintArea.height);
+        long backBufferMemory = testRenderer.getMaxBackBufferMemory(paintArea.width,
+                paintArea.height);
+        memory += backBufferMemory;
         if (maxMemory > 0 && memory > maxMemory) {
             long kbUsed = memory / KB;
             long kbMax = maxMemory / KB;
@@ -314,6 +316,13 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
                     + "maximum memory allowed is " + kbMax + "KB");
         }
 
+        // see if the map is large enough to be rendered in stripes, the stripe renderers
+        // back buffers add up to the full map ones, plus the ones of the labelling pass
+        int stripes = getStripeCount(mapContent, paintArea, tiled);
+        if (stripes > 1 && maxMemory > 0 && memory + backBufferMemory > maxMemory) {
+            stripes = 1;
+        }
+
         // TODO: allow rendering to continue with vector layers
         // TODO: allow rendering to continue with layout
         // TODO: handle rotated rasters
@@ -480,6 +489,13 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         nonIgnorableExceptionListener = new RenderExceptionStrategy(renderer);
         renderer.addRenderListener(nonIgnorableExceptionListener);
 
+        StripedMapRenderer striped = null;
+        if (stripes > 1 && renderer instanceof StreamingRenderer
+                && preparedImage instanceof BufferedImage) {
+            striped = new StripedMapRenderer(mapContent, (BufferedImage) preparedImage, hintsMap,
+                    rendererParams, stripes, errorChecker);
+        }
+
         // setup the timeout enforcer (the enforcer is neutral when the timeout is 0)
         int maxRenderingTime = wms.getMaxRenderingTime() * 1000;
         RenderingTimeoutEnforcer timeout = new RenderingTimeoutEnforcer(maxRenderingTime, renderer,
@@ -487,8 +503,12 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         timeout.start();
         try {
             // finally render the image;
-            renderer.paint(graphic, paintArea, mapContent.getRenderingArea(),
-                    mapContent.getRenderingTransform());
+            if (striped != null) {
+                striped.paint(renderer, graphic, timeout);
+            } else {
+                renderer.paint(graphic, paintArea, mapContent.getRenderingArea(),
+                        mapContent.getRenderingTransform());
+            }
 
             // apply watermarking
             if (layout != null) {
@@ -516,7 +536,12 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
             throw new ServiceException("Rendering process failed", renderError, "internalError");
         }
 
-        // check if too many errors occurred
+        if (striped != null && striped.getException() != null) {
+            throw new ServiceException("Rendering process failed", striped.getException(),
+                    "internalError");
+        }
+
+        // check if too many errors occurred, the stripes share the error count
         if (errorChecker.exceedsMaxErrors()) {
             throw new ServiceException("More than " + maxErrors
                     + " rendering errors occurred, bailing out.", errorChecker.getLastException(),
@@ -534,6 +559,20 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         return map;
     }
 
+    /**
+     * Returns the number of horizontal stripes the map should be rendered in, 1 meaning the map is
+     * going to be rendered by a single thread
+     */
+    int getStripeCount(WMSMapContent mapContent, Rectangle paintArea, boolean tiled) {
+        int minPixels = wms.getStripeRenderingMinPixels();
+        if (minPixels <= 0 || tiled || DefaultWebMapService.useShapefileRenderer()
+                || (long) paintArea.width * paintArea.height < minPixels
+                || !StripedMapRenderer.canStripe(mapContent)) {
+            return 1;
+        }
+        return Math.max(1, StripedMapRenderer.getStripeCount(paintArea.height));
+    }
+
     protected RenderedImageMap buildMap(final WMSMapContent mapContent, RenderedImage image) {
         RenderedImageMap map = new RenderedImageMap(mapContent, image, getMimeType());
         if(extension != null) {
@@ -24,7 +24,6 @@ import org.geoserver.wms.map.PNGMapResponse.QuantizeMethod;
 import org.geoserver.wms.map.quantize.CachingColorIndexer;
 import org.geoserver.wms.map.quantize.ColorIndexer;
 import org.geoserver.wms.map.quantize.ColorIndexerDescriptor;
-import org.geoserver.wms.map.quantize.LRUColorIndexer;
 import org.geoserver.wms.map.quantize.Quantizer;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.image.ImageWorker;
@@ -172,9 +171,9 @@ public abstract class RenderedImageMapResponse extends AbstractMapResponse {
                         .getRenderedImage();
                 ColorIndexer indexer = null;
                 
-                // user provided palette?
+                // user provided palette? reuse the colors resolved by previous requests
                 if (mapContent.getPalette() != null) {
-                    indexer = new CachingColorIndexer(new LRUColorIndexer(icm, 1024));
+                    indexer = new CachingColorIndexer(PaletteManager.getColorIndexer(icm));
                 } else if (palettedFormatName.equalsIgnoreCase(format)) {
                     // build the palette and grab the optimized color indexer
                     indexer = new Quantizer(256).subsample().buildColorIndexer(image);
@@ -5,8 +5,10 @@
 package org.geoserver.wms.map;
 
 import java.awt.Graphics;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.geotools.renderer.GTRenderer;
 
@@ -19,15 +21,28 @@ import org.geotools.renderer.GTRenderer;
 public class RenderingTimeoutEnforcer {
     
     long timeout;
-    GTRenderer renderer;
-    Graphics graphics;
+    List<GTRenderer> renderers = new CopyOnWriteArrayList<GTRenderer>();
+    List<Graphics> graphics = new CopyOnWriteArrayList<Graphics>();
     Timer timer;
-    boolean timedOut = false;
+    volatile boolean timedOut = false;
 
     public RenderingTimeoutEnforcer(long timeout, GTRenderer renderer, Graphics graphics) {
         this.timeout = timeout;
-        this.renderer = renderer;
-        this.graphics = graphics;
+        add(renderer, graphics);
+    }
+
+    /**
+     * Adds another renderer, and the graphics it paints on, to the ones to be stopped when the
+     * timeout elapses. Used when a single map is painted by multiple renderers
+     */
+    public void add(GTRenderer renderer, Graphics graphics) {
+        this.renderers.add(renderer);
+        this.graphics.add(graphics);
+        if (timedOut) {
+            // the timeout already elapsed, don't allow the newcomer to start
+            renderer.stopRendering();
+            graphics.dispose();
+        }
     }
 
     /**
@@ -71,11 +86,15 @@ public class RenderingTimeoutEnforcer {
             timedOut = true;
             
             // ask gently...
-            renderer.stopRendering();
+            for (GTRenderer renderer : renderers) {
+                renderer.stopRendering();
+            }
             // ... but also be rude for extra measure (coverage rendering is
             // an atomic call to the graphics, it cannot be stopped
             // by the above)
-            graphics.dispose();
+            for (Graphics g : graphics) {
+                g.dispose();
+            }
             
         }
         
@@ -0,0 +1,269 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.Styles;
+import org.geoserver.platform.ServiceException;
+import org.geotools.styling.StyledLayer;
+import org.geotools.styling.StyledLayerDescriptor;
+import org.geotools.styling.UserLayer;
+import org.geotools.util.Version;
+import org.geotools.util.logging.Logging;
+import org.vfny.geoserver.util.Requests;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A bounded cache of the parsed {@link StyledLayerDescriptor} objects used by the GetMap
+ * <code>SLD_BODY</code> and <code>SLD</code> parameters.
+ * <p>
+ * Inline SLD bodies are keyed by a digest of their contents. Remote SLD documents are keyed by URL
+ * and are considered fresh for {@link #getTimeToLive()} milliseconds, after which they are
+ * re-validated against the remote server using the <code>ETag</code> and
+ * <code>Last-Modified</code> headers it provided, if any, and fetched again only if changed.
+ * </p>
+ * <p>
+ * The cached documents are shared among requests and must be treated as read only. Documents
+ * containing inline features are never cached.
+ * </p>
+ */
+public class SLDCache {
+
+    static final Logger LOGGER = Logging.getLogger(SLDCache.class);
+
+    static final int DEFAULT_MAX_ENTRIES = 200;
+
+    static final long DEFAULT_TIME_TO_LIVE = 60 * 1000;
+
+    Cache<String, StyledLayerDescriptor> bodies;
+
+    Cache<String, RemoteSLD> remotes;
+
+    long timeToLive = DEFAULT_TIME_TO_LIVE;
+
+    AtomicLong hits = new AtomicLong();
+
+    AtomicLong misses = new AtomicLong();
+
+    AtomicLong revalidations = new AtomicLong();
+
+    public SLDCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public SLDCache(int maxEntries) {
+        bodies = CacheBuilder.newBuilder().maximumSize(maxEntries).build();
+        remotes = CacheBuilder.newBuilder().maximumSize(maxEntries).build();
+    }
+
+    /**
+     * Returns the parsed version of the specified SLD body
+     *
+     * @param body The SLD document
+     * @param version The SLD version, or null to have it sniffed from the document
+     * @return
+     */
+    public StyledLayerDescriptor getBody(String body, String version) {
+        String key = version + ":" + digest(body);
+        StyledLayerDescriptor sld = bodies.getIfPresent(key);
+        if (sld != null) {
+            hits.incrementAndGet();
+            return sld;
+        }
+
+        misses.incrementAndGet();
+        sld = parse(new ByteArrayInputStream(body.getBytes()), version);
+        if (isCacheable(sld)) {
+            bodies.put(key, sld);
+        }
+        return sld;
+    }
+
+    /**
+     * Returns the parsed version of the SLD document at the specified location, fetching it only
+     * if not cached, or if the cached copy expired and changed on the remote server
+     *
+     * @param url The SLD location
+     * @param version The SLD version, or null to have it sniffed from the document
+     * @return
+     * @throws IOException
+     */
+    public StyledLayerDescriptor getRemote(URL url, String version) throws IOException {
+        String key = version + ":" + url.toExternalForm();
+        RemoteSLD cached = remotes.getIfPresent(key);
+        long now = System.currentTimeMillis();
+        if (cached != null && now - cached.checked < timeToLive) {
+            hits.incrementAndGet();
+            return cached.sld;
+        }
+
+        URLConnection conn = url.openConnection();
+        if (conn instanceof HttpURLConnection) {
+            conn.setRequestProperty("Accept-Encoding", "gzip, deflate");
+            if (cached != null) {
+                if (cached.etag != null) {
+                    conn.setRequestProperty("If-None-Match", cached.etag);
+                }
+                if (cached.lastModified > 0) {
+                    conn.setIfModifiedSince(cached.lastModified);
+                }
+            }
+            HttpURLConnection http = (HttpURLConnection) conn;
+            if (cached != null
+                    && http.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                http.disconnect();
+                revalidations.incrementAndGet();
+                hits.incrementAndGet();
+                cached.checked = now;
+                return cached.sld;
+            }
+        } else {
+            conn.connect();
+        }
+
+        misses.incrementAndGet();
+        InputStream input = Requests.getInputStream(conn);
+        StyledLayerDescriptor sld;
+        try {
+            sld = parse(input, version);
+        } finally {
+            input.close();
+        }
+
+        if (isCacheable(sld)) {
+            RemoteSLD remote = new RemoteSLD();
+            remote.sld = sld;
+            remote.etag = conn.getHeaderField("ETag");
+            remote.lastModified = conn.getLastModified();
+            remote.checked = now;
+            remotes.put(key, remote);
+        } else {
+            remotes.invalidate(key);
+        }
+        return sld;
+    }
+
+    /**
+     * Parses an SLD document
+     */
+    StyledLayerDescriptor parse(InputStream input, String version) {
+        try {
+            if (version != null) {
+                return Styles.parse(input, new Version(version));
+            } else {
+                return Styles.parse(input);
+            }
+        } catch (IOException e) {
+            throw new ServiceException("Error parsing style", e);
+        }
+    }
+
+    /**
+     * Inline features are loaded in a data store owned by the SLD, we don't want to keep those
+     * in memory, nor to share them among requests
+     */
+    boolean isCacheable(StyledLayerDescriptor sld) {
+        for (StyledLayer layer : sld.getStyledLayers()) {
+            if (layer instanceof UserLayer
+                    && ((UserLayer) layer).getInlineFeatureDatastore() != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    String digest(String body) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] hash = md.digest(body.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Drops all the cached documents
+     */
+    public void clear() {
+        bodies.invalidateAll();
+        remotes.invalidateAll();
+    }
+
+    /**
+     * The time, in milliseconds, a remote SLD is considered fresh without checking the remote
+     * server
+     *
+     * @return
+     */
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Number of lookups served from the cache, including remote documents re-validated with the
+     * remote server
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of lookups that required parsing the document
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Number of remote documents re-validated with a conditional request
+     */
+    public long getRevalidations() {
+        return revalidations.get();
+    }
+
+    /**
+     * The fraction of lookups served from the cache
+     */
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : ((double) h) / total;
+    }
+
+    static class RemoteSLD {
+        StyledLayerDescriptor sld;
+
+        String etag;
+
+        long lastModified;
+
+        volatile long checked;
+    }
+}
@@ -0,0 +1,322 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.platform.ServiceException;
+import org.geoserver.wms.DefaultWebMapService;
+import org.geoserver.wms.WMSMapContent;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.Layer;
+import org.geotools.map.StyleLayer;
+import org.geotools.referencing.operation.matrix.XAffineTransform;
+import org.geotools.renderer.GTRenderer;
+import org.geotools.renderer.lite.StreamingRenderer;
+import org.geotools.styling.FeatureTypeStyle;
+import org.geotools.styling.Rule;
+import org.geotools.styling.Style;
+import org.geotools.styling.Symbolizer;
+import org.geotools.styling.TextSymbolizer;
+import org.geotools.styling.visitor.DuplicatingStyleVisitor;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Paints a large map in horizontal stripes, each one rendered by its own {@link StreamingRenderer}
+ * on a bounded thread pool, directly into its own slice of the target image.
+ * <p>
+ * Labels cannot be painted stripe by stripe without being cut or duplicated at the stripe
+ * boundaries, so the stripes are painted with styles stripped of their text symbolizers, and the
+ * labels are painted afterwards, over the whole image, by a single renderer using styles reduced to
+ * their text symbolizers. This mirrors what a single renderer does, which paints the labels once
+ * all the layers are done, at the cost of reading the labelled layers twice.
+ * </p>
+ * <p>
+ * The layer styles are swapped in place while rendering, and restored once done.
+ * </p>
+ */
+class StripedMapRenderer {
+
+    static final Logger LOGGER = Logging.getLogger(StripedMapRenderer.class);
+
+    /**
+     * Stripes are never made shorter than this, in pixels
+     */
+    static final int MIN_STRIPE_HEIGHT = 128;
+
+    static final int POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+    static ExecutorService EXECUTOR;
+
+    WMSMapContent mapContent;
+
+    BufferedImage image;
+
+    Map<RenderingHints.Key, Object> hintsMap;
+
+    Map<Object, Object> rendererParams;
+
+    int stripeCount;
+
+    MaxErrorEnforcer errorChecker;
+
+    List<RenderExceptionStrategy> exceptionListeners = new ArrayList<RenderExceptionStrategy>();
+
+    /**
+     * @param mapContent The map to be painted
+     * @param image The image to paint on, with its background already filled
+     * @param hintsMap The Java2D hints
+     * @param rendererParams The renderer hints
+     * @param stripeCount The number of stripes, see {@link #getStripeCount(int)}
+     * @param errorChecker The max errors enforcer of the request, the stripe renderers will share
+     *        its error count
+     */
+    StripedMapRenderer(WMSMapContent mapContent, BufferedImage image,
+            Map<RenderingHints.Key, Object> hintsMap, Map<Object, Object> rendererParams,
+            int stripeCount, MaxErrorEnforcer errorChecker) {
+        this.mapContent = mapContent;
+        this.image = image;
+        this.hintsMap = hintsMap;
+        this.rendererParams = rendererParams;
+        this.stripeCount = stripeCount;
+        this.errorChecker = errorChecker;
+    }
+
+    /**
+     * Returns the number of stripes an image this tall should be split in, a value lower than two
+     * meaning striping is not worth it
+     */
+    static int getStripeCount(int height) {
+        return Math.min(POOL_SIZE, height / MIN_STRIPE_HEIGHT);
+    }
+
+    /**
+     * Returns true if the map can be painted in stripes: all layers have to be styled ones (a
+     * cascaded WMS layer would issue one remote request per stripe) and the map must not be
+     * rotated
+     */
+    static boolean canStripe(WMSMapContent mapContent) {
+        if (mapContent.getAngle() != 0.0 || mapContent.getRenderingTransform() == null) {
+            return false;
+        }
+        for (Layer layer : mapContent.layers()) {
+            if (!(layer instanceof StyleLayer)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static synchronized ExecutorService getExecutor() {
+        if (EXECUTOR == null) {
+            EXECUTOR = Executors.newFixedThreadPool(POOL_SIZE, new ThreadFactory() {
+                AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "StripeRenderer-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return EXECUTOR;
+    }
+
+    /**
+     * Paints the map
+     *
+     * @param labelRenderer The renderer, already configured, used to paint the labels
+     * @param graphic The graphics covering the whole image, used to paint the labels
+     * @param timeout The timeout enforcer, the stripe renderers will be registered with it
+     */
+    void paint(GTRenderer labelRenderer, Graphics2D graphic, RenderingTimeoutEnforcer timeout) {
+        List<StyleLayer> layers = new ArrayList<StyleLayer>();
+        List<Style> styles = new ArrayList<Style>();
+        List<Boolean> visibility = new ArrayList<Boolean>();
+        for (Layer layer : mapContent.layers()) {
+            StyleLayer sl = (StyleLayer) layer;
+            layers.add(sl);
+            styles.add(sl.getStyle());
+            visibility.add(sl.isVisible());
+        }
+
+        try {
+            // paint the stripes without labels
+            applyStyles(layers, styles, visibility, false);
+            paintStripes(timeout);
+
+            // and then the labels, over the whole map
+            if (applyStyles(layers, styles, visibility, true)) {
+                labelRenderer.paint(graphic, new Rectangle(0, 0, image.getWidth(),
+                        image.getHeight()), mapContent.getRenderingArea(), mapContent
+                        .getRenderingTransform());
+            }
+        } finally {
+            for (int i = 0; i < layers.size(); i++) {
+                StyleLayer layer = layers.get(i);
+                layer.setStyle(styles.get(i));
+                layer.setVisible(visibility.get(i));
+            }
+        }
+    }
+
+    /**
+     * Sets on the layers their styles reduced to the text symbolizers, or stripped of them, and
+     * hides the layers having nothing left to paint
+     *
+     * @return true if at least one layer is left to be painted
+     */
+    boolean applyStyles(List<StyleLayer> layers, List<Style> styles, List<Boolean> visibility,
+            boolean text) {
+        boolean paint = false;
+        for (int i = 0; i < layers.size(); i++) {
+            StyleLayer layer = layers.get(i);
+            Style style = filterSymbolizers(styles.get(i), text);
+            if (style != null && visibility.get(i)) {
+                layer.setStyle(style);
+                layer.setVisible(true);
+                paint = true;
+            } else {
+                layer.setVisible(false);
+            }
+        }
+        return paint;
+    }
+
+    /**
+     * Returns a copy of the style containing only the text symbolizers, or only the other ones,
+     * or null if nothing is left
+     */
+    static Style filterSymbolizers(Style style, boolean text) {
+        DuplicatingStyleVisitor duplicator = new DuplicatingStyleVisitor();
+        style.accept(duplicator);
+        Style copy = (Style) duplicator.getCopy();
+
+        for (Iterator<FeatureTypeStyle> fi = copy.featureTypeStyles().iterator(); fi.hasNext();) {
+            FeatureTypeStyle fts = fi.next();
+            for (Iterator<Rule> ri = fts.rules().iterator(); ri.hasNext();) {
+                Rule rule = ri.next();
+                for (Iterator<Symbolizer> si = rule.symbolizers().iterator(); si.hasNext();) {
+                    if ((si.next() instanceof TextSymbolizer) != text) {
+                        si.remove();
+                    }
+                }
+                if (rule.symbolizers().isEmpty()) {
+                    ri.remove();
+                }
+            }
+            if (fts.rules().isEmpty()) {
+                fi.remove();
+            }
+        }
+
+        return copy.featureTypeStyles().isEmpty() ? null : copy;
+    }
+
+    void paintStripes(RenderingTimeoutEnforcer timeout) {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        final AffineTransform worldToScreen = mapContent.getRenderingTransform();
+        final AffineTransform screenToWorld;
+        try {
+            screenToWorld = worldToScreen.createInverse();
+        } catch (NoninvertibleTransformException e) {
+            throw new ServiceException("Invalid rendering transform", e);
+        }
+
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        int stripeHeight = (int) Math.ceil(height / (double) stripeCount);
+        for (int y = 0; y < height; y += stripeHeight) {
+            final int h = Math.min(stripeHeight, height - y);
+
+            // the stripe shares the raster of the image, and covers a disjoint set of rows
+            final Graphics2D g = image.getSubimage(0, y, width, h).createGraphics();
+            g.setRenderingHints(hintsMap);
+
+            final Rectangle area = new Rectangle(0, 0, width, h);
+            final AffineTransform tx = AffineTransform.getTranslateInstance(0, -y);
+            tx.concatenate(worldToScreen);
+            Rectangle2D bounds = XAffineTransform.transform(screenToWorld, new Rectangle(0, y,
+                    width, h), null);
+            final ReferencedEnvelope envelope = new ReferencedEnvelope(bounds.getMinX(),
+                    bounds.getMaxX(), bounds.getMinY(), bounds.getMaxY(), mapContent
+                            .getCoordinateReferenceSystem());
+
+            final GTRenderer renderer = createRenderer();
+            timeout.add(renderer, g);
+            futures.add(getExecutor().submit(new Runnable() {
+
+                public void run() {
+                    try {
+                        renderer.paint(g, area, envelope, tx);
+                    } finally {
+                        g.dispose();
+                    }
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            throw new ServiceException("Rendering interrupted", e);
+        } catch (ExecutionException e) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.log(Level.FINE, "Failed to render a stripe", e.getCause());
+            }
+            throw new ServiceException("Rendering process failed", e.getCause(), "internalError");
+        }
+    }
+
+    GTRenderer createRenderer() {
+        StreamingRenderer renderer = new StreamingRenderer();
+        renderer.setThreadPool(DefaultWebMapService.getRenderingPool());
+        renderer.setMapContent(mapContent);
+        renderer.setJava2DHints(new RenderingHints(hintsMap));
+        renderer.setRendererHints(rendererParams);
+
+        errorChecker.add(renderer);
+        RenderExceptionStrategy listener = new RenderExceptionStrategy(renderer);
+        renderer.addRenderListener(listener);
+        exceptionListeners.add(listener);
+
+        return renderer;
+    }
+
+    /**
+     * Returns the first non ignorable exception occurred while painting the stripes, if any
+     */
+    Exception getException() {
+        for (RenderExceptionStrategy listener : exceptionListeners) {
+            if (listener.exceptionOccurred()) {
+                return listener.getException();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,75 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.wms.map.quantize;
+
+import java.awt.image.IndexColorModel;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A color indexer for a fixed palette that can be shared by concurrent requests, so that the
+ * colors looked up by one request are already resolved for the following ones.
+ * <p>
+ * The closest index of the most recently used colors is kept in a direct mapped table, each slot
+ * holding the color and its index packed in a single long, which makes lookups lock free: a color
+ * colliding with another simply replaces it, approximating the behavior of {@link LRUColorIndexer}
+ * without its bookkeeping.
+ * </p>
+ */
+public class SharedColorIndexer implements ColorIndexer {
+
+    static final long VALID = 1 << 8;
+
+    IndexColorModel icm;
+
+    ColorIndexer delegate;
+
+    AtomicLongArray slots;
+
+    int mask;
+
+    /**
+     * @param icm The target palette
+     * @param size The number of colors cached, rounded up to the next power of two
+     */
+    public SharedColorIndexer(IndexColorModel icm, int size) {
+        this.icm = icm;
+        this.delegate = new SimpleColorIndexer(icm);
+        int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        this.slots = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+    }
+
+    @Override
+    public IndexColorModel toIndexColorModel() {
+        return icm;
+    }
+
+    @Override
+    public int getClosestIndex(int r, int g, int b, int a) {
+        int color = ColorUtils.color(r, g, b, a);
+        int slot = hash(color) & mask;
+        long entry = slots.get(slot);
+        if ((entry & VALID) != 0 && (int) (entry >>> 32) == color) {
+            return (int) (entry & 0xFF);
+        }
+
+        int idx = delegate.getClosestIndex(r, g, b, a);
+        slots.lazySet(slot, ((long) color << 32) | VALID | idx);
+        return idx;
+    }
+
+    /**
+     * Returns the number of colors that can be cached
+     */
+    public int getSize() {
+        return slots.length();
+    }
+
+    static int hash(int color) {
+        // spread the bits, colors in the same image tend to differ only in the low bits
+        int h = color * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,175 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms;
+
+import java.io.File;
+import java.sql.Date;
+import java.util.TreeSet;
+
+import net.opengis.wfs.DeleteElementType;
+import net.opengis.wfs.InsertElementType;
+import net.opengis.wfs.TransactionType;
+import net.opengis.wfs.WfsFactory;
+
+import org.geoserver.catalog.DimensionInfo;
+import org.geoserver.catalog.DimensionPresentation;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.security.CatalogMode;
+import org.geoserver.security.VectorAccessLimits;
+import org.geoserver.security.WrapperPolicy;
+import org.geoserver.security.decorators.SecuredFeatureTypeInfo;
+import org.geoserver.wfs.TransactionEvent;
+import org.geoserver.wfs.TransactionEventType;
+import org.geoserver.wfs.request.TransactionRequest;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory;
+
+public class DimensionDomainIndexTest extends WMSDimensionsTestSupport {
+
+    DimensionDomainIndex index;
+
+    FeatureTypeInfo typeInfo;
+
+    @Override
+    protected void setUpInternal() throws Exception {
+        super.setUpInternal();
+        setupVectorDimension(ResourceInfo.TIME, "time", DimensionPresentation.LIST, null, null,
+                null);
+        setupVectorDimension(ResourceInfo.ELEVATION, "elevation", DimensionPresentation.LIST,
+                null, UNITS, UNIT_SYMBOL);
+        index = GeoServerExtensions.bean(DimensionDomainIndex.class, applicationContext);
+        index.clear();
+        typeInfo = getCatalog().getFeatureTypeByName(V_TIME_ELEVATION.getLocalPart());
+    }
+
+    DimensionInfo getDimension(String name) {
+        return typeInfo.getMetadata().get(name, DimensionInfo.class);
+    }
+
+    public void testComputeAndPersist() throws Exception {
+        TreeSet<Object> times = index.getValues(typeInfo, ResourceInfo.TIME,
+                getDimension(ResourceInfo.TIME));
+        assertEquals(4, times.size());
+        assertEquals(Date.valueOf("2011-05-01").getTime(), ((java.util.Date) times.first())
+                .getTime());
+
+        TreeSet<Object> elevations = index.getValues(typeInfo, ResourceInfo.ELEVATION,
+                getDimension(ResourceInfo.ELEVATION));
+        assertEquals(4, elevations.size());
+        assertEquals(0d, elevations.first());
+        assertEquals(3d, elevations.last());
+
+        // the WMS reads from the index
+        WMS wms = getWMS();
+        assertEquals(times, new TreeSet<Object>(wms.getFeatureTypeTimes(typeInfo)));
+        assertEquals(3d, wms.getFeatureTypeElevations(typeInfo).last());
+
+        // persisted, a new index reads it back without computing
+        File file = index.getFile(index.getKey(typeInfo, ResourceInfo.TIME), false);
+        assertTrue(file.exists());
+        DimensionDomainIndex other = new DimensionDomainIndex(wms, getDataDirectory());
+        DimensionDomainIndex.Domain loaded = other.load(
+                index.getKey(typeInfo, ResourceInfo.TIME), "time");
+        assertNotNull(loaded);
+        assertEquals(times, loaded.values);
+
+        // but not if the attribute changed
+        assertNull(other.load(index.getKey(typeInfo, ResourceInfo.TIME), "elevation"));
+    }
+
+    public void testInsertAndDelete() throws Exception {
+        TreeSet<Object> times = index.getValues(typeInfo, ResourceInfo.TIME,
+                getDimension(ResourceInfo.TIME));
+        assertEquals(4, times.size());
+
+        // insert a new feature, values are added only once committed
+        SimpleFeatureType schema = (SimpleFeatureType) typeInfo.getFeatureType();
+        SimpleFeature feature = SimpleFeatureBuilder.build(schema, new Object[] { null,
+                Date.valueOf("2011-05-10"), 10d }, "TimeElevation.10");
+        SimpleFeatureCollection features = DataUtilities.collection(feature);
+        TransactionType tx = WfsFactory.eINSTANCE.createTransactionType();
+        InsertElementType insert = WfsFactory.eINSTANCE.createInsertElementType();
+        index.dataStoreChange(new TransactionEvent(TransactionEventType.PRE_INSERT,
+                TransactionRequest.adapt(tx), V_TIME_ELEVATION, features, insert));
+        assertEquals(4, index.getValues(typeInfo, ResourceInfo.TIME,
+                getDimension(ResourceInfo.TIME)).size());
+        index.afterTransaction(tx, null, true);
+        times = index.getValues(typeInfo, ResourceInfo.TIME, getDimension(ResourceInfo.TIME));
+        assertEquals(5, times.size());
+        assertEquals(Date.valueOf("2011-05-10").getTime(), ((java.util.Date) times.last())
+                .getTime());
+        assertEquals(10d, index.getValues(typeInfo, ResourceInfo.ELEVATION,
+                getDimension(ResourceInfo.ELEVATION)).last());
+
+        // the appended value is persisted as well
+        DimensionDomainIndex other = new DimensionDomainIndex(getWMS(), getDataDirectory());
+        assertEquals(times, other.load(index.getKey(typeInfo, ResourceInfo.TIME), "time").values);
+
+        // a rolled back transaction does not touch the index
+        tx = WfsFactory.eINSTANCE.createTransactionType();
+        DeleteElementType delete = WfsFactory.eINSTANCE.createDeleteElementType();
+        index.dataStoreChange(new TransactionEvent(TransactionEventType.PRE_DELETE,
+                TransactionRequest.adapt(tx), V_TIME_ELEVATION, features, delete));
+        index.afterTransaction(tx, null, false);
+        assertEquals(5, index.getValues(typeInfo, ResourceInfo.TIME,
+                getDimension(ResourceInfo.TIME)).size());
+
+        // a committed delete drops the domain, which is then computed again from the data
+        index.dataStoreChange(new TransactionEvent(TransactionEventType.PRE_DELETE,
+                TransactionRequest.adapt(tx), V_TIME_ELEVATION, features, delete));
+        index.afterTransaction(tx, null, true);
+        assertEquals(4, index.getValues(typeInfo, ResourceInfo.TIME,
+                getDimension(ResourceInfo.TIME)).size());
+    }
+
+    public void testCatalogChangeInvalidates() throws Exception {
+        index.getValues(typeInfo, ResourceInfo.TIME, getDimension(ResourceInfo.TIME));
+        File file = index.getFile(index.getKey(typeInfo, ResourceInfo.TIME), false);
+        assertTrue(file.exists());
+
+        typeInfo.setTitle("Changed");
+        getCatalog().save(typeInfo);
+        assertFalse(file.exists());
+        assertTrue(index.domains.isEmpty());
+    }
+
+    public void testReadRestrictedBypassesIndex() throws Exception {
+        FilterFactory ff = CommonFactoryFinder.getFilterFactory(null);
+        Filter readFilter = ff.less(ff.property("elevation"), ff.literal(2));
+        VectorAccessLimits limits = new VectorAccessLimits(CatalogMode.HIDE, null, readFilter,
+                null, null);
+        FeatureTypeInfo secured = new SecuredFeatureTypeInfo(typeInfo, WrapperPolicy
+                .readOnlyHide(limits));
+
+        // the restricted user sees only its own values, and nothing gets indexed
+        TreeSet<Object> elevations = index.getValues(secured, ResourceInfo.ELEVATION,
+                getDimension(ResourceInfo.ELEVATION));
+        assertEquals(2, elevations.size());
+        assertEquals(1d, elevations.last());
+        assertTrue(index.domains.isEmpty());
+        assertFalse(index.getFile(index.getKey(typeInfo, ResourceInfo.ELEVATION), false)
+                .exists());
+
+        // an unrestricted one gets the whole domain, which is then not leaked to the other
+        assertEquals(4, index.getValues(typeInfo, ResourceInfo.ELEVATION,
+                getDimension(ResourceInfo.ELEVATION)).size());
+        assertEquals(2, index.getValues(secured, ResourceInfo.ELEVATION,
+                getDimension(ResourceInfo.ELEVATION)).size());
+
+        // a read only wrapper without limits shares the index
+        FeatureTypeInfo readOnly = new SecuredFeatureTypeInfo(typeInfo, WrapperPolicy
+                .readOnlyHide(null));
+        assertEquals(4, index.getValues(readOnly, ResourceInfo.ELEVATION,
+                getDimension(ResourceInfo.ELEVATION)).size());
+    }
+}
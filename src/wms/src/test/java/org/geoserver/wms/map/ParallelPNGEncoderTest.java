@@ -0,0 +1,125 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.zip.Adler32;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+
+public class ParallelPNGEncoderTest extends TestCase {
+
+    public void testAdlerCombine() {
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31 + i / 7);
+        }
+        Adler32 full = new Adler32();
+        full.update(data);
+        Adler32 first = new Adler32();
+        first.update(data, 0, 40000);
+        Adler32 second = new Adler32();
+        second.update(data, 40000, 60000);
+        assertEquals(full.getValue(), ParallelPNGEncoder.combineAdler32(first.getValue(),
+                second.getValue(), 60000));
+    }
+
+    public void testUnsupported() {
+        assertFalse(ParallelPNGEncoder.isSupported(new BufferedImage(10, 10,
+                BufferedImage.TYPE_USHORT_GRAY)));
+        assertFalse(ParallelPNGEncoder.isSupported(new BufferedImage(10, 10,
+                BufferedImage.TYPE_INT_ARGB_PRE)));
+    }
+
+    public void testRGB() throws Exception {
+        assertRoundTrip(paint(new BufferedImage(700, 900, BufferedImage.TYPE_3BYTE_BGR)));
+        assertRoundTrip(paint(new BufferedImage(700, 900, BufferedImage.TYPE_INT_RGB)));
+    }
+
+    public void testRGBA() throws Exception {
+        assertRoundTrip(paint(new BufferedImage(700, 900, BufferedImage.TYPE_4BYTE_ABGR)));
+        assertRoundTrip(paint(new BufferedImage(700, 900, BufferedImage.TYPE_INT_ARGB)));
+    }
+
+    public void testGray() throws Exception {
+        assertRoundTrip(paint(new BufferedImage(1000, 1000, BufferedImage.TYPE_BYTE_GRAY)));
+    }
+
+    public void testPaletted() throws Exception {
+        byte[] r = new byte[256];
+        byte[] g = new byte[256];
+        byte[] b = new byte[256];
+        byte[] a = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            r[i] = (byte) i;
+            g[i] = (byte) (255 - i);
+            b[i] = (byte) (i * 3);
+            a[i] = (byte) (i < 16 ? 0 : 255);
+        }
+        IndexColorModel icm = new IndexColorModel(8, 256, r, g, b, a);
+        BufferedImage image = new BufferedImage(1000, 1000, BufferedImage.TYPE_BYTE_INDEXED, icm);
+        assertRoundTrip(paint(image));
+    }
+
+    public void testSmallImage() throws Exception {
+        // a single band, compressed in the calling thread
+        assertRoundTrip(paint(new BufferedImage(16, 16, BufferedImage.TYPE_INT_ARGB)));
+        assertRoundTrip(paint(new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB)));
+    }
+
+    public void testRowsPerBand() {
+        // a 256x256 RGBA tile is not split
+        assertEquals(256, ParallelPNGEncoder.getRowsPerBand(256, 256, 4));
+        assertEquals(16, ParallelPNGEncoder.getRowsPerBand(16, 16, 4));
+        // larger images are split in bands of about MIN_BAND_SIZE bytes
+        int rows = ParallelPNGEncoder.getRowsPerBand(1000, 1000, 3);
+        assertEquals(ParallelPNGEncoder.MIN_BAND_SIZE / 3001, rows);
+        assertTrue(rows < 1000);
+    }
+
+    BufferedImage paint(BufferedImage image) {
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(new Color(10, 200, 30, 128));
+        g.fillRect(0, 0, image.getWidth() / 2, image.getHeight());
+        for (int i = 0; i < 50; i++) {
+            g.setColor(new Color((i * 37) % 256, (i * 91) % 256, (i * 13) % 256, 100 + i));
+            g.drawOval(i * 11, i * 17, image.getWidth() / 3, image.getHeight() / 4);
+            g.drawLine(0, i * 19, image.getWidth(), image.getHeight() - i * 7);
+        }
+        g.dispose();
+        return image;
+    }
+
+    void assertRoundTrip(BufferedImage image) throws Exception {
+        assertTrue(ParallelPNGEncoder.isSupported(image));
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new ParallelPNGEncoder(4).encode(image, bos);
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(bos.toByteArray()));
+        assertNotNull(decoded);
+        assertEquals(image.getWidth(), decoded.getWidth());
+        assertEquals(image.getHeight(), decoded.getHeight());
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int expected = image.getRGB(x, y);
+                int actual = decoded.getRGB(x, y);
+                if (expected != actual) {
+                    // fully transparent pixels may differ in their color components
+                    assertEquals(0, expected >>> 24);
+                    assertEquals(0, actual >>> 24);
+                }
+            }
+        }
+    }
+}
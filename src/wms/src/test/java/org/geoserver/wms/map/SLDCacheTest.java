@@ -0,0 +1,124 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.IOUtils;
+import org.geotools.styling.NamedLayer;
+import org.geotools.styling.StyledLayerDescriptor;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class SLDCacheTest extends TestCase {
+
+    static final String ETAG = "\"v1\"";
+
+    String sldBody;
+
+    HttpServer server;
+
+    AtomicInteger fullResponses = new AtomicInteger();
+
+    AtomicInteger notModifiedResponses = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws Exception {
+        InputStream is = getClass().getResourceAsStream("BasicPolygonsLibraryDefault.sld");
+        try {
+            sldBody = IOUtils.toString(is, "ISO-8859-1");
+        } finally {
+            is.close();
+        }
+
+        // a tiny local server answering with an ETag and honoring If-None-Match
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/style.sld", new HttpHandler() {
+
+            public void handle(HttpExchange exchange) throws IOException {
+                if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    notModifiedResponses.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    fullResponses.incrementAndGet();
+                    byte[] bytes = sldBody.getBytes("ISO-8859-1");
+                    exchange.getResponseHeaders().add("ETag", ETAG);
+                    exchange.sendResponseHeaders(200, bytes.length);
+                    OutputStream os = exchange.getResponseBody();
+                    os.write(bytes);
+                    os.close();
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.stop(0);
+    }
+
+    public void testBody() throws Exception {
+        SLDCache cache = new SLDCache();
+        StyledLayerDescriptor sld = cache.getBody(sldBody, null);
+        assertEquals("cite:BasicPolygons", ((NamedLayer) sld.getStyledLayers()[0]).getName());
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        assertSame(sld, cache.getBody(sldBody, null));
+        assertEquals(1, cache.getHits());
+        assertEquals(0.5, cache.getHitRatio(), 0d);
+
+        // the version is part of the key
+        assertNotSame(sld, cache.getBody(sldBody, "1.0.0"));
+        assertEquals(2, cache.getMisses());
+    }
+
+    public void testBodyBounded() throws Exception {
+        SLDCache cache = new SLDCache(1);
+        StyledLayerDescriptor sld = cache.getBody(sldBody, null);
+        cache.getBody(sldBody + " ", null);
+        assertNotSame(sld, cache.getBody(sldBody, null));
+        assertEquals(0, cache.getHits());
+    }
+
+    public void testRemoteRevalidation() throws Exception {
+        URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/style.sld");
+        SLDCache cache = new SLDCache();
+
+        StyledLayerDescriptor sld = cache.getRemote(url, null);
+        assertEquals("cite:BasicPolygons", ((NamedLayer) sld.getStyledLayers()[0]).getName());
+        assertEquals(1, fullResponses.get());
+
+        // still fresh, no request made
+        assertSame(sld, cache.getRemote(url, null));
+        assertEquals(1, fullResponses.get());
+        assertEquals(0, notModifiedResponses.get());
+
+        // expired, the conditional request returns not modified
+        cache.setTimeToLive(0);
+        assertSame(sld, cache.getRemote(url, null));
+        assertEquals(1, fullResponses.get());
+        assertEquals(1, notModifiedResponses.get());
+        assertEquals(1, cache.getRevalidations());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // once cleared, it's fetched again
+        cache.clear();
+        assertNotSame(sld, cache.getRemote(url, null));
+        assertEquals(2, fullResponses.get());
+    }
+}
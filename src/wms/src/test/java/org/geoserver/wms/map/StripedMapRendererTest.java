@@ -0,0 +1,216 @@
+/* Copyright (c) 2001 - 2012 TOPP - www.openplans.org. All rights reserved.
+ * This code is licensed under the GPL 2.0 license, availible at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import junit.framework.Test;
+
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.data.test.MockData;
+import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.WMSMapContent;
+import org.geoserver.wms.WMSTestSupport;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.Layer;
+import org.geotools.map.StyleLayer;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.renderer.RenderListener;
+import org.geotools.renderer.lite.StreamingRenderer;
+import org.geotools.styling.PolygonSymbolizer;
+import org.geotools.styling.Rule;
+import org.geotools.styling.Style;
+import org.geotools.styling.StyleBuilder;
+import org.geotools.styling.Symbolizer;
+import org.geotools.styling.TextSymbolizer;
+
+public class StripedMapRendererTest extends WMSTestSupport {
+
+    /**
+     * This is a READ ONLY TEST so we can use one time setup
+     */
+    public static Test suite() {
+        return new OneTimeTestSetup(new StripedMapRendererTest());
+    }
+
+    public void testFilterSymbolizers() throws Exception {
+        StyleBuilder sb = new StyleBuilder();
+        Style style = sb.createStyle();
+        Rule polygons = sb.createRule(sb.createPolygonSymbolizer(Color.BLUE));
+        Rule mixed = sb.createRule(new Symbolizer[] {
+                sb.createPolygonSymbolizer(Color.RED), sb.createTextSymbolizer(Color.BLACK,
+                        sb.createFont("Serif", 10), "NAME") });
+        style.featureTypeStyles().add(sb.createFeatureTypeStyle("Feature", polygons));
+        style.featureTypeStyles().add(sb.createFeatureTypeStyle("Feature", mixed));
+
+        Style geometries = StripedMapRenderer.filterSymbolizers(style, false);
+        assertEquals(2, geometries.featureTypeStyles().size());
+        Rule rule = geometries.featureTypeStyles().get(1).rules().get(0);
+        assertEquals(1, rule.symbolizers().size());
+        assertTrue(rule.symbolizers().get(0) instanceof PolygonSymbolizer);
+
+        Style labels = StripedMapRenderer.filterSymbolizers(style, true);
+        assertEquals(1, labels.featureTypeStyles().size());
+        rule = labels.featureTypeStyles().get(0).rules().get(0);
+        assertEquals(1, rule.symbolizers().size());
+        assertTrue(rule.symbolizers().get(0) instanceof TextSymbolizer);
+
+        // the original is left untouched
+        assertEquals(2, style.featureTypeStyles().get(1).rules().get(0).symbolizers().size());
+
+        // nothing left
+        Style empty = sb.createStyle();
+        empty.featureTypeStyles().add(sb.createFeatureTypeStyle("Feature", polygons));
+        assertNull(StripedMapRenderer.filterSymbolizers(empty, true));
+    }
+
+    public void testStripesMatchSingleRenderer() throws Exception {
+        WMSMapContent map = buildMap(300, 600);
+        Map<RenderingHints.Key, Object> hints = new HashMap<RenderingHints.Key, Object>();
+        hints.put(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        Map<Object, Object> params = new HashMap<Object, Object>();
+        params.put(StreamingRenderer.ADVANCED_PROJECTION_HANDLING_KEY, true);
+
+        // the reference, painted by a single renderer
+        BufferedImage expected = createImage(map);
+        Graphics2D graphic = expected.createGraphics();
+        graphic.setRenderingHints(hints);
+        StreamingRenderer renderer = createRenderer(map, hints, params);
+        renderer.paint(graphic, new Rectangle(0, 0, 300, 600), map.getRenderingArea(), map
+                .getRenderingTransform());
+        graphic.dispose();
+
+        // the same map, painted in 4 stripes
+        BufferedImage actual = createImage(map);
+        graphic = actual.createGraphics();
+        graphic.setRenderingHints(hints);
+        renderer = createRenderer(map, hints, params);
+        RenderingTimeoutEnforcer timeout = new RenderingTimeoutEnforcer(0, renderer, graphic);
+        MaxErrorEnforcer errorChecker = new MaxErrorEnforcer(renderer, 10);
+        StripedMapRenderer striped = new StripedMapRenderer(map, actual, hints, params, 4,
+                errorChecker);
+        striped.paint(renderer, graphic, timeout);
+        graphic.dispose();
+
+        assertNull(striped.getException());
+        assertFalse(errorChecker.exceedsMaxErrors());
+        assertNotBlank("testStripesMatchSingleRenderer", actual);
+        int differences = 0;
+        for (int y = 0; y < 600; y++) {
+            for (int x = 0; x < 300; x++) {
+                if (expected.getRGB(x, y) != actual.getRGB(x, y)) {
+                    differences++;
+                }
+            }
+        }
+        // allow for the odd pixel at the stripe boundaries
+        assertTrue("Too many different pixels: " + differences, differences < 300);
+
+        // the styles have been restored
+        for (Layer layer : map.layers()) {
+            assertTrue(layer.isVisible());
+            assertEquals(getCatalog().getStyleByName("Default").getStyle(), ((StyleLayer) layer)
+                    .getStyle());
+        }
+        map.dispose();
+    }
+
+    public void testSharedErrorCount() {
+        ErrorRenderer r1 = new ErrorRenderer();
+        ErrorRenderer r2 = new ErrorRenderer();
+        MaxErrorEnforcer errorChecker = new MaxErrorEnforcer(r1, 2);
+        errorChecker.add(r2);
+
+        // the errors of the stripes add up
+        r1.error();
+        r2.error();
+        assertFalse(errorChecker.exceedsMaxErrors());
+        assertFalse(r1.stopped || r2.stopped);
+        r2.error();
+        assertTrue(errorChecker.exceedsMaxErrors());
+        assertTrue(r1.stopped);
+        assertTrue(r2.stopped);
+
+        // a late comer does not even start
+        ErrorRenderer r3 = new ErrorRenderer();
+        errorChecker.add(r3);
+        assertTrue(r3.stopped);
+    }
+
+    WMSMapContent buildMap(int width, int height) throws Exception {
+        GetMapRequest request = new GetMapRequest();
+        WMSMapContent map = new WMSMapContent();
+        map.setRequest(request);
+        map.setMapWidth(width);
+        map.setMapHeight(height);
+        map.setBgColor(BG_COLOR);
+        addToMap(map, MockData.BASIC_POLYGONS);
+        addToMap(map, MockData.LAKES);
+        map.getViewport().setBounds(
+                new ReferencedEnvelope(-2, 2, -4, 4, DefaultGeographicCRS.WGS84));
+        return map;
+    }
+
+    void addToMap(WMSMapContent map, QName typeName) throws Exception {
+        FeatureTypeInfo info = getCatalog().getFeatureTypeByName(typeName.getNamespaceURI(),
+                typeName.getLocalPart());
+        Style style = getCatalog().getStyleByName("Default").getStyle();
+        map.addLayer(new FeatureLayer(info.getFeatureSource(null, null), style));
+    }
+
+    BufferedImage createImage(WMSMapContent map) {
+        BufferedImage image = new BufferedImage(map.getMapWidth(), map.getMapHeight(),
+                BufferedImage.TYPE_4BYTE_ABGR);
+        Graphics2D g = image.createGraphics();
+        g.setColor(BG_COLOR);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.dispose();
+        return image;
+    }
+
+    StreamingRenderer createRenderer(WMSMapContent map, Map<RenderingHints.Key, Object> hints,
+            Map<Object, Object> params) {
+        StreamingRenderer renderer = new StreamingRenderer();
+        renderer.setMapContent(map);
+        renderer.setJava2DHints(new RenderingHints(hints));
+        renderer.setRendererHints(params);
+        return renderer;
+    }
+
+    static class ErrorRenderer extends StreamingRenderer {
+        List<RenderListener> listeners = new ArrayList<RenderListener>();
+
+        boolean stopped;
+
+        @Override
+        public void addRenderListener(RenderListener listener) {
+            super.addRenderListener(listener);
+            listeners.add(listener);
+        }
+
+        @Override
+        public void stopRendering() {
+            super.stopRendering();
+            stopped = true;
+        }
+
+        void error() {
+            for (RenderListener listener : listeners) {
+                listener.errorOccurred(new Exception("Rendering error"));
+            }
+        }
+    }
+}
@@ -20,6 +20,7 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.awt.image.IndexColorModel;
 import java.awt.image.RenderedImage;
 
@@ -33,6 +34,7 @@ import javax.media.jai.TiledImage;
 
 import junit.framework.TestCase;
 
+import org.geoserver.wms.kvp.PaletteManager;
 import org.geotools.image.ImageWorker;
 import org.geotools.image.palette.CustomPaletteBuilder;
 import org.geotools.image.palette.InverseColorMapRasterOp;
@@ -147,4 +149,41 @@ public class ColorIndexerTest extends TestCase {
         // make sure we have 4 colors + transparent one
         assertEquals(5, icm.getMapSize());
     }
+
+    public void testSharedIndexer() {
+        IndexColorModel icm = PaletteManager.safePalette;
+        SimpleColorIndexer simple = new SimpleColorIndexer(icm);
+        // small on purpose, to have colors collide
+        SharedColorIndexer shared = new SharedColorIndexer(icm, 60);
+        assertEquals(64, shared.getSize());
+        assertSame(icm, shared.toIndexColorModel());
+
+        for (int pass = 0; pass < 2; pass++) {
+            for (int c = 0; c < 256; c += 5) {
+                assertEquals(simple.getClosestIndex(c, 255 - c, c / 2, 255), shared
+                        .getClosestIndex(c, 255 - c, c / 2, 255));
+                assertEquals(simple.getClosestIndex(c, c, c, 0), shared.getClosestIndex(c, c, c,
+                        0));
+            }
+        }
+    }
+
+    public void testSharedIndexerByPalette() {
+        IndexColorModel icm = PaletteManager.safePalette;
+        int[] rgbs = new int[icm.getMapSize()];
+        icm.getRGBs(rgbs);
+        IndexColorModel copy = new IndexColorModel(8, rgbs.length, rgbs, 0, true, icm
+                .getTransparentPixel(), DataBuffer.TYPE_BYTE);
+        assertSame(PaletteManager.getColorIndexer(icm), PaletteManager.getColorIndexer(copy));
+        assertSame(PaletteManager.getInverseColorMapOp(icm), PaletteManager
+                .getInverseColorMapOp(copy));
+
+        // same color model properties, different colors
+        rgbs[0] = 0xFF123456;
+        IndexColorModel other = new IndexColorModel(8, rgbs.length, rgbs, 0, true, icm
+                .getTransparentPixel(), DataBuffer.TYPE_BYTE);
+        assertNotSame(PaletteManager.getColorIndexer(icm), PaletteManager.getColorIndexer(other));
+        assertNotSame(PaletteManager.getInverseColorMapOp(icm), PaletteManager
+                .getInverseColorMapOp(other));
+    }
 }
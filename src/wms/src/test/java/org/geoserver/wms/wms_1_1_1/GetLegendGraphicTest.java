@@ -13,9 +13,14 @@ import javax.xml.namespace.QName;
 import junit.framework.Test;
 
 import org.geoserver.data.test.MockData;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.wms.WMSTestSupport;
+import org.geoserver.wms.legendgraphic.LegendGraphicCache;
 import org.geotools.util.Converters;
 
+import com.mockrunner.mock.web.MockHttpServletRequest;
+import com.mockrunner.mock.web.MockHttpServletResponse;
+
 public class GetLegendGraphicTest extends WMSTestSupport {
     /**
      * This is a READ ONLY TEST so we can use one time setup
@@ -162,4 +167,63 @@ public class GetLegendGraphicTest extends WMSTestSupport {
         assertPixel(image, 1, 20, Color.WHITE);
     }
     
+    /**
+     * Tests the encoded legends are cached, and that the ETag is honored
+     */
+    public void testCachedLegend() throws Exception {
+        String base = "wms?service=WMS&version=1.1.1&request=GetLegendGraphic" +
+                "&layer=" + getLayerId(MockData.LAKES) + "&style=Lakes" +
+                "&format=image/png&width=25&height=25";
+        LegendGraphicCache cache = GeoServerExtensions.bean(LegendGraphicCache.class);
+        cache.clear();
+        long hits = cache.getHits();
+        long misses = cache.getMisses();
+
+        MockHttpServletResponse response = getAsServletResponse(base);
+        assertEquals("image/png", response.getContentType());
+        String etag = response.getHeader("ETag");
+        assertNotNull(etag);
+        assertEquals(misses + 1, cache.getMisses());
+
+        response = getAsServletResponse(base);
+        assertEquals("image/png", response.getContentType());
+        assertEquals(etag, response.getHeader("ETag"));
+        String lastModified = response.getHeader("Last-Modified");
+        assertNotNull(lastModified);
+        assertEquals(hits + 1, cache.getHits());
+        BufferedImage image = ImageIO.read(getBinaryInputStream(response));
+        assertPixel(image, 12, 12, Converters.convert("#4040C0", Color.class));
+
+        // the client already has it, a 304 with no body
+        MockHttpServletRequest request = createRequest(base);
+        request.addHeader("If-None-Match", etag);
+        response = dispatch(request);
+        assertEquals(304, response.getStatusCode());
+        assertEquals(0, response.getOutputStreamContent().length());
+        assertEquals(etag, response.getHeader("ETag"));
+
+        // same with the modification date
+        request = createRequest(base);
+        request.addHeader("If-Modified-Since", lastModified);
+        response = dispatch(request);
+        assertEquals(304, response.getStatusCode());
+        assertEquals(0, response.getOutputStreamContent().length());
+
+        // a different etag gets the legend again
+        request = createRequest(base);
+        request.addHeader("If-None-Match", "\"foo\"");
+        response = dispatch(request);
+        assertEquals(200, response.getStatusCode());
+        assertTrue(response.getOutputStreamContent().length() > 0);
+
+        // a different size is a different legend
+        getAsServletResponse(base.replace("width=25", "width=30"));
+        assertEquals(misses + 2, cache.getMisses());
+
+        // changing the style evicts the legend
+        cache.invalidateStyle(getCatalog().getStyleByName("Lakes").getId());
+        getAsServletResponse(base);
+        assertEquals(misses + 3, cache.getMisses());
+    }
+
 }